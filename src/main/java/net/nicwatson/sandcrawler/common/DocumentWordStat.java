@@ -20,7 +20,11 @@ import java.io.Serializable;
 
 /**
  * A DocumentWordStat tracks the incidence of a specific word in a specific document. It also
- * calculates and stores the TF and TF-IDF of the word relative to the document.
+ * calculates the TF and TF-IDF of the word relative to the document.
+ * <p/>
+ * The counts themselves are kept in the document's term arrays; a DocumentWordStat is just a view of one entry
+ * in them, created when it is asked for. The TF and TF-IDF are calculated from the document each time they are
+ * requested.
  * @author Nic
  *
  */
@@ -34,59 +38,29 @@ public class DocumentWordStat extends AbstractWordStat implements Serializable
 	private MappedDocument containingDoc;
 	
 	/**
-	 * Number of times the word appears in the document
+	 * The position of the word in the document's term arrays
 	 */
-	private int count;
+	private int position;
 	
 	/**
-	 * Term frequency of the word in the document. This is calculated once and then stored locally for efficiency.
+	 * Constructs a new DocumentWordStat for one of the words in a document
+	 * @param containing The document for which word stats are being tracked
+	 * @param position The position of the word in the document's term arrays
 	 */
-	private double termFrequency;
-	
-	/**
-	 * TF-IDF of the word in the document. This is calculated once and then stored locally for efficiency.
-	 * TF-IDF depends on the TF, which is stored locally, and IDF, which is a global property of the word.
-	 */
-	private double tf_idf;
-	
-	/**
-	 * A reference to the corresponding GlobalWordStat counterpart of this DocumentWordStat. The GlobalWordStat
-	 * tracks the incidence of the same word across the entire corpus. DocumentWordStats maintain a reference
-	 * to their global counterparts chiefly for the purpose of looking up IDF when calculating TF-IDF. The
-	 * reference is kept locally to avoid the need for repeated lookups in the index.
-	 */
-	private GlobalWordStat globalStat;
-	
-	/**
-	 * Constructs a new DocumentWordStat, given the GlobalWordStat for the same word, and an IndexedDocument
-	 * against which the local word stats will be calculated.
-	 * <p/>
-	 * The initialized word stat does not contain valid data right away. <code>count</code> is initialized to zero,
-	 * and must be updated through the <code>increment()</code> methods before it is meaningful.
-	 * <br/>
-	 * <code>termFrequency</code> and <code>tf_idf</code> are initialized to -1. Their true values are calculated
-	 * and stored when first accessed by their corresponding getters. Those values will be accurate only if both
-	 * this word stat's <code>count</code> property and the GlobalWordStat's IDF have been accurately set. 
-	 * @param wordStat The GlobalWordStat for the word
-	 * @param owner The document for which word stats are being tracked
-	 */
-	public DocumentWordStat(GlobalWordStat wordStat, MappedDocument containing)
+	public DocumentWordStat(MappedDocument containing, int position)
 	{
-		super(wordStat.getWord(), containing.getIndex());
-		this.globalStat = wordStat;
+		super(containing.getIndex().getTermStat(containing.termIdAt(position)).getWord(), containing.getIndex());
 		this.containingDoc = containing;
-		this.count = 0;
-		this.termFrequency = -1;
-		this.tf_idf = -1;
+		this.position = position;
 	}
 	
 	/**
-	 * Getter for the <code>count</code> property.
-	 * @return Value of the <code>count</code> property
+	 * Retrieves the number of times the word appears in the document
+	 * @return The number of times the word appears in the document
 	 */
 	public double getCount()
 	{
-		return this.count;
+		return this.containingDoc.countAt(this.position);
 	}
 	
 	/**
@@ -98,89 +72,34 @@ public class DocumentWordStat extends AbstractWordStat implements Serializable
 		return this.containingDoc;
 	}
 	
-	/**
-	 * Increments the <code>count</code> property by 1
-	 * @return The DocumentWordStat object for convenient method chaining
-	 */
-	public DocumentWordStat increment()
-	{
-		return this.increment(1);
-	}
-	
-	/**
-	 * Increments the <code>count</code> property by the specified amount
-	 * @param amt The amount to add to the count
-	 * @return The DocumentWordStat object for convenient method chaining
-	 */
-	public DocumentWordStat increment(int amt)
-	{
-		this.count += amt;
-		return this;
-	}
-	
 	/**
 	 * Shortcut to get the IDF of a given word. This method passes the request through to the corresponding GlobalWordStat
 	 * @return The inverse document frequency for the given word in the entire indexed corpus
 	 */
 	public double getIDF()
 	{
-		return this.globalStat.getIDF();
-	}
-	
-	/**
-	 * Retrieves the term frequency for the word in this document. The value is "cached" in the object the first time it
-	 * is requested, so that the calculation does not have to be repeated multiple times. If the value has not yet been
-	 * cached (i.e. termFrequency == -1), it will be calculated first.
-	 * @return The term frequency of this word in this document
-	 */
-	public double getTF()
-	{
-		if(this.termFrequency < 0)
-		{
-			// termFrequency not initialized -- need to calculate it
-			return this.calculateTF();
-		}
-		return this.termFrequency;
+		return this.getIndex().getTermStat(this.containingDoc.termIdAt(this.position)).getIDF();
 	}
 	
 	/**
-	 * Calculates the term frequency for the word in this document, and caches it to a local member variable. 
+	 * Retrieves the term frequency for the word in this document
 	 * <p/>
 	 * <code>termFrequency = (number of times word appears in doc) / (number of words in doc)</code> 
-	 * @return The calculated term frequency
+	 * @return The term frequency of this word in this document
 	 */
-	protected double calculateTF()
+	public double getTF()
 	{
-		this.termFrequency = this.count / (double)(containingDoc.getSize());
-		return this.termFrequency;
+		return this.containingDoc.tfAt(this.position);
 	}
 
 	/**
-	 * Retrieves the TF-IDF for the word in this document. The value is "cached" in the object the first time it
-	 * is requested, so that the calculation does not have to be repeated multiple times. If the value has not yet been
-	 * cached (i.e. tf_idf == -1), it will be calculated first.
+	 * Retrieves the TF-IDF for the word in this document
+	 * <p/>
+	 * <code>tf_idf = log(1 + TF) * IDF</code> 
 	 * @return The TF-IDF of this word in this document
 	 */
 	public double getTFIDF()
 	{
-		if(this.tf_idf < 0)
-		{
-			return this.calculateTFIDF();
-		}
-		return this.tf_idf;
+		return this.containingDoc.tfidfAt(this.position);
 	}
-	
-	/**
-	 * Calculates the TF-IDF for the word in this document, and caches it to a local member variable. 
-	 * <p/>
-	 * <code>tf_idf = log(1 + TF) * IDF<>/code> 
-	 * @return The calculated tf-idf
-	 */
-	protected double calculateTFIDF()
-	{
-		this.tf_idf = MathsHelper.lg(1.0 + this.getTF()) * this.getIDF();
-		return this.tf_idf;
-	}
-	
-	
 }
@@ -18,13 +18,16 @@
 package net.nicwatson.sandcrawler.common;
 
 import java.io.Serializable;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * A GlobalWordStat tracks the incidence of a specific word across the entire corpus of indexed documents.
  * It is used to look up the global occurrence count and inverse document frequency of words, and to retrieve
  * a list of all documents in which a given word appears.
+ * <p/>
+ * Each word has a dense integer ID, assigned by the WebIndex, which is how documents refer to it. The documents that
+ * contain the word (the word's "postings") are stored in a compressed PostingList, in ascending order of page ordinal,
+ * along with the number of times the word appears on each.
+ * @see PostingList
  * @author Nic
  *
  */
@@ -33,86 +36,144 @@ public class GlobalWordStat extends AbstractWordStat implements Serializable
 	private static final long serialVersionUID = 7295490782033321941L;
 
 	/**
-	 * A set of all pages in the index in which this word appears at least once
+	 * The ID of this word in its WebIndex
 	 */
-	protected Set<IndexedPage> pageSet;
+	protected int id;
 	
 	/**
-	 * Total number of documents in which this word appears at least once.
+	 * The pages in the index in which this word appears at least once, with the number of times it appears on each
 	 */
-	protected int globalOccurrence;
+	protected PostingList postings;
+	
+	/**
+	 * The number of postings whose pages have since been removed from the index. Their postings stay in the list
+	 * until the index is compacted, but they no longer count towards the word's global occurrence.
+	 */
+	protected int removedPostings;
 	
 	/**
 	 * Inverse document frequency of the word in the corpus. This is calculated once and then stored locally for efficiency.
 	 */
 	protected double inverseDocumentFrequency;
 	
+	/**
+	 * The generation of the WebIndex for which <code>inverseDocumentFrequency</code> was calculated. Once pages have
+	 * been added to or removed from the index, the cached value is stale, and is calculated again the next time it
+	 * is requested.
+	 * @see WebIndex#getGeneration()
+	 */
+	protected volatile int idfGeneration;
+	
 	/**
 	 * Constructs a new GlobalWordStat from a given String and given WebIndex.
 	 * <p/>
-	 * The initialized word stat does not contain valid data right away. <code>globalOccurrence</code> is initialized to zero,
-	 * and will not be accurate until all pages that contain the word have been added to this word stat's listing.
+	 * The initialized word stat does not contain valid data right away. Its postings start out empty, and its global
+	 * occurrence will not be accurate until all pages that contain the word have been added to them.
 	 * <br/>
 	 * <code>inverseDocumentFrequency</code> is initialized to -1. Its true values are calculated
 	 * and stored when first accessed by their corresponding getters. That value will be accurate only if both
-	 * this word stat's <code>globalOccurrence</code> property and the WebIndex's document count are accurate. 
+	 * this word stat's postings and the WebIndex's document count are accurate. 
 	 * @param word The word that this stat is for
 	 * @param index The WebIndex to which this word stat will belong
+	 * @param id The ID of the word in the WebIndex
 	 */
-	public GlobalWordStat(String word, WebIndex index)
+	public GlobalWordStat(String word, WebIndex index, int id)
 	{
 		super(word, index);
-		
-		// Instantiate the pageList as a LinkedHashSet in order to combine fast insertions/lookups with efficient iteration.
-		this.pageSet = new HashSet<IndexedPage>();
-		
-		this.globalOccurrence = 0;
+		this.id = id;
+		this.postings = new PostingList();
+		this.removedPostings = 0;
 		this.inverseDocumentFrequency = -1;
+		this.idfGeneration = 0;
 	}
 	
 	/**
-	 * Getter for <code>globalOccurrence</code>, which is the total number of documents in which this word appears at least once.
-	 * @return Value of <code>globalOccurrence</code> property.
+	 * Getter for <code>id</code>
+	 * @return The ID of this word in its WebIndex
+	 */
+	public int getId()
+	{
+		return this.id;
+	}
+	
+	/**
+	 * Retrieves the total number of documents in which this word appears at least once, which is the number of postings
+	 * that belong to pages still in the index.
+	 * @return The global occurrence of this word.
 	 */
 	public int getGlobalOccurrence()
 	{
-		return this.globalOccurrence;
+		return this.postings.size() - this.removedPostings;
 	}
 	
 	/**
-	 * Getter for <code>pageSet</code>.
-	 * <br/>Retrieves a Set view of all the indexed pages in which this word appears at least once.
-	 * @return A Set view of all the indexed pages in which this word appears at least once.
+	 * Getter for <code>postings</code>. If pages have been removed from the index since it was last compacted, the
+	 * postings may include the ordinals of pages that are no longer there.
+	 * @return The pages on which this word appears, in ascending order of ordinal
 	 */
-	public Set<IndexedPage> getPageSet()
+	public PostingList getPostings()
 	{
-		return this.pageSet;
+		return this.postings;
 	}
 	
 	/**
-	 * Adds the given indexed page to this word stat's set of documents that contain the word, and updates the <code>globalOccurrence</code> property.
-	 * @param p The page to add to the set. If the page is already in the set, nothing is added (duplicates are not permitted).
-	 * @return The word's new <code>globalOccurrence</code> value.
+	 * Adds a page to this word stat's postings. Postings must be added in ascending order of page ordinal.
+	 * @param ordinal The ordinal of the page containing the word
+	 * @param count The number of times the word appears on the page
+	 * @return The word's new global occurrence
 	 */
-	public int addPage(IndexedPage p)
+	public int addPosting(int ordinal, int count)
 	{
-		if(!this.pageSet.contains(p))
-		{
-			this.pageSet.add(p);
-			this.globalOccurrence++;
-		}
-		return this.globalOccurrence;
+		this.postings.add(ordinal, count);
+		return this.postings.size();
+	}
+	
+	/**
+	 * Releases the spare room in this word stat's postings, once all of them have been added
+	 */
+	void trimPostings()
+	{
+		this.postings.trim();
+	}
+	
+	/**
+	 * Records that one of the pages in this word stat's postings has been removed from the index
+	 * @return The word's new global occurrence
+	 */
+	int removePosting()
+	{
+		this.removedPostings++;
+		return this.getGlobalOccurrence();
+	}
+	
+	/**
+	 * Empties this word stat's postings, as when the WebIndex renumbers its pages and builds the postings again
+	 */
+	void clearPostings()
+	{
+		this.postings = new PostingList();
+		this.removedPostings = 0;
+	}
+	
+	/**
+	 * Changes the ID of this word, as when the WebIndex renumbers its words
+	 * @param id The new ID
+	 */
+	void setId(int id)
+	{
+		this.id = id;
 	}
 	
 	/**
 	 * Retrieves the inverse document frequency for the word. The value is "cached" in the object the first time it
 	 * is requested, so that the calculation does not have to be repeated multiple times. If the value has not yet been
-	 * cached (i.e. inverseDocumentFrequency == -1), it will be calculated first.
+	 * cached (i.e. inverseDocumentFrequency == -1), or pages have been added to or removed from the index since it
+	 * was, it will be calculated first.
 	 * @return The IDF of this word in the corpus
 	 */
 	public double getIDF()
 	{
-		if(this.inverseDocumentFrequency < 0)
+		if(this.inverseDocumentFrequency < 0 || this.idfGeneration != this.getIndex().getGeneration())
 		{
 			return this.calculateIDF();
 		}
@@ -127,9 +188,14 @@ public class GlobalWordStat extends AbstractWordStat implements Serializable
 	 */
 	protected double calculateIDF()
 	{
+		// The generation is read first and stamped last, so a stamp that matches the index always goes with an IDF
+		// that was calculated for it
+		int generation = this.getIndex().getGeneration();
 		double ratio = this.getIndex().getTotalDocs() / (1.0 + (double)(this.getGlobalOccurrence()));
-		this.inverseDocumentFrequency = MathsHelper.lg(ratio);
-		return this.inverseDocumentFrequency;
+		double idf = MathsHelper.lg(ratio);
+		this.inverseDocumentFrequency = idf;
+		this.idfGeneration = generation;
+		return idf;
 	}
 	
 
@@ -0,0 +1,467 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * IndexFile reads and writes WebIndexes in Sandcrawler's compact binary index format. Unlike Java serialization,
+ * the format stores each fact exactly once (no back-pointers from every word stat to its page and index), and both
+ * reading and writing are a single buffered, streaming pass over the file. The lookup tables at the end of the file
+ * also allow it to be searched in place, without being read into memory first (see <code>MappedIndex</code>).
+ * <p/>
+ * All numbers are big-endian. "varint" and "string" refer to the encodings in <code>VarInt</code>. "Offset" means a
+ * byte position within the file, stored as an int, so index files are limited to 2 GB. The file consists of the
+ * following sections, in order:
+ * <ol>
+ * <li/><b>Header</b>: magic number (int), format version (int), seed URL (string), crawl time in epoch milliseconds
+ * (long), number of pages N (int), number of words T (int)
+ * <li/><b>Page table</b>: for each page, by ordinal: URL (string), title (string), total word count (varint), and the
+ * ETag and Last-Modified date the server sent with the page (strings, blank if there were none)
+ * <li/><b>PageRank vector</b>: N doubles, by page ordinal
+ * <li/><b>Norm vector</b>: N doubles, the norm of each page's TF-IDF vector, by page ordinal
+ * <li/><b>Term dictionary and postings</b>: for each word, in sorted order: the word (string), the number of pages
+ * containing it (varint), and then one posting per such page, in ascending ordinal order: the gap from the previous
+ * posting's ordinal (varint, starting from 0) and the number of times the word occurs on the page (varint)
+ * <li/><b>Link graph</b>: for each page, by ordinal: the number of out-links (varint), then for each out-link either
+ * the ordinal of the linked page plus one (varint), or 0 followed by the URL (string) for links to unindexed pages
+ * <li/><b>In-links</b>: for each page, by ordinal: the number of in-links (varint), then the ordinal of each page
+ * linking to it (varint)
+ * <li/><b>Lookup tables</b>: five int arrays: the offset of each page's entry in the page table (N ints, by ordinal);
+ * the page ordinals sorted by URL (N ints); the offset of each word's entry in the term dictionary (T ints, in sorted
+ * order); and the offset of each page's entry in the link graph and in the in-links (N ints each, by ordinal)
+ * <li/><b>Footer</b>: the offsets of the PageRank vector, the norm vector and each of the five lookup tables (7 ints),
+ * then the magic number again (int), to detect truncated files
+ * </ol>
+ * Derived values (TF, IDF, TF-IDF and the word/page totals) are not stored; they are rebuilt on load.
+ * @see VarInt
+ * @see MappedIndex
+ */
+public class IndexFile
+{
+	/**
+	 * Marks the start (and end) of an index file: "SCIX" in ASCII
+	 */
+	public static final int MAGIC = 0x53434958;
+
+	/**
+	 * The version of the format written by this class. Files with any other version number are rejected.
+	 */
+	public static final int VERSION = 3;
+
+	/**
+	 * Size of the I/O buffers used when reading or writing
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Number of section offsets stored in the footer
+	 */
+	static final int FOOTER_OFFSETS = 7;
+
+	/**
+	 * Size of the footer in bytes: the section offsets, plus the closing magic number
+	 */
+	static final int FOOTER_SIZE = (FOOTER_OFFSETS + 1) * Integer.BYTES;
+
+
+	/**
+	 * Writes the given index to the given file, replacing it if it exists. The index is first written to a temporary
+	 * file next to the destination, which is then moved into place, so a reader never sees a half-written file. The
+	 * destination must not be open in a MappedIndex, though: some platforms (such as Windows) will not replace a file
+	 * that is mapped.
+	 * <p/>
+	 * If pages have been added to or removed from the index since it was built, it is compacted first, since the file
+	 * format has no room for removed pages and needs the words in sorted order.
+	 * @param index The WebIndex to write
+	 * @param path The path of the file to write
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void write(WebIndex index, String path) throws IOException
+	{
+		Path target = Paths.get(path);
+		Path temp = Paths.get(path + ".tmp");
+		try
+		{
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile()), BUFFER_SIZE)))
+			{
+				// Updates to the index wait until it has been written
+				synchronized(index)
+				{
+					index.compact();
+					index.ensurePageRanks();
+					writeTo(index, out);
+				}
+			}
+			try
+			{
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch(IOException e)
+		{
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the given index to the given stream, section by section
+	 * @param index The WebIndex to write
+	 * @param out The destination, which must be positioned at the start of the file
+	 * @throws IOException If the destination cannot be written to, or the index is too big for the format
+	 */
+	private static void writeTo(WebIndex index, DataOutputStream out) throws IOException
+	{
+		IndexedPage[] pages = index.pagesByOrdinal.toArray(new IndexedPage[0]);
+		Map<String, Integer> urlOrdinals = new HashMap<String, Integer>(pages.length * 2);
+		for(int i = 0; i < pages.length; i++)
+		{
+			urlOrdinals.put(pages[i].getURL(), i);
+		}
+
+		// Header
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		VarInt.writeString(out, (index.seedURL == null) ? "" : index.seedURL);
+		out.writeLong(index.crawlTime.getTime());
+		out.writeInt(pages.length);
+		out.writeInt(index.termsById.length);
+
+		// Page table
+		int[] pageOffsets = new int[pages.length];
+		for(int i = 0; i < pages.length; i++)
+		{
+			pageOffsets[i] = out.size();
+			VarInt.writeString(out, pages[i].getURL());
+			VarInt.writeString(out, pages[i].getTitle());
+			VarInt.write(out, pages[i].getSize());
+			VarInt.writeString(out, (pages[i].getETag() == null) ? "" : pages[i].getETag());
+			VarInt.writeString(out, (pages[i].getLastModified() == null) ? "" : pages[i].getLastModified());
+		}
+
+		// PageRank and norm vectors
+		int ranksOffset = out.size();
+		for(IndexedPage page : pages)
+		{
+			out.writeDouble(page.getPageRank());
+		}
+		int normsOffset = out.size();
+		for(IndexedPage page : pages)
+		{
+			out.writeDouble(page.getVectorNorm());
+		}
+
+		// Term dictionary and postings. Word IDs are already in sorted order, and a PostingList is held in memory in the
+		// same encoding as the file, so its bytes are copied straight out.
+		int[] termOffsets = new int[index.termsById.length];
+		for(int t = 0; t < index.termsById.length; t++)
+		{
+			GlobalWordStat wordStat = index.termsById[t];
+			termOffsets[t] = out.size();
+			VarInt.writeString(out, wordStat.getWord());
+			VarInt.write(out, wordStat.getGlobalOccurrence());
+			wordStat.getPostings().writeTo(out);
+		}
+
+		// Link graph
+		int[] outLinkOffsets = new int[pages.length];
+		for(int i = 0; i < pages.length; i++)
+		{
+			outLinkOffsets[i] = out.size();
+			VarInt.write(out, pages[i].getOutLinks().size());
+			for(String link : pages[i].getOutLinks())
+			{
+				Integer target = urlOrdinals.get(link);
+				if(target != null)
+				{
+					VarInt.write(out, target + 1);
+				}
+				else
+				{
+					VarInt.write(out, 0);
+					VarInt.writeString(out, link);
+				}
+			}
+		}
+
+		// In-links. These only ever come from indexed pages, so they are stored as ordinals alone.
+		int[] inLinkOffsets = new int[pages.length];
+		for(int i = 0; i < pages.length; i++)
+		{
+			inLinkOffsets[i] = out.size();
+			int[] sources = new int[pages[i].getInLinks().size()];
+			int n = 0;
+			for(String link : pages[i].getInLinks())
+			{
+				Integer source = urlOrdinals.get(link);
+				if(source != null)
+				{
+					sources[n++] = source;
+				}
+			}
+			VarInt.write(out, n);
+			for(int s = 0; s < n; s++)
+			{
+				VarInt.write(out, sources[s]);
+			}
+		}
+
+		// Lookup tables
+		Integer[] byURL = new Integer[pages.length];
+		for(int i = 0; i < pages.length; i++)
+		{
+			byURL[i] = i;
+		}
+		Arrays.sort(byURL, (a, b) -> pages[a].getURL().compareTo(pages[b].getURL()));
+		int[] urlOrder = new int[pages.length];
+		for(int i = 0; i < pages.length; i++)
+		{
+			urlOrder[i] = byURL[i];
+		}
+
+		int[] tables = new int[] {
+				writeTable(out, pageOffsets),
+				writeTable(out, urlOrder),
+				writeTable(out, termOffsets),
+				writeTable(out, outLinkOffsets),
+				writeTable(out, inLinkOffsets) };
+
+		// Footer
+		if(out.size() == Integer.MAX_VALUE)
+		{
+			// DataOutputStream's byte count sticks at Integer.MAX_VALUE once it overflows
+			throw new IOException("Index is too large for the index file format (2 GB maximum)");
+		}
+		out.writeInt(ranksOffset);
+		out.writeInt(normsOffset);
+		for(int offset : tables)
+		{
+			out.writeInt(offset);
+		}
+		out.writeInt(MAGIC);
+	}
+
+	/**
+	 * Writes a lookup table of ints
+	 * @param out The destination
+	 * @param table The table to write
+	 * @return The offset at which the table was written
+	 * @throws IOException If the destination cannot be written to
+	 */
+	private static int writeTable(DataOutputStream out, int[] table) throws IOException
+	{
+		int offset = out.size();
+		for(int value : table)
+		{
+			out.writeInt(value);
+		}
+		return offset;
+	}
+
+	/**
+	 * Reads an index from the given file, rebuilding a complete WebIndex that is ready to be searched. Every count
+	 * and length in the file is checked against the size of the file before anything is allocated for it, so a
+	 * corrupt file is reported as such rather than failing with a runtime exception or running out of memory.
+	 * @param path The path of the file to read
+	 * @return The WebIndex stored in the file
+	 * @throws IOException If the file cannot be read, or is not a valid index file of the current version
+	 */
+	public static WebIndex read(String path) throws IOException
+	{
+		long fileSize = Files.size(Paths.get(path));
+		if(fileSize > Integer.MAX_VALUE)
+		{
+			throw new IOException("Index file " + path + " is too large");
+		}
+		int maxString = (int)fileSize;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE)))
+		{
+			// Header
+			if(in.readInt() != MAGIC)
+			{
+				throw new IOException(path + " is not a Sandcrawler index file");
+			}
+			checkVersion(in.readInt(), path);
+			String seedURL = VarInt.readString(in, maxString);
+			Date crawlTime = new Date(in.readLong());
+			int totalDocs = in.readInt();
+			int totalWords = in.readInt();
+			if(totalDocs < 0 || totalWords < 0 || minimumSize(totalDocs, totalWords) > fileSize)
+			{
+				throw new IOException("Index file " + path + " is corrupt: it is too small for " + totalDocs
+						+ " pages and " + totalWords + " words");
+			}
+
+			WebIndex index = new WebIndex(crawlTime);
+			index.seedURL = seedURL;
+
+			// Page table
+			IndexedPage[] pages = new IndexedPage[totalDocs];
+			for(int i = 0; i < totalDocs; i++)
+			{
+				String url = VarInt.readString(in, maxString);
+				String title = VarInt.readString(in, maxString);
+				pages[i] = new IndexedPage(url, title, index, VarInt.read(in));
+				String etag = VarInt.readString(in, maxString);
+				String lastModified = VarInt.readString(in, maxString);
+				pages[i].etag = etag.isEmpty() ? null : etag;
+				pages[i].lastModified = lastModified.isEmpty() ? null : lastModified;
+				index.insertPage(pages[i]);
+			}
+
+			// PageRank and norm vectors
+			for(IndexedPage page : pages)
+			{
+				page.setPageRank(in.readDouble());
+			}
+			for(IndexedPage page : pages)
+			{
+				page.vectorNorm = in.readDouble();
+			}
+
+			// Term dictionary and postings. The words are stored in sorted order, so they get their final IDs straight
+			// away, and each page's words arrive in order of ID.
+			for(int t = 0; t < totalWords; t++)
+			{
+				GlobalWordStat wordStat = index.getOrCreateGlobalWordStat(VarInt.readString(in, maxString));
+				int postings = VarInt.read(in);
+				int ordinal = 0;
+				for(int p = 0; p < postings; p++)
+				{
+					ordinal += VarInt.read(in);
+					int count = VarInt.read(in);
+					pages[ordinal].restoreTerm(wordStat.getId(), count);
+					wordStat.addPosting(ordinal, count);
+				}
+				wordStat.trimPostings();
+			}
+			for(IndexedPage page : pages)
+			{
+				page.trimTerms();
+			}
+			index.numberTerms();
+
+			// Link graph
+			for(IndexedPage page : pages)
+			{
+				int links = VarInt.read(in);
+				Set<String> outLinks = new LinkedHashSet<String>();
+				for(int l = 0; l < links; l++)
+				{
+					int target = VarInt.read(in);
+					outLinks.add((target > 0) ? pages[target - 1].getURL() : VarInt.readString(in, maxString));
+				}
+				page.outLinks = outLinks;
+			}
+			for(IndexedPage page : pages)
+			{
+				int links = VarInt.read(in);
+				for(int l = 0; l < links; l++)
+				{
+					page.addInLink(pages[VarInt.read(in)].getURL());
+				}
+			}
+
+			// The lookup tables are only needed for searching the file in place, so they can be skipped
+			long tableBytes = ((4L * totalDocs) + totalWords) * Integer.BYTES + (FOOTER_OFFSETS * Integer.BYTES);
+			while(tableBytes > 0)
+			{
+				int skipped = in.skipBytes((int)Math.min(tableBytes, Integer.MAX_VALUE));
+				if(skipped <= 0)
+				{
+					throw new EOFException();
+				}
+				tableBytes -= skipped;
+			}
+
+			if(in.readInt() != MAGIC || index.getTotalDocs() != totalDocs || index.getTotalWords() != totalWords)
+			{
+				throw new IOException("Index file " + path + " is corrupt or truncated");
+			}
+			return index;
+		}
+		catch(EOFException e)
+		{
+			throw new IOException("Index file " + path + " is truncated", e);
+		}
+		catch(IOException e)
+		{
+			// The checks above name the file already; a malformed varint or string, or a read error, does not
+			if(e.getMessage() != null && e.getMessage().contains(path))
+			{
+				throw e;
+			}
+			throw new IOException("Could not read index file " + path + ": " + e.getMessage(), e);
+		}
+		catch(RuntimeException e)
+		{
+			// e.g. a posting or link to a page ordinal that does not exist
+			throw new IOException("Index file " + path + " is corrupt", e);
+		}
+	}
+
+	/**
+	 * Works out the least number of bytes that an index file with the given numbers of pages and words can take up,
+	 * counting only the parts whose size is fixed by those numbers: the PageRank and norm vectors, the lookup tables
+	 * and the footer
+	 * @param totalDocs The number of pages
+	 * @param totalWords The number of words
+	 * @return The number of bytes
+	 */
+	static long minimumSize(int totalDocs, int totalWords)
+	{
+		return (2L * totalDocs * Double.BYTES) + ((4L * totalDocs) + totalWords) * Integer.BYTES + FOOTER_SIZE;
+	}
+
+	/**
+	 * Checks that an index file was written in the format version that this class reads and writes
+	 * @param version The format version found in the file
+	 * @param path The path of the file, for the error message
+	 * @throws IOException If the version is not the current version
+	 */
+	static void checkVersion(int version, String path) throws IOException
+	{
+		if(version != VERSION)
+		{
+			throw new IOException("Index file " + path + " has format version " + version + " but version " + VERSION + " is required");
+		}
+	}
+}
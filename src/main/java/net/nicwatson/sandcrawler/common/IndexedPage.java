@@ -18,6 +18,7 @@
 package net.nicwatson.sandcrawler.common;
 
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import net.nicwatson.sandcrawler.crawl.UnprocessedPage;
 import java.io.Serializable;
@@ -61,6 +62,23 @@ public class IndexedPage extends MappedDocument implements Serializable
 	 */
 	protected Set<String> inLinks;
 	
+	/**
+	 * The position of this page in its WebIndex, counting from 0 in the order the pages were added. Word postings
+	 * refer to pages by their ordinals.
+	 */
+	protected int ordinal;
+	
+	/**
+	 * The ETag the server sent with the page when it was fetched, or <b>null</b> if there was none. A recrawl sends
+	 * it back to ask whether the page has changed.
+	 */
+	protected String etag;
+	
+	/**
+	 * The Last-Modified date the server sent with the page when it was fetched, or <b>null</b> if there was none
+	 */
+	protected String lastModified;
+	
 	/**
 	 * Deserialization seems to require a public default constructor and a non-null urlKey (since urlKey is used for
 	 * <code>hashCode()</code> and <code>equals()</code>. In-program consumers should instead use
@@ -86,7 +104,72 @@ public class IndexedPage extends MappedDocument implements Serializable
 		this.title = page.extractTitle();
 		this.outLinks = page.getLinks();
 		this.inLinks = new LinkedHashSet<String>();
-		this.initializeWordMap(MappedDocument.tokenize(page.extractContentTexts()));
+		this.etag = page.getETag();
+		this.lastModified = page.getLastModified();
+		this.initializeWordMap(TermCounter.count(page.extractContentTexts()));
+	}
+	
+	/**
+	 * Creates a new IndexedPage for a page that a recrawl found unchanged, by copying the words, title and links of
+	 * the page as it was indexed before, rather than parsing it again. The words are looked up (or added) in the new
+	 * index by name, since the two indexes number their words differently.
+	 * @param index The WebIndex to which this document will belong.
+	 * @param previous The page as it was indexed before
+	 * @param page The UnprocessedPage from the recrawl, which carries the page's current validators
+	 */
+	public IndexedPage(WebIndex index, IndexedPage previous, UnprocessedPage page)
+	{
+		this(index, previous);
+		this.etag = page.getETag();
+		this.lastModified = page.getLastModified();
+	}
+	
+	/**
+	 * Creates a copy of a page that has already been indexed, for a different WebIndex, as when the segments of a
+	 * SegmentedIndex are merged. The words, title, links and validators are copied rather than parsed again; the
+	 * words are looked up (or added) in the new index by name, since the two indexes number their words differently.
+	 * In-links are not copied, since they depend on which other pages are in the new index.
+	 * @param index The WebIndex to which this document will belong.
+	 * @param previous The page as it is indexed elsewhere
+	 */
+	IndexedPage(WebIndex index, IndexedPage previous)
+	{
+		super(index);
+		this.urlKey = previous.getURL();
+		this.title = previous.getTitle();
+		this.outLinks = new LinkedHashSet<String>(previous.getOutLinks());
+		this.inLinks = new LinkedHashSet<String>();
+		this.etag = previous.getETag();
+		this.lastModified = previous.getLastModified();
+		this.initializeWordMap(List.of());
+		for(int position = 0; position < previous.getUniqueWords(); position++)
+		{
+			String word = previous.index.getTermStat(previous.termIdAt(position)).getWord();
+			this.restoreTerm(index.getOrCreateGlobalWordStat(word).getId(), previous.countAt(position));
+		}
+		this.trimTerms();
+		this.numWords = previous.getSize();
+	}
+	
+	/**
+	 * Recreates an IndexedPage that was previously indexed and saved to an index file. The page starts out with no
+	 * links and an empty (but initialized) wordmap; the caller fills these in with <code>restoreTerm()</code>
+	 * and by setting <code>outLinks</code>.
+	 * @param urlKey The URL of the page. This should be unique to this page.
+	 * @param title The title of the page
+	 * @param index The WebIndex to which this document will belong.
+	 * @param numWords The total number of words (including duplicates) in the original page
+	 * @see IndexFile
+	 */
+	IndexedPage(String urlKey, String title, WebIndex index, int numWords)
+	{
+		super(index);
+		this.urlKey = urlKey;
+		this.title = title;
+		this.outLinks = new LinkedHashSet<String>();
+		this.inLinks = new LinkedHashSet<String>();
+		this.initializeWordMap(List.of());
+		this.numWords = numWords;
 	}
 	
 	/**
@@ -107,6 +190,33 @@ public class IndexedPage extends MappedDocument implements Serializable
 		return this.urlKey;
 	}
 	
+	/**
+	 * Getter for ordinal
+	 * @return The position of this page in its WebIndex
+	 */
+	public int getOrdinal()
+	{
+		return this.ordinal;
+	}
+	
+	/**
+	 * Getter for etag
+	 * @return The ETag the server sent with the page, or <b>null</b> if there was none
+	 */
+	public String getETag()
+	{
+		return this.etag;
+	}
+	
+	/**
+	 * Getter for lastModified
+	 * @return The Last-Modified date the server sent with the page, or <b>null</b> if there was none
+	 */
+	public String getLastModified()
+	{
+		return this.lastModified;
+	}
+	
 	/**
 	 * Getter for outLinks
 	 * @return A Set of all URLs to which this page links
@@ -199,16 +309,24 @@ public class IndexedPage extends MappedDocument implements Serializable
 		return this.inLinks.add(urlStr);
 	}
 
+	/**
+	 * Unregisters the given URL as an incoming link to this page, as when the page it came from is removed from the
+	 * index or no longer links here
+	 * @param urlStr The URL of the page whose incoming link should be removed
+	 * @return <code>true</code> if this page had the given URL recorded as an incoming link
+	 */
+	public boolean removeInLink(String urlStr)
+	{
+		return this.inLinks.remove(urlStr);
+	}
+
 	@Override
-	protected void handleNewWord(String word)
+	protected int resolveTerm(String word)
 	{
-		// When encountering a word isn't yet in our wordmap, we need to create a new DocumentWordStat for it.
 		// The word might or might not already be known to the web index. If it is not known, we will need to
 		// add a new GlobalWordStat for it. Otherwise, we retrieve the GlobalWordStat that the index already
-		// has for it.
-		GlobalWordStat globalStat = this.index.getOrCreateGlobalWordStat(word);
-		this.insertWordStat(globalStat);
-		globalStat.addPage(this);
+		// has for it. The page is added to the word's postings later, once every page has been parsed.
+		return this.index.getOrCreateGlobalWordStat(word).getId();
 	}
 	
 	/**
@@ -0,0 +1,96 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+/**
+ * A LogMergePolicy sorts segments into levels by size, each level holding segments up to <code>mergeFactor</code>
+ * times bigger than the one below, and merges segments once there are <code>mergeFactor</code> of them in a row on
+ * the same level. New segments all start out on the lowest level, so each page is merged about once per level: the
+ * number of levels, and so the total work of merging, grows only with the logarithm of the number of pages, and no
+ * more than about <code>mergeFactor</code> segments accumulate on any level.
+ */
+public class LogMergePolicy implements MergePolicy
+{
+	/**
+	 * The default number of segments to merge at a time
+	 */
+	public static final int DEFAULT_MERGE_FACTOR = 10;
+
+	/**
+	 * The number of segments on the same level that are merged at a time
+	 */
+	private final int mergeFactor;
+
+	/**
+	 * The size of segment at the top of the lowest level. Smaller segments are all on the lowest level.
+	 */
+	private final int minSize;
+
+	/**
+	 * Creates a new LogMergePolicy
+	 * @param mergeFactor The number of segments on the same level to merge at a time. Values below 2 are taken as 2.
+	 * @param minSize The size of segment at the top of the lowest level, typically the size at which segments are
+	 * flushed
+	 */
+	public LogMergePolicy(int mergeFactor, int minSize)
+	{
+		this.mergeFactor = Math.max(2, mergeFactor);
+		this.minSize = Math.max(1, minSize);
+	}
+
+	/**
+	 * Works out which level a segment of the given size is on
+	 * @param size The number of pages in the segment
+	 * @return The level, counting from 0 for the lowest
+	 */
+	private int levelOf(int size)
+	{
+		int level = 0;
+		long top = this.minSize;
+		while(size > top)
+		{
+			level++;
+			top *= this.mergeFactor;
+		}
+		return level;
+	}
+
+	@Override
+	public int[] findMerge(int[] sizes)
+	{
+		int runStart = 0;
+		for(int i = 0; i < sizes.length; i++)
+		{
+			if(this.levelOf(sizes[i]) != this.levelOf(sizes[runStart]))
+			{
+				runStart = i;
+			}
+			if(i - runStart + 1 == this.mergeFactor)
+			{
+				return new int[] { runStart, i + 1 };
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "LogMergePolicy: merge factor " + this.mergeFactor + ", minimum size " + this.minSize;
+	}
+}
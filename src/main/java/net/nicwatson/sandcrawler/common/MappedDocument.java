@@ -18,11 +18,9 @@
 package net.nicwatson.sandcrawler.common;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.StringTokenizer;
 
 /**
  * An IndexedDocument represents a document in which the statistical incidence of each unique
@@ -30,6 +28,11 @@ import java.util.StringTokenizer;
  * looking up words based on Strings and retrieving their associated DocumentWordStats relative
  * to the document.
  * <p/>
+ * The wordmap is stored as two parallel int arrays: the IDs (see <code>WebIndex.getTermId()</code>) of the words in
+ * the document, in ascending order, and the number of times each one appears. Words are looked up by binary search,
+ * and two documents can be compared by merging their ID arrays. DocumentWordStats are only created on request, as
+ * views of one entry in the arrays.
+ * <p/>
  * IndexedDocument is an abstract class that can represent either a search query (IndexedQuery) or
  * an indexed web page (IndexedPage)
  * @author Nic
@@ -42,23 +45,15 @@ public abstract class MappedDocument implements Serializable
 	/**
 	 * A helper method that takes a long String representing the contents of a multi-word document, and tokenizes it,
 	 * stripping out all non-alphanumeric characters and splitting each whitespace- or punctionat-separated word into
-	 * its own token 
+	 * its own token. Indexing does not use this, as it only needs the count of each word; see <code>TermCounter</code>. 
 	 * @param s The string to tokenize
 	 * @return A List containing all the tokens as individual Strings
+	 * @see Tokenizer
 	 */
 	public static List<String> tokenize(String s)
 	{
-		// First replace all non-alphanumeric characters with whitespace
-		s = s.replaceAll("[^A-Za-z0-9]", " ");
-		// Then tokenize the string on whitespaces
-		StringTokenizer tokenizer = new StringTokenizer(s, " ", false);
-		
-		List<String> list = new LinkedList<String>();
-		while(tokenizer.hasMoreTokens())
-		{
-			list.add(tokenizer.nextToken().toLowerCase());
-		}
-		
+		List<String> list = new ArrayList<String>();
+		Tokenizer.tokenize(s, (buffer, length) -> list.add(new String(buffer, 0, length)));
 		return list;
 	}
 	
@@ -73,15 +68,34 @@ public abstract class MappedDocument implements Serializable
 	protected int numWords;
 	
 	/**
-	 * Number of different unique words found in this document
+	 * Number of different unique words found in this document. This is also the number of entries in use in
+	 * <code>termIds</code> and <code>termCounts</code>.
 	 */
 	protected int uniqueWords;
 
 	/**
-	 * The document's wordmap, which maps word Strings onto DocumentWordStats. The DocumentWordStats
-	 * in turn keep track of the incidence of each of those words in the document.
+	 * Euclidean length of the document's TF-IDF vector, taken over every word in the document. This is calculated
+	 * once and then stored locally for efficiency.
 	 */
-	protected Map<String, DocumentWordStat> wordMap;
+	protected double vectorNorm;
+	
+	/**
+	 * The generation of the WebIndex for which <code>vectorNorm</code> was calculated. The norm depends on the IDFs of
+	 * the document's words, so once pages have been added to or removed from the index it is calculated again the
+	 * next time it is requested.
+	 * @see WebIndex#getGeneration()
+	 */
+	protected volatile int normGeneration;
+
+	/**
+	 * The IDs of the words in the document, in ascending order
+	 */
+	protected int[] termIds;
+	
+	/**
+	 * The number of times each of the words in <code>termIds</code> appears in the document
+	 */
+	protected int[] termCounts;
 
 	/**
 	 * The WebIndex to which this document belongs
@@ -106,7 +120,10 @@ public abstract class MappedDocument implements Serializable
 		this.index = index;
 		this.numWords = 0;
 		this.uniqueWords = 0;
-		this.wordMap = new HashMap<String, DocumentWordStat>();
+		this.vectorNorm = -1;
+		this.normGeneration = 0;
+		this.termIds = new int[0];
+		this.termCounts = new int[0];
 	}
 	
 	/**
@@ -118,6 +135,15 @@ public abstract class MappedDocument implements Serializable
 		return this.numWords;
 	}
 	
+	/**
+	 * Getter for <code>uniqueWords</code>
+	 * @return The number of different words in this document
+	 */
+	public int getUniqueWords()
+	{
+		return this.uniqueWords;
+	}
+	
 	/**
 	 * Getter for the WebIndex to which this document belongs
 	 * @return Reference to the <code>index</code> property
@@ -129,11 +155,16 @@ public abstract class MappedDocument implements Serializable
 	
 	/**
 	 * Retrieves a list view of the DocumentWordStats for all the words in this document
-	 * @return a list view of the DocumentWordStats for all the words in this document
+	 * @return a list view of the DocumentWordStats for all the words in this document, in order of word ID
 	 */
 	public List<DocumentWordStat> getWordList()
 	{
-		return List.copyOf(this.wordMap.values());
+		List<DocumentWordStat> list = new ArrayList<DocumentWordStat>(this.uniqueWords);
+		for(int position = 0; position < this.uniqueWords; position++)
+		{
+			list.add(new DocumentWordStat(this, position));
+		}
+		return List.copyOf(list);
 	}
 	
 	/**
@@ -154,83 +185,227 @@ public abstract class MappedDocument implements Serializable
 	 * @return <code>false</code> if the map was not previously initialized; <code>true</code> if it was.
 	 */
 	public boolean initializeWordMap(List<String> tokens)
+	{
+		TermCounter terms = new TermCounter();
+		for(String s : tokens)
+		{
+			terms.accept(s.toCharArray(), s.length());
+		}
+		return this.initializeWordMap(terms);
+	}
+	
+	/**
+	 * Initializes (populates) this document representation's word map from the counts of its words. This has the same
+	 * result as <code>initializeWordMap(List)</code> with the document's full list of tokens, but each distinct word
+	 * is handled once, rather than once per occurrence. The method checks if the wordmap has already been populated.
+	 * If so, it does nothing.
+	 * @param terms The count of each distinct word in the document, in the order the words first appear
+	 * @return <code>false</code> if the map was not previously initialized; <code>true</code> if it was.
+	 */
+	public boolean initializeWordMap(TermCounter terms)
 	{
 		boolean alreadyDone = this.mapInitialized;
 		if(!alreadyDone)
 		{
-			for(String s : tokens)
+			this.termIds = new int[terms.size()];
+			this.termCounts = new int[terms.size()];
+			for(int n = 0; n < terms.size(); n++)
 			{
-				this.numWords++;
-				if(this.containsWord(s))
-				{
-					// Word already known to have appeared in earlier in the document - increment the stat
-					this.wordMap.get(s).increment();
-				}
-				else
+				this.numWords += terms.count(n);
+				int id = this.resolveTerm(terms.term(n));
+				if(id >= 0)
 				{
-					// This is a new word for this dcument, so a new DocumentWordStat is needed
-					this.handleNewWord(s);
+					this.termIds[this.uniqueWords] = id;
+					this.termCounts[this.uniqueWords] = terms.count(n);
+					this.uniqueWords++;
 				}
 			}
+			this.trimTerms();
+			this.sortTerms();
 			this.mapInitialized = true;
 		}
 		return alreadyDone;
 	}
 	
 	/**
-	 * Indicates whether the given word is found in this document. This is a pass-through method for the <code>containsKey()</code>
-	 * method on the underlying wordmap.
+	 * Finds the position of the word with the given ID in this document's arrays
+	 * @param id The ID of the word
+	 * @return The position of the word, or a negative number if the word is not in the document
+	 */
+	protected int positionOf(int id)
+	{
+		if(id < 0)
+		{
+			return -1;
+		}
+		return Arrays.binarySearch(this.termIds, 0, this.uniqueWords, id);
+	}
+	
+	/**
+	 * Finds the position of the given word in this document's arrays
+	 * @param word The word
+	 * @return The position of the word, or a negative number if the word is not in the document
+	 */
+	protected int positionOf(String word)
+	{
+		return this.positionOf(this.index.getTermId(word));
+	}
+	
+	/**
+	 * Indicates whether the given word is found in this document.
 	 * @param word
 	 * @return <code>true</code> if the word is present in the document at least once; otherwise <code>false</code>
 	 */
 	public boolean containsWord(String word)
 	{
-		return this.wordMap.containsKey(word);
+		return this.positionOf(word) >= 0;
 	}
 	
 	/**
-	 * Retrieves the DocumentWordStat associated with the given word in this document's wordmap 
+	 * Retrieves a DocumentWordStat for the given word in this document 
 	 * @param word
-	 * @return The DocumentWordStat for the given word
+	 * @return The DocumentWordStat for the given word, or <b>null</b> if the word is not in the document
 	 */
 	public DocumentWordStat getWordStat(String word)
 	{
-		return this.wordMap.get(word);
+		int position = this.positionOf(word);
+		if(position < 0)
+		{
+			return null;
+		}
+		return new DocumentWordStat(this, position);
+	}
+	
+	/**
+	 * Retrieves the ID of one of the words in this document
+	 * @param position The position of the word, from 0 to <code>getUniqueWords() - 1</code>. Positions are in
+	 * ascending order of ID.
+	 * @return The ID of the word
+	 */
+	public int termIdAt(int position)
+	{
+		return this.termIds[position];
+	}
+	
+	/**
+	 * Retrieves the number of times one of the words in this document appears in it
+	 * @param position The position of the word, from 0 to <code>getUniqueWords() - 1</code>
+	 * @return The number of times the word appears
+	 */
+	public int countAt(int position)
+	{
+		return this.termCounts[position];
+	}
+	
+	/**
+	 * Calculates the term frequency of one of the words in this document
+	 * <p/>
+	 * <code>TF = (number of times word appears in doc) / (number of words in doc)</code> 
+	 * @param position The position of the word, from 0 to <code>getUniqueWords() - 1</code>
+	 * @return The term frequency of the word
+	 */
+	public double tfAt(int position)
+	{
+		return this.termCounts[position] / (double)this.numWords;
 	}
 	
 	/**
-	 * Creates a new DocumentWordStat out of the given GlobalWordStat and puts it in this document's wordmap.
-	 * Also updates the count of unique words found in this document. This should only be called for GlobalWordStats
-	 * that correspond to words that are actually in the document.
-	 * @param globalStat The GlobalWordStat associated with the word to add.
+	 * Calculates the TF-IDF of one of the words in this document. This is cheap enough (the IDF is cached in the
+	 * word's GlobalWordStat) that it is not stored.
+	 * @param position The position of the word, from 0 to <code>getUniqueWords() - 1</code>
+	 * @return The TF-IDF of the word
 	 */
-	protected void insertWordStat(GlobalWordStat globalStat)
+	public double tfidfAt(int position)
 	{
+		return MathsHelper.calcTFIDF(this.tfAt(position), this.index.getTermStat(this.termIds[position]).getIDF());
+	}
+	
+	/**
+	 * Adds a word with a known count to the end of this document's arrays, as when reloading a saved index. The words
+	 * must be added in ascending order of ID, and <code>trimTerms()</code> should be called once they have all been
+	 * added. Unlike <code>initializeWordMap()</code>, this does not change the document's total word count.
+	 * @param id The ID of the word to add
+	 * @param count The number of times the word appears in the document
+	 */
+	protected void restoreTerm(int id, int count)
+	{
+		if(this.uniqueWords == this.termIds.length)
+		{
+			int capacity = Math.max(8, this.uniqueWords * 2);
+			this.termIds = Arrays.copyOf(this.termIds, capacity);
+			this.termCounts = Arrays.copyOf(this.termCounts, capacity);
+		}
+		this.termIds[this.uniqueWords] = id;
+		this.termCounts[this.uniqueWords] = count;
 		this.uniqueWords++;
-		DocumentWordStat localWordStat = new DocumentWordStat(globalStat, this).increment();
-		this.wordMap.put(globalStat.getWord(), localWordStat);
 	}
 	
 	/**
-	 * When processing the body text of a document, if a new word is encountered that is not previously known to the
-	 * IndexedDocument, this method is called to determine if the index needs to be updated with a new DocumentWordStat.
-	 * Subclasses will implement the method according to their needs: i.e. an IndexedPage will need to ensure that any
-	 * new words also get GlobalWordStats put in the index if they don't already exist.
+	 * Shrinks this document's arrays to the number of words actually in the document, to save memory
+	 */
+	protected void trimTerms()
+	{
+		if(this.termIds.length != this.uniqueWords)
+		{
+			this.termIds = Arrays.copyOf(this.termIds, this.uniqueWords);
+			this.termCounts = Arrays.copyOf(this.termCounts, this.uniqueWords);
+		}
+	}
+	
+	/**
+	 * Changes the IDs of this document's words, as when the WebIndex renumbers its words, and puts them back in order
+	 * @param remap The new ID for each old ID
+	 */
+	protected void remapTerms(int[] remap)
+	{
+		for(int position = 0; position < this.uniqueWords; position++)
+		{
+			this.termIds[position] = remap[this.termIds[position]];
+		}
+		this.sortTerms();
+	}
+	
+	/**
+	 * Sorts this document's arrays into ascending order of word ID. Each ID and its count are packed into one long,
+	 * so that the pairs can be sorted together with a primitive sort.
+	 */
+	private void sortTerms()
+	{
+		long[] pairs = new long[this.uniqueWords];
+		for(int position = 0; position < this.uniqueWords; position++)
+		{
+			pairs[position] = ((long)this.termIds[position] << 32) | (this.termCounts[position] & 0xFFFFFFFFL);
+		}
+		Arrays.sort(pairs);
+		for(int position = 0; position < this.uniqueWords; position++)
+		{
+			this.termIds[position] = (int)(pairs[position] >>> 32);
+			this.termCounts[position] = (int)pairs[position];
+		}
+	}
+	
+	/**
+	 * When processing the body text of a document, this method is called once for each distinct word, to look up the
+	 * word's ID in the index. Subclasses will implement the method according to their needs: i.e. an IndexedPage will
+	 * need to ensure that any new words also get GlobalWordStats put in the index if they don't already exist, while a
+	 * query simply ignores words that the index does not know.
 	 * @param word
+	 * @return The ID of the word, or -1 if the word should be left out of the document's wordmap
 	 */
-	protected abstract void handleNewWord(String word);
+	protected abstract int resolveTerm(String word);
 	
 	/**
 	 * Retrieves the term frequency for the given word in this document. If the word does not appear in the document, its 
-	 * term frequency will be zero. Thus we can short-circuit running a <code>get()</code> on the wordmap and just return zero.
+	 * term frequency will be zero.
 	 * @param word The word to look up the term frequency for. 
 	 * @return The term frequency of the given word in this document
 	 */
 	public double getTF(String word)
 	{
-		if(this.wordMap.containsKey(word))
+		int position = this.positionOf(word);
+		if(position >= 0)
 		{
-			return this.wordMap.get(word).getTF();
+			return this.tfAt(position);
 		}
 		return 0;	// If word isn't in the document, then TF = 0
 	}
@@ -244,13 +419,51 @@ public abstract class MappedDocument implements Serializable
 	 */
 	public double getTFIDF(String word)
 	{
-		if(this.wordMap.containsKey(word))
+		int position = this.positionOf(word);
+		if(position >= 0)
 		{
-			return this.wordMap.get(word).getTFIDF();
+			return this.tfidfAt(position);
 		}
 		// If the word isn't in the document, then TF = 0
 		// If TF is zero, then TF_IDF = log(1 + 0) * IDF = 0 * IDF = 0
 		// So we can skip running the lookups/math with the IDF and just return 0.
 		return 0;
 	}
+	
+	/**
+	 * Retrieves the length (Euclidean norm) of this document's TF-IDF vector. The value is "cached" in the object the
+	 * first time it is requested, so that the calculation does not have to be repeated for every search. If the value
+	 * has not yet been cached (i.e. vectorNorm == -1), or pages have been added to or removed from the index since it
+	 * was, it will be calculated first.
+	 * @return The norm of this document's TF-IDF vector
+	 */
+	public double getVectorNorm()
+	{
+		if(this.vectorNorm < 0 || this.normGeneration != this.index.getGeneration())
+		{
+			return this.calculateVectorNorm();
+		}
+		return this.vectorNorm;
+	}
+	
+	/**
+	 * Calculates the norm of this document's TF-IDF vector, and caches it to a local member variable. This depends on
+	 * the IDFs of the document's words, so it is only meaningful once the whole corpus has been indexed.
+	 * <p/>
+	 * <code>vectorNorm = sqrt(sum of tf_idf^2 over every word in the document)</code>
+	 * @return The calculated norm
+	 */
+	protected double calculateVectorNorm()
+	{
+		int generation = this.index.getGeneration();
+		double sum = 0;
+		for(int position = 0; position < this.uniqueWords; position++)
+		{
+			sum += Math.pow(this.tfidfAt(position), 2);
+		}
+		double norm = Math.sqrt(sum);
+		this.vectorNorm = norm;
+		this.normGeneration = generation;
+		return norm;
+	}
 }
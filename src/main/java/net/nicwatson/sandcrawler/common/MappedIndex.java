@@ -0,0 +1,699 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Consumer;
+
+import cs1406z.test.SearchResult;
+import net.nicwatson.sandcrawler.search.ResultCursor;
+import net.nicwatson.sandcrawler.search.SearchResultImpl;
+import net.nicwatson.sandcrawler.search.SearchResultPlus;
+import net.nicwatson.sandcrawler.search.TopResults;
+
+/**
+ * A MappedIndex is a read-only index that is searched in place in an index file, rather than being read into memory.
+ * The file is memory-mapped, and every lookup reads only the few bytes it needs, using the lookup tables at the end of
+ * the file to find them (see <code>IndexFile</code> for the layout). Opening an index therefore takes the same short
+ * time however big it is, the index does not have to fit on the heap, and the operating system can share the file's
+ * pages between every process that has it open.
+ * <p/>
+ * All reads use absolute positions and never move the buffer's own position, so a MappedIndex can safely be searched
+ * by several threads at once. Searches give the same results, in the same order, as the WebIndex that was saved.
+ * @see IndexFile
+ * @see WebIndex
+ */
+public class MappedIndex implements SearchIndex
+{
+	/**
+	 * The mapped contents of the index file
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The URL of the page that was used to seed the web crawl on which this index was based
+	 */
+	private final String seedURL;
+
+	/**
+	 * The date/time at which the index was generated
+	 */
+	private final Date crawlTime;
+
+	/**
+	 * The number of pages in the index
+	 */
+	private final int totalDocs;
+
+	/**
+	 * The number of unique words in the index
+	 */
+	private final int totalWords;
+
+	/**
+	 * Offset of the PageRank vector
+	 */
+	private final int ranksOffset;
+
+	/**
+	 * Offset of the norm vector
+	 */
+	private final int normsOffset;
+
+	/**
+	 * Offset of the table of page table offsets, by page ordinal
+	 */
+	private final int pageTable;
+
+	/**
+	 * Offset of the table of page ordinals, sorted by URL
+	 */
+	private final int urlTable;
+
+	/**
+	 * Offset of the table of term dictionary offsets, in sorted word order
+	 */
+	private final int termTable;
+
+	/**
+	 * Offset of the table of link graph offsets, by page ordinal
+	 */
+	private final int outLinkTable;
+
+	/**
+	 * Offset of the table of in-link offsets, by page ordinal
+	 */
+	private final int inLinkTable;
+
+	/**
+	 * Creates a new MappedIndex over the given buffer, after checking that it holds an index file of the current
+	 * version, and that the page and word counts and the sections they size all fit inside it. Consumers outside the
+	 * class should use <code>open()</code>.
+	 * @param buffer The contents of the index file
+	 * @param path The path of the index file, for error messages
+	 * @throws IOException If the buffer does not hold a valid index file of the current version
+	 */
+	private MappedIndex(ByteBuffer buffer, String path) throws IOException
+	{
+		this.buffer = buffer;
+		int footer = buffer.capacity() - IndexFile.FOOTER_SIZE;
+		if(footer < 0 || buffer.getInt(0) != IndexFile.MAGIC)
+		{
+			throw new IOException(path + " is not a Sandcrawler index file");
+		}
+		IndexFile.checkVersion(buffer.getInt(4), path);
+		if(buffer.getInt(buffer.capacity() - Integer.BYTES) != IndexFile.MAGIC)
+		{
+			throw new IOException("Index file " + path + " is corrupt or truncated");
+		}
+
+		Cursor header = new Cursor(8);
+		this.seedURL = header.readString();
+		this.crawlTime = new Date(buffer.getLong(header.position));
+		this.totalDocs = buffer.getInt(header.position + 8);
+		this.totalWords = buffer.getInt(header.position + 12);
+
+		this.ranksOffset = buffer.getInt(footer);
+		this.normsOffset = buffer.getInt(footer + 4);
+		this.pageTable = buffer.getInt(footer + 8);
+		this.urlTable = buffer.getInt(footer + 12);
+		this.termTable = buffer.getInt(footer + 16);
+		this.outLinkTable = buffer.getInt(footer + 20);
+		this.inLinkTable = buffer.getInt(footer + 24);
+
+		if(this.totalDocs < 0 || this.totalWords < 0
+				|| IndexFile.minimumSize(this.totalDocs, this.totalWords) > buffer.capacity())
+		{
+			throw new IOException("Index file " + path + " is corrupt: it is too small for " + this.totalDocs
+					+ " pages and " + this.totalWords + " words");
+		}
+		checkSection(this.ranksOffset, (long)this.totalDocs * Double.BYTES, footer, path);
+		checkSection(this.normsOffset, (long)this.totalDocs * Double.BYTES, footer, path);
+		checkSection(this.pageTable, (long)this.totalDocs * Integer.BYTES, footer, path);
+		checkSection(this.urlTable, (long)this.totalDocs * Integer.BYTES, footer, path);
+		checkSection(this.termTable, (long)this.totalWords * Integer.BYTES, footer, path);
+		checkSection(this.outLinkTable, (long)this.totalDocs * Integer.BYTES, footer, path);
+		checkSection(this.inLinkTable, (long)this.totalDocs * Integer.BYTES, footer, path);
+	}
+
+	/**
+	 * Checks that a section of an index file, as given in the footer, lies between the header and the footer
+	 * @param offset The offset of the section
+	 * @param length The length of the section in bytes
+	 * @param footer The offset of the footer
+	 * @param path The path of the index file, for error messages
+	 * @throws IOException If the section does not fit
+	 */
+	private static void checkSection(int offset, long length, int footer, String path) throws IOException
+	{
+		if(offset < 8 || offset + length > footer)
+		{
+			throw new IOException("Index file " + path + " is corrupt: a section at offset " + offset
+					+ " does not fit in the file");
+		}
+	}
+
+	/**
+	 * Opens the given index file for searching in place. Only the header and footer are read (and checked against the
+	 * size of the file); everything else is read from the mapped file as it is needed, so the file must not be replaced
+	 * or deleted for as long as the MappedIndex is in use. Some platforms (such as Windows) refuse to replace or delete
+	 * a file while it is mapped, and the mapping lasts until the MappedIndex has been garbage collected. Sandcrawler
+	 * never replaces a saved index file: each crawl is saved to a new directory of its own.
+	 * @param path The path of the index file
+	 * @return The opened index
+	 * @throws IOException If the file cannot be mapped, or is not a valid index file of the current version
+	 */
+	public static MappedIndex open(String path) throws IOException
+	{
+		// The mapping stays valid after the channel is closed
+		try(FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ))
+		{
+			if(channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("Index file " + path + " is too large to map");
+			}
+			return new MappedIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+		}
+		catch(RuntimeException e)
+		{
+			// e.g. a string in the header that runs past the end of the file
+			throw new IOException("Index file " + path + " is corrupt", e);
+		}
+	}
+
+	/**
+	 * A Cursor reads varints and strings sequentially from the mapped file, starting from a given offset. Each thread
+	 * uses its own cursors, so the buffer itself is never repositioned.
+	 */
+	private class Cursor
+	{
+		/**
+		 * Offset of the next byte to read
+		 */
+		int position;
+
+		/**
+		 * Creates a new Cursor
+		 * @param position Offset of the first byte to read
+		 */
+		Cursor(int position)
+		{
+			this.position = position;
+		}
+
+		/**
+		 * Reads a varint
+		 * @return The value read
+		 * @see VarInt
+		 */
+		int readVarInt()
+		{
+			int value = 0;
+			for(int shift = 0; shift < 32; shift += 7)
+			{
+				byte b = MappedIndex.this.buffer.get(this.position++);
+				value |= (b & 0x7F) << shift;
+				if((b & 0x80) == 0)
+				{
+					break;
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * Reads a string
+		 * @return The String read
+		 * @throws IndexOutOfBoundsException If the length of the string is negative, or runs past the end of the file
+		 * @see VarInt
+		 */
+		String readString()
+		{
+			int length = this.readVarInt();
+			if(length < 0 || length > MappedIndex.this.buffer.capacity() - this.position)
+			{
+				throw new IndexOutOfBoundsException("Malformed string length " + length + " at offset " + this.position);
+			}
+			byte[] bytes = new byte[length];
+			MappedIndex.this.buffer.get(this.position, bytes);
+			this.position += bytes.length;
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Moves past a string without decoding it
+		 */
+		void skipString()
+		{
+			int length = this.readVarInt();
+			this.position += length;
+		}
+	}
+
+	/**
+	 * Reads an entry of one of the lookup tables
+	 * @param table Offset of the table
+	 * @param i Position of the entry in the table
+	 * @return The value of the entry
+	 */
+	private int tableEntry(int table, int i)
+	{
+		return this.buffer.getInt(table + (i * Integer.BYTES));
+	}
+
+	/**
+	 * Looks up the ordinal of the page with the given URL, by binary search of the URL-sorted table
+	 * @param url URL string for the page
+	 * @return The page ordinal, or -1 if the page is not indexed
+	 */
+	private int findPage(String url)
+	{
+		int low = 0;
+		int high = this.totalDocs - 1;
+		while(low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int ordinal = this.tableEntry(this.urlTable, middle);
+			int comparison = this.pageURL(ordinal).compareTo(url);
+			if(comparison < 0)
+			{
+				low = middle + 1;
+			}
+			else if(comparison > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return ordinal;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Looks up the position of the given word in the term dictionary, by binary search
+	 * @param word The word to find
+	 * @return The position of the word, or -1 if the word is not indexed
+	 */
+	private int findTerm(String word)
+	{
+		int low = 0;
+		int high = this.totalWords - 1;
+		while(low <= high)
+		{
+			int middle = (low + high) >>> 1;
+			int comparison = new Cursor(this.tableEntry(this.termTable, middle)).readString().compareTo(word);
+			if(comparison < 0)
+			{
+				low = middle + 1;
+			}
+			else if(comparison > 0)
+			{
+				high = middle - 1;
+			}
+			else
+			{
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Creates a Cursor positioned at the postings of the word at the given position in the term dictionary, i.e.
+	 * just after the word's document count
+	 * @param term The position of the word in the term dictionary
+	 * @return The Cursor
+	 */
+	private Cursor postings(int term)
+	{
+		Cursor cursor = new Cursor(this.tableEntry(this.termTable, term));
+		cursor.skipString();
+		return cursor;
+	}
+
+	/**
+	 * Reads the URL of a page
+	 * @param ordinal The page ordinal
+	 * @return The URL of the page
+	 */
+	private String pageURL(int ordinal)
+	{
+		return new Cursor(this.tableEntry(this.pageTable, ordinal)).readString();
+	}
+
+	/**
+	 * Reads the total word count of a page
+	 * @param ordinal The page ordinal
+	 * @return The number of words (including duplicates) on the page
+	 */
+	private int pageSize(int ordinal)
+	{
+		Cursor cursor = new Cursor(this.tableEntry(this.pageTable, ordinal));
+		cursor.skipString();
+		cursor.skipString();
+		return cursor.readVarInt();
+	}
+
+	/**
+	 * Reads the PageRank of a page
+	 * @param ordinal The page ordinal
+	 * @return The PageRank of the page
+	 */
+	private double pageRank(int ordinal)
+	{
+		return this.buffer.getDouble(this.ranksOffset + (ordinal * Double.BYTES));
+	}
+
+	/**
+	 * Reads the norm of a page's TF-IDF vector
+	 * @param ordinal The page ordinal
+	 * @return The norm of the page's TF-IDF vector
+	 */
+	private double vectorNorm(int ordinal)
+	{
+		return this.buffer.getDouble(this.normsOffset + (ordinal * Double.BYTES));
+	}
+
+	/**
+	 * Calculates an IDF from a word's document count, exactly as <code>GlobalWordStat</code> does
+	 * @param globalOccurrence The number of pages containing the word
+	 * @return The IDF of the word
+	 */
+	private double idf(int globalOccurrence)
+	{
+		return MathsHelper.lg(this.totalDocs / (1.0 + (double)globalOccurrence));
+	}
+
+	/**
+	 * Creates a search result for a page
+	 * @param ordinal The page ordinal
+	 * @param score The page's score for the search
+	 * @param boost Whether PageRanks were factored into the score
+	 * @return The search result
+	 */
+	private SearchResultImpl result(int ordinal, double score, boolean boost)
+	{
+		Cursor cursor = new Cursor(this.tableEntry(this.pageTable, ordinal));
+		String url = cursor.readString();
+		String title = cursor.readString();
+		SearchResultImpl result = new SearchResultImpl(title, url, this.pageRank(ordinal), score);
+		result.setBoosted(boost);
+		return result;
+	}
+
+	@Override
+	public String getSeedURL()
+	{
+		return this.seedURL;
+	}
+
+	@Override
+	public Date getCrawlTime()
+	{
+		return this.crawlTime;
+	}
+
+	@Override
+	public int getTotalDocs()
+	{
+		return this.totalDocs;
+	}
+
+	@Override
+	public int getTotalWords()
+	{
+		return this.totalWords;
+	}
+
+	@Override
+	public double getIDF(String word)
+	{
+		int term = this.findTerm(word);
+		if(term < 0)
+		{
+			return 0;
+		}
+		return this.idf(this.postings(term).readVarInt());
+	}
+
+	/**
+	 * Finds the number of times the given word appears on the given page, by walking the word's postings
+	 * @param ordinal The page ordinal
+	 * @param term The position of the word in the term dictionary
+	 * @return The number of times the word appears on the page (zero if it does not)
+	 */
+	private int countOf(int ordinal, int term)
+	{
+		Cursor cursor = this.postings(term);
+		int postings = cursor.readVarInt();
+		int current = 0;
+		for(int p = 0; p < postings; p++)
+		{
+			current += cursor.readVarInt();
+			int count = cursor.readVarInt();
+			if(current >= ordinal)
+			{
+				// Postings are in ascending ordinal order, so once we reach or pass the page there is no need to go on
+				return (current == ordinal) ? count : 0;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public double getTF(String url, String word)
+	{
+		int ordinal = this.findPage(url);
+		int term = this.findTerm(word);
+		if(ordinal < 0 || term < 0)
+		{
+			return 0;
+		}
+		return this.countOf(ordinal, term) / (double)this.pageSize(ordinal);
+	}
+
+	@Override
+	public double getTFIDF(String url, String word)
+	{
+		int ordinal = this.findPage(url);
+		int term = this.findTerm(word);
+		if(ordinal < 0 || term < 0)
+		{
+			return 0;
+		}
+		int count = this.countOf(ordinal, term);
+		if(count == 0)
+		{
+			return 0;
+		}
+		double tf = count / (double)this.pageSize(ordinal);
+		return MathsHelper.lg(1.0 + tf) * this.idf(this.postings(term).readVarInt());
+	}
+
+	@Override
+	public double getPageRank(String url)
+	{
+		int ordinal = this.findPage(url);
+		if(ordinal < 0)
+		{
+			return -1;
+		}
+		return this.pageRank(ordinal);
+	}
+
+	@Override
+	public List<String> getIncomingLinks(String url)
+	{
+		int ordinal = this.findPage(url);
+		if(ordinal < 0)
+		{
+			return null;
+		}
+		Cursor cursor = new Cursor(this.tableEntry(this.inLinkTable, ordinal));
+		int links = cursor.readVarInt();
+		List<String> inLinks = new ArrayList<String>(links);
+		for(int l = 0; l < links; l++)
+		{
+			inLinks.add(this.pageURL(cursor.readVarInt()));
+		}
+		return List.copyOf(inLinks);
+	}
+
+	@Override
+	public List<String> getOutgoingLinks(String url)
+	{
+		int ordinal = this.findPage(url);
+		if(ordinal < 0)
+		{
+			return null;
+		}
+		Cursor cursor = new Cursor(this.tableEntry(this.outLinkTable, ordinal));
+		int links = cursor.readVarInt();
+		List<String> outLinks = new ArrayList<String>(links);
+		for(int l = 0; l < links; l++)
+		{
+			int target = cursor.readVarInt();
+			outLinks.add((target > 0) ? this.pageURL(target - 1) : cursor.readString());
+		}
+		return List.copyOf(outLinks);
+	}
+
+	/**
+	 * Performs a search of the index with the given query, and selects the best <code>amount</code> results. This
+	 * works just like <code>WebIndex.searchTop()</code>: the pages in the postings of the query words are scored
+	 * term-at-a-time using the stored vector norms, run through a bounded heap, and then topped up with unmatched
+	 * pages only if they could still make the cut. Only the pages that are actually looked at are ever read.
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @param amount The max number of search results to select
+	 * @return A list of the best results, best first (empty if <code>amount</code> is 0 or less)
+	 * @see WebIndex#searchTop(String, boolean, int)
+	 */
+	public List<SearchResultImpl> searchTop(String query, boolean boost, int amount)
+	{
+		if(amount <= 0)
+		{
+			return List.of();
+		}
+		TopResults<SearchResultImpl> top = new TopResults<SearchResultImpl>(amount);
+		ScoreAccumulator scores = this.scoreQuery(query, boost, top::offer);
+
+		if(scores.size() < this.totalDocs)
+		{
+			SearchResultImpl zero = new SearchResultImpl("", "", 0, 0);
+			for(int ordinal = 0; ordinal < this.totalDocs; ordinal++)
+			{
+				if(scores.contains(ordinal))
+				{
+					continue;
+				}
+				if(top.isFull() && top.worst().compareScoreTo(zero) < 0)
+				{
+					// Everything we kept outscores zero, so none of the remaining pages can get in
+					break;
+				}
+				top.offer(this.result(ordinal, 0, boost));
+			}
+		}
+		return top.drainSorted();
+	}
+
+	/**
+	 * Performs a search of the index with the given query, returning a cursor over every page that contains at least
+	 * one of the query words, as <code>WebIndex.searchCursor()</code> does
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @return A cursor over the matching pages, best first
+	 * @see WebIndex#searchCursor(String, boolean)
+	 */
+	@Override
+	public ResultCursor<SearchResultImpl> searchCursor(String query, boolean boost)
+	{
+		List<SearchResultImpl> results = new ArrayList<SearchResultImpl>();
+		this.scoreQuery(query, boost, results::add);
+		return new ResultCursor<SearchResultImpl>(results);
+	}
+
+	/**
+	 * Scores the pages in the postings of the query words term-at-a-time, using the stored vector norms, and hands a
+	 * search result for each of them to the given consumer
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in to the scores
+	 * @param matched Receives the search result for each page that was scored
+	 * @return The dot products of the pages that were scored, which also says which pages those were
+	 */
+	private ScoreAccumulator scoreQuery(String query, boolean boost, Consumer<SearchResultImpl> matched)
+	{
+		// Count the query's words the same way a MappedQuery does, and put them in dictionary order (which is the
+		// order of their IDs in a WebIndex), so that its TF-IDFs and the order in which they are summed come out
+		// exactly the same
+		TermCounter tokens = TermCounter.count(query);
+		long[] queryTerms = new long[tokens.size()];
+		int distinct = 0;
+		long postingCount = 0;
+		for(int n = 0; n < tokens.size(); n++)
+		{
+			int term = this.findTerm(tokens.term(n));
+			if(term >= 0)
+			{
+				queryTerms[distinct++] = ((long)term << 32) | tokens.count(n);
+				postingCount += this.postings(term).readVarInt();
+			}
+		}
+		Arrays.sort(queryTerms, 0, distinct);
+
+		// For each page visited, accumulate its dot product with the query. The accumulator is sized from the postings
+		// to be walked, so a query costs nothing per page that it does not match.
+		ScoreAccumulator accumulators = new ScoreAccumulator((int)Math.min(postingCount, this.totalDocs));
+		double queryNormSquared = 0;
+		for(int w = 0; w < distinct; w++)
+		{
+			Cursor cursor = this.postings((int)(queryTerms[w] >>> 32));
+			int postings = cursor.readVarInt();
+			double idf = this.idf(postings);
+			double q_w = MathsHelper.calcTFIDF((int)queryTerms[w] / (double)tokens.total(), idf);
+			queryNormSquared += Math.pow(q_w, 2);
+
+			int ordinal = 0;
+			for(int p = 0; p < postings; p++)
+			{
+				ordinal += cursor.readVarInt();
+				double tf = cursor.readVarInt() / (double)this.pageSize(ordinal);
+				accumulators.add(ordinal, q_w * MathsHelper.calcTFIDF(tf, idf));
+			}
+		}
+		double queryNorm = Math.sqrt(queryNormSquared);
+
+		for(int m = 0; m < accumulators.size(); m++)
+		{
+			int ordinal = accumulators.ordinalAt(m);
+			double boostFactor = 1;
+			if(boost)
+			{
+				boostFactor = this.pageRank(ordinal);
+			}
+			double similarity = WebIndex.cosine(accumulators.scoreAt(m), queryNorm, this.vectorNorm(ordinal));
+			matched.accept(this.result(ordinal, similarity * boostFactor, boost));
+		}
+		return accumulators;
+	}
+
+	@Override
+	public List<SearchResult> search(String query, boolean boost, int amount)
+	{
+		return Collections.unmodifiableList(this.searchTop(query, boost, amount));
+	}
+
+	@Override
+	public List<SearchResultPlus> searchPlus(String query, boolean boost, int amount)
+	{
+		return Collections.unmodifiableList(this.searchTop(query, boost, amount));
+	}
+}
@@ -25,7 +25,7 @@ import java.util.List;
  * of the information associated with actual web pages such as title and URL. Typically this is used
  * to represent an ephemeral "document" such as a search query. Instead of using the base class
  * IndexedDocument for this purpose, I have created this dedicated IndexedQuery subclass to split out
- * out its <code>handleNewWord()</code> logic, and to more clearly separate the two conceptual types
+ * out its <code>resolveTerm()</code> logic, and to more clearly separate the two conceptual types
  * of IndexedDocument to facilitate hypothetical later extension of both types.
  * @author Nic
  *
@@ -46,12 +46,21 @@ public class MappedQuery extends MappedDocument implements Serializable
 	
 	}
 
+	/**
+	 * Creates a new IndexedQuery, owned by the given WebIndex, from the counts of the words in the query text
+	 * @param index The WebIndex against which this query's word stats (e.g. IDF) will be measured
+	 * @param terms The count of each distinct word in the query text
+	 */
+	public MappedQuery(WebIndex index, TermCounter terms)
+	{
+		super(index);
+		this.initializeWordMap(terms);
+	}
+
 	@Override
-	protected void handleNewWord(String word)
+	protected int resolveTerm(String word)
 	{
-		if(this.index.knowsWord(word))
-		{
-			this.insertWordStat(this.index.getGlobalWordStat(word));
-		}
+		// Words that the index doesn't know can't match any page, so they are left out
+		return this.index.getTermId(word);
 	}
 }
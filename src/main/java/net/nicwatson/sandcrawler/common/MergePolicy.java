@@ -0,0 +1,37 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+/**
+ * A MergePolicy decides when the segments of a SegmentedIndex should be merged. It is consulted each time a segment is
+ * flushed, and again each time a merge finishes. Only runs of consecutive segments are ever merged, so that a page
+ * that was indexed again in a newer segment still replaces the copy in an older one.
+ * @see SegmentedIndex
+ * @see LogMergePolicy
+ */
+public interface MergePolicy
+{
+	/**
+	 * Chooses a run of segments to merge, if any
+	 * @param sizes The number of pages in each segment (not counting pages that have been replaced by newer
+	 * segments), oldest first
+	 * @return A two-element array holding the position of the first segment to merge and one past the position of
+	 * the last, or <b>null</b> if nothing needs to be merged
+	 */
+	public int[] findMerge(int[] sizes);
+}
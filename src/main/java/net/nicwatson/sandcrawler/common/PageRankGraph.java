@@ -0,0 +1,192 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A PageRankGraph is a compact, read-only copy of the hyperlink graph between the pages of an index, used for
+ * calculating PageRanks. Pages are identified by their ordinal (position) in the array the graph was built from.
+ * <p/>
+ * The graph is stored in compressed sparse row (CSR) form: the out-link targets of every page are laid end-to-end in
+ * a single <code>targets</code> array, and <code>offsets[i]</code> gives the position in that array where the targets
+ * of page <code>i</code> begin (so <code>offsets[i + 1] - offsets[i]</code> is its out-degree). Memory use is
+ * therefore proportional to the number of links, rather than to the square of the number of pages as it would be
+ * for a full transition probability matrix.
+ */
+public class PageRankGraph
+{
+	/**
+	 * Number of pages (nodes) in the graph
+	 */
+	private final int size;
+
+	/**
+	 * Start position of each page's targets within <code>targets</code>. Has <code>size + 1</code> entries, the
+	 * last of which is the total number of links.
+	 */
+	private final int[] offsets;
+
+	/**
+	 * Ordinals of the pages linked to, grouped by the page the links come from
+	 */
+	private final int[] targets;
+
+	/**
+	 * Creates a new graph from ready-made CSR arrays
+	 * @param offsets Start position of each page's targets within <code>targets</code>, plus a final entry holding
+	 * the total number of links
+	 * @param targets Ordinals of the pages linked to, grouped by the page the links come from
+	 */
+	public PageRankGraph(int[] offsets, int[] targets)
+	{
+		this.size = offsets.length - 1;
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/**
+	 * Builds the link graph for the given pages. Only links to pages that are in the array are kept; links to
+	 * anywhere else are ignored, just as they are when checking <code>IndexedPage.linksTo()</code>.
+	 * @param pages The pages to build a graph of. A page's ordinal in the graph is its position in this array.
+	 * @return The link graph
+	 */
+	public static PageRankGraph fromPages(IndexedPage[] pages)
+	{
+		Map<String, Integer> ordinals = new HashMap<String, Integer>(pages.length * 2);
+		for(int i = 0; i < pages.length; i++)
+		{
+			ordinals.put(pages[i].getURL(), i);
+		}
+
+		int[] offsets = new int[pages.length + 1];
+		int[] targets = new int[16];
+		int edges = 0;
+		for(int i = 0; i < pages.length; i++)
+		{
+			offsets[i] = edges;
+			for(String link : pages[i].getOutLinks())
+			{
+				Integer target = ordinals.get(link);
+				if(target != null)
+				{
+					if(edges == targets.length)
+					{
+						targets = Arrays.copyOf(targets, edges * 2);
+					}
+					targets[edges++] = target;
+				}
+			}
+		}
+		offsets[pages.length] = edges;
+		return new PageRankGraph(offsets, Arrays.copyOf(targets, edges));
+	}
+
+	/**
+	 * Reports the number of pages in the graph
+	 * @return The number of pages
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Reports the number of links in the graph
+	 * @return The number of links
+	 */
+	public int edgeCount()
+	{
+		return this.offsets[this.size];
+	}
+
+	/**
+	 * Reports the number of (indexed) pages that the given page links to
+	 * @param page Ordinal of the page
+	 * @return The out-degree of the page
+	 */
+	public int outDegree(int page)
+	{
+		return this.offsets[page + 1] - this.offsets[page];
+	}
+
+	/**
+	 * Calculates the PageRank of every page by power iteration.
+	 * <p/>
+	 * This gives the same results as multiplying by the full transition probability matrix, where each row is
+	 * <code>alpha/N</code> plus <code>(1 - alpha)/outDegree</code> for each page linked to, and sinks (pages with no
+	 * out-links) are treated as linking to every page. Instead of materializing that matrix, each iteration pushes
+	 * every page's rank along its actual links, and the contributions that are shared evenly by every page (the
+	 * <code>alpha</code> teleport and the rank held by sinks) are added once as a single constant. Each iteration
+	 * thus takes time proportional to the number of links.
+	 * @param alpha The alpha value to use
+	 * @param convergence The Euclidean distance threshold between iterations at which to stop the calculation
+	 * @return The PageRank vector, indexed by page ordinal
+	 */
+	public double[] rank(double alpha, double convergence)
+	{
+		double[] vector = new double[this.size];
+		if(this.size == 0)
+		{
+			return vector;
+		}
+		Arrays.fill(vector, 1 / (double)this.size);
+		double[] next = new double[this.size];
+		double distance;
+
+		do
+		{
+			Arrays.fill(next, 0);
+			double sinkRank = 0;		// Total rank held by pages with no out-links
+			for(int i = 0; i < this.size; i++)
+			{
+				int degree = this.outDegree(i);
+				if(degree == 0)
+				{
+					sinkRank += vector[i];
+				}
+				else
+				{
+					double share = vector[i] / degree;
+					for(int e = this.offsets[i]; e < this.offsets[i + 1]; e++)
+					{
+						next[this.targets[e]] += share;
+					}
+				}
+			}
+
+			// Every page gets the same teleport share plus an even split of the sinks' rank
+			double base = (alpha + (1.0 - alpha) * sinkRank) / this.size;
+			for(int j = 0; j < this.size; j++)
+			{
+				next[j] = base + (1.0 - alpha) * next[j];
+			}
+			distance = MathsHelper.euclideanDistance(next, vector);
+
+			// Swap buffers rather than allocating new vectors on every iteration
+			double[] temp = vector;
+			vector = next;
+			next = temp;
+		} while(distance > convergence);
+		// The threshold has now been reached and we can stop.
+
+		return vector;
+	}
+}
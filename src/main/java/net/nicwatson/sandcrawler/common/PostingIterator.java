@@ -0,0 +1,165 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+/**
+ * A PostingIterator decodes the postings of a PostingList one at a time, in ascending order of page ordinal. It
+ * starts out positioned before the first posting; <code>next()</code> moves to the following posting, and
+ * <code>advance()</code> moves to the first posting at or after a given page, skipping over whole blocks of
+ * postings where it can.
+ * @see PostingList
+ */
+public class PostingIterator
+{
+	/**
+	 * The list being iterated over
+	 */
+	private final PostingList list;
+
+	/**
+	 * The encoded postings of the list
+	 */
+	private final byte[] data;
+
+	/**
+	 * The number of postings decoded so far, i.e. the position in the list of the next posting
+	 */
+	private int index;
+
+	/**
+	 * The byte offset of the next posting
+	 */
+	private int position;
+
+	/**
+	 * The ordinal of the current posting
+	 */
+	private int ordinal;
+
+	/**
+	 * The count of the current posting
+	 */
+	private int count;
+
+	/**
+	 * Creates an iterator over the given list, positioned before the first posting
+	 * @param list The list to iterate over
+	 */
+	PostingIterator(PostingList list)
+	{
+		this.list = list;
+		this.data = list.data();
+		this.index = 0;
+		this.position = 0;
+		this.ordinal = 0;
+		this.count = 0;
+	}
+
+	/**
+	 * Moves to the next posting
+	 * @return <code>true</code> if there was another posting; <code>false</code> if the list is exhausted
+	 */
+	public boolean next()
+	{
+		if(this.index == this.list.size())
+		{
+			return false;
+		}
+		this.ordinal += this.readVarInt();
+		this.count = this.readVarInt();
+		this.index++;
+		return true;
+	}
+
+	/**
+	 * Moves to the first posting whose page ordinal is at least the given one. If the current posting already
+	 * qualifies, the iterator stays where it is. Blocks whose postings all come before the target are skipped without
+	 * being decoded.
+	 * @param target The page ordinal to advance to
+	 * @return <code>true</code> if there is such a posting; <code>false</code> if the list is exhausted
+	 */
+	public boolean advance(int target)
+	{
+		if(this.index > 0 && this.ordinal >= target)
+		{
+			return true;
+		}
+
+		// The base of each block is the last ordinal of the block before it, so any block followed by a block whose
+		// base is still short of the target can be skipped entirely
+		int current = this.index / PostingList.BLOCK_SIZE;
+		int block = current;
+		while(block + 1 < this.list.blocks() && this.list.blockBase(block + 1) < target)
+		{
+			block++;
+		}
+		if(block > current)
+		{
+			this.index = block * PostingList.BLOCK_SIZE;
+			this.position = this.list.blockOffset(block);
+			this.ordinal = this.list.blockBase(block);
+		}
+
+		while(this.next())
+		{
+			if(this.ordinal >= target)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Retrieves the page ordinal of the current posting
+	 * @return The page ordinal
+	 */
+	public int ordinal()
+	{
+		return this.ordinal;
+	}
+
+	/**
+	 * Retrieves the count of the current posting
+	 * @return The number of times the word appears on the page
+	 */
+	public int count()
+	{
+		return this.count;
+	}
+
+	/**
+	 * Decodes the varint at the current byte offset, and moves past it
+	 * @return The value decoded
+	 * @see VarInt
+	 */
+	private int readVarInt()
+	{
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7)
+		{
+			byte b = this.data[this.position++];
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				break;
+			}
+		}
+		return value;
+	}
+}
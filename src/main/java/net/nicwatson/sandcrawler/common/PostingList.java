@@ -0,0 +1,220 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A PostingList is a compressed list of the pages on which a word appears (its "postings"), together with the number
+ * of times the word appears on each. Postings must be added in ascending order of page ordinal.
+ * <p/>
+ * Each posting is stored as two varints (see <code>VarInt</code>): the gap from the previous posting's ordinal
+ * (starting from 0), and the count. Since most gaps and counts are small, a posting usually takes two or three bytes.
+ * This is the same encoding as the postings in an index file, so the list can be written out as it is.
+ * <p/>
+ * The postings are grouped into blocks of <code>BLOCK_SIZE</code>. For each block, the list keeps the byte offset at
+ * which it starts and the ordinal of the posting just before it, so that a PostingIterator can skip over whole blocks
+ * without decoding them when it is advanced to a given page.
+ * @see PostingIterator
+ */
+public class PostingList implements Serializable
+{
+	private static final long serialVersionUID = -2217036951182340412L;
+
+	/**
+	 * Number of postings in each block
+	 */
+	public static final int BLOCK_SIZE = 128;
+
+	/**
+	 * The encoded postings. Only the first <code>length</code> bytes are in use.
+	 */
+	private byte[] data;
+
+	/**
+	 * Number of bytes of <code>data</code> in use
+	 */
+	private int length;
+
+	/**
+	 * Number of postings in the list
+	 */
+	private int size;
+
+	/**
+	 * Ordinal of the last posting added, which the next posting's gap is measured from
+	 */
+	private int lastOrdinal;
+
+	/**
+	 * The byte offset of the start of each block
+	 */
+	private int[] blockOffsets;
+
+	/**
+	 * The ordinal of the posting just before each block (0 for the first block), which the first gap in the block is
+	 * measured from
+	 */
+	private int[] blockBases;
+
+	/**
+	 * Creates a new, empty PostingList
+	 */
+	public PostingList()
+	{
+		this.data = new byte[0];
+		this.length = 0;
+		this.size = 0;
+		this.lastOrdinal = 0;
+		this.blockOffsets = new int[0];
+		this.blockBases = new int[0];
+	}
+
+	/**
+	 * Reports the number of postings in the list
+	 * @return The number of postings
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Reports the number of bytes used to store the postings
+	 * @return The size of the encoded postings, in bytes
+	 */
+	public int byteSize()
+	{
+		return this.length;
+	}
+
+	/**
+	 * Adds a posting to the end of the list
+	 * @param ordinal The ordinal of the page. This must be greater than that of every posting already in the list.
+	 * @param count The number of times the word appears on the page
+	 */
+	public void add(int ordinal, int count)
+	{
+		if(this.size % BLOCK_SIZE == 0)
+		{
+			int block = this.size / BLOCK_SIZE;
+			if(block == this.blockOffsets.length)
+			{
+				int capacity = Math.max(1, block * 2);
+				this.blockOffsets = Arrays.copyOf(this.blockOffsets, capacity);
+				this.blockBases = Arrays.copyOf(this.blockBases, capacity);
+			}
+			this.blockOffsets[block] = this.length;
+			this.blockBases[block] = this.lastOrdinal;
+		}
+		// Two varints take at most ten bytes
+		if(this.length + 10 > this.data.length)
+		{
+			this.data = Arrays.copyOf(this.data, Math.max(16, this.data.length * 2));
+		}
+		this.writeVarInt(ordinal - this.lastOrdinal);
+		this.writeVarInt(count);
+		this.lastOrdinal = ordinal;
+		this.size++;
+	}
+
+	/**
+	 * Shrinks the list's arrays to the space actually in use, once all the postings have been added
+	 */
+	public void trim()
+	{
+		this.data = Arrays.copyOf(this.data, this.length);
+		int blocks = (this.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		this.blockOffsets = Arrays.copyOf(this.blockOffsets, blocks);
+		this.blockBases = Arrays.copyOf(this.blockBases, blocks);
+	}
+
+	/**
+	 * Creates an iterator over the postings, positioned before the first one
+	 * @return A new PostingIterator
+	 */
+	public PostingIterator iterator()
+	{
+		return new PostingIterator(this);
+	}
+
+	/**
+	 * Writes the encoded postings, exactly as they are stored
+	 * @param out The destination
+	 * @throws IOException If the destination cannot be written to
+	 */
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.write(this.data, 0, this.length);
+	}
+
+	/**
+	 * Appends a varint to the encoded postings. There must be room for it.
+	 * @param value The value to append. Must not be negative.
+	 */
+	private void writeVarInt(int value)
+	{
+		while((value & ~0x7F) != 0)
+		{
+			this.data[this.length++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.data[this.length++] = (byte)value;
+	}
+
+	/**
+	 * Getter for the encoded postings, for use by PostingIterator
+	 * @return The encoded postings
+	 */
+	byte[] data()
+	{
+		return this.data;
+	}
+
+	/**
+	 * Reports the number of blocks in the list
+	 * @return The number of blocks
+	 */
+	int blocks()
+	{
+		return (this.size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+	}
+
+	/**
+	 * Retrieves the byte offset of the start of a block
+	 * @param block The number of the block
+	 * @return The offset of the block's first posting
+	 */
+	int blockOffset(int block)
+	{
+		return this.blockOffsets[block];
+	}
+
+	/**
+	 * Retrieves the ordinal of the posting just before a block
+	 * @param block The number of the block
+	 * @return The ordinal that the block's first gap is measured from
+	 */
+	int blockBase(int block)
+	{
+		return this.blockBases[block];
+	}
+}
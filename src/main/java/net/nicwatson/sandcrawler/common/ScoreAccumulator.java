@@ -0,0 +1,188 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.util.Arrays;
+
+/**
+ * A ScoreAccumulator sums the partial scores of the pages visited by a term-at-a-time search. It is an open-addressed
+ * hash table from page ordinal to score, sized from the number of postings the search is going to walk rather than
+ * from the number of pages in the index, so a search for rare words costs time and memory in proportion to their
+ * postings alone. If it turns out to hold more pages than it was sized for, it grows.
+ * <p/>
+ * The pages are remembered in the order they were first visited, and can be stepped through in that order with
+ * <code>ordinalAt()</code> and <code>scoreAt()</code>.
+ */
+class ScoreAccumulator
+{
+	/**
+	 * Marks a slot of the table that holds no page
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * The ordinal of the page in each slot of the table, or EMPTY
+	 */
+	private int[] keys;
+
+	/**
+	 * The score accumulated so far for the page in each slot of the table
+	 */
+	private double[] values;
+
+	/**
+	 * The slots of the pages, in the order the pages were first visited
+	 */
+	private int[] order;
+
+	/**
+	 * The number of pages visited
+	 */
+	private int size;
+
+	/**
+	 * One less than the number of slots, which is always a power of two
+	 */
+	private int mask;
+
+	/**
+	 * Creates a new, empty accumulator
+	 * @param expected The number of pages it is likely to be given. The sum of the lengths of the postings to be
+	 * walked is always enough, since a page cannot be visited more often than it has postings.
+	 */
+	ScoreAccumulator(int expected)
+	{
+		int capacity = 4;
+		while (capacity < expected * 2L && capacity < (1 << 30))
+		{
+			capacity <<= 1;
+		}
+		this.allocate(capacity);
+		this.order = new int[Math.max(1, expected)];
+		this.size = 0;
+	}
+
+	/**
+	 * Allocates an empty table
+	 * @param capacity The number of slots, which must be a power of two
+	 */
+	private void allocate(int capacity)
+	{
+		this.keys = new int[capacity];
+		Arrays.fill(this.keys, EMPTY);
+		this.values = new double[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * Finds the slot that holds the given page, or the empty slot where it belongs
+	 * @param ordinal The page's ordinal
+	 * @return The slot
+	 */
+	private int slotOf(int ordinal)
+	{
+		int hash = ordinal * 0x9E3779B9;
+		int slot = (hash ^ (hash >>> 16)) & this.mask;
+		while (this.keys[slot] != EMPTY && this.keys[slot] != ordinal)
+		{
+			slot = (slot + 1) & this.mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Adds to the score of the given page, visiting it if it has not been visited yet
+	 * @param ordinal The page's ordinal
+	 * @param amount The amount to add to its score
+	 */
+	void add(int ordinal, double amount)
+	{
+		int slot = this.slotOf(ordinal);
+		if (this.keys[slot] == EMPTY)
+		{
+			if ((this.size + 1) * 2L > this.keys.length)
+			{
+				this.grow();
+				slot = this.slotOf(ordinal);
+			}
+			this.keys[slot] = ordinal;
+			if (this.size == this.order.length)
+			{
+				this.order = Arrays.copyOf(this.order, this.size * 2);
+			}
+			this.order[this.size++] = slot;
+		}
+		this.values[slot] += amount;
+	}
+
+	/**
+	 * Doubles the number of slots, moving every page to its new slot
+	 */
+	private void grow()
+	{
+		int[] oldKeys = this.keys;
+		double[] oldValues = this.values;
+		this.allocate(oldKeys.length * 2);
+		for (int n = 0; n < this.size; n++)
+		{
+			int slot = this.slotOf(oldKeys[this.order[n]]);
+			this.keys[slot] = oldKeys[this.order[n]];
+			this.values[slot] = oldValues[this.order[n]];
+			this.order[n] = slot;
+		}
+	}
+
+	/**
+	 * Reports whether the given page has been visited
+	 * @param ordinal The page's ordinal
+	 * @return <code>true</code> if the page has a score
+	 */
+	boolean contains(int ordinal)
+	{
+		return this.keys[this.slotOf(ordinal)] != EMPTY;
+	}
+
+	/**
+	 * Reports the number of pages visited
+	 * @return The number of pages
+	 */
+	int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Retrieves the ordinal of a visited page
+	 * @param n The position of the page in the order the pages were first visited
+	 * @return The page's ordinal
+	 */
+	int ordinalAt(int n)
+	{
+		return this.keys[this.order[n]];
+	}
+
+	/**
+	 * Retrieves the score of a visited page
+	 * @param n The position of the page in the order the pages were first visited
+	 * @return The page's accumulated score
+	 */
+	double scoreAt(int n)
+	{
+		return this.values[this.order[n]];
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.util.Date;
+import java.util.List;
+
+import cs1406z.test.SearchResult;
+import net.nicwatson.sandcrawler.search.ResultCursor;
+import net.nicwatson.sandcrawler.search.SearchResultImpl;
+import net.nicwatson.sandcrawler.search.SearchResultPlus;
+
+/**
+ * The SearchIndex interface is the read-only, query-side view of an index: everything the Sandcrawler program
+ * and the GUI need in order to report on a crawl and search it. It is implemented both by WebIndex, which holds
+ * the whole index on the heap, and by MappedIndex, which serves the same queries straight from an index file.
+ * @see WebIndex
+ * @see MappedIndex
+ */
+public interface SearchIndex
+{
+	/**
+	 * Getter for seedURL
+	 * @return The URL of the page that was used to seed the web crawl on which this index was based
+	 */
+	public String getSeedURL();
+
+	/**
+	 * Getter for crawlTime
+	 * @return The Date/time at which this index was generated
+	 */
+	public Date getCrawlTime();
+
+	/**
+	 * Returns the number of total pages known to the index.
+	 * @return The number of total pages known to the index.
+	 */
+	public int getTotalDocs();
+
+	/**
+	 * Returns the number of total words known to the index.
+	 * @return The number of total words known to the index.
+	 */
+	public int getTotalWords();
+
+	/**
+	 * Reports the inverse document frequency (IDF) of the given word within this index. If the word is not indexed,
+	 * the IDF is zero.
+	 * @param word The word for which to retrieve IDF
+	 * @return The IDF of the word
+	 */
+	public double getIDF(String word);
+
+	/**
+	 * Reports the term frequency (TF) of the given word within the given page. If the word is not found in the
+	 * document, or the page is not indexed, the TF will be zero.
+	 * @param url URL string for the page
+	 * @param word The word for which to retrieve TF
+	 * @return The TF of the word
+	 */
+	public double getTF(String url, String word);
+
+	/**
+	 * Reports the tf_idf of the given word within the given page. If the word or the page is not indexed, the
+	 * tf_idf is zero.
+	 * @param url URL string for the page
+	 * @param word The word for which to retrieve tf_idf
+	 * @return The TF-IDF of the word
+	 */
+	public double getTFIDF(String url, String word);
+
+	/**
+	 * Reports the PageRank of the page with the given URL.
+	 * @param url The URL of the page for which to fetch the PageRank score
+	 * @return The PageRank score of the page for the given URL. If the page is not indexed, the return value is -1.
+	 */
+	public double getPageRank(String url);
+
+	/**
+	 * Returns a list of all known links that link to the page with the given URL
+	 * @param url
+	 * @return A list of all known links that link to the page with the given URL, or <b>null</b> if the page is
+	 * not indexed
+	 */
+	public List<String> getIncomingLinks(String url);
+
+	/**
+	 * Returns a list of all known links from the page with the given URL
+	 * @param url
+	 * @return A list of all known links from the page with the given URL, or <b>null</b> if the page is not indexed
+	 */
+	public List<String> getOutgoingLinks(String url);
+
+	/**
+	 * Performs a search of the index with the given query, returning a List of SearchResult views of the results,
+	 * which is used primarily by the test suite. The size of the returned list is capped at the specified amount.
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @param amount The max number of search results to put in the list
+	 * @return A List view of SearchResult
+	 */
+	public List<SearchResult> search(String query, boolean boost, int amount);
+
+	/**
+	 * Performs a search of the index with the given query, returning a List of SearchResultPlus views of the results,
+	 * which includes more information than a SearchResult does. The size of the returned list is capped at the specified amount.
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @param amount The max number of search results to put in the list
+	 * @return A List view of SearchResultPlus
+	 */
+	public List<SearchResultPlus> searchPlus(String query, boolean boost, int amount);
+
+	/**
+	 * Performs a search of the index with the given query, returning a cursor over every page that contains at least
+	 * one of the query words. The results are ranked as they are asked for, a page at a time, so stepping through
+	 * the first few costs little more than <code>searchPlus()</code> does, however many pages match.
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @return A cursor over the matching pages, best first
+	 * @see ResultCursor
+	 */
+	public ResultCursor<SearchResultImpl> searchCursor(String query, boolean boost);
+}
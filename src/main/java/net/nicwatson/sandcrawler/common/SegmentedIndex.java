@@ -0,0 +1,1417 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import cs1406z.test.SearchResult;
+import net.nicwatson.sandcrawler.crawl.UnprocessedPage;
+import net.nicwatson.sandcrawler.search.ResultCursor;
+import net.nicwatson.sandcrawler.search.SearchResultImpl;
+import net.nicwatson.sandcrawler.search.SearchResultPlus;
+import net.nicwatson.sandcrawler.search.TopResults;
+
+/**
+ * A SegmentedIndex is an index that keeps growing while it is being searched, as for a crawl that never stops. Rather
+ * than being one WebIndex, it is made up of segments:
+ * <ul>
+ * <li/>New pages are indexed into a small WebIndex on the heap, one at a time. Once it holds
+ * <code>segmentSize</code> pages, it is flushed: written to a file in the index's directory, and sealed. A sealed
+ * segment is never changed again, so indexing a page costs the same however big the index has grown.
+ * <li/>A page that is indexed again replaces its copy in any older segment, and a page that is removed is deleted
+ * from every segment. Either way, the older copy stays where it is, but is hidden from searches and left out of the
+ * statistics. Deletions are saved alongside the segments, in a file of their own.
+ * <li/>A background thread merges runs of consecutive segments into bigger ones, as the MergePolicy decides, leaving
+ * out the pages that have been replaced. The merged segment is written to its own file before the old files are
+ * deleted.
+ * </ul>
+ * Searches run against a snapshot of the sealed segments. Each flush and each merge replaces the snapshot rather than
+ * changing it, so searches never wait for pages to be added or merged. Pages only become visible to searches once the
+ * segment they were added to has been flushed; <code>flush()</code> can be called to make them visible sooner.
+ * <p/>
+ * Each snapshot works out the statistics of the whole index: a word's IDF comes from its occurrence summed across the
+ * segments, a page's vector norm is calculated from those IDFs, and PageRanks are calculated over the link graph of
+ * all the segments together. Searches fan out across the segments, scoring each one's postings as a WebIndex would,
+ * and the results are merged by score, so they come out the same as from a single WebIndex of the same pages.
+ * <p/>
+ * Opening a directory that already holds segments picks up where the index was left. Files are only ever written
+ * under new names, and never replaced, so a file that is still open elsewhere is never changed underneath it.
+ * @see MergePolicy
+ */
+public class SegmentedIndex implements SearchIndex
+{
+	/**
+	 * The default number of pages at which the in-memory segment is flushed
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 1000;
+
+	/**
+	 * The names of segment files. Each segment is named for the range of flushed segments it is made of, so a merged
+	 * segment sorts into the same place as the segments it replaced.
+	 */
+	private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)-(\\d+)\\.dat");
+
+	/**
+	 * The names of deletion files. Each one is numbered one higher than the last, and only the newest one is read.
+	 */
+	private static final Pattern DELETIONS_NAME = Pattern.compile("deleted-(\\d+)\\.dat");
+
+	/**
+	 * Marks the start of a deletion file: "SCDL" in ASCII
+	 */
+	private static final int DELETIONS_MAGIC = 0x5343444C;
+
+	/**
+	 * A sealed segment: an index of some of the pages, which is not changed once it has been flushed
+	 */
+	private static class Segment
+	{
+		/**
+		 * The number of the first flushed segment that this one is made of
+		 */
+		final int first;
+
+		/**
+		 * The number of the last flushed segment that this one is made of
+		 */
+		final int last;
+
+		/**
+		 * The pages in the segment
+		 */
+		final WebIndex index;
+
+		/**
+		 * The file the segment was written to
+		 */
+		final Path file;
+
+		/**
+		 * Creates a new Segment
+		 * @param first The number of the first flushed segment that this one is made of
+		 * @param last The number of the last flushed segment that this one is made of
+		 * @param index The pages in the segment
+		 * @param file The file the segment was written to
+		 */
+		Segment(int first, int last, WebIndex index, Path file)
+		{
+			this.first = first;
+			this.last = last;
+			this.index = index;
+			this.file = file;
+		}
+
+		/**
+		 * Reports the number of pages in the segment, including any that have been replaced
+		 * @return The number of pages
+		 */
+		int size()
+		{
+			return this.index.pagesByOrdinal.size();
+		}
+	}
+
+	/**
+	 * What searches see: the sealed segments, which of their pages have been replaced, and the statistics of the
+	 * whole index. The statistics are worked out as they are needed, and then kept for as long as the snapshot is.
+	 */
+	private static class Snapshot
+	{
+		/**
+		 * The segments, oldest first
+		 */
+		final Segment[] segments;
+
+		/**
+		 * For each segment, the ordinals of its pages that have been replaced by a newer segment
+		 */
+		final BitSet[] replaced;
+
+		/**
+		 * The number of pages in all the segments, not counting pages that have been replaced
+		 */
+		final int totalDocs;
+
+		/**
+		 * For each word, the number of replaced pages it appears on, which do not count towards its global occurrence
+		 */
+		final Map<String, Integer> replacedOccurrence;
+
+		/**
+		 * The IDF of each word that has been asked for
+		 */
+		final Map<String, Double> idfs;
+
+		/**
+		 * For each segment, the norm of each page's TF-IDF vector, or -1 where it has not yet been calculated
+		 */
+		final double[][] norms;
+
+		/**
+		 * For each segment, the PageRank of each page, or <b>null</b> if they have not yet been calculated
+		 */
+		private double[][] pageRanks;
+
+		/**
+		 * The number of distinct words on the pages, or -1 if it has not yet been counted
+		 */
+		private volatile int totalWords;
+
+		/**
+		 * Creates a new Snapshot
+		 * @param segments The segments, oldest first
+		 * @param replaced For each segment, the ordinals of its pages that have been replaced by a newer segment
+		 */
+		Snapshot(Segment[] segments, BitSet[] replaced)
+		{
+			this.segments = segments;
+			this.replaced = replaced;
+			this.replacedOccurrence = new HashMap<String, Integer>();
+			this.idfs = new ConcurrentHashMap<String, Double>();
+			this.norms = new double[segments.length][];
+			this.pageRanks = null;
+			this.totalWords = -1;
+			int docs = 0;
+			for(int s = 0; s < segments.length; s++)
+			{
+				WebIndex index = segments[s].index;
+				docs += segments[s].size() - replaced[s].cardinality();
+				for(int ordinal = replaced[s].nextSetBit(0); ordinal >= 0; ordinal = replaced[s].nextSetBit(ordinal + 1))
+				{
+					IndexedPage page = index.getPage(ordinal);
+					for(int position = 0; position < page.getUniqueWords(); position++)
+					{
+						this.replacedOccurrence.merge(index.getTermStat(page.termIdAt(position)).getWord(), 1, Integer::sum);
+					}
+				}
+				this.norms[s] = new double[segments[s].size()];
+				Arrays.fill(this.norms[s], -1);
+			}
+			this.totalDocs = docs;
+		}
+
+		/**
+		 * Creates a new Snapshot with the given segment (if any) added after the others, and with some pages deleted.
+		 * Any pages in the older segments that the new one has its own copy of are marked as replaced, as are the
+		 * deleted pages.
+		 * @param added The new segment, or <b>null</b> if there is none
+		 * @param deletions The URLs of the pages to delete, each mapped to the number of the first flushed segment
+		 * whose copy of the page is kept. Copies in segments that end before that one are marked as replaced.
+		 * @return The new Snapshot
+		 */
+		Snapshot withSegment(Segment added, Map<String, Integer> deletions)
+		{
+			int count = this.segments.length;
+			Segment[] segments = (added == null) ? this.segments : Arrays.copyOf(this.segments, count + 1);
+			BitSet[] replaced = new BitSet[segments.length];
+			for(int s = 0; s < count; s++)
+			{
+				replaced[s] = (BitSet)this.replaced[s].clone();
+			}
+			if(added != null)
+			{
+				segments[count] = added;
+				replaced[count] = new BitSet();
+				for(IndexedPage page : added.index.pagesByOrdinal)
+				{
+					for(int s = 0; s < count; s++)
+					{
+						IndexedPage old = this.segments[s].index.getPage(page.getURL());
+						if(old != null)
+						{
+							replaced[s].set(old.getOrdinal());
+						}
+					}
+				}
+			}
+			for(Map.Entry<String, Integer> deletion : deletions.entrySet())
+			{
+				for(int s = 0; s < segments.length && segments[s].last < deletion.getValue(); s++)
+				{
+					IndexedPage old = segments[s].index.getPage(deletion.getKey());
+					if(old != null)
+					{
+						replaced[s].set(old.getOrdinal());
+					}
+				}
+			}
+			return new Snapshot(segments, replaced);
+		}
+
+		/**
+		 * Creates a new Snapshot with a run of segments replaced by the segment they were merged into. Any pages in
+		 * the merged segment that have been replaced or deleted since the merge began are marked as such.
+		 * @param from The position of the first segment that was merged
+		 * @param to One past the position of the last segment that was merged
+		 * @param merged The merged segment
+		 * @param deleted The pages that have been deleted, as kept by the SegmentedIndex
+		 * @return The new Snapshot
+		 */
+		Snapshot withMerge(int from, int to, Segment merged, Map<String, Integer> deleted)
+		{
+			int count = this.segments.length - (to - from) + 1;
+			Segment[] segments = new Segment[count];
+			BitSet[] replaced = new BitSet[count];
+			for(int s = 0; s < from; s++)
+			{
+				segments[s] = this.segments[s];
+				replaced[s] = this.replaced[s];
+			}
+			segments[from] = merged;
+			replaced[from] = new BitSet();
+			for(int s = to; s < this.segments.length; s++)
+			{
+				segments[s - to + from + 1] = this.segments[s];
+				replaced[s - to + from + 1] = this.replaced[s];
+			}
+			for(IndexedPage page : merged.index.pagesByOrdinal)
+			{
+				if(deleted.getOrDefault(page.getURL(), -1) > merged.last)
+				{
+					replaced[from].set(page.getOrdinal());
+					continue;
+				}
+				for(int s = to; s < this.segments.length; s++)
+				{
+					if(this.segments[s].index.hasPage(page.getURL()))
+					{
+						replaced[from].set(page.getOrdinal());
+						break;
+					}
+				}
+			}
+			return new Snapshot(segments, replaced);
+		}
+
+		/**
+		 * Reports the number of pages, not counting replaced ones, on which the given word appears
+		 * @param word The word
+		 * @return The global occurrence of the word
+		 */
+		int occurrence(String word)
+		{
+			int occurrence = 0;
+			for(Segment segment : this.segments)
+			{
+				GlobalWordStat wordStat = segment.index.getGlobalWordStat(word);
+				if(wordStat != null)
+				{
+					occurrence += wordStat.getGlobalOccurrence();
+				}
+			}
+			return occurrence - this.replacedOccurrence.getOrDefault(word, 0);
+		}
+
+		/**
+		 * Reports the IDF of the given word across the whole index, calculating it the first time it is asked for
+		 * @param word The word
+		 * @return The IDF of the word, or 0 if it is not on any page
+		 */
+		double idf(String word)
+		{
+			Double idf = this.idfs.get(word);
+			if(idf == null)
+			{
+				int occurrence = this.occurrence(word);
+				idf = (occurrence == 0) ? 0 : MathsHelper.lg(this.totalDocs / (1.0 + (double)occurrence));
+				this.idfs.put(word, idf);
+			}
+			return idf;
+		}
+
+		/**
+		 * Reports the norm of a page's TF-IDF vector, measured with the IDFs of the whole index, calculating it the
+		 * first time it is asked for
+		 * @param s The position of the page's segment
+		 * @param ordinal The page's ordinal in its segment
+		 * @return The norm of the page's TF-IDF vector
+		 */
+		double norm(int s, int ordinal)
+		{
+			double norm = this.norms[s][ordinal];
+			if(norm < 0)
+			{
+				WebIndex index = this.segments[s].index;
+				IndexedPage page = index.getPage(ordinal);
+				double sum = 0;
+				for(int position = 0; position < page.getUniqueWords(); position++)
+				{
+					double idf = this.idf(index.getTermStat(page.termIdAt(position)).getWord());
+					sum += Math.pow(MathsHelper.calcTFIDF(page.tfAt(position), idf), 2);
+				}
+				norm = Math.sqrt(sum);
+				this.norms[s][ordinal] = norm;
+			}
+			return norm;
+		}
+
+		/**
+		 * Retrieves the PageRanks of the pages, calculating them over the link graph of all the segments the first
+		 * time they are asked for
+		 * @return For each segment, the PageRank of each page (0 for replaced pages)
+		 */
+		synchronized double[][] pageRanks()
+		{
+			if(this.pageRanks == null)
+			{
+				IndexedPage[] pages = new IndexedPage[this.totalDocs];
+				int n = 0;
+				for(int s = 0; s < this.segments.length; s++)
+				{
+					for(IndexedPage page : this.segments[s].index.pagesByOrdinal)
+					{
+						if(!this.replaced[s].get(page.getOrdinal()))
+						{
+							pages[n++] = page;
+						}
+					}
+				}
+				double[] vector = PageRankGraph.fromPages(pages).rank(WebIndex.ALPHA, WebIndex.THRESHOLD);
+				double[][] ranks = new double[this.segments.length][];
+				n = 0;
+				for(int s = 0; s < this.segments.length; s++)
+				{
+					ranks[s] = new double[this.segments[s].size()];
+					for(int ordinal = 0; ordinal < ranks[s].length; ordinal++)
+					{
+						if(!this.replaced[s].get(ordinal))
+						{
+							ranks[s][ordinal] = vector[n++];
+						}
+					}
+				}
+				this.pageRanks = ranks;
+			}
+			return this.pageRanks;
+		}
+
+		/**
+		 * Counts the distinct words on the pages, the first time it is asked for
+		 * @return The number of distinct words
+		 */
+		int totalWords()
+		{
+			if(this.totalWords < 0)
+			{
+				Set<String> words = new HashSet<String>();
+				for(Segment segment : this.segments)
+				{
+					for(String word : segment.index.words.keySet())
+					{
+						if(!words.contains(word) && this.occurrence(word) > 0)
+						{
+							words.add(word);
+						}
+					}
+				}
+				this.totalWords = words.size();
+			}
+			return this.totalWords;
+		}
+
+		/**
+		 * Finds the segment that holds the current copy of the page with the given URL
+		 * @param url The URL of the page
+		 * @return The position of the segment, or -1 if the page is not indexed (or has been deleted)
+		 */
+		int segmentOf(String url)
+		{
+			// The newest copy of a page is the current one, unless the page has been deleted since
+			for(int s = this.segments.length - 1; s >= 0; s--)
+			{
+				IndexedPage page = this.segments[s].index.getPage(url);
+				if(page != null)
+				{
+					return this.replaced[s].get(page.getOrdinal()) ? -1 : s;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * The directory that the segment files are kept in
+	 */
+	private final Path directory;
+
+	/**
+	 * The URL of the page that was used to seed the crawl
+	 */
+	private final String seedURL;
+
+	/**
+	 * The date/time at which the index was first created
+	 */
+	private final Date crawlTime;
+
+	/**
+	 * The number of pages at which the in-memory segment is flushed
+	 */
+	private final int segmentSize;
+
+	/**
+	 * Decides which segments to merge
+	 */
+	private final MergePolicy mergePolicy;
+
+	/**
+	 * Runs merges, and works out the PageRanks of each new snapshot ahead of the searches that need them, on a single
+	 * background thread
+	 */
+	private final ExecutorService merger;
+
+	/**
+	 * The snapshot that searches are run against
+	 */
+	private volatile Snapshot snapshot;
+
+	/**
+	 * The segment that new pages are added to, which has not been flushed yet
+	 */
+	private WebIndex active;
+
+	/**
+	 * The number to give the next flushed segment
+	 */
+	private int nextSegment;
+
+	/**
+	 * Whether a merge is under way
+	 */
+	private boolean merging;
+
+	/**
+	 * The pages that have been removed, by URL, as of the last flush. Each URL is mapped to the number of the first
+	 * flushed segment whose copy of the page is kept, so that a page that is added again after being removed is not
+	 * deleted along with its older copies.
+	 */
+	private final Map<String, Integer> deleted;
+
+	/**
+	 * The pages that have been removed since the last flush, which searches still see, mapped as in
+	 * <code>deleted</code>
+	 */
+	private final Map<String, Integer> unflushedDeletions;
+
+	/**
+	 * The number to give the next deletion file
+	 */
+	private int nextDeletions;
+
+	/**
+	 * Creates a new SegmentedIndex. Use <code>open()</code> to create one.
+	 * @param directory The directory that the segment files are kept in
+	 * @param seedURL The URL of the page that was used to seed the crawl
+	 * @param crawlTime The date/time at which the index was first created
+	 * @param segmentSize The number of pages at which the in-memory segment is flushed
+	 * @param mergePolicy Decides which segments to merge
+	 */
+	private SegmentedIndex(Path directory, String seedURL, Date crawlTime, int segmentSize, MergePolicy mergePolicy)
+	{
+		this.directory = directory;
+		this.seedURL = seedURL;
+		this.crawlTime = crawlTime;
+		this.segmentSize = Math.max(1, segmentSize);
+		this.mergePolicy = mergePolicy;
+		this.merger = Executors.newSingleThreadExecutor(r ->
+		{
+			Thread thread = new Thread(r, "SegmentedIndex merger");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.snapshot = new Snapshot(new Segment[0], new BitSet[0]);
+		this.active = this.newActiveSegment();
+		this.nextSegment = 0;
+		this.merging = false;
+		this.deleted = new HashMap<String, Integer>();
+		this.unflushedDeletions = new HashMap<String, Integer>();
+		this.nextDeletions = 0;
+	}
+
+	/**
+	 * Opens the SegmentedIndex in the given directory, with the default segment size and merge policy
+	 * @param directory The directory that the segment files are kept in. It is created if it does not exist.
+	 * @param seedURL The URL of the page that was used to seed the crawl. If the directory already holds segments, the
+	 * seed URL they were written with is used instead, so this may be <b>null</b>.
+	 * @return The SegmentedIndex
+	 * @throws IOException If the directory cannot be created, or a segment or deletion file in it cannot be read
+	 * @see #open(String, String, int, MergePolicy)
+	 */
+	public static SegmentedIndex open(String directory, String seedURL) throws IOException
+	{
+		return open(directory, seedURL, DEFAULT_SEGMENT_SIZE,
+				new LogMergePolicy(LogMergePolicy.DEFAULT_MERGE_FACTOR, DEFAULT_SEGMENT_SIZE));
+	}
+
+	/**
+	 * Opens the SegmentedIndex in the given directory. If the directory already holds segments, they are loaded, along
+	 * with the pages that have been deleted from them, and the index carries on from where it was left. Segment files
+	 * that were left behind by a merge after the merged segment had been written (because the merge was interrupted,
+	 * or the files could not be deleted at the time) are deleted, as are old deletion files.
+	 * @param directory The directory that the segment files are kept in. It is created if it does not exist.
+	 * @param seedURL The URL of the page that was used to seed the crawl. If the directory already holds segments, the
+	 * seed URL they were written with is used instead, so this may be <b>null</b>.
+	 * @param segmentSize The number of pages at which the in-memory segment is flushed
+	 * @param mergePolicy Decides which segments to merge
+	 * @return The SegmentedIndex
+	 * @throws IOException If the directory cannot be created, or a segment or deletion file in it cannot be read
+	 */
+	public static SegmentedIndex open(String directory, String seedURL, int segmentSize, MergePolicy mergePolicy)
+			throws IOException
+	{
+		Path path = Paths.get(directory);
+		Files.createDirectories(path);
+
+		// Find the segment files, oldest first, with a merged segment ahead of the segments it was made from
+		List<int[]> ranges = new ArrayList<int[]>();
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(path, "segment-*.dat"))
+		{
+			for(Path file : files)
+			{
+				Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+				if(matcher.matches())
+				{
+					ranges.add(new int[] { Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)) });
+				}
+			}
+		}
+		ranges.sort((a, b) -> (a[0] != b[0]) ? Integer.compare(a[0], b[0]) : Integer.compare(b[1], a[1]));
+
+		List<Segment> segments = new ArrayList<Segment>();
+		int covered = -1;
+		for(int[] range : ranges)
+		{
+			Path file = path.resolve(segmentName(range[0], range[1]));
+			if(range[1] <= covered)
+			{
+				Files.deleteIfExists(file);
+				continue;
+			}
+			segments.add(new Segment(range[0], range[1], IndexFile.read(file.toString()), file));
+			covered = range[1];
+		}
+
+		// Only the newest deletion file is current; any others were left behind when it was written
+		int deletions = -1;
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(path, "deleted-*"))
+		{
+			for(Path file : files)
+			{
+				Matcher matcher = DELETIONS_NAME.matcher(file.getFileName().toString());
+				if(matcher.matches())
+				{
+					deletions = Math.max(deletions, Integer.parseInt(matcher.group(1)));
+				}
+			}
+		}
+		Map<String, Integer> deleted = (deletions < 0) ? Map.of() : readDeletions(path.resolve(deletionsName(deletions)));
+		deleteOldDeletions(path, deletions);
+
+		Date crawlTime = segments.isEmpty() ? Calendar.getInstance().getTime() : segments.get(0).index.getCrawlTime();
+		if(!segments.isEmpty())
+		{
+			seedURL = segments.get(0).index.getSeedURL();
+		}
+		SegmentedIndex index = new SegmentedIndex(path, seedURL, crawlTime, segmentSize, mergePolicy);
+		synchronized(index)
+		{
+			for(Segment segment : segments)
+			{
+				index.snapshot = index.snapshot.withSegment(segment, Map.of());
+			}
+			if(!deleted.isEmpty())
+			{
+				index.snapshot = index.snapshot.withSegment(null, deleted);
+			}
+			index.deleted.putAll(deleted);
+			index.nextDeletions = deletions + 1;
+			index.nextSegment = covered + 1;
+			index.publish(index.snapshot);
+			index.scheduleMerge();
+		}
+		return index;
+	}
+
+	/**
+	 * Finds the file of a saved index that is all in one segment, with no pages deleted from it. Such a file holds the
+	 * whole index just as <code>IndexFile.write()</code> wrote it, so it can be searched in place with a MappedIndex
+	 * rather than read into memory. Segment files are never replaced, but merges delete them, so the file only stays
+	 * put until the index in the directory is opened and changed.
+	 * @param directory The directory that the segment files are kept in
+	 * @return The path of the segment file, or <b>null</b> if the directory does not hold exactly one segment with no
+	 * deletions
+	 * @throws IOException If the directory cannot be listed
+	 */
+	public static String findSingleSegment(String directory) throws IOException
+	{
+		Path path = Paths.get(directory);
+		Path single = null;
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(path))
+		{
+			for(Path file : files)
+			{
+				String name = file.getFileName().toString();
+				if(DELETIONS_NAME.matcher(name).matches())
+				{
+					return null;
+				}
+				if(SEGMENT_NAME.matcher(name).matches())
+				{
+					if(single != null)
+					{
+						return null;
+					}
+					single = file;
+				}
+			}
+		}
+		return (single == null) ? null : single.toString();
+	}
+
+	/**
+	 * Builds the file name of a segment
+	 * @param first The number of the first flushed segment that the segment is made of
+	 * @param last The number of the last flushed segment that the segment is made of
+	 * @return The file name
+	 */
+	private static String segmentName(int first, int last)
+	{
+		return "segment-" + first + "-" + last + ".dat";
+	}
+
+	/**
+	 * Builds the file name of a deletion file
+	 * @param number The number of the deletion file
+	 * @return The file name
+	 */
+	private static String deletionsName(int number)
+	{
+		return "deleted-" + number + ".dat";
+	}
+
+	/**
+	 * Reads a deletion file
+	 * @param file The file to read
+	 * @return The deleted pages, by URL, each mapped to the number of the first flushed segment whose copy is kept
+	 * @throws IOException If the file cannot be read, or is not a deletion file
+	 */
+	private static Map<String, Integer> readDeletions(Path file) throws IOException
+	{
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+		{
+			if(in.readInt() != DELETIONS_MAGIC)
+			{
+				throw new IOException(file + " is not a deletion file");
+			}
+			int count = in.readInt();
+			if(count < 0)
+			{
+				throw new IOException("Deletion file " + file + " is corrupt: it claims " + count + " pages");
+			}
+			Map<String, Integer> deleted = new HashMap<String, Integer>();
+			for(int d = 0; d < count; d++)
+			{
+				String url = VarInt.readString(in);
+				deleted.put(url, VarInt.read(in));
+			}
+			return deleted;
+		}
+		catch(EOFException e)
+		{
+			throw new IOException("Deletion file " + file + " is truncated", e);
+		}
+	}
+
+	/**
+	 * Deletes the deletion files (and any half-written ones) other than the current one
+	 * @param directory The directory that the segment files are kept in
+	 * @param current The number of the current deletion file, or -1 if there is none
+	 */
+	private static void deleteOldDeletions(Path directory, int current)
+	{
+		try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "deleted-*"))
+		{
+			for(Path file : files)
+			{
+				Matcher matcher = DELETIONS_NAME.matcher(file.getFileName().toString());
+				if(!matcher.matches() || Integer.parseInt(matcher.group(1)) != current)
+				{
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not delete old deletion files in " + directory);
+		}
+	}
+
+	/**
+	 * Writes every page that has been removed, including those removed since the last flush, to a new deletion file,
+	 * and then deletes the old one. Removals that no segment has a copy of any more (because merges have left the
+	 * copies out) are forgotten first.
+	 * @return <code>true</code> if the file was written
+	 */
+	private synchronized boolean writeDeletions()
+	{
+		Snapshot current = this.snapshot;
+		this.deleted.entrySet().removeIf(deletion ->
+		{
+			for(int s = 0; s < current.segments.length && current.segments[s].last < deletion.getValue(); s++)
+			{
+				if(current.segments[s].index.hasPage(deletion.getKey()))
+				{
+					return false;
+				}
+			}
+			return true;
+		});
+		Map<String, Integer> all = new HashMap<String, Integer>(this.deleted);
+		all.putAll(this.unflushedDeletions);
+
+		Path file = this.directory.resolve(deletionsName(this.nextDeletions));
+		Path temp = this.directory.resolve(deletionsName(this.nextDeletions) + ".tmp");
+		try
+		{
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp))))
+			{
+				out.writeInt(DELETIONS_MAGIC);
+				out.writeInt(all.size());
+				for(Map.Entry<String, Integer> deletion : all.entrySet())
+				{
+					VarInt.writeString(out, deletion.getKey());
+					VarInt.write(out, deletion.getValue());
+				}
+			}
+			// The file is new, so nothing can have it open
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not write deletion file " + file);
+			e.printStackTrace(System.err);
+			try
+			{
+				Files.deleteIfExists(temp);
+			}
+			catch(IOException f)
+			{
+				// The half-written file is deleted when the index is next opened
+			}
+			return false;
+		}
+		deleteOldDeletions(this.directory, this.nextDeletions);
+		this.nextDeletions++;
+		return true;
+	}
+
+	/**
+	 * Creates an empty segment for new pages to be added to
+	 * @return The new segment
+	 */
+	private WebIndex newActiveSegment()
+	{
+		WebIndex index = new WebIndex(this.crawlTime);
+		index.seedURL = this.seedURL;
+		return index;
+	}
+
+	/**
+	 * Indexes the given page, replacing any copy of it that is already in the index. The page becomes visible to
+	 * searches once the segment it has been added to is flushed, which happens here if the segment is full. A page
+	 * that a recrawl found unchanged is copied from the index it was found in, rather than parsed again.
+	 * @param page The downloaded page to index
+	 * @return <code>false</code> if the segment was full but could not be written (the page is still indexed, and
+	 * will be written with the next flush)
+	 */
+	public synchronized boolean add(UnprocessedPage page)
+	{
+		this.active.updatePage(page);
+		if(this.active.getTotalDocs() >= this.segmentSize)
+		{
+			return this.flush();
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the page with the given URL from the index. Just as with <code>add()</code>, searches go on seeing the
+	 * page until the next flush.
+	 * @param url The URL of the page to remove
+	 * @return <code>true</code> if the page was in the index (whether or not it had been flushed)
+	 */
+	public synchronized boolean remove(String url)
+	{
+		boolean removed = this.active.removePage(url);
+		if(this.snapshot.segmentOf(url) >= 0)
+		{
+			// Only the copies in the segments flushed so far are deleted
+			this.unflushedDeletions.put(url, this.nextSegment);
+			removed = true;
+		}
+		return removed;
+	}
+
+	/**
+	 * Writes the pages that have been added since the last flush to a new segment, and the pages that have been
+	 * removed to a new deletion file, and makes the changes visible to searches. Merges are then considered.
+	 * @return <code>true</code> if the changes were written (or there was nothing to write)
+	 */
+	public synchronized boolean flush()
+	{
+		if(this.active.getTotalDocs() == 0 && this.unflushedDeletions.isEmpty())
+		{
+			return true;
+		}
+		// Deletions are written first: if the segment were then lost, the pages it replaced would still be gone
+		if(!this.unflushedDeletions.isEmpty() && !this.writeDeletions())
+		{
+			return false;
+		}
+		Segment added = null;
+		if(this.active.getTotalDocs() > 0)
+		{
+			Path file = this.directory.resolve(segmentName(this.nextSegment, this.nextSegment));
+			if(!write(this.active, file))
+			{
+				return false;
+			}
+			added = new Segment(this.nextSegment, this.nextSegment, this.active, file);
+		}
+		this.publish(this.snapshot.withSegment(added, this.unflushedDeletions));
+		this.deleted.putAll(this.unflushedDeletions);
+		this.unflushedDeletions.clear();
+		if(added != null)
+		{
+			this.nextSegment++;
+			this.active = this.newActiveSegment();
+		}
+		this.scheduleMerge();
+		return true;
+	}
+
+	/**
+	 * Writes a segment to a file
+	 * @param index The pages in the segment
+	 * @param file The file to write
+	 * @return <code>true</code> if the segment was written
+	 */
+	private static boolean write(WebIndex index, Path file)
+	{
+		try
+		{
+			IndexFile.write(index, file.toString());
+			return true;
+		}
+		catch(IOException e)
+		{
+			System.err.println("Could not write index segment " + file);
+			e.printStackTrace(System.err);
+			return false;
+		}
+	}
+
+	/**
+	 * Makes the given snapshot the one that searches run against, and has its PageRanks worked out in the background.
+	 * Searches that are already running carry on with the snapshot they started with.
+	 * @param next The new snapshot
+	 */
+	private synchronized void publish(Snapshot next)
+	{
+		this.snapshot = next;
+		if(!this.merger.isShutdown())
+		{
+			this.merger.execute(next::pageRanks);
+		}
+	}
+
+	/**
+	 * Asks the merge policy whether any segments should be merged, and if so, starts merging them in the background.
+	 * Only one merge runs at a time; when it finishes, the policy is asked again.
+	 */
+	private synchronized void scheduleMerge()
+	{
+		if(this.merging || this.merger.isShutdown())
+		{
+			return;
+		}
+		Snapshot current = this.snapshot;
+		int[] sizes = new int[current.segments.length];
+		for(int s = 0; s < sizes.length; s++)
+		{
+			sizes[s] = current.segments[s].size() - current.replaced[s].cardinality();
+		}
+		int[] range = this.mergePolicy.findMerge(sizes);
+		if(range == null || range[0] < 0 || range[1] > sizes.length || range[1] - range[0] < 2)
+		{
+			return;
+		}
+		Segment[] parts = Arrays.copyOfRange(current.segments, range[0], range[1]);
+		BitSet[] replaced = Arrays.copyOfRange(current.replaced, range[0], range[1]);
+		this.merging = true;
+		this.merger.execute(() -> this.merge(parts, replaced));
+	}
+
+	/**
+	 * Merges a run of consecutive segments into one, leaving out the pages that have been replaced, and swaps it in
+	 * for them. This runs on the background thread; searches and additions carry on meanwhile.
+	 * @param parts The segments to merge, oldest first
+	 * @param replaced For each segment, the ordinals of its pages that had been replaced when the merge began
+	 */
+	private void merge(Segment[] parts, BitSet[] replaced)
+	{
+		List<IndexedPage> pages = new ArrayList<IndexedPage>();
+		for(int p = 0; p < parts.length; p++)
+		{
+			for(IndexedPage page : parts[p].index.pagesByOrdinal)
+			{
+				if(!replaced[p].get(page.getOrdinal()))
+				{
+					pages.add(page);
+				}
+			}
+		}
+		int first = parts[0].first;
+		int last = parts[parts.length - 1].last;
+		Segment merged = new Segment(first, last, WebIndex.fromPages(this.seedURL, this.crawlTime, pages),
+				this.directory.resolve(segmentName(first, last)));
+		boolean written = write(merged.index, merged.file);
+
+		synchronized(this)
+		{
+			this.merging = false;
+			if(!written)
+			{
+				// The segments are left as they were, to be tried again after the next flush
+				return;
+			}
+			// Segments may have been flushed since the merge began, but the merged ones are still where they were,
+			// since nothing else takes segments out
+			int from = Arrays.asList(this.snapshot.segments).indexOf(parts[0]);
+			this.publish(this.snapshot.withMerge(from, from + parts.length, merged, this.deleted));
+		}
+		for(Segment part : parts)
+		{
+			try
+			{
+				Files.deleteIfExists(part.file);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Could not delete merged index segment " + part.file);
+			}
+		}
+		this.scheduleMerge();
+	}
+
+	/**
+	 * Flushes any pages that have been added since the last flush, and stops the background thread once the merge
+	 * (if any) that is under way has finished. No further merges are started. Searches can still be run afterwards.
+	 * @return <code>true</code> if the last segment was written (or there was nothing to write)
+	 */
+	public boolean close()
+	{
+		boolean flushed = this.flush();
+		synchronized(this)
+		{
+			this.merger.shutdown();
+		}
+		try
+		{
+			this.merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return flushed;
+	}
+
+	/**
+	 * Reports the number of sealed segments that searches run against
+	 * @return The number of segments
+	 */
+	public int getSegmentCount()
+	{
+		return this.snapshot.segments.length;
+	}
+
+	/**
+	 * Reports the number of pages that have been added since the last flush, and are not yet visible to searches
+	 * @return The number of unflushed pages
+	 */
+	public synchronized int getUnflushedDocs()
+	{
+		return this.active.getTotalDocs();
+	}
+
+	/**
+	 * Retrieves the current copy of the page with the given URL, as searches see it
+	 * @param url The URL of the page
+	 * @return The page, or <b>null</b> if it is not in any flushed segment (or has been deleted)
+	 */
+	public IndexedPage getPage(String url)
+	{
+		Snapshot current = this.snapshot;
+		int s = current.segmentOf(url);
+		return (s < 0) ? null : current.segments[s].index.getPage(url);
+	}
+
+	/**
+	 * Lists the URLs of all the pages that searches see, i.e. those in the sealed segments that have not been
+	 * replaced or deleted
+	 * @return The URLs, in no particular order
+	 */
+	public List<String> getURLs()
+	{
+		Snapshot current = this.snapshot;
+		List<String> urls = new ArrayList<String>(current.totalDocs);
+		for(int s = 0; s < current.segments.length; s++)
+		{
+			List<IndexedPage> pages = current.segments[s].index.pagesByOrdinal;
+			for(int ordinal = current.replaced[s].nextClearBit(0); ordinal < pages.size(); ordinal = current.replaced[s].nextClearBit(ordinal + 1))
+			{
+				if(pages.get(ordinal) != null)
+				{
+					urls.add(pages.get(ordinal).getURL());
+				}
+			}
+		}
+		return urls;
+	}
+
+	@Override
+	public String getSeedURL()
+	{
+		return this.seedURL;
+	}
+
+	@Override
+	public Date getCrawlTime()
+	{
+		return this.crawlTime;
+	}
+
+	/**
+	 * Returns the number of pages visible to searches, i.e. in the sealed segments, not counting pages that have
+	 * been replaced
+	 * @return The number of pages
+	 */
+	@Override
+	public int getTotalDocs()
+	{
+		return this.snapshot.totalDocs;
+	}
+
+	@Override
+	public int getTotalWords()
+	{
+		return this.snapshot.totalWords();
+	}
+
+	@Override
+	public double getIDF(String word)
+	{
+		return this.snapshot.idf(word);
+	}
+
+	@Override
+	public double getTF(String url, String word)
+	{
+		Snapshot current = this.snapshot;
+		int s = current.segmentOf(url);
+		if(s < 0)
+		{
+			return 0;
+		}
+		return current.segments[s].index.getPage(url).getTF(word);
+	}
+
+	@Override
+	public double getTFIDF(String url, String word)
+	{
+		Snapshot current = this.snapshot;
+		int s = current.segmentOf(url);
+		if(s < 0)
+		{
+			return 0;
+		}
+		return MathsHelper.calcTFIDF(current.segments[s].index.getPage(url).getTF(word), current.idf(word));
+	}
+
+	@Override
+	public double getPageRank(String url)
+	{
+		Snapshot current = this.snapshot;
+		int s = current.segmentOf(url);
+		if(s < 0)
+		{
+			return -1;
+		}
+		return current.pageRanks()[s][current.segments[s].index.getPage(url).getOrdinal()];
+	}
+
+	@Override
+	public List<String> getIncomingLinks(String url)
+	{
+		Snapshot current = this.snapshot;
+		if(current.segmentOf(url) < 0)
+		{
+			return null;
+		}
+		List<String> links = new ArrayList<String>();
+		for(int s = 0; s < current.segments.length; s++)
+		{
+			for(IndexedPage page : current.segments[s].index.pagesByOrdinal)
+			{
+				if(!current.replaced[s].get(page.getOrdinal()) && page.linksTo(url))
+				{
+					links.add(page.getURL());
+				}
+			}
+		}
+		return List.copyOf(links);
+	}
+
+	@Override
+	public List<String> getOutgoingLinks(String url)
+	{
+		Snapshot current = this.snapshot;
+		int s = current.segmentOf(url);
+		if(s < 0)
+		{
+			return null;
+		}
+		return List.copyOf(current.segments[s].index.getPage(url).getOutLinks());
+	}
+
+	/**
+	 * Performs a search of the index with the given query, and selects the best <code>amount</code> results. Each
+	 * segment's postings are scored term-at-a-time, as in <code>WebIndex.scoreMatches()</code>, but with the IDFs,
+	 * vector norms and PageRanks of the whole index, and the results of all the segments go through one bounded heap.
+	 * Pages with no match are only considered if they could still make the cut. The search runs against the snapshot
+	 * that is current when it starts, however long it takes.
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @param amount The max number of search results to select
+	 * @return A list of the best results, best first (empty if <code>amount</code> is 0 or less)
+	 * @see WebIndex#searchTop(String, boolean, int)
+	 */
+	public List<SearchResultImpl> searchTop(String query, boolean boost, int amount)
+	{
+		if(amount <= 0)
+		{
+			return List.of();
+		}
+		Snapshot current = this.snapshot;
+		TopResults<SearchResultImpl> top = new TopResults<SearchResultImpl>(amount);
+		ScoreAccumulator[] visited = new ScoreAccumulator[current.segments.length];
+		int matches = this.scoreQuery(current, query, boost, visited, top::offer);
+
+		if(matches < current.totalDocs)
+		{
+			double[][] ranks = current.pageRanks();
+			SearchResultImpl zero = new SearchResultImpl("", "", 0, 0);
+			for(int s = 0; s < current.segments.length; s++)
+			{
+				for(int ordinal = 0; ordinal < current.segments[s].size(); ordinal++)
+				{
+					if(visited[s].contains(ordinal) || current.replaced[s].get(ordinal))
+					{
+						continue;
+					}
+					if(top.isFull() && top.worst().compareScoreTo(zero) < 0)
+					{
+						// Everything we kept outscores zero, so none of the remaining pages can get in
+						return top.drainSorted();
+					}
+					top.offer(result(current.segments[s].index.getPage(ordinal), ranks[s][ordinal], 0, boost));
+				}
+			}
+		}
+		return top.drainSorted();
+	}
+
+	/**
+	 * Performs a search of the index with the given query, returning a cursor over every page that contains at least
+	 * one of the query words, as <code>WebIndex.searchCursor()</code> does. The search runs against the snapshot that
+	 * is current when it starts.
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @return A cursor over the matching pages, best first
+	 * @see WebIndex#searchCursor(String, boolean)
+	 */
+	@Override
+	public ResultCursor<SearchResultImpl> searchCursor(String query, boolean boost)
+	{
+		Snapshot current = this.snapshot;
+		List<SearchResultImpl> results = new ArrayList<SearchResultImpl>();
+		this.scoreQuery(current, query, boost, new ScoreAccumulator[current.segments.length], results::add);
+		return new ResultCursor<SearchResultImpl>(results);
+	}
+
+	/**
+	 * Scores the pages of every segment that contain at least one of the query words, and hands a search result for
+	 * each of them to the given consumer
+	 * @param current The snapshot to search
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in to the scores
+	 * @param visited An array with an element for each segment, which is filled in with the dot products of the pages
+	 * of that segment that were scored (which also says which pages those were)
+	 * @param matched Receives the search result for each page that was scored
+	 * @return The number of pages scored
+	 */
+	private int scoreQuery(Snapshot current, String query, boolean boost, ScoreAccumulator[] visited,
+			Consumer<SearchResultImpl> matched)
+	{
+		// Weigh the query's words as a MappedQuery would, in dictionary order (the order of their IDs in each
+		// segment), leaving out words that are not on any page
+		TermCounter tokens = TermCounter.count(query);
+		List<Integer> known = new ArrayList<Integer>();
+		for(int n = 0; n < tokens.size(); n++)
+		{
+			if(current.occurrence(tokens.term(n)) > 0)
+			{
+				known.add(n);
+			}
+		}
+		known.sort((a, b) -> tokens.term(a).compareTo(tokens.term(b)));
+		String[] words = new String[known.size()];
+		double[] idfs = new double[known.size()];
+		double[] weights = new double[known.size()];
+		double queryNormSquared = 0;
+		for(int w = 0; w < words.length; w++)
+		{
+			words[w] = tokens.term(known.get(w));
+			idfs[w] = current.idf(words[w]);
+			weights[w] = MathsHelper.calcTFIDF(tokens.count(known.get(w)) / (double)tokens.total(), idfs[w]);
+			queryNormSquared += Math.pow(weights[w], 2);
+		}
+		double queryNorm = Math.sqrt(queryNormSquared);
+		double[][] ranks = current.pageRanks();
+
+		int matches = 0;
+		for(int s = 0; s < current.segments.length; s++)
+		{
+			// Each segment's accumulator is sized from the postings it has to walk, as in WebIndex.scoreMatches()
+			WebIndex index = current.segments[s].index;
+			GlobalWordStat[] wordStats = new GlobalWordStat[words.length];
+			long postingCount = 0;
+			for(int w = 0; w < words.length; w++)
+			{
+				wordStats[w] = index.getGlobalWordStat(words[w]);
+				if(wordStats[w] != null)
+				{
+					postingCount += wordStats[w].getPostings().size();
+				}
+			}
+			ScoreAccumulator accumulators = new ScoreAccumulator((int)Math.min(postingCount, current.segments[s].size()));
+			for(int w = 0; w < words.length; w++)
+			{
+				if(wordStats[w] == null)
+				{
+					continue;
+				}
+				PostingIterator postings = wordStats[w].getPostings().iterator();
+				while(postings.next())
+				{
+					int ordinal = postings.ordinal();
+					if(current.replaced[s].get(ordinal))
+					{
+						continue;
+					}
+					double tf = postings.count() / (double)index.getPage(ordinal).getSize();
+					accumulators.add(ordinal, weights[w] * MathsHelper.calcTFIDF(tf, idfs[w]));
+				}
+			}
+			for(int m = 0; m < accumulators.size(); m++)
+			{
+				int ordinal = accumulators.ordinalAt(m);
+				double similarity = WebIndex.cosine(accumulators.scoreAt(m), queryNorm, current.norm(s, ordinal));
+				double boostFactor = boost ? ranks[s][ordinal] : 1;
+				matched.accept(result(index.getPage(ordinal), ranks[s][ordinal], similarity * boostFactor, boost));
+			}
+			visited[s] = accumulators;
+			matches += accumulators.size();
+		}
+		return matches;
+	}
+
+	/**
+	 * Creates a search result for a page
+	 * @param page The page
+	 * @param pageRank The page's PageRank in the whole index
+	 * @param score The page's score for the search
+	 * @param boost Whether PageRanks were factored into the score
+	 * @return The search result
+	 */
+	private static SearchResultImpl result(IndexedPage page, double pageRank, double score, boolean boost)
+	{
+		SearchResultImpl result = new SearchResultImpl(page.getTitle(), page.getURL(), pageRank, score);
+		result.setBoosted(boost);
+		return result;
+	}
+
+	@Override
+	public List<SearchResult> search(String query, boolean boost, int amount)
+	{
+		return Collections.unmodifiableList(this.searchTop(query, boost, amount));
+	}
+
+	@Override
+	public List<SearchResultPlus> searchPlus(String query, boolean boost, int amount)
+	{
+		return Collections.unmodifiableList(this.searchTop(query, boost, amount));
+	}
+
+	@Override
+	public String toString()
+	{
+		Snapshot current = this.snapshot;
+		return "SegmentedIndex: " + current.totalDocs + " pages in " + current.segments.length + " segments, "
+				+ this.getUnflushedDocs() + " not yet flushed (" + this.mergePolicy + ")";
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.util.Arrays;
+
+/**
+ * A TermCounter counts how many times each distinct term occurs in a document, as the terms come out of the
+ * Tokenizer. Terms are looked up directly from the tokenizer's buffer in an open-addressing hash table, so a String
+ * is only created the first time each distinct term is seen, rather than once per occurrence.
+ * <p/>
+ * The distinct terms are numbered in the order they were first seen, and can be read back in that order with
+ * <code>term()</code> and <code>count()</code>.
+ * @see Tokenizer
+ */
+public class TermCounter implements Tokenizer.TermConsumer
+{
+	/**
+	 * Initial number of hash table slots. This must be a power of two.
+	 */
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * The hash table. Each slot holds the number of a distinct term plus one, or zero if the slot is empty.
+	 */
+	private int[] slots;
+
+	/**
+	 * The distinct terms, by number
+	 */
+	private String[] terms;
+
+	/**
+	 * The hash code of each distinct term, by number
+	 */
+	private int[] hashes;
+
+	/**
+	 * The number of occurrences of each distinct term, by number
+	 */
+	private int[] counts;
+
+	/**
+	 * The number of distinct terms
+	 */
+	private int size;
+
+	/**
+	 * The total number of terms counted, including duplicates
+	 */
+	private int total;
+
+	/**
+	 * Creates a new, empty TermCounter
+	 */
+	public TermCounter()
+	{
+		this.slots = new int[INITIAL_CAPACITY];
+		this.terms = new String[INITIAL_CAPACITY / 2];
+		this.hashes = new int[INITIAL_CAPACITY / 2];
+		this.counts = new int[INITIAL_CAPACITY / 2];
+		this.size = 0;
+		this.total = 0;
+	}
+
+	/**
+	 * Tokenizes the given text and counts its terms
+	 * @param text The text to tokenize
+	 * @return A TermCounter holding the counts of the terms in the text
+	 */
+	public static TermCounter count(CharSequence text)
+	{
+		TermCounter counter = new TermCounter();
+		Tokenizer.tokenize(text, counter);
+		return counter;
+	}
+
+	/**
+	 * Counts one occurrence of a term
+	 * @param buffer A buffer holding the term, starting at position 0
+	 * @param length The length of the term
+	 */
+	@Override
+	public void accept(char[] buffer, int length)
+	{
+		this.total++;
+		// The same hash as String.hashCode() gives for the term
+		int hash = 0;
+		for(int i = 0; i < length; i++)
+		{
+			hash = 31 * hash + buffer[i];
+		}
+
+		int mask = this.slots.length - 1;
+		int slot = mix(hash) & mask;
+		while(this.slots[slot] != 0)
+		{
+			int n = this.slots[slot] - 1;
+			if(this.hashes[n] == hash && matches(this.terms[n], buffer, length))
+			{
+				this.counts[n]++;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+
+		// A term we have not seen before
+		if(this.size == this.terms.length)
+		{
+			this.terms = Arrays.copyOf(this.terms, this.size * 2);
+			this.hashes = Arrays.copyOf(this.hashes, this.size * 2);
+			this.counts = Arrays.copyOf(this.counts, this.size * 2);
+		}
+		this.terms[this.size] = new String(buffer, 0, length);
+		this.hashes[this.size] = hash;
+		this.counts[this.size] = 1;
+		this.size++;
+		this.slots[slot] = this.size;
+		if(this.size * 2 > this.slots.length)
+		{
+			this.rehash();
+		}
+	}
+
+	/**
+	 * Reports the number of distinct terms counted
+	 * @return The number of distinct terms
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Reports the total number of terms counted
+	 * @return The number of terms, including duplicates
+	 */
+	public int total()
+	{
+		return this.total;
+	}
+
+	/**
+	 * Retrieves a distinct term
+	 * @param n The number of the term, from 0 (the first term seen) to <code>size() - 1</code>
+	 * @return The term
+	 */
+	public String term(int n)
+	{
+		return this.terms[n];
+	}
+
+	/**
+	 * Retrieves the number of occurrences of a distinct term
+	 * @param n The number of the term, from 0 (the first term seen) to <code>size() - 1</code>
+	 * @return The number of times the term occurred
+	 */
+	public int count(int n)
+	{
+		return this.counts[n];
+	}
+
+	/**
+	 * Doubles the size of the hash table, and puts every distinct term back into it
+	 */
+	private void rehash()
+	{
+		this.slots = new int[this.slots.length * 2];
+		int mask = this.slots.length - 1;
+		for(int n = 0; n < this.size; n++)
+		{
+			int slot = mix(this.hashes[n]) & mask;
+			while(this.slots[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			this.slots[slot] = n + 1;
+		}
+	}
+
+	/**
+	 * Spreads the high bits of a hash code into the low bits, which are the ones used to pick a slot
+	 * @param hash The hash code
+	 * @return The mixed hash code
+	 */
+	private static int mix(int hash)
+	{
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Checks whether a String holds the same characters as a buffer
+	 * @param term The String
+	 * @param buffer The buffer
+	 * @param length The number of characters in the buffer
+	 * @return <code>true</code> if they hold the same characters
+	 */
+	private static boolean matches(String term, char[] buffer, int length)
+	{
+		if(term.length() != length)
+		{
+			return false;
+		}
+		for(int i = 0; i < length; i++)
+		{
+			if(term.charAt(i) != buffer[i])
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.util.Arrays;
+
+/**
+ * A helper class for splitting text into words ("terms"). A term is a run of ASCII letters and digits; everything
+ * else separates terms. Terms are converted to lower case.
+ * <p/>
+ * The text is scanned exactly once. Each term is lowercased as it is copied into a single reusable buffer, which is
+ * then handed to a TermConsumer, so tokenizing allocates nothing per term. It is up to the consumer to decide whether
+ * a term is worth turning into a String (see <code>TermCounter</code>, which only does so once per distinct term).
+ * @see TermCounter
+ */
+public class Tokenizer
+{
+	/**
+	 * A TermConsumer receives the terms found by the tokenizer, one at a time
+	 */
+	@FunctionalInterface
+	public interface TermConsumer
+	{
+		/**
+		 * Receives a term. The buffer is reused for the next term, so its contents must be copied if they are needed
+		 * after this method returns.
+		 * @param buffer A buffer holding the term, in lower case, starting at position 0
+		 * @param length The length of the term
+		 */
+		public void accept(char[] buffer, int length);
+	}
+
+	/**
+	 * Initial size of the term buffer. It grows if a longer term comes along.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 32;
+
+	/**
+	 * Splits the given text into terms and passes each one, in order, to the given consumer
+	 * @param text The text to tokenize
+	 * @param consumer The consumer to pass the terms to
+	 */
+	public static void tokenize(CharSequence text, TermConsumer consumer)
+	{
+		char[] buffer = new char[INITIAL_BUFFER_SIZE];
+		int length = 0;
+		int end = text.length();
+		for(int i = 0; i < end; i++)
+		{
+			char c = text.charAt(i);
+			if(c >= 'A' && c <= 'Z')
+			{
+				c = (char)(c + ('a' - 'A'));
+			}
+			else if(!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')))
+			{
+				// A separator: finish the current term, if there is one
+				if(length > 0)
+				{
+					consumer.accept(buffer, length);
+					length = 0;
+				}
+				continue;
+			}
+			if(length == buffer.length)
+			{
+				buffer = Arrays.copyOf(buffer, length * 2);
+			}
+			buffer[length++] = c;
+		}
+		if(length > 0)
+		{
+			consumer.accept(buffer, length);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A helper class containing static methods for reading and writing variable-length integers ("varints") and
+ * length-prefixed strings, as used by the binary index format.
+ * <p/>
+ * A varint stores a non-negative int in 7-bit groups, least significant group first, with the high bit of each byte
+ * set if more bytes follow. Small numbers (below 128) therefore take a single byte, which makes varints ideal for
+ * counts and for the gaps between sorted page ordinals.
+ */
+public class VarInt
+{
+	/**
+	 * Writes a non-negative int as a varint
+	 * @param out The destination
+	 * @param value The value to write. Must not be negative.
+	 * @throws IOException If the destination cannot be written to
+	 */
+	public static void write(DataOutput out, int value) throws IOException
+	{
+		while((value & ~0x7F) != 0)
+		{
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	/**
+	 * Reads a varint
+	 * @param in The source
+	 * @return The value read
+	 * @throws IOException If the source cannot be read, or does not contain a valid varint
+	 */
+	public static int read(DataInput in) throws IOException
+	{
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7)
+		{
+			byte b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Writes a String as a varint byte count followed by its UTF-8 bytes. Unlike <code>DataOutput.writeUTF()</code>,
+	 * this has no 64 KB limit.
+	 * @param out The destination
+	 * @param s The String to write
+	 * @throws IOException If the destination cannot be written to
+	 */
+	public static void writeString(DataOutput out, String s) throws IOException
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		write(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a String written by <code>writeString()</code>
+	 * @param in The source
+	 * @return The String read
+	 * @throws IOException If the source cannot be read, or the length of the string is negative
+	 */
+	public static String readString(DataInput in) throws IOException
+	{
+		return readString(in, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Reads a String written by <code>writeString()</code>, as long as it is no longer than a given number of bytes.
+	 * This is for reading files that might be corrupt: a bad length is reported rather than allocated.
+	 * @param in The source
+	 * @param maxLength The most bytes the encoded string may take up, e.g. the size of the file it is read from
+	 * @return The String read
+	 * @throws IOException If the source cannot be read, or the length of the string is negative or too long
+	 */
+	public static String readString(DataInput in, int maxLength) throws IOException
+	{
+		int length = read(in);
+		if(length < 0 || length > maxLength)
+		{
+			throw new IOException("Malformed string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -18,38 +18,58 @@
 package net.nicwatson.sandcrawler.common;
 
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Objects;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import cs1406z.test.SearchResult;
 import net.nicwatson.sandcrawler.crawl.Crawler;
 import net.nicwatson.sandcrawler.crawl.UnprocessedPage;
 import net.nicwatson.sandcrawler.frontend.CrawlProgressResponder;
 import net.nicwatson.sandcrawler.frontend.CrawlProgressResponder.ProgressStage;
+import net.nicwatson.sandcrawler.search.ResultCursor;
 import net.nicwatson.sandcrawler.search.SearchResultImpl;
 import net.nicwatson.sandcrawler.search.SearchResultPlus;
+import net.nicwatson.sandcrawler.search.TopResults;
 
 /**
  * The WebIndex object is the nexus of all web page and word incidence data. It stores two lookup maps: the <code>words</code> 
  * map for retrieving GlobalWordStats from word Strings, and the <code>pages</code> map for retrieving indexed pages from URL
  * strings. It also retains metadata such as the total number of words and documents indexed, and the time of indexing.
+ * <p/>
+ * Internally, words and pages are also numbered. Each word has a dense integer ID, which is its position in the sorted
+ * list of all the words in the index, and each page has an ordinal, which is its position in the order the pages were
+ * added. Documents store their words as sorted arrays of IDs, and each word's postings are arrays of page ordinals, so
+ * that scoring a search only has to walk int arrays.
+ * <p/>
  * It provides methods for nearly every operation that needs to be performed when searching, some of which pass through to
  * objects housed within the index maps.
+ * <p/>
+ * Once built, an index can be kept up to date one page at a time with <code>updatePage()</code> and
+ * <code>removePage()</code>, rather than being rebuilt from a whole new crawl. Values that depend on the number of
+ * pages (IDFs, vector norms and PageRanks) are not recalculated for every page then and there, but only when they are
+ * next needed. Those methods change the index in place, so they are only for an index that nothing is searching yet;
+ * <code>SegmentedIndex</code> uses them to fill its unflushed segment, which is only searched once it has been sealed.
+ * <p/>
+ * A WebIndex that has been saved can also be searched without loading it back onto the heap; see <code>MappedIndex</code>.
  * @author Nic
  *
  */
-public class WebIndex implements Serializable
+public class WebIndex implements SearchIndex, Serializable
 {
 	private static final long serialVersionUID = 1823164349044572242L;
 
@@ -80,22 +100,14 @@ public class WebIndex implements Serializable
 	 */
 	protected int totalDocs;
 	
-	/**
-	 * The number of total words known in this index. This is initialized to zero in the constructor, but
-	 * updated when the index contents are processed.
-	 */
-	protected int totalWords;
-
 	/**
 	 * A mapping of word keys (Strings) onto GlobalWordStat objects, which in turn track which pages contain the word.
 	 * <p/>
-	 * The declaration is abstract and implementation-agnostic, but LinkedHashMap is the recommended concrete
-	 * implementation type for both expedient O(1) lookups and efficient sequential iteration; while the preservation of
-	 * insertion order isn't essential to the program, some methods do need to iterate over the elements of the map.
-	 * Iterating over a LinkedHashMap will generally be more efficient because runtime will be proportional to the
-	 * number of entries rather than the hashtable's capacity.
+	 * The declaration is abstract and implementation-agnostic, but ConcurrentHashMap is the concrete implementation
+	 * type, because pages are parsed on several threads at once when an index is built, and every one of them needs to
+	 * look up (or add) the GlobalWordStats for its words. The order of the words in the map is not significant.
 	 * 
-	 * @see LinkedHashMap
+	 * @see ConcurrentHashMap
 	 */
 	Map<String, GlobalWordStat> words;
 
@@ -113,6 +125,57 @@ public class WebIndex implements Serializable
 	 */
 	Map<String, IndexedPage> pages;
 	
+	/**
+	 * The indexed pages, by ordinal. The slots of pages that have been removed or replaced are <code>null</code> until
+	 * the index is compacted.
+	 */
+	List<IndexedPage> pagesByOrdinal;
+	
+	/**
+	 * The GlobalWordStats of the words in the index, by ID. This is rebuilt by <code>numberTerms()</code> whenever
+	 * new words have been added.
+	 */
+	GlobalWordStat[] termsById;
+	
+	/**
+	 * The ID to give to the next new word. While pages are being parsed, words are given IDs in the order they are
+	 * first seen (which, with several threads parsing at once, is not predictable); <code>numberTerms()</code> then
+	 * renumbers them into sorted order.
+	 */
+	private final AtomicInteger nextTermId;
+	
+	/**
+	 * Incremented every time a page is added, replaced or removed after the index has been built. Cached values that
+	 * depend on the number of documents (IDFs, and the vector norms made from them) remember the generation they were
+	 * calculated for, and are calculated again when they are next requested once it has moved on.
+	 */
+	private volatile int generation;
+	
+	/**
+	 * The number of slots in <code>pagesByOrdinal</code> whose pages have been removed or replaced, and which are now
+	 * <code>null</code>. Their ordinals are reclaimed when the index is compacted.
+	 */
+	private int removedPages;
+	
+	/**
+	 * Whether the IDs in <code>termsById</code> are in sorted order. Words first seen by <code>updatePage()</code> are
+	 * given the next free IDs, so they are out of order until the index is compacted.
+	 */
+	private boolean termsSorted;
+	
+	/**
+	 * The words first seen by the page update in progress, in order of ID, or <code>null</code> if no update is in
+	 * progress. (While an index is being built, words only get into <code>termsById</code> through
+	 * <code>numberTerms()</code>.)
+	 */
+	private transient List<GlobalWordStat> addedTerms;
+	
+	/**
+	 * Whether the PageRanks need to be calculated again, because pages have been added, replaced or removed since
+	 * they were last calculated
+	 */
+	private volatile boolean ranksStale;
+	
 	/**
 	 * Initializes a new WebIndex. The constructor is public due to the need for it to be visible during deserialization.
 	 * However, consumers outside the class should use <code>build()</code> or <code>makeIndexFrom()</code> to create a WebIndex instance.
@@ -120,11 +183,27 @@ public class WebIndex implements Serializable
 	 * or methods can be accessed externally.
 	 */
 	public WebIndex() {
-		this.crawlTime = Calendar.getInstance().getTime();
+		this(Calendar.getInstance().getTime());
+	}
+	
+	/**
+	 * Initializes a new WebIndex with the given crawl time, as when reloading a saved index.
+	 * @param crawlTime The date/time at which the index was originally generated
+	 */
+	WebIndex(Date crawlTime)
+	{
+		this.crawlTime = crawlTime;
 		this.totalDocs = 0;
-		this.totalWords = 0;
-		this.words = new LinkedHashMap<>();
+		this.words = new ConcurrentHashMap<>();
 		this.pages = new LinkedHashMap<>();
+		this.pagesByOrdinal = new ArrayList<>();
+		this.termsById = new GlobalWordStat[0];
+		this.nextTermId = new AtomicInteger();
+		this.generation = 0;
+		this.removedPages = 0;
+		this.termsSorted = true;
+		this.addedTerms = null;
+		this.ranksStale = false;
 	}
 	
 	/**
@@ -157,9 +236,11 @@ public class WebIndex implements Serializable
 	 * <p/>
 	 * Building an index includes the following:
 	 * <ul>
-	 * <li/>Creating an IndexedPage for each UnprocessedPage
+	 * <li/>Creating an IndexedPage for each UnprocessedPage (copying it from the previous index if a recrawl found it
+	 * unchanged)
 	 * <li/>Populating each such IndexedPage with word count stats
-	 * <li/>Calculating TF and TF_IDF for each word in each such IndexedPage
+	 * <li/>Numbering the words in sorted order, and building the list of pages (postings) for each word
+	 * <li/>Calculating the norm of each IndexedPage's TF-IDF vector
 	 * <li/>Populating each IndexedPage's list of out-links using data from the corresponding UnprocessedPage
 	 * <li/>Synchronizing each IndexedPage's list of in-links by examining out-links to make sure they are reciprocal
 	 * <li/>Adding each unique word discovered to a global word list, with associated word count and IDF
@@ -183,14 +264,63 @@ public class WebIndex implements Serializable
 		}
 		
 		// STAGE 1. INITIALIZATION AND PARSING
-		// Iterate through the unprocessed pages
-		for (UnprocessedPage p : pages)
+		// Each unprocessed page is parsed into an IndexedPage and its word stats are calculated. Pages are independent
+		// of each other, so they are parsed in parallel; the only shared structure they touch is the word map, which is
+		// safe for concurrent use. Pages that a recrawl found unchanged are not parsed again; their words are copied
+		// across from the previous index.
+		UnprocessedPage[] unprocessed = pages.toArray(new UnprocessedPage[0]);
+		IndexedPage[] parsed = new IndexedPage[unprocessed.length];
+		IntStream.range(0, unprocessed.length).parallel().forEach(i ->
+		{
+			IndexedPage previous = unprocessed[i].getUnchangedPage();
+			parsed[i] = (previous != null)
+					? new IndexedPage(newIndex, previous, unprocessed[i])
+					: new IndexedPage(unprocessed[i].getURLString(), newIndex, unprocessed[i]);
+		});
+		// Parsed pages are added to the index, in crawl order
+		for (IndexedPage ip : parsed)
 		{
-			// Each unprocessed page is parsed into an IndexedPage and its word stats are calculated.
-			IndexedPage ip = new IndexedPage(p.getURLString(), newIndex, p);
-			// Parsed pages are added to the index
 			newIndex.insertPage(ip);
 		}
+		newIndex.finishBuild(listener);
+		return newIndex;
+	}
+	
+	/**
+	 * Builds and returns a new WebIndex out of pages that have already been indexed elsewhere, as when the segments of
+	 * a SegmentedIndex are merged. Each page's words, title and links are copied across rather than parsed again, and
+	 * then the index is finished just as <code>makeIndexFrom()</code> finishes one.
+	 * @param seedURL The URL of the page that was used to seed the web crawl
+	 * @param crawlTime The date/time at which the index was originally generated
+	 * @param pages The pages to copy, in the order they should be given ordinals. Their URLs must be unique.
+	 * @return The newly built WebIndex
+	 */
+	static WebIndex fromPages(String seedURL, Date crawlTime, List<IndexedPage> pages)
+	{
+		WebIndex newIndex = new WebIndex(crawlTime);
+		newIndex.seedURL = seedURL;
+		IndexedPage[] copied = new IndexedPage[pages.size()];
+		IntStream.range(0, copied.length).parallel().forEach(i -> copied[i] = new IndexedPage(newIndex, pages.get(i)));
+		for (IndexedPage ip : copied)
+		{
+			newIndex.insertPage(ip);
+		}
+		newIndex.finishBuild(null);
+		return newIndex;
+	}
+
+	/**
+	 * Finishes building an index, once all of its pages have been inserted and their words counted: numbers the words
+	 * and builds their postings, works out the IDFs and vector norms, records the in-links, and calculates the
+	 * PageRanks
+	 * @param listener An object to report progress to, or <b>null</b>
+	 */
+	private void finishBuild(CrawlProgressResponder listener)
+	{
+		// Now that every word is known, the words can be numbered in sorted order, and each word's postings built
+		// in page order
+		this.numberTerms();
+		this.buildPostings();
 
 		if(listener != null)
 		{
@@ -199,25 +329,32 @@ public class WebIndex implements Serializable
 		}
 		
 		// STAGE 2. CALCULATION AND LINK ANALYSIS
-		// For each page added to the index, we need to make sure its words' TF-IDF stats (and thus their TF and IDF stats)
-		// are calculated and up to date. We also generate a reciprocal in-link on the appropriate page for every out-link
-		// found.
-		for (IndexedPage doc : newIndex.getPages().values())
+		// For each page added to the index, we need to make sure its vector norm (and thus the IDFs of its words) is
+		// calculated and up to date. We also generate a reciprocal in-link on the appropriate page for every out-link
+		// found. The IDFs are worked out first, one word per task, so that no two threads ever race to cache the same one.
+		Arrays.stream(this.termsById).parallel().forEach(GlobalWordStat::getIDF);
+		IndexedPage[] indexed = this.pagesByOrdinal.toArray(new IndexedPage[0]);
+		IndexedPage[][] linkTargets = new IndexedPage[indexed.length][];
+		IntStream.range(0, indexed.length).parallel().forEach(i ->
 		{
-			for (DocumentWordStat w : doc.getWordList())
-			{
-				// We don't care what the value of the TF-IDF is right now, but calling getTFIDF will make sure that it
-				// gets calculated and cached in the DocumentWordStat so that it's ready to go when needed. The TFs and
-				// IDFs themselves will also be calculated and cached as part of the process.
-				w.getTFIDF();
-			}
+			IndexedPage doc = indexed[i];
+			// The document's vector norm can be worked out once and for all, so that searches only need to calculate
+			// dot products
+			doc.getVectorNorm();
 			
-			for (String s : doc.getOutLinks())
+			// Look up the pages this one links to, ready for recording the in-links below
+			linkTargets[i] = doc.getOutLinks().stream()
+					.map(this.getPages()::get)
+					.filter(Objects::nonNull)
+					.toArray(IndexedPage[]::new);
+		});
+		// Each page's in-links are shared with every page that links to it, so they are recorded on one thread, in the
+		// same order as the pages
+		for (int i = 0; i < indexed.length; i++)
+		{
+			for (IndexedPage target : linkTargets[i])
 			{
-				if (newIndex.getPages().containsKey(s))
-				{
-					newIndex.getPages().get(s).addInLink(doc.getURL());
-				}
+				target.addInLink(indexed[i].getURL());
 			}
 		}
 
@@ -227,15 +364,13 @@ public class WebIndex implements Serializable
 			listener.updateProgress(ProgressStage.RANKING, 0, 0);
 		}
 		
-		newIndex.crunchPageRanks(ALPHA, THRESHOLD);
+		this.crunchPageRanks(ALPHA, THRESHOLD);
 		
 		if(listener != null)
 		{
 			// Inform the progress listener that we have completed processing the index.
 			listener.updateProgress(ProgressStage.DONE, 0, 0);
 		}
-		
-		return newIndex;
 	}
 	
 	/**
@@ -265,13 +400,23 @@ public class WebIndex implements Serializable
 		return this.totalDocs;
 	}
 	
+	/**
+	 * Reports the generation of the index, which is incremented every time a page is added, replaced or removed after
+	 * the index has been built
+	 * @return The generation of the index
+	 */
+	public int getGeneration()
+	{
+		return this.generation;
+	}
+	
 	/**
 	 * Returns the number of total words known to the index.
 	 * @return The number of total words known to the index.
 	 */
 	public int getTotalWords()
 	{
-		return this.totalWords;
+		return this.words.size();
 	}
 	
 	/**
@@ -294,13 +439,53 @@ public class WebIndex implements Serializable
 	}
 
 	/**
-	 * Determines whether the given word exists in the global word index
+	 * Looks up the ID of the given word
+	 * @param word String representing the word to find
+	 * @return The ID of the word, or -1 if the word is not indexed (or is no longer on any page, since the pages it
+	 * was on have been removed)
+	 */
+	public int getTermId(String word)
+	{
+		GlobalWordStat wordStat = this.words.get(word);
+		if(wordStat == null || wordStat.getGlobalOccurrence() == 0)
+		{
+			return -1;
+		}
+		return wordStat.getId();
+	}
+	
+	/**
+	 * Retrieves the GlobalWordStat info for the word with the given ID
+	 * @param id The ID of the word
+	 * @return The <code>GlobalWordStat</code> for the word
+	 */
+	public GlobalWordStat getTermStat(int id)
+	{
+		return this.termsById[id];
+	}
+	
+	/**
+	 * Retrieves the page with the given ordinal
+	 * @param ordinal The ordinal of the page
+	 * @return The <code>IndexedPage</code> with the given ordinal, or <code>null</code> if that page has been removed
+	 * (or replaced) since the index was last compacted
+	 */
+	public IndexedPage getPage(int ordinal)
+	{
+		return this.pagesByOrdinal.get(ordinal);
+	}
+
+	/**
+	 * Determines whether the given word exists in the global word index. A word that is no longer on any page, since
+	 * the pages it was on have been removed, is not known, even though it stays in the word map until the index is
+	 * compacted.
 	 * @param word String representing the word to find
 	 * @return <code>true</code> if the word is already in the index, <code>false</code> otherwise.
 	 */
 	public boolean knowsWord(String word)
 	{
-		return this.words.containsKey(word);
+		GlobalWordStat wordStat = this.words.get(word);
+		return wordStat != null && wordStat.getGlobalOccurrence() > 0;
 	}
 	
 	/**
@@ -362,68 +547,116 @@ public class WebIndex implements Serializable
 	
 	/**
 	 * Prompts the index to "learn" a new word by creating a new GlobalWordStat entry for it, if
-	 * none yet exists.
+	 * none yet exists. The word cannot be looked up by ID until <code>numberTerms()</code> has been called.
 	 * @param word The word (a String) to put into the index
 	 * @return <code>true</code> if the word was previously unknown.
 	 */
 	public boolean learnWord(String word)
 	{
-		if(!this.knowsWord(word))
-		{
-			learnWordUnchecked(new GlobalWordStat(word, this));
-			return true;
-		}
-		return false;
-	}
-	
-	/**
-	 * Prompts the index to "learn" a new word from a given GloalWordStat by putting it in the
-	 * wordmap, if it is not already present.
-	 * @param word The word (a GlobalWordStat) to put into the index
-	 * @return <code>true</code> if the word was previously unknown.
-	 */
-	public boolean learnWord(GlobalWordStat wordStat)
-	{
-		if(!this.knowsWord(wordStat.getWord()))
+		if(!this.words.containsKey(word))
 		{
-			this.learnWordUnchecked(wordStat);
+			learnWordUnchecked(this.newTerm(word));
 			return true;
 		}
 		return false;
 	}
 	
 	/**
-	 * Inserts a given GlobalWordStat into the wordmap, and increments the total unique word count,
-	 * without checking first if the word is already in the map. This method is declared <b>private</b> 
-	 * to prevent erroneously replacing existing word stats or incrementing the word counter. Outside
+	 * Inserts a given GlobalWordStat into the wordmap, without checking first if the word is already in the map.
+	 * This method is declared <b>private</b> to prevent erroneously replacing existing word stats. Outside
 	 * of the class, consumers will always access this via the safety-checking <code>learnWord()</code> methods.
 	 * @param wordStat The word (a GlobalWordStat) to put into the wordmap
 	 */
 	private void learnWordUnchecked(GlobalWordStat wordStat)
 	{
 		this.words.put(wordStat.getWord(), wordStat);
-		this.totalWords++;
 	}
 	
 	/**
 	 * A convenience method that checks if the given word is in the wordmap. If it is, the existing GlobalWordStat
 	 * is looked up and returned. If not, a new GlobalWordStat is created, put in the wordmap, and returned.
+	 * This is safe to call from several threads at once: each word only ever gets one GlobalWordStat, and one ID.
 	 * @param wordStat The word (a GlobalWordStat) to put into the wordmap
 	 * @return The GlobalWordStat (retrieved or new) for the given word
 	 */
 	public GlobalWordStat getOrCreateGlobalWordStat(String word)
 	{
-		if(!this.knowsWord(word))
+		GlobalWordStat wordStat = this.words.get(word);
+		if(wordStat == null)
+		{
+			wordStat = this.words.computeIfAbsent(word, this::newTerm);
+		}
+		return wordStat;
+	}
+	
+	/**
+	 * Creates the GlobalWordStat for a word the index has not seen before, giving it the next free ID. If a page
+	 * update is in progress, the word is also remembered, so that it can be put in <code>termsById</code>.
+	 * @param word The new word
+	 * @return The new GlobalWordStat
+	 */
+	private GlobalWordStat newTerm(String word)
+	{
+		GlobalWordStat wordStat = new GlobalWordStat(word, this, this.nextTermId.getAndIncrement());
+		List<GlobalWordStat> added = this.addedTerms;
+		if(added != null)
+		{
+			added.add(wordStat);
+		}
+		return wordStat;
+	}
+
+	/**
+	 * Renumbers the words in the index so that their IDs are in sorted order, with no gaps, and rebuilds the table of
+	 * words by ID. Every page's words are renumbered to match. Words that already have the right IDs (as when a saved
+	 * index is reloaded) are left alone.
+	 */
+	void numberTerms()
+	{
+		String[] terms = this.words.keySet().toArray(new String[0]);
+		Arrays.sort(terms);
+		int[] remap = new int[this.nextTermId.get()];
+		GlobalWordStat[] byId = new GlobalWordStat[terms.length];
+		boolean renumbered = false;
+		for (int id = 0; id < terms.length; id++)
+		{
+			GlobalWordStat wordStat = this.words.get(terms[id]);
+			remap[wordStat.getId()] = id;
+			renumbered |= wordStat.getId() != id;
+			wordStat.setId(id);
+			byId[id] = wordStat;
+		}
+		this.termsById = byId;
+		this.termsSorted = true;
+		this.nextTermId.set(terms.length);
+		if (renumbered)
+		{
+			this.pagesByOrdinal.parallelStream().forEach(page -> page.remapTerms(remap));
+		}
+	}
+	
+	/**
+	 * Builds the postings of every word from the words on each page. The postings are added in ascending order of page
+	 * ordinal, and then trimmed to size. This must be done after <code>numberTerms()</code>.
+	 */
+	void buildPostings()
+	{
+		for (IndexedPage page : this.pagesByOrdinal)
+		{
+			for (int position = 0; position < page.getUniqueWords(); position++)
+			{
+				this.termsById[page.termIdAt(position)].addPosting(page.getOrdinal(), page.countAt(position));
+			}
+		}
+		for (GlobalWordStat wordStat : this.termsById)
 		{
-			GlobalWordStat newWord = new GlobalWordStat(word, this);
-			this.learnWordUnchecked(newWord);
-			return newWord;
+			wordStat.trimPostings();
 		}
-		return this.getGlobalWordStat(word);
 	}
 
 	/**
-	 * Inserts the given IndexedPage document into the pagemap, and increments the count of total documents
+	 * Inserts the given IndexedPage document into the pagemap, gives it the next ordinal, and increments the count of
+	 * total documents
 	 * @param doc The IndexedPage to put into the index
 	 * @return <code>true</code> if the document was not already present in the pagemap
 	 */
@@ -432,12 +665,216 @@ public class WebIndex implements Serializable
 		if (!this.hasPage(doc.getURL()))
 		{
 			this.pages.put(doc.getURL(), doc);
+			doc.ordinal = this.pagesByOrdinal.size();
+			this.pagesByOrdinal.add(doc);
 			this.totalDocs++;
 			return true;
 		}
 		return false;
 	}
 	
+	/**
+	 * Adds the given page to this index, which has already been built, or replaces the indexed page with the same
+	 * URL. Only the page itself is parsed (or, if a recrawl found it unchanged, copied from the index it was found
+	 * in), and only the postings of its words and the links to and from it are touched, so the cost is proportional to
+	 * the size of the page rather than of the index:
+	 * <ul>
+	 * <li/>The page is given a new ordinal, after every other page, and added to the postings of each of its words.
+	 * Words the index has never seen are given the next free IDs.
+	 * <li/>If the page replaces an older version, the older version is removed as by <code>removePage()</code>, and
+	 * the new version inherits its in-links. Otherwise, any indexed pages that already link to the URL are found.
+	 * <li/>The page is recorded as an in-link of each indexed page it links to.
+	 * <li/>The generation of the index is incremented, so IDFs and vector norms are calculated again as they are
+	 * needed, and the PageRanks are calculated again before the next search that uses them.
+	 * </ul>
+	 * Updates must not run at the same time as searches of this index (an index that is being searched is changed
+	 * through a <code>SegmentedIndex</code> instead); several updates may safely be made from different threads, since
+	 * they take turns.
+	 * @param page The downloaded page to add
+	 * @return The newly indexed page
+	 */
+	public synchronized IndexedPage updatePage(UnprocessedPage page)
+	{
+		String url = page.getURLString();
+		IndexedPage doc;
+		this.addedTerms = new ArrayList<GlobalWordStat>();
+		try
+		{
+			IndexedPage unchanged = page.getUnchangedPage();
+			doc = (unchanged != null) ? new IndexedPage(this, unchanged, page) : new IndexedPage(url, this, page);
+			if(!this.addedTerms.isEmpty())
+			{
+				GlobalWordStat[] grown = Arrays.copyOf(this.termsById, this.termsById.length + this.addedTerms.size());
+				for(GlobalWordStat wordStat : this.addedTerms)
+				{
+					grown[wordStat.getId()] = wordStat;
+				}
+				this.termsById = grown;
+				this.termsSorted = false;
+			}
+		}
+		finally
+		{
+			this.addedTerms = null;
+		}
+		
+		IndexedPage previous = this.pages.remove(url);
+		if(previous != null)
+		{
+			this.detachPage(previous);
+		}
+		this.insertPage(doc);
+		for(int position = 0; position < doc.getUniqueWords(); position++)
+		{
+			this.termsById[doc.termIdAt(position)].addPosting(doc.getOrdinal(), doc.countAt(position));
+		}
+		
+		// Links to the page. A link from the page to itself is left to be found with the rest of its out-links below,
+		// since the new version might not have it.
+		if(previous != null)
+		{
+			for(String link : previous.getInLinks())
+			{
+				if(!link.equals(url))
+				{
+					doc.addInLink(link);
+				}
+			}
+		}
+		else
+		{
+			for(IndexedPage other : this.pages.values())
+			{
+				if(other != doc && other.linksTo(url))
+				{
+					doc.addInLink(other.getURL());
+				}
+			}
+		}
+		// Links from the page
+		for(String link : doc.getOutLinks())
+		{
+			IndexedPage target = this.pages.get(link);
+			if(target != null)
+			{
+				target.addInLink(url);
+			}
+		}
+		
+		this.pagesChanged();
+		return doc;
+	}
+	
+	/**
+	 * Removes the page with the given URL from this index. The page's slot in the ordinals is left empty, and its
+	 * postings stay where they are (though they no longer count towards the global occurrence of its words) until
+	 * the index is compacted, which happens by itself once empty slots outnumber pages. The page is no longer
+	 * recorded as an in-link of the pages it linked to. As with <code>updatePage()</code>, the generation of the
+	 * index is incremented, and the PageRanks will be calculated again.
+	 * @param url The URL of the page to remove
+	 * @return <code>true</code> if the page was in the index
+	 */
+	public synchronized boolean removePage(String url)
+	{
+		IndexedPage page = this.pages.remove(url);
+		if(page == null)
+		{
+			return false;
+		}
+		this.detachPage(page);
+		this.pagesChanged();
+		return true;
+	}
+	
+	/**
+	 * Takes a page that has just been taken out of the pagemap out of the rest of the index: empties its slot in the
+	 * ordinals, discounts its postings, and removes it from the in-links of the pages it links to
+	 * @param page The page to take out
+	 */
+	private void detachPage(IndexedPage page)
+	{
+		this.pagesByOrdinal.set(page.getOrdinal(), null);
+		this.removedPages++;
+		this.totalDocs--;
+		for(int position = 0; position < page.getUniqueWords(); position++)
+		{
+			this.termsById[page.termIdAt(position)].removePosting();
+		}
+		for(String link : page.getOutLinks())
+		{
+			IndexedPage target = this.pages.get(link);
+			if(target != null)
+			{
+				target.removeInLink(page.getURL());
+			}
+		}
+	}
+	
+	/**
+	 * Records that pages have been added, replaced or removed: the cached IDFs, vector norms and PageRanks are now
+	 * stale. If empty slots have come to outnumber pages, the index is compacted.
+	 */
+	private void pagesChanged()
+	{
+		this.generation++;
+		this.ranksStale = true;
+		if(this.removedPages > this.totalDocs)
+		{
+			this.compact();
+		}
+	}
+	
+	/**
+	 * Compacts the index after pages have been added, replaced or removed: the pages are given consecutive ordinals
+	 * again (in the same order), words that are no longer on any page are forgotten, the words are renumbered in
+	 * sorted order, and the postings are built again. IDFs and vector norms do not change, so they stay cached. This
+	 * does nothing if no pages have been removed and no new words added since the index was built or last compacted.
+	 */
+	synchronized void compact()
+	{
+		if(this.removedPages == 0 && this.termsSorted)
+		{
+			return;
+		}
+		List<IndexedPage> live = new ArrayList<IndexedPage>(this.totalDocs);
+		for(IndexedPage page : this.pagesByOrdinal)
+		{
+			if(page != null)
+			{
+				page.ordinal = live.size();
+				live.add(page);
+			}
+		}
+		this.pagesByOrdinal = live;
+		this.removedPages = 0;
+		this.words.values().removeIf(wordStat -> wordStat.getGlobalOccurrence() == 0);
+		this.numberTerms();
+		for(GlobalWordStat wordStat : this.termsById)
+		{
+			wordStat.clearPostings();
+		}
+		this.buildPostings();
+	}
+	
+	/**
+	 * Calculates the PageRanks again if pages have been added, replaced or removed since they were last calculated.
+	 * This is done before every search that might use them.
+	 */
+	void ensurePageRanks()
+	{
+		if(this.ranksStale)
+		{
+			synchronized(this)
+			{
+				if(this.ranksStale)
+				{
+					this.crunchPageRanks(ALPHA, THRESHOLD);
+					this.ranksStale = false;
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Reports the inverse document frequency (IDF) of the given word within this index. If the word is indexed, this method
 	 * looks up the corresponding <code>GlobalWordStat</code> and calls its <code>getIDF()</code> method. If the word is
@@ -501,6 +938,7 @@ public class WebIndex implements Serializable
 	{
 		if(this.hasPage(url))
 		{
+			this.ensurePageRanks();
 			return this.getPage(url).getPageRank();
 		}
 		return -1;
@@ -539,7 +977,9 @@ public class WebIndex implements Serializable
 		
 	/**
 	 * Calculates the cosine similarity between two given IndexedDocuments. Typically, one of them will represent a
-	 * search query, while the other represents a search hit.
+	 * search query, while the other represents a search hit. Only words in the first document can contribute to the
+	 * dot product, but both documents are normalized by the length of their whole TF-IDF vectors. The words the two
+	 * documents have in common are found by merging their sorted arrays of word IDs.
 	 * 
 	 * @param q The first document to compare (the search query)
 	 * @param d The second document ot compare (a web page found by the search)
@@ -549,103 +989,187 @@ public class WebIndex implements Serializable
 	public double cosineSimilarity(MappedDocument q, MappedDocument d)
 	{
 		double sum_qd = 0;
-		double sum_q2 = 0;
-		double sum_d2 = 0;
-		for (DocumentWordStat word : q.getWordList())
+		int i = 0;
+		int j = 0;
+		while (i < q.getUniqueWords() && j < d.getUniqueWords())
 		{
-			sum_q2 += Math.pow(q.getTFIDF(word.getWord()), 2);
-			
-			if (d.containsWord(word.getWord()))
+			int qId = q.termIdAt(i);
+			int dId = d.termIdAt(j);
+			if (qId < dId)
 			{
-				sum_qd += (q.getTFIDF(word.getWord()) * d.getTFIDF(word.getWord()));
-				sum_d2 += Math.pow(d.getTFIDF(word.getWord()), 2);
+				i++;
+			}
+			else if (qId > dId)
+			{
+				j++;
+			}
+			else
+			{
+				sum_qd += (q.tfidfAt(i++) * d.tfidfAt(j++));
 			}
 		}
-		if(sum_d2 == 0 || sum_q2 == 0)
+		return cosine(sum_qd, q.getVectorNorm(), d.getVectorNorm());
+	}
+	
+	/**
+	 * Finishes a cosine similarity calculation from the dot product of two vectors and their norms
+	 * @param dotProduct The dot product of the two vectors
+	 * @param normA The norm of the first vector
+	 * @param normB The norm of the second vector
+	 * @return The cosine similarity, or zero if either vector has no length
+	 */
+	static double cosine(double dotProduct, double normA, double normB)
+	{
+		if(normA == 0 || normB == 0)
 		{
 			return 0;
 		}
-		return sum_qd / ((Math.sqrt(sum_d2) * Math.sqrt(sum_q2)));
+		return dotProduct / (normA * normB);
 	}
 
 	/**
-	 * Calculates the page ranks for all the IndexedPages in the index
+	 * Calculates the page ranks for all the IndexedPages in the index. The link graph is first copied into a compact
+	 * PageRankGraph, so that each iteration only has to visit the links that actually exist.
 	 * @param alpha The alpha value to use
 	 * @param convergence The Euclidean distance threshold between iterations at which to stop the calculation 
+	 * @see PageRankGraph
 	 */
 	public void crunchPageRanks(double alpha, double convergence)
 	{
-		// Matrices and vectors for temporarily storing intermediate calculations
-		double [][] pageRankMatrix = new double[totalDocs][totalDocs];		// Used to gradually build the transition probability matrix
-		IndexedPage [] allDocs = new IndexedPage[totalDocs];				// An index of all documents, for looking up in-links
+		IndexedPage [] allDocs = new IndexedPage[totalDocs];				// An index of all documents, by ordinal
 		allDocs = pages.values().toArray(allDocs);
 
-		for (int i = 0; i < totalDocs; i++)		// For each row in the matrix
-		{ 
-			int rowTally = 0;
-			LinkedList<Integer> revisitables = new LinkedList<>();
-			for (int j = 0; j < totalDocs; j++)	// Iterate along the row
+		double[] vector = PageRankGraph.fromPages(allDocs).rank(alpha, convergence);
+		
+		// Update every document with its calculated PageRank
+		for (int i = 0; i < totalDocs; i++)
+		{
+			allDocs[i].setPageRank(vector[i]);
+		}
+	}
+
+	/**
+	 * Scores the pages that contain at least one word of the given query, term-at-a-time. Rather than comparing the
+	 * query against every page in the index, this walks the postings of each query word in turn, in order of word ID,
+	 * and accumulates each page's partial dot product with the query in a ScoreAccumulator, which is sized from the
+	 * lengths of the postings, so the cost of a search does not depend on the size of the index. The page vector
+	 * norms were calculated when the index was built, so nothing else needs to be summed. Pages that contain none of
+	 * the query words are never visited; their cosine similarity is zero.
+	 * <p/>
+	 * The scores are identical to those of <code>cosineSimilarity()</code>. Postings of pages that have been removed
+	 * since the index was last compacted are skipped.
+	 * @param queryDoc The search query, already parsed into a MappedDocument
+	 * @return A map from each matching page to its cosine similarity with the query
+	 */
+	public Map<IndexedPage, Double> scoreMatches(MappedDocument queryDoc)
+	{
+		// For each page visited, accumulate its dot product with the query. No page can be visited more often than
+		// there are postings to walk.
+		long postingCount = 0;
+		for (int position = 0; position < queryDoc.getUniqueWords(); position++)
+		{
+			postingCount += this.getTermStat(queryDoc.termIdAt(position)).getPostings().size();
+		}
+		ScoreAccumulator accumulators = new ScoreAccumulator((int)Math.min(postingCount, this.pagesByOrdinal.size()));
+		for (int position = 0; position < queryDoc.getUniqueWords(); position++)
+		{
+			double q_w = queryDoc.tfidfAt(position);
+			GlobalWordStat word = this.getTermStat(queryDoc.termIdAt(position));
+			double idf = word.getIDF();
+			PostingIterator postings = word.getPostings().iterator();
+			while (postings.next())
 			{
-				// We don't actually need a separate binary adjacency matrix if we do lookups into allDocs array for in-links on the fly
-				boolean adjacent = allDocs[i].linksTo(allDocs[j]);
-				if (adjacent)
+				int ordinal = postings.ordinal();
+				IndexedPage page = this.pagesByOrdinal.get(ordinal);
+				if (page == null)
 				{
-					// Equivalent to counting the number of 1's in a row. 
-					rowTally++;
-					// We keep a list of the places were there was an adjacency, so we don't have to iterate back over the entire row later.
-					revisitables.add(j);
+					continue;
 				}
-				// Instead of adding alpha/N to every cell at the end, we can start with it as an intial value 
-				pageRankMatrix[i][j] = (alpha / totalDocs);
+				double tf = postings.count() / (double)page.getSize();
+				accumulators.add(ordinal, q_w * MathsHelper.calcTFIDF(tf, idf));
 			}
-			if (rowTally > 0)
+		}
+		
+		double queryNorm = queryDoc.getVectorNorm();
+		Map<IndexedPage, Double> scores = new HashMap<IndexedPage, Double>(accumulators.size() * 2);
+		for (int m = 0; m < accumulators.size(); m++)
+		{
+			IndexedPage page = this.pagesByOrdinal.get(accumulators.ordinalAt(m));
+			scores.put(page, cosine(accumulators.scoreAt(m), queryNorm, page.getVectorNorm()));
+		}
+		return scores;
+	}
+
+	/**
+	 * Finds the pages that contain every word of the given query. The postings of the query words are intersected
+	 * starting from the rarest word: each candidate page is looked for in the other words' postings with
+	 * <code>PostingIterator.advance()</code>, which skips over blocks of postings that cannot contain it, so the
+	 * cost depends mostly on the length of the shortest list.
+	 * @param query The search query string
+	 * @return A list of the URLs of the pages that contain every query word, in the order the pages were indexed. If
+	 * the query contains a word that is not indexed, or no words at all, the list is empty.
+	 */
+	public List<String> getPagesContainingAll(String query)
+	{
+		TermCounter terms = TermCounter.count(query);
+		GlobalWordStat[] words = new GlobalWordStat[terms.size()];
+		for (int n = 0; n < terms.size(); n++)
+		{
+			words[n] = this.getGlobalWordStat(terms.term(n));
+			if (words[n] == null)
 			{
-				// There was at least one '1' in this row
-				for (Integer num : revisitables)
+				return List.of();
+			}
+		}
+		if (words.length == 0)
+		{
+			return List.of();
+		}
+		Arrays.sort(words, (a, b) -> Integer.compare(a.getGlobalOccurrence(), b.getGlobalOccurrence()));
+		
+		PostingIterator[] postings = new PostingIterator[words.length];
+		for (int n = 0; n < words.length; n++)
+		{
+			postings[n] = words[n].getPostings().iterator();
+		}
+		List<String> matches = new ArrayList<String>();
+		int candidate = 0;
+		while (postings[0].advance(candidate))
+		{
+			candidate = postings[0].ordinal();
+			boolean inAll = true;
+			for (int n = 1; n < postings.length; n++)
+			{
+				if (!postings[n].advance(candidate))
 				{
-					// Divide each '1' by the tally of 1's in the row
-					// We can also multiply in the (1 - alpha) at this point.
-					pageRankMatrix[i][num] += (1.0 - alpha) / (double) rowTally;
+					// One of the lists has run out, so there can be no more matches
+					return matches;
+				}
+				if (postings[n].ordinal() > candidate)
+				{
+					// Nothing before this page can match, so it becomes the next candidate
+					candidate = postings[n].ordinal();
+					inAll = false;
+					break;
 				}
 			}
-			else
+			if (inAll)
 			{
-				// No 1's in this row. This is a sink.
-				for (int num = 0; num < totalDocs; num++)
+				IndexedPage page = this.pagesByOrdinal.get(candidate);
+				if (page != null)
 				{
-					// Replace each transition probability with 1/N.
-					// We can also multiply in the (1 - alpha) at this point.
-					pageRankMatrix[i][num] += (1.0 - alpha) / (double) totalDocs;
+					matches.add(page.getURL());
 				}
+				candidate++;
 			}
 		}
-
-		// Initialize the PageRank vector
-		double vector[] = new double[totalDocs]; 
-		Arrays.fill(vector, 1 / (double)totalDocs);
-		
-		// To calculate Euclidean distance between iterations, we'll need to keep track of the previous vector at each stage
-		double prevVector[];
-
-		int i = 1;
-		do
-		{
-			prevVector = Arrays.copyOf(vector, totalDocs);									// Save a copy of the previous vector
-			vector = MathsHelper.vectorMultiplySquareMatrix(prevVector, pageRankMatrix);	// Multiply vector by transition matrix
-			i++;
-		} while (MathsHelper.euclideanDistance(vector, prevVector) > convergence);
-		// The threshold has now been reached and we can stop.
-		
-		// Update every document with its calculated PageRank
-		for (i = 0; i < totalDocs; i++)
-		{
-			allDocs[i].setPageRank(vector[i]);
-		}
+		return matches;
 	}
 
 	/**
 	 * Performs a search of the index with the given query, and builds a TreeSet of all the pages sorted by their score
-	 * for the search.
+	 * for the search. Only pages that contain a query word are actually scored (see <code>scoreMatches()</code>); every
+	 * other page is given a score of zero without further calculation.
 	 * @param query The search query string
 	 * @param boost Whether PageRanks should be factored in when sorting the results
 	 * @return A TreeSet of all the indexed pages, sorted by their score for the search
@@ -653,19 +1177,26 @@ public class WebIndex implements Serializable
 	public TreeSet<SearchResultPlus> searchTree(String query, boolean boost)
 	{
 		// Parse the query string into an IndexedQuery
-		MappedDocument queryDoc = new MappedQuery(this, MappedDocument.tokenize(query));
+		this.ensurePageRanks();
+		MappedDocument queryDoc = new MappedQuery(this, TermCounter.count(query));
+		Map<IndexedPage, Double> matches = this.scoreMatches(queryDoc);
 
 		TreeSet<SearchResultPlus> sortedResults = new TreeSet<SearchResultPlus>();
 
 		for (IndexedPage candidate : this.getPages().values())
 		{
-			// Score each page and then put it into the tree for sorting
-			double boostFactor = 1;
-			if(boost)
+			// Look up each page's score and then put it into the tree for sorting
+			double score = 0;
+			Double similarity = matches.get(candidate);
+			if(similarity != null)
 			{
-				boostFactor = candidate.getPageRank();
+				double boostFactor = 1;
+				if(boost)
+				{
+					boostFactor = candidate.getPageRank();
+				}
+				score = similarity * boostFactor;
 			}
-			double score = cosineSimilarity(queryDoc, candidate) * boostFactor;
 			SearchResultPlus result = new SearchResultImpl(candidate, score);
 			result.setBoosted(boost);
 			sortedResults.add(result);
@@ -699,6 +1230,97 @@ public class WebIndex implements Serializable
 		return List.copyOf(searchTree(query, boost));
 	}
 	
+	/**
+	 * Performs a search of the index with the given query, and selects the best <code>amount</code> results without
+	 * sorting (or even building a result for) every page in the index. The scored pages from <code>scoreMatches()</code>
+	 * are run through a bounded heap; pages with no match only need to be considered if they could still make the cut,
+	 * i.e. if there are fewer than <code>amount</code> matches, or the worst result kept so far rounds to a score of
+	 * zero so that the tie is broken by title. The results are ordered exactly as in <code>searchTree()</code>.
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @param amount The max number of search results to select
+	 * @return A list of the best results, best first (empty if <code>amount</code> is 0 or less)
+	 * @see TopResults
+	 */
+	public List<SearchResultImpl> searchTop(String query, boolean boost, int amount)
+	{
+		if(amount <= 0)
+		{
+			return List.of();
+		}
+		this.ensurePageRanks();
+		MappedDocument queryDoc = new MappedQuery(this, TermCounter.count(query));
+		Map<IndexedPage, Double> matches = this.scoreMatches(queryDoc);
+		TopResults<SearchResultImpl> top = new TopResults<SearchResultImpl>(amount);
+		
+		for (Map.Entry<IndexedPage, Double> match : matches.entrySet())
+		{
+			top.offer(matchResult(match.getKey(), match.getValue(), boost));
+		}
+		
+		if(matches.size() < this.totalDocs)
+		{
+			for (IndexedPage candidate : this.getPages().values())
+			{
+				if(matches.containsKey(candidate))
+				{
+					continue;
+				}
+				SearchResultImpl result = new SearchResultImpl(candidate, 0);
+				result.setBoosted(boost);
+				if(top.isFull() && top.worst().compareScoreTo(result) < 0)
+				{
+					// Everything we kept outscores zero, so none of the remaining pages can get in
+					break;
+				}
+				top.offer(result);
+			}
+		}
+		return top.drainSorted();
+	}
+	
+	/**
+	 * Performs a search of the index with the given query, returning a cursor over every page that contains at least
+	 * one of the query words. The pages are scored just as in <code>searchTop()</code>, but instead of the best few
+	 * being selected, all of them are handed to a ResultCursor, which ranks them a page at a time as they are asked
+	 * for. Pages that contain none of the query words all score zero, so they are left out.
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @return A cursor over the matching pages, best first
+	 * @see ResultCursor
+	 */
+	public ResultCursor<SearchResultImpl> searchCursor(String query, boolean boost)
+	{
+		this.ensurePageRanks();
+		MappedDocument queryDoc = new MappedQuery(this, TermCounter.count(query));
+		Map<IndexedPage, Double> matches = this.scoreMatches(queryDoc);
+		List<SearchResultImpl> results = new ArrayList<SearchResultImpl>(matches.size());
+		for (Map.Entry<IndexedPage, Double> match : matches.entrySet())
+		{
+			results.add(matchResult(match.getKey(), match.getValue(), boost));
+		}
+		return new ResultCursor<SearchResultImpl>(results);
+	}
+	
+	/**
+	 * Creates a search result for a page that matched a query
+	 * @param page The page
+	 * @param similarity The cosine similarity of the page with the query
+	 * @param boost Whether PageRanks should be factored in to the score
+	 * @return The search result
+	 */
+	private static SearchResultImpl matchResult(IndexedPage page, double similarity, boolean boost)
+	{
+		double boostFactor = 1;
+		if(boost)
+		{
+			boostFactor = page.getPageRank();
+		}
+		SearchResultImpl result = new SearchResultImpl(page, similarity * boostFactor);
+		result.setBoosted(boost);
+		return result;
+	}
+
 	/**
 	 * Performs a search of the index with the given query, returning a List of SearchResult views of the results,
 	 * which is used primarily by the test suite. The size of the returned list is capped at the specified amount.
@@ -710,8 +1332,7 @@ public class WebIndex implements Serializable
 	 */	
 	public List<SearchResult> search(String query, boolean boost, int amount)
 	{
-		List<SearchResult> masterList = this.search(query, boost);
-		return masterList.subList(0, Math.min(amount, masterList.size()));
+		return Collections.unmodifiableList(this.searchTop(query, boost, amount));
 	}
 
 	/**
@@ -725,8 +1346,7 @@ public class WebIndex implements Serializable
 	 */	
 	public List<SearchResultPlus> searchPlus(String query, boolean boost, int amount)
 	{
-		List<SearchResultPlus> masterList = this.searchPlus(query, boost);
-		return masterList.subList(0, Math.min(amount, masterList.size()));
+		return Collections.unmodifiableList(this.searchTop(query, boost, amount));
 	}
 
 	/**
@@ -740,20 +1360,18 @@ public class WebIndex implements Serializable
 	}
 	
 	/**
-	 * Saves the given indexed crawl information (WebIndex) to the specified data file
+	 * Saves the given indexed crawl information (WebIndex) to the specified data file, in the binary index format
 	 * @param index The WebIndex to save
 	 * @param path The file to which the data should be saved.
 	 * @return <code>true</code> if the operation was successful
+	 * @see IndexFile
 	 */
 	public static boolean saveIndexTo(WebIndex index, String path)
 	{
 		System.out.println("\n\nWriting output file...");
 		try
 		{
-			FileOutputStream fos = new FileOutputStream(path);
-			ObjectOutputStream oos = new ObjectOutputStream(fos);
-			oos.writeObject(index);
-			oos.close();
+			IndexFile.write(index, path);
 			System.out.println("Done!");
 		}
 		catch (FileNotFoundException e)
@@ -771,6 +1389,18 @@ public class WebIndex implements Serializable
 		return true;
 	}
 	
+	/**
+	 * Loads indexed crawl information (WebIndex) from the specified data file, which must be in the binary index format
+	 * @param path The file from which the data should be loaded
+	 * @return The loaded WebIndex
+	 * @throws IOException If the file cannot be read or is not a valid index file
+	 * @see IndexFile
+	 */
+	public static WebIndex loadIndexFrom(String path) throws IOException
+	{
+		return IndexFile.read(path);
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,284 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A BloomSeenSet keeps track of seen URLs in a Bloom filter: a bit array in which each URL sets a handful of bits
+ * chosen by hashing it. A URL whose bits are all set is taken to have been seen. This needs only about 10 bits per
+ * URL for a 1% false-positive rate, against well over 100 bytes for a set of strings, but it is probabilistic: now
+ * and then a new URL is mistaken for one already seen, and so is never crawled. It never makes the opposite mistake.
+ * <p/>
+ * The filter is sized for an expected number of URLs. So that the false-positive rate does not climb if more URLs
+ * than that turn up, a full filter is not overfilled; instead a new filter twice the size is added alongside it,
+ * with half the false-positive rate of the last, so that the rate of the whole set never exceeds the one asked for.
+ * <p/>
+ * The rate actually achieved can be estimated at any time from how full the filters are, with
+ * <code>falsePositiveRate()</code>.
+ */
+public class BloomSeenSet implements SeenSet
+{
+	/**
+	 * The default false-positive rate
+	 */
+	public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.001;
+
+	/**
+	 * The default number of URLs the first filter is sized for
+	 */
+	public static final int DEFAULT_EXPECTED_URLS = 100000;
+
+	/**
+	 * A single Bloom filter, sized for a fixed number of URLs at a fixed false-positive rate
+	 */
+	private static class Filter
+	{
+		/**
+		 * The bits of the filter
+		 */
+		final long[] bits;
+
+		/**
+		 * Number of bits in the filter
+		 */
+		final long numBits;
+
+		/**
+		 * Number of bits set for each URL
+		 */
+		final int numHashes;
+
+		/**
+		 * Number of URLs the filter is sized for
+		 */
+		final int capacity;
+
+		/**
+		 * Number of URLs added to the filter
+		 */
+		int count;
+
+		/**
+		 * Number of bits currently set
+		 */
+		long bitsSet;
+
+		/**
+		 * Creates an empty filter with the optimal number of bits and hashes for the given capacity and rate
+		 * @param capacity Number of URLs to size the filter for
+		 * @param rate False-positive rate wanted once the filter holds <code>capacity</code> URLs
+		 */
+		Filter(int capacity, double rate)
+		{
+			double ln2 = Math.log(2);
+			long words = (long)Math.ceil(-capacity * Math.log(rate) / (ln2 * ln2) / 64);
+			this.bits = new long[(int)Math.max(1, Math.min(words, Integer.MAX_VALUE - 8))];
+			this.numBits = this.bits.length * 64L;
+			this.numHashes = Math.max(1, (int)Math.round((double)this.numBits / capacity * ln2));
+			this.capacity = capacity;
+			this.count = 0;
+			this.bitsSet = 0;
+		}
+
+		/**
+		 * Indicates whether every bit for a fingerprint is set
+		 * @param fingerprint The URL's fingerprint
+		 * @return <code>true</code> if the URL appears to be in the filter
+		 */
+		boolean contains(long fingerprint)
+		{
+			long h1 = fingerprint;
+			long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+			for(int i = 0; i < this.numHashes; i++)
+			{
+				long bit = Long.remainderUnsigned(h1 + i * h2, this.numBits);
+				if((this.bits[(int)(bit >>> 6)] & (1L << bit)) == 0)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Sets every bit for a fingerprint
+		 * @param fingerprint The URL's fingerprint
+		 */
+		void add(long fingerprint)
+		{
+			long h1 = fingerprint;
+			long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+			for(int i = 0; i < this.numHashes; i++)
+			{
+				long bit = Long.remainderUnsigned(h1 + i * h2, this.numBits);
+				int word = (int)(bit >>> 6);
+				if((this.bits[word] & (1L << bit)) == 0)
+				{
+					this.bits[word] |= 1L << bit;
+					this.bitsSet++;
+				}
+			}
+			this.count++;
+		}
+
+		/**
+		 * Estimates the filter's current false-positive rate from the proportion of its bits that are set
+		 * @return The probability that a URL not in the filter appears to be
+		 */
+		double falsePositiveRate()
+		{
+			return Math.pow((double)this.bitsSet / this.numBits, this.numHashes);
+		}
+	}
+
+	/**
+	 * The filters, oldest first. New URLs are only ever added to the last.
+	 */
+	private final List<Filter> filters;
+
+	/**
+	 * The false-positive rate asked for
+	 */
+	private final double targetRate;
+
+	/**
+	 * Number of URLs added
+	 */
+	private int size;
+
+	/**
+	 * Creates a new, empty BloomSeenSet with the default expected size and false-positive rate
+	 */
+	public BloomSeenSet()
+	{
+		this(DEFAULT_EXPECTED_URLS, DEFAULT_FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * Creates a new, empty BloomSeenSet
+	 * @param expectedUrls Number of URLs the set is expected to hold. Memory for this many is allocated up front;
+	 * more are handled by adding filters.
+	 * @param falsePositiveRate The highest acceptable probability of mistaking a new URL for a seen one (between 0
+	 * and 1, exclusive)
+	 */
+	public BloomSeenSet(int expectedUrls, double falsePositiveRate)
+	{
+		if(!(falsePositiveRate > 0 && falsePositiveRate < 1))
+		{
+			throw new IllegalArgumentException("False-positive rate must be between 0 and 1: " + falsePositiveRate);
+		}
+		this.filters = new ArrayList<Filter>();
+		this.targetRate = falsePositiveRate;
+		this.size = 0;
+		this.filters.add(new Filter(Math.max(1, expectedUrls), falsePositiveRate / 2));
+	}
+
+	@Override
+	public boolean add(String url)
+	{
+		long fingerprint = FingerprintSeenSet.fingerprint(url);
+		if(this.contains(fingerprint))
+		{
+			return false;
+		}
+		Filter last = this.filters.get(this.filters.size() - 1);
+		if(last.count >= last.capacity)
+		{
+			// The rates of successive filters halve, so that together they add up to no more than the target
+			double rate = this.targetRate / (2L << this.filters.size());
+			last = new Filter((int)Math.min(Integer.MAX_VALUE, last.capacity * 2L), rate);
+			this.filters.add(last);
+		}
+		last.add(fingerprint);
+		this.size++;
+		return true;
+	}
+
+	@Override
+	public boolean contains(String url)
+	{
+		return this.contains(FingerprintSeenSet.fingerprint(url));
+	}
+
+	/**
+	 * Indicates whether a fingerprint appears in any of the filters
+	 * @param fingerprint The URL's fingerprint
+	 * @return <code>true</code> if the URL appears to have been seen
+	 */
+	private boolean contains(long fingerprint)
+	{
+		for(Filter filter : this.filters)
+		{
+			if(filter.contains(fingerprint))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int size()
+	{
+		return this.size;
+	}
+
+	@Override
+	public long memoryUsage()
+	{
+		long bytes = 0;
+		for(Filter filter : this.filters)
+		{
+			bytes += filter.bits.length * 8L;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Estimates the set's current false-positive rate, from how full each of its filters is. This is the probability
+	 * that a new URL would be mistaken for one already seen.
+	 * @return The estimated false-positive rate
+	 */
+	@Override
+	public double falsePositiveRate()
+	{
+		double allNegative = 1;
+		for(Filter filter : this.filters)
+		{
+			allNegative *= 1 - filter.falsePositiveRate();
+		}
+		return 1 - allNegative;
+	}
+
+	/**
+	 * Getter for the false-positive rate the set was created with
+	 * @return The highest false-positive rate the set is meant to reach
+	 */
+	public double getTargetRate()
+	{
+		return this.targetRate;
+	}
+
+	@Override
+	public String toString()
+	{
+		return SeenSet.describe(this) + " (target " + this.targetRate + ", " + this.filters.size() + " filters)";
+	}
+}
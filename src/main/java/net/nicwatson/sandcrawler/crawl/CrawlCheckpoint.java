@@ -0,0 +1,542 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.nicwatson.sandcrawler.common.VarInt;
+
+/**
+ * A CrawlCheckpoint is an append-only log of a crawl's progress, from which a crashed crawl can be resumed without
+ * fetching again the pages it had already fetched. Every event that changes the crawl's state is appended to the log
+ * as it happens: a URL being queued for the first time, a page being fetched (along with its raw text), a fetch
+ * failing, and a page being given up on. Every so often the Crawler marks a checkpoint, which flushes the log and
+ * forces it out to the disk, so that a checkpoint survives an operating system crash or power cut as well as a crash
+ * of the program.
+ * <p/>
+ * When a crawl is resumed, the log is replayed up to the last checkpoint mark; anything after it (which may be
+ * incomplete, if the crash happened while it was being written) is cut off, and the crawl carries on appending to the
+ * same file. The pages that had been fetched come back with their raw text, the URLs that had been queued but not
+ * fetched (including those that were in flight at the time of the crash) go back in the frontier, and failure counts
+ * are restored. The links of the fetched pages are offered to the frontier again, in case the crash happened between
+ * a page being logged and its links being queued.
+ * <p/>
+ * The file starts with a header: magic number (int), format version (int) and the seed URL (string). Each record after
+ * that is a type byte followed by its fields; URLs and page text are strings in the <code>VarInt</code> encoding.
+ * @see Crawler#resume(String)
+ * @see VarInt
+ */
+public class CrawlCheckpoint
+{
+	/**
+	 * Marks the start of a checkpoint file: "SCCP" in ASCII
+	 */
+	public static final int MAGIC = 0x53434350;
+
+	/**
+	 * The version of the format written by this class. Files with any other version number are rejected.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Record type: a URL was queued for the first time. Followed by the URL.
+	 */
+	private static final byte QUEUED = 1;
+
+	/**
+	 * Record type: a page was fetched. Followed by the URL and the raw text of the page.
+	 */
+	private static final byte FETCHED = 2;
+
+	/**
+	 * Record type: a fetch failed, and may be retried. Followed by the URL.
+	 */
+	private static final byte FAILED = 3;
+
+	/**
+	 * Record type: a page failed too many times and was given up on. Followed by the URL.
+	 */
+	private static final byte GAVE_UP = 4;
+
+	/**
+	 * Record type: a checkpoint. Everything before it is known to have been written out in full.
+	 */
+	private static final byte MARK = 5;
+
+	/**
+	 * Size of the I/O buffers used when reading or writing
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The path of the log file
+	 */
+	private final String path;
+
+	/**
+	 * The log file itself, under the buffering in <code>out</code>, for forcing written records out to the disk
+	 */
+	private final FileOutputStream file;
+
+	/**
+	 * The open log file, or <b>null</b> once it has been closed (or could not be written to)
+	 */
+	private DataOutputStream out;
+
+	/**
+	 * Opens a log for appending
+	 * @param path The path of the log file
+	 * @param file The log file, opened for writing
+	 */
+	private CrawlCheckpoint(String path, FileOutputStream file)
+	{
+		this.path = path;
+		this.file = file;
+		this.out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE));
+	}
+
+	/**
+	 * Starts a new log for a crawl, replacing the file if it exists
+	 * @param path The path of the log file
+	 * @param seedUrl The seed URL of the crawl
+	 * @return The new log, ready to be appended to
+	 * @throws IOException If the file cannot be written
+	 */
+	public static CrawlCheckpoint create(String path, String seedUrl) throws IOException
+	{
+		CrawlCheckpoint log = new CrawlCheckpoint(path, new FileOutputStream(path));
+		try
+		{
+			log.out.writeInt(MAGIC);
+			log.out.writeInt(VERSION);
+			VarInt.writeString(log.out, seedUrl);
+		}
+		catch(IOException e)
+		{
+			log.out.close();
+			throw e;
+		}
+		log.mark();
+		return log;
+	}
+
+	/**
+	 * Records that a URL was queued for the first time
+	 * @param url The URL
+	 */
+	public synchronized void queued(String url)
+	{
+		this.append(QUEUED, url, null);
+	}
+
+	/**
+	 * Records that a page was fetched
+	 * @param page The page, with its raw text
+	 */
+	public synchronized void fetched(UnprocessedPage page)
+	{
+		this.append(FETCHED, page.getURLString(), page.getRawText());
+	}
+
+	/**
+	 * Records that a fetch failed
+	 * @param url The URL of the page
+	 */
+	public synchronized void failed(String url)
+	{
+		this.append(FAILED, url, null);
+	}
+
+	/**
+	 * Records that a page was given up on
+	 * @param url The URL of the page
+	 */
+	public synchronized void gaveUp(String url)
+	{
+		this.append(GAVE_UP, url, null);
+	}
+
+	/**
+	 * Marks a checkpoint, flushes the log, and waits until the operating system has written it to the disk. A resumed
+	 * crawl picks up from the last checkpoint.
+	 */
+	public synchronized void mark()
+	{
+		if(this.out == null)
+		{
+			return;
+		}
+		try
+		{
+			this.out.writeByte(MARK);
+			this.out.flush();
+			this.file.getFD().sync();
+		}
+		catch(IOException e)
+		{
+			this.fail(e);
+		}
+	}
+
+	/**
+	 * Marks a final checkpoint and closes the log
+	 */
+	public synchronized void close()
+	{
+		this.mark();
+		if(this.out != null)
+		{
+			try
+			{
+				this.out.close();
+			}
+			catch(IOException e)
+			{
+				this.fail(e);
+			}
+			this.out = null;
+		}
+	}
+
+	/**
+	 * Appends a record to the log
+	 * @param type The record type
+	 * @param url The URL the record is about
+	 * @param text The page text, or <b>null</b> if the record type has none
+	 */
+	private void append(byte type, String url, String text)
+	{
+		if(this.out == null)
+		{
+			return;
+		}
+		try
+		{
+			this.out.writeByte(type);
+			VarInt.writeString(this.out, url);
+			if(text != null)
+			{
+				VarInt.writeString(this.out, text);
+			}
+		}
+		catch(IOException e)
+		{
+			this.fail(e);
+		}
+	}
+
+	/**
+	 * Reports an error writing to the log, and stops logging. The crawl itself carries on; it just can no longer be
+	 * resumed past the last checkpoint.
+	 * @param e The error
+	 */
+	private void fail(IOException e)
+	{
+		System.err.println("Error while writing crawl checkpoint " + this.path + ". Checkpointing stopped.");
+		e.printStackTrace(System.err);
+		try
+		{
+			this.out.close();
+		}
+		catch(IOException ignored)
+		{
+			// Already reported a problem with this file
+		}
+		this.out = null;
+	}
+
+	/**
+	 * Reads the seed URL of the crawl that a log belongs to, without replaying the log
+	 * @param path The path of the log file
+	 * @return The seed URL
+	 * @throws IOException If the file cannot be read, or is not a valid checkpoint file
+	 */
+	public static String readSeedUrl(String path) throws IOException
+	{
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path))))
+		{
+			return readHeader(in, path);
+		}
+	}
+
+	/**
+	 * Reads and checks the header of a log
+	 * @param in The log, positioned at its start
+	 * @param path The path of the log file, for error messages
+	 * @return The seed URL of the crawl
+	 * @throws IOException If the file cannot be read, or is not a valid checkpoint file of the current version
+	 */
+	private static String readHeader(DataInputStream in, String path) throws IOException
+	{
+		if(in.readInt() != MAGIC)
+		{
+			throw new IOException(path + " is not a Sandcrawler crawl checkpoint file");
+		}
+		int version = in.readInt();
+		if(version != VERSION)
+		{
+			throw new IOException("Checkpoint file " + path + " has format version " + version + " but version " + VERSION + " is required");
+		}
+		return VarInt.readString(in);
+	}
+
+	/**
+	 * Replays a log up to its last checkpoint, cuts off anything after that, and reopens it for appending
+	 * @param path The path of the log file
+	 * @return The state of the crawl as of the last checkpoint
+	 * @throws IOException If the file cannot be read or written, or is not a valid checkpoint file
+	 */
+	static State resume(String path) throws IOException
+	{
+		State state;
+		long end;
+		try(CountingInputStream counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE));
+				DataInputStream in = new DataInputStream(counter))
+		{
+			state = new State(readHeader(in, path));
+
+			// Records are applied to the state only once the checkpoint that follows them has been read
+			List<Record> pending = new ArrayList<Record>();
+			end = -1;
+			try
+			{
+				while(true)
+				{
+					byte type = in.readByte();
+					if(type == MARK)
+					{
+						for(Record record : pending)
+						{
+							state.apply(record);
+						}
+						pending.clear();
+						end = counter.count;
+						continue;
+					}
+					if(type < QUEUED || type > GAVE_UP)
+					{
+						// Garbage, as left by a crash in the middle of a record
+						break;
+					}
+					String url = VarInt.readString(in);
+					String text = (type == FETCHED) ? VarInt.readString(in) : null;
+					pending.add(new Record(type, url, text));
+				}
+			}
+			catch(EOFException e)
+			{
+				// The end of the log, possibly in the middle of a record
+			}
+			if(end < 0)
+			{
+				throw new IOException("Checkpoint file " + path + " does not contain a checkpoint");
+			}
+		}
+
+		try(RandomAccessFile file = new RandomAccessFile(path, "rw"))
+		{
+			file.setLength(end);
+		}
+		state.log = new CrawlCheckpoint(path, new FileOutputStream(path, true));
+		return state;
+	}
+
+	/**
+	 * The state of a crawl, as replayed from its log
+	 */
+	static class State
+	{
+		/**
+		 * The seed URL of the crawl
+		 */
+		final String seedUrl;
+
+		/**
+		 * Every URL that was queued, in the order it was first queued
+		 */
+		final Set<String> seen;
+
+		/**
+		 * The pages that were fetched or given up on, by URL, in the order that happened
+		 */
+		final Map<String, UnprocessedPage> pages;
+
+		/**
+		 * How many times each URL has failed
+		 */
+		final Map<String, Integer> failures;
+
+		/**
+		 * Number of pages that were fetched successfully
+		 */
+		int fetched;
+
+		/**
+		 * The log, reopened for appending
+		 */
+		CrawlCheckpoint log;
+
+		/**
+		 * Creates an empty state
+		 * @param seedUrl The seed URL of the crawl
+		 */
+		State(String seedUrl)
+		{
+			this.seedUrl = seedUrl;
+			this.seen = new LinkedHashSet<String>();
+			this.pages = new LinkedHashMap<String, UnprocessedPage>();
+			this.failures = new HashMap<String, Integer>();
+			this.fetched = 0;
+		}
+
+		/**
+		 * Applies a record to the state
+		 * @param record The record
+		 */
+		private void apply(Record record)
+		{
+			try
+			{
+				switch(record.type)
+				{
+					case QUEUED:
+						this.seen.add(record.url);
+						break;
+					case FETCHED:
+						this.pages.put(record.url, new UnprocessedPage(record.url, record.text));
+						this.fetched++;
+						break;
+					case FAILED:
+						this.failures.merge(record.url, 1, Integer::sum);
+						break;
+					case GAVE_UP:
+						this.pages.put(record.url, new UnprocessedPage(record.url));
+						break;
+				}
+			}
+			catch(MalformedURLException e)
+			{
+				// Only URLs that parsed in the first place are ever logged as pages
+				System.err.println(record.url + " is a malformed URL. Ignoring.");
+			}
+		}
+	}
+
+	/**
+	 * A record read from the log, waiting for the checkpoint that follows it
+	 */
+	private static class Record
+	{
+		/**
+		 * The record type
+		 */
+		final byte type;
+
+		/**
+		 * The URL the record is about
+		 */
+		final String url;
+
+		/**
+		 * The page text, for a FETCHED record; otherwise <b>null</b>
+		 */
+		final String text;
+
+		/**
+		 * Creates a record
+		 * @param type The record type
+		 * @param url The URL the record is about
+		 * @param text The page text, for a FETCHED record
+		 */
+		Record(byte type, String url, String text)
+		{
+			this.type = type;
+			this.url = url;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * An input stream that counts the bytes read through it, so that the position of each checkpoint is known
+	 */
+	private static class CountingInputStream extends FilterInputStream
+	{
+		/**
+		 * Number of bytes read so far
+		 */
+		long count;
+
+		/**
+		 * Wraps the given stream
+		 * @param in The stream to count
+		 */
+		CountingInputStream(InputStream in)
+		{
+			super(in);
+			this.count = 0;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if(b >= 0)
+			{
+				this.count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int n = super.read(b, off, len);
+			if(n > 0)
+			{
+				this.count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException
+		{
+			long skipped = super.skip(n);
+			this.count += skipped;
+			return skipped;
+		}
+	}
+}
@@ -0,0 +1,667 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CrawlFrontier is the thread-safe work queue shared by all of a Crawler's fetch workers. It combines the queue
+ * of URLs waiting to be visited with the set of every URL that has ever been queued, so that each URL is handed out
+ * only once no matter how many pages link to it.
+ * <p/>
+ * To be polite to the servers being crawled, the frontier keeps a separate FIFO queue for every host. A host will
+ * never have more than <code>hostConcurrency</code> of its pages in flight at the same time, and successive requests
+ * to the same host are spaced at least <code>hostDelay</code> milliseconds apart. Hosts take turns in round-robin
+ * order, so while one busy host is cooling down the workers keep themselves occupied with pages from the others.
+ * <p/>
+ * Workers claim URLs with <code>take()</code> and must hand each one back with <code>release()</code> once they are
+ * done with it. <code>take()</code> blocks while no host is currently eligible but there is still work queued or in
+ * flight (since pages in flight may yet contribute new links), and returns <b>null</b> once the frontier is exhausted
+ * or closed.
+ * <p/>
+ * Hosts are forgotten once they have nothing queued or in flight and their delay has expired, so a crawl that
+ * wanders across many hosts does not accumulate a queue for each of them.
+ * <p/>
+ * For very large crawls, the frontier can be given a directory to spill to. The host queues then hold at most
+ * <code>memoryBudget</code> URLs between them. Once that budget is used up, newly queued URLs go to a single overflow
+ * queue that is written out to segment files on disk (see <code>SpillingQueue</code>), and they are read back in,
+ * oldest first, whenever the host queues run down to half the budget. Segment files are written and read ahead of
+ * time by a background thread, so workers never wait on the disk while holding the frontier's lock. The set of URLs
+ * already queued is a pluggable SeenSet; a FingerprintSeenSet keeps it compact enough that crawl size is bounded by
+ * disk space rather than heap.
+ */
+public class CrawlFrontier
+{
+	/**
+	 * Default maximum number of requests that may be in flight to a single host at the same time
+	 */
+	public static final int DEFAULT_HOST_CONCURRENCY = 4;
+	
+	/**
+	 * Default minimum time (milliseconds) between the starts of two requests to the same host
+	 */
+	public static final long DEFAULT_HOST_DELAY = 10;
+
+	/**
+	 * Default number of URLs per segment file when spilling the frontier to disk
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 1024;
+
+	/**
+	 * Default maximum number of URLs held in memory by the host queues, when spilling the frontier to disk
+	 */
+	public static final int DEFAULT_MEMORY_BUDGET = 65536;
+	
+	/**
+	 * The per-host queues of pages to be crawled, looked up by host name
+	 */
+	private Map<String, HostQueue> hosts;
+	
+	/**
+	 * Hosts that currently have at least one URL queued, in the round-robin order in which they will be considered
+	 * by <code>take()</code>
+	 */
+	private Queue<HostQueue> rotation;
+
+	/**
+	 * Hosts that had nothing left queued or in flight when last released, to be forgotten once their delay expires
+	 */
+	private final Queue<HostQueue> idle;
+
+	/**
+	 * Keeps track of all URLs that have been previously queued, to avoid adding anything to the
+	 * queue unnecessarily
+	 */
+	protected SeenSet previouslyQueued;
+
+	/**
+	 * URLs queued while the host queues were at their memory budget, or <b>null</b> if the frontier is kept entirely
+	 * in memory
+	 */
+	private final SpillingQueue overflow;
+
+	/**
+	 * Background thread that writes and reads the overflow's segment files, or <b>null</b> if there is no overflow
+	 */
+	private final ThreadPoolExecutor segmentIO;
+
+	/**
+	 * Maximum number of URLs the host queues hold between them before new URLs go to the overflow
+	 */
+	private final int memoryBudget;
+
+	/**
+	 * Number of URLs currently held by the host queues
+	 */
+	private int resident;
+
+	/**
+	 * Set while the background thread is reading the overflow's oldest segment back in
+	 */
+	private boolean loading;
+
+	/**
+	 * Cleared if a segment cannot be written, after which the overflow stays in memory
+	 */
+	private boolean spilling;
+
+	/**
+	 * Maximum number of requests that may be in flight to a single host at the same time
+	 */
+	private final int hostConcurrency;
+	
+	/**
+	 * Minimum time (nanoseconds) between the starts of two requests to the same host
+	 */
+	private final long hostDelayNanos;
+	
+	/**
+	 * Total number of URLs waiting across all host queues and the overflow
+	 */
+	private int queued;
+
+	/**
+	 * Number of URLs that have been handed out by <code>take()</code> but not yet released
+	 */
+	private int inFlight;
+
+	/**
+	 * Once the frontier is closed, no more URLs are handed out
+	 */
+	private boolean closed;
+
+	/**
+	 * Initializes a new, empty frontier with the default politeness settings
+	 */
+	public CrawlFrontier()
+	{
+		this(DEFAULT_HOST_CONCURRENCY, DEFAULT_HOST_DELAY);
+	}
+	
+	/**
+	 * Initializes a new, empty frontier with the given politeness settings
+	 * @param hostConcurrency Maximum number of requests in flight to a single host at once (at least 1)
+	 * @param hostDelay Minimum time in milliseconds between the starts of two requests to the same host (0 for none)
+	 */
+	public CrawlFrontier(int hostConcurrency, long hostDelay)
+	{
+		this(hostConcurrency, hostDelay, new ExactSeenSet(), null, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Initializes a new, empty frontier with the given politeness settings and storage
+	 * @param hostConcurrency Maximum number of requests in flight to a single host at once (at least 1)
+	 * @param hostDelay Minimum time in milliseconds between the starts of two requests to the same host (0 for none)
+	 * @param seen The (empty) set in which to keep track of queued URLs
+	 * @param spillDirectory Directory to which the frontier spills its segment files, which is created if it does not
+	 * exist; or <b>null</b> to keep all queues entirely in memory
+	 * @param segmentSize Number of URLs per segment file
+	 */
+	public CrawlFrontier(int hostConcurrency, long hostDelay, SeenSet seen, Path spillDirectory, int segmentSize)
+	{
+		this(hostConcurrency, hostDelay, seen, spillDirectory, segmentSize, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * Initializes a new, empty frontier with the given politeness settings, storage and memory budget
+	 * @param hostConcurrency Maximum number of requests in flight to a single host at once (at least 1)
+	 * @param hostDelay Minimum time in milliseconds between the starts of two requests to the same host (0 for none)
+	 * @param seen The (empty) set in which to keep track of queued URLs
+	 * @param spillDirectory Directory to which the frontier spills its segment files, which is created if it does not
+	 * exist; or <b>null</b> to keep all queues entirely in memory
+	 * @param segmentSize Number of URLs per segment file. Besides its budget, the frontier holds up to one segment in
+	 * memory while filling it, plus any that are waiting to be written or have just been read back in.
+	 * @param memoryBudget Maximum number of URLs the host queues hold between them before the frontier starts
+	 * spilling (at least 1; ignored if there is no spill directory)
+	 */
+	public CrawlFrontier(int hostConcurrency, long hostDelay, SeenSet seen, Path spillDirectory, int segmentSize,
+			int memoryBudget)
+	{
+		this.hosts = new HashMap<String, HostQueue>();
+		this.rotation = new LinkedList<HostQueue>();
+		this.idle = new ArrayDeque<HostQueue>();
+		this.previouslyQueued = seen;
+		if(spillDirectory != null)
+		{
+			this.overflow = new SpillingQueue(spillDirectory, segmentSize);
+			this.segmentIO = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					task ->
+					{
+						Thread thread = new Thread(task, "Crawl frontier I/O");
+						thread.setDaemon(true);
+						return thread;
+					});
+			this.segmentIO.allowCoreThreadTimeOut(true);		// Don't leave a thread behind once the crawl is over
+		}
+		else
+		{
+			this.overflow = null;
+			this.segmentIO = null;
+		}
+		this.memoryBudget = Math.max(1, memoryBudget);
+		this.resident = 0;
+		this.loading = false;
+		this.spilling = true;
+		this.hostConcurrency = Math.max(1, hostConcurrency);
+		this.hostDelayNanos = Math.max(0, hostDelay) * 1000000L;
+		this.queued = 0;
+		this.inFlight = 0;
+		this.closed = false;
+	}
+
+	/**
+	 * Adds the given URL to the back of its host's queue, unless it has been queued before
+	 * @param url The URL to queue
+	 * @return <code>true</code> if the URL was new to the frontier and has been queued
+	 */
+	public synchronized boolean offer(String url)
+	{
+		if(this.closed || !this.previouslyQueued.add(url))
+		{
+			return false;
+		}
+		this.enqueue(url);
+		return true;
+	}
+
+	/**
+	 * Records a URL as having been queued, without queueing it, as when restoring a page that was already visited
+	 * before a crawl was resumed
+	 * @param url The URL
+	 * @return <code>true</code> if the URL was new to the frontier
+	 */
+	public synchronized boolean markSeen(String url)
+	{
+		return this.previouslyQueued.add(url);
+	}
+
+	/**
+	 * Replaces the set in which the frontier keeps track of queued URLs. This can only be done while the frontier is
+	 * still unused.
+	 * @param seen The (empty) set to use
+	 * @return <code>true</code> if the set was replaced; <code>false</code> if URLs have already been queued
+	 */
+	public synchronized boolean setSeenSet(SeenSet seen)
+	{
+		if(this.previouslyQueued.size() > 0)
+		{
+			System.err.println("Cannot change the seen-set of a frontier that is already in use");
+			return false;
+		}
+		this.previouslyQueued = seen;
+		return true;
+	}
+
+	/**
+	 * Puts a URL that has already been queued once (e.g. after a failed fetch) back on the queue for another try
+	 * @param url The URL to queue again
+	 */
+	public synchronized void retry(String url)
+	{
+		if(!this.closed)
+		{
+			this.enqueue(url);
+		}
+	}
+	
+	/**
+	 * Appends a URL to its host's queue, or to the overflow if the host queues are at their memory budget
+	 * @param url The URL to queue
+	 */
+	private void enqueue(String url)
+	{
+		// Once anything has gone to the overflow, everything must, so that each host's URLs stay in order
+		if(this.overflow != null && (!this.overflow.isEmpty() || this.resident >= this.memoryBudget))
+		{
+			SpillingQueue.Segment sealed = this.overflow.add(url);
+			if(sealed != null && this.spilling)
+			{
+				this.segmentIO.execute(() -> this.write(sealed));
+			}
+		}
+		else
+		{
+			this.admit(url);
+		}
+		this.queued++;
+		this.notifyAll();
+	}
+
+	/**
+	 * Appends a URL to its host's queue, putting the host into the rotation if its queue was empty
+	 * @param url The URL, which is already counted in <code>queued</code>
+	 */
+	private void admit(String url)
+	{
+		HostQueue host = this.hosts.computeIfAbsent(hostOf(url), name -> new HostQueue(name));
+		if(host.urls.isEmpty())
+		{
+			this.rotation.add(host);
+		}
+		host.urls.add(url);
+		this.resident++;
+	}
+
+	/**
+	 * Moves URLs from the overflow into the host queues once they have run down to half their budget. Batches that
+	 * are still in memory move across straight away; the oldest segment on disk is handed to the background thread to
+	 * read back in, and moves across once it is loaded.
+	 */
+	private void readAhead()
+	{
+		while(this.overflow != null && !this.loading && this.resident <= this.memoryBudget / 2)
+		{
+			int before = this.overflow.size();
+			ArrayDeque<String> urls = this.overflow.pollBatch();
+			if(urls == null)
+			{
+				SpillingQueue.Segment oldest = this.overflow.peekSegment();
+				if(oldest != null)
+				{
+					this.loading = true;
+					this.segmentIO.execute(() -> this.load(oldest));
+				}
+				return;
+			}
+			// A segment that could not be read back in may come up short
+			this.queued -= (before - this.overflow.size()) - urls.size();
+			for(String url : urls)
+			{
+				this.admit(url);
+			}
+		}
+	}
+
+	/**
+	 * Writes a sealed overflow segment out to disk. This runs on the background thread, without the frontier's lock.
+	 * @param segment The segment
+	 */
+	private void write(SpillingQueue.Segment segment)
+	{
+		if(!segment.write())
+		{
+			synchronized(this)
+			{
+				this.spilling = false;
+			}
+		}
+	}
+
+	/**
+	 * Reads the oldest overflow segment back in from disk, then moves it into the host queues. This runs on the
+	 * background thread, and only takes the frontier's lock once the segment is in memory.
+	 * @param segment The segment
+	 */
+	private void load(SpillingQueue.Segment segment)
+	{
+		segment.read();
+		synchronized(this)
+		{
+			this.loading = false;
+			if(!this.closed)
+			{
+				this.readAhead();
+			}
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Forgets hosts that have had nothing queued or in flight since they were last released, once their delay has
+	 * expired
+	 * @param now The current <code>System.nanoTime()</code>
+	 */
+	private void forgetIdleHosts(long now)
+	{
+		while(!this.idle.isEmpty() && now - this.idle.peek().lastStart >= this.hostDelayNanos)
+		{
+			HostQueue host = this.idle.poll();
+			if(host.urls.isEmpty() && host.inFlight == 0 && this.hosts.get(host.name) == host)
+			{
+				this.hosts.remove(host.name);
+			}
+		}
+	}
+
+	/**
+	 * Claims the next URL to visit, waiting if necessary until some host becomes eligible or other workers
+	 * discover more links.
+	 * @return The next URL to visit, or <b>null</b> if the crawl is over (either the frontier has been closed,
+	 * or the queue is empty and no other worker has a page in flight)
+	 * @throws InterruptedException If the calling thread is interrupted while waiting
+	 */
+	public synchronized String take() throws InterruptedException
+	{
+		while(!this.closed && (this.queued > 0 || this.inFlight > 0))
+		{
+			this.readAhead();
+			long now = System.nanoTime();
+			this.forgetIdleHosts(now);
+			long soonest = Long.MAX_VALUE;		// How long until a host that is only waiting on its delay is ready
+			
+			// Give each host with queued work one turn, starting from the front of the rotation
+			for(int turns = this.rotation.size(); turns > 0; turns--)
+			{
+				HostQueue host = this.rotation.poll();
+				if(host.inFlight < this.hostConcurrency && now - host.lastStart >= this.hostDelayNanos)
+				{
+					String next = host.urls.poll();
+					this.resident--;
+					this.queued--;
+					if(!host.urls.isEmpty())
+					{
+						this.rotation.add(host);
+					}
+					host.inFlight++;
+					host.lastStart = now;
+					this.inFlight++;
+					return next;
+				}
+				if(host.inFlight < this.hostConcurrency)
+				{
+					soonest = Math.min(soonest, this.hostDelayNanos - (now - host.lastStart));
+				}
+				this.rotation.add(host);
+			}
+			
+			// No host is eligible right now. Wait for a release, a new URL, a segment to be read back in, or the next
+			// host's delay to expire.
+			if(soonest == Long.MAX_VALUE)
+			{
+				this.wait();
+			}
+			else
+			{
+				long millis = soonest / 1000000L;
+				this.wait(millis, (int)(soonest - millis * 1000000L));
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Informs the frontier that a worker has finished with a URL it obtained from <code>take()</code>. This must be
+	 * called exactly once for every non-null URL handed out, after any links found on the page have been offered.
+	 * @param url The URL that the worker has finished with
+	 */
+	public synchronized void release(String url)
+	{
+		HostQueue host = this.hosts.get(hostOf(url));
+		if(host != null)
+		{
+			host.inFlight--;
+			if(host.inFlight == 0 && host.urls.isEmpty())
+			{
+				this.idle.add(host);
+				this.forgetIdleHosts(System.nanoTime());
+			}
+		}
+		this.inFlight--;
+		this.notifyAll();
+	}
+
+	/**
+	 * Closes the frontier, so that all current and future calls to <code>take()</code> return <b>null</b>. Any URLs
+	 * still queued are discarded, and their segment files deleted.
+	 */
+	public synchronized void close()
+	{
+		this.closed = true;
+		for(HostQueue host : this.hosts.values())
+		{
+			host.urls.clear();
+		}
+		this.rotation.clear();
+		if(this.overflow != null)
+		{
+			this.overflow.clear();
+			this.segmentIO.shutdown();
+		}
+		this.resident = 0;
+		this.queued = 0;
+		this.notifyAll();
+	}
+
+	/**
+	 * Indicates whether the frontier has been closed
+	 * @return <code>true</code> if the frontier has been closed
+	 */
+	public synchronized boolean isClosed()
+	{
+		return this.closed;
+	}
+
+	/**
+	 * Reports how many URLs are currently waiting in the queue, across all hosts
+	 * @return The number of queued URLs
+	 */
+	public synchronized int size()
+	{
+		return this.queued;
+	}
+
+	/**
+	 * Reports how many of the queued URLs are held in the host queues, rather than in the overflow
+	 * @return The number of URLs in the host queues
+	 */
+	public synchronized int residentCount()
+	{
+		return this.resident;
+	}
+
+	/**
+	 * Reports how many distinct URLs have ever been queued
+	 * @return The number of distinct URLs seen by the frontier
+	 */
+	public synchronized int seenCount()
+	{
+		return this.previouslyQueued.size();
+	}
+	
+	/**
+	 * Summarizes the size and estimated false-positive rate of the set of queued URLs
+	 * @return A one-line description of the seen-set
+	 */
+	public synchronized String seenSetStatistics()
+	{
+		return this.previouslyQueued.toString();
+	}
+
+	/**
+	 * Estimates the probability that the frontier would currently mistake a new URL for one already queued, and
+	 * so skip it
+	 * @return The seen-set's estimated false-positive rate (0 if it is exact)
+	 */
+	public synchronized double falsePositiveRate()
+	{
+		return this.previouslyQueued.falsePositiveRate();
+	}
+
+	/**
+	 * Reports how many hosts the frontier is keeping a queue for. Hosts are forgotten once they have nothing queued
+	 * or in flight.
+	 * @return The number of hosts with a queue
+	 */
+	public synchronized int hostCount()
+	{
+		return this.hosts.size();
+	}
+
+	/**
+	 * Reports how many segments the overflow currently holds, whether they are on disk or still waiting to be written
+	 * @return The number of segments
+	 */
+	public synchronized int spilledSegmentCount()
+	{
+		return (this.overflow == null) ? 0 : this.overflow.segmentCount();
+	}
+	
+	/**
+	 * Determines the host that a URL will be queued under. Malformed URLs are all lumped together under a blank
+	 * host name; they will fail as soon as a worker tries to visit them anyway.
+	 * @param url The URL
+	 * @return The lower-case host name of the URL, or a blank string if the URL is malformed
+	 */
+	static String hostOf(String url)
+	{
+		try
+		{
+			String host = URI.create(url).getHost();
+			if(host != null)
+			{
+				return host.toLowerCase();
+			}
+		}
+		catch(IllegalArgumentException e)
+		{
+			// Not a valid URI (e.g. it has a space in its path), but the host may still be found by hand
+		}
+		int start = url.indexOf("://");
+		if(start <= 0)
+		{
+			return "";
+		}
+		start += 3;
+		int end = start;
+		while(end < url.length() && "/?#".indexOf(url.charAt(end)) < 0)
+		{
+			end++;
+		}
+		int userInfo = url.lastIndexOf('@', end - 1);
+		String host = url.substring(Math.max(start, userInfo + 1), end);
+		int port = host.lastIndexOf(':');
+		if(port >= 0 && host.indexOf(']', port) < 0)
+		{
+			host = host.substring(0, port);
+		}
+		return host.toLowerCase();
+	}
+	
+	/**
+	 * The queue of URLs waiting to be visited on a single host, along with the politeness bookkeeping for that host
+	 */
+	private static class HostQueue
+	{
+		/**
+		 * The host name
+		 */
+		final String name;
+		
+		/**
+		 * URLs on this host waiting to be visited, in the order they were discovered
+		 */
+		final ArrayDeque<String> urls;
+		
+		/**
+		 * Number of this host's URLs that are currently in flight
+		 */
+		int inFlight;
+		
+		/**
+		 * <code>System.nanoTime()</code> at which the most recent request to this host was handed out
+		 */
+		long lastStart;
+		
+		/**
+		 * Initializes an empty queue for the given host
+		 * @param name The host name
+		 */
+		HostQueue(String name)
+		{
+			this.name = name;
+			this.urls = new ArrayDeque<String>();
+			this.inFlight = 0;
+			this.lastStart = System.nanoTime() - Long.MAX_VALUE / 2;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return this.name;
+		}
+	}
+}
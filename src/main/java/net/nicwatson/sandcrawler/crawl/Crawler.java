@@ -17,23 +17,41 @@
 
 package net.nicwatson.sandcrawler.crawl;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
+import net.nicwatson.sandcrawler.common.IndexedPage;
+import net.nicwatson.sandcrawler.common.SegmentedIndex;
+import net.nicwatson.sandcrawler.common.WebIndex;
 import net.nicwatson.sandcrawler.frontend.CrawlProgressResponder;
 
 /**
  * A Crawler object is used to crawl web pages, discovering them via hyperlinks and preparing their contents
  * for indexing.
+ * <p/>
+ * Pages are fetched asynchronously by a PageFetcher, with up to <code>concurrency</code> fetches in flight at once,
+ * so that the time taken by a crawl is governed by the number of concurrent fetches rather than by the sum of every
+ * page's round-trip latency. A single dispatcher takes URLs from a thread-safe CrawlFrontier and starts fetching
+ * them; each page is processed as soon as it arrives, and a slow server only ever ties up its own fetches. A Crawler
+ * with a concurrency of 1 behaves like a plain sequential breadth-first crawl. The frontier also limits how hard any
+ * single host is hit (see <code>setPoliteness()</code>).
+ * <p/>
+ * A crawl can optionally keep a checkpoint log (see <code>enableCheckpoints()</code>), from which it can be picked up
+ * again with <code>resume()</code> if the program crashes part way through.
+ * <p/>
+ * A crawl can also be an incremental recrawl of a site that was indexed before (see <code>setPreviousIndex()</code>).
+ * Pages in the previous index are then fetched conditionally, and those the server reports unchanged are carried
+ * over from the previous index instead of being downloaded and parsed again.
  */
 public class Crawler
 {
@@ -42,57 +60,110 @@ public class Crawler
 	 */
 	public static final int DEFAULT_TRIES = 3;
 	
+	/**
+	 * Default maximum number of pages that will be fetched at the same time
+	 */
+	public static final int DEFAULT_CONCURRENCY = 16;
+	
 	/**
 	 * After how many page visits do we output a progress report to the console?
 	 */
 	public static final int CONSOLE_REPORTING_INTERVAL = 10;
 	
 	/**
-	 * After how many page visits do we inform any CrawlProgressResponders of our progress?
-	 * (This doesn't quite work -- progress gets reported fine but the GUI doesn't update.)
+	 * After how many page visits do we inform any CrawlProgressResponders of our progress? The GUI coalesces reports
+	 * and redraws at most once a frame, so it can be told about every visit.
 	 */
-	public static final int GUI_REPORTING_INTERVAL = 10;
+	public static final int GUI_REPORTING_INTERVAL = 1;
 	
 	/**
-	 * Seed URL where the crawl will begin
+	 * After how many page visits do we mark a checkpoint in the checkpoint log (if there is one)?
 	 */
-	public final String seedUrl;
+	public static final int CHECKPOINT_INTERVAL = 100;
+
+	/**
+	 * The PageFetcher used by <code>readURL()</code>, and by any Crawler that has not been given its own
+	 */
+	private static final PageFetcher DEFAULT_FETCHER = new PageFetcher();
 	
 	/**
-	 * The queue of pages to be crawled. Pages are added to the back as they are discovered, and 
-	 * removed from the front as they are visited.
+	 * Seed URL where the crawl will begin
 	 */
-	protected Queue<String> unvisited;
+	public final String seedUrl;
 	
 	/**
-	 * Keeps track of all URLs that have been previously visited, to avoid adding anything to the 
-	 * queue unnecessarily
+	 * The frontier of pages to be crawled, which also keeps track of all URLs that have been previously queued
+	 * to avoid adding anything to the queue unnecessarily
 	 */
-	Set<String> previouslyQueued;
+	protected CrawlFrontier frontier;
 	
 	/**
 	 * Every visit to a page generates an UnprocessedPage, which stores key metadata (URL, title, etc.),
-	 * out-link information, and the page's text content for later parsing.
+	 * out-link information, and the page's text content for later parsing. The set is synchronized because
+	 * it is filled by several worker threads at once.
 	 */
 	Set<UnprocessedPage> unprocessed;
 	
 	/**
-	 * 
+	 * Keeps track of what requests have failed and how many times
+	 */
+	Map<String, Integer> failures;
+	
+	/**
+	 * The log to which the crawl's progress is written, or <b>null</b> if the crawl is not being checkpointed
+	 */
+	CrawlCheckpoint checkpoint;
+	
+	/**
+	 * The state replayed from a checkpoint log by <code>resume()</code>, which is put back into the frontier when the
+	 * crawl starts; <b>null</b> if there is nothing to restore
+	 */
+	private CrawlCheckpoint.State restored;
+	
+	/**
+	 * Number of times to retry accessing a page after failure
 	 */
 	int maxTries;
 	
+	/**
+	 * Maximum number of pages that will be fetched at the same time
+	 */
+	int concurrency;
+
+	/**
+	 * Downloads the pages, sharing its connections between them
+	 */
+	private PageFetcher fetcher;
 
 	/**
-	 * Initializes a new crawler with the specified seedURL, and the default maxTries
+	 * Looks up pages in the index of an earlier crawl that this crawl is refreshing, or <b>null</b> if this is a full
+	 * crawl
+	 */
+	private Function<String, IndexedPage> previous;
+
+	/**
+	 * Number of pages that the server reported unchanged since the previous crawl
+	 */
+	private final AtomicInteger unchangedPages;
+	
+
+	/**
+	 * Initializes a new crawler with the specified seedURL, and the default maxTries and concurrency
 	 * @param seedUrl The URL of the page where the crawl will start
 	 */
 	public Crawler(String seedUrl)
 	{
 		this.seedUrl = seedUrl;
-		unvisited = new LinkedList<String>();
-		unprocessed = new LinkedHashSet<UnprocessedPage>();
-		previouslyQueued = new LinkedHashSet<String>();
+		frontier = new CrawlFrontier();
+		unprocessed = Collections.synchronizedSet(new LinkedHashSet<UnprocessedPage>());
+		failures = new ConcurrentHashMap<String, Integer>();
+		this.checkpoint = null;
+		this.restored = null;
 		this.maxTries = DEFAULT_TRIES;
+		this.concurrency = DEFAULT_CONCURRENCY;
+		this.fetcher = DEFAULT_FETCHER;
+		this.previous = null;
+		this.unchangedPages = new AtomicInteger();
 	}
 	
 	/**
@@ -106,6 +177,50 @@ public class Crawler
 		this.maxTries = maxTries;
 	}
 	
+	/**
+	 * Initializes a new crawler with the specified seedURL, maxTries and concurrency
+	 * @param seedUrl The URL of the page where the crawl will start
+	 * @param maxTries Number of times to retry accessing a page after failure
+	 * @param concurrency Maximum number of pages to fetch at the same time (at least 1)
+	 */
+	public Crawler(String seedUrl, int maxTries, int concurrency)
+	{
+		this(seedUrl, maxTries);
+		this.setConcurrency(concurrency);
+	}
+	
+	/**
+	 * Picks up a crawl that was being checkpointed (see <code>enableCheckpoints()</code>) from its last checkpoint.
+	 * The pages that had already been fetched are restored from the log rather than fetched again, and everything
+	 * that had been queued but not fetched is queued again when the crawl is restarted with <code>go()</code>. The
+	 * resumed crawl carries on writing to the same log. The page limit passed to <code>go()</code> counts the pages
+	 * that were restored.
+	 * @param checkpointPath The path of the checkpoint log
+	 * @return A Crawler that will continue the crawl when <code>go()</code> is called
+	 * @throws IOException If the log cannot be read or written, or is not a valid checkpoint log
+	 * @see CrawlCheckpoint
+	 */
+	public static Crawler resume(String checkpointPath) throws IOException
+	{
+		CrawlCheckpoint.State state = CrawlCheckpoint.resume(checkpointPath);
+		Crawler crawler = new Crawler(state.seedUrl);
+		crawler.restored = state;
+		crawler.checkpoint = state.log;
+		return crawler;
+	}
+	
+	/**
+	 * Starts writing the crawl's progress to a new checkpoint log, so that the crawl can be resumed if it is
+	 * interrupted. This must be called before the crawl starts.
+	 * @param checkpointPath The path of the checkpoint log. The file is replaced if it exists.
+	 * @throws IOException If the log cannot be created
+	 * @see #resume(String)
+	 */
+	public void enableCheckpoints(String checkpointPath) throws IOException
+	{
+		this.checkpoint = CrawlCheckpoint.create(checkpointPath, this.seedUrl);
+	}
+	
 	/**
 	 * Getter for the set of pages that have been visited but not indexed
 	 * @return The set of UnprocessedPages that have been visited but not indexed
@@ -115,6 +230,122 @@ public class Crawler
 		return this.unprocessed;
 	}
 	
+	/**
+	 * Getter for <code>concurrency</code>
+	 * @return The maximum number of pages that will be fetched at the same time
+	 */
+	public int getConcurrency()
+	{
+		return this.concurrency;
+	}
+	
+	/**
+	 * Setter for <code>concurrency</code>. This has no effect on a crawl that is already running.
+	 * @param concurrency The maximum number of pages to fetch at the same time. Values below 1 are treated as 1.
+	 */
+	public void setConcurrency(int concurrency)
+	{
+		this.concurrency = Math.max(1, concurrency);
+	}
+	
+	/**
+	 * Getter for <code>fetcher</code>
+	 * @return The PageFetcher that downloads the pages
+	 */
+	public PageFetcher getFetcher()
+	{
+		return this.fetcher;
+	}
+
+	/**
+	 * Setter for <code>fetcher</code>, e.g. to crawl with different timeouts or a different maximum page size. This
+	 * has no effect on a crawl that is already running.
+	 * @param fetcher The PageFetcher to download the pages with
+	 */
+	public void setFetcher(PageFetcher fetcher)
+	{
+		this.fetcher = fetcher;
+	}
+
+	/**
+	 * Makes this crawl an incremental recrawl of the given index. Every page that is in the previous index, and that
+	 * the server sent an ETag or Last-Modified date for, is fetched with a conditional request. If the server reports
+	 * that it has not changed, its links are taken from the previous index and it is not parsed again when the new
+	 * index is built. This must be called before the crawl starts.
+	 * @param previous The index of an earlier crawl of the same site, or <b>null</b> for a full crawl
+	 */
+	public void setPreviousIndex(WebIndex previous)
+	{
+		this.previous = (previous == null) ? null : previous::getPage;
+	}
+
+	/**
+	 * Makes this crawl an incremental recrawl of the given segmented index, just as
+	 * <code>setPreviousIndex(WebIndex)</code> does. Pages are looked up in the segments that were flushed when they
+	 * are fetched. This must be called before the crawl starts.
+	 * @param previous The index of an earlier crawl of the same site, or <b>null</b> for a full crawl
+	 */
+	public void setPreviousIndex(SegmentedIndex previous)
+	{
+		this.previous = (previous == null) ? null : previous::getPage;
+	}
+
+	/**
+	 * Reports how many pages were found unchanged since the previous index
+	 * @return The number of pages that did not need to be fetched again
+	 */
+	public int getUnchangedCount()
+	{
+		return this.unchangedPages.get();
+	}
+
+	/**
+	 * Sets how politely the crawl treats each individual host, by giving it a fresh frontier with the given per-host
+	 * limits. This must be called before the crawl starts, since it discards anything already queued.
+	 * @param hostConcurrency Maximum number of requests in flight to a single host at once
+	 * @param hostDelay Minimum time in milliseconds between the starts of two requests to the same host
+	 * @see CrawlFrontier
+	 */
+	public void setPoliteness(int hostConcurrency, long hostDelay)
+	{
+		this.frontier = new CrawlFrontier(hostConcurrency, hostDelay);
+	}
+
+	/**
+	 * Chooses how the crawl remembers which URLs it has already queued. A false-positive rate of 0 selects exact
+	 * deduplication, which stores every URL in full. Any higher rate selects a Bloom filter, which uses a small
+	 * fraction of the memory but will now and then skip a new URL, with at most the given probability. This must be
+	 * called before the crawl starts, and after <code>setPoliteness()</code> or <code>setLargeCrawlFrontier()</code>,
+	 * which replace the frontier.
+	 * @param falsePositiveRate The acceptable probability of skipping a new URL (0 for exact, otherwise less than 1)
+	 * @see BloomSeenSet
+	 */
+	public void setDeduplication(double falsePositiveRate)
+	{
+		SeenSet seen = (falsePositiveRate > 0)
+				? new BloomSeenSet(BloomSeenSet.DEFAULT_EXPECTED_URLS, falsePositiveRate)
+				: new ExactSeenSet();
+		this.frontier.setSeenSet(seen);
+	}
+
+	/**
+	 * Gives the crawl a fresh frontier that is suited to very large crawls: it remembers queued URLs by fingerprint
+	 * instead of in full, and keeps at most <code>CrawlFrontier.DEFAULT_MEMORY_BUDGET</code> queued URLs in memory,
+	 * spilling the rest to segment files in the given directory, so that the size of the crawl is bounded by disk space
+	 * rather than heap. Like <code>setPoliteness()</code>, this must be
+	 * called before the crawl starts, and replaces any politeness settings with the given ones.
+	 * @param hostConcurrency Maximum number of requests in flight to a single host at once
+	 * @param hostDelay Minimum time in milliseconds between the starts of two requests to the same host
+	 * @param spillDirectory Directory in which to keep segment files
+	 * @see FingerprintSeenSet
+	 * @see SpillingQueue
+	 */
+	public void setLargeCrawlFrontier(int hostConcurrency, long hostDelay, String spillDirectory)
+	{
+		this.frontier = new CrawlFrontier(hostConcurrency, hostDelay, new FingerprintSeenSet(),
+				Paths.get(spillDirectory), CrawlFrontier.DEFAULT_SEGMENT_SIZE);
+	}
+	
 	/**
 	 * Starts a crawl, reporting progress back to the given CrawlProgressResponder
 	 * @param listener A CrawlProgressResponder to which to report crawl progress
@@ -127,7 +358,8 @@ public class Crawler
     
 	/**
 	 * Starts a crawl, up to a maximum number of pages specified by <code>limit</code>, 
-	 * reporting progress back to the given CrawlProgressResponder.
+	 * reporting progress back to the given CrawlProgressResponder. The method returns once every
+	 * fetch has finished.
 	 * @param limit Maximum number of pages to visit before stopping. If this is 0 or less, the crawl will be unlimited
 	 * and will continue until there are no more known unvisited links.
 	 * @param listener A CrawlProgressResponder to which to report crawl progress
@@ -135,122 +367,259 @@ public class Crawler
 	 */
 	public Crawler go(int limit, CrawlProgressResponder listener)
 	{
-		// Keep track of what requests have failed and how many times
-		Map<String, Integer> failures = new HashMap<String, Integer>();
-		int counter = 0;				// How many pages have we crawled?
-		unvisited.add(seedUrl);
-		previouslyQueued.add(seedUrl);
+		AtomicInteger counter = new AtomicInteger();		// How many pages have we crawled?
+		if(this.restored != null)
+		{
+			counter.set(this.restore());
+		}
+		this.queue(seedUrl);
+		if(limit > 0 && counter.get() >= limit)
+		{
+			// A resumed crawl might already have all the pages it needs
+			frontier.close();
+		}
 		
-		while(!unvisited.isEmpty() && (limit <= 0 || counter < limit))
+		// Each fetch in flight holds one slot, so there are never more than concurrency of them
+		Semaphore slots = new Semaphore(this.concurrency);
+		try
 		{
-			// We keep going as long as the queue is not empty, and we haven't exceeded the limit.
+			slots.acquire();
+			String next = frontier.take();
+			while(next != null)
+			{
+				this.dispatch(next, slots, limit, counter, listener);
+				slots.acquire();
+				next = frontier.take();
+			}
+			slots.release();
 			
-			String next = unvisited.poll();
-			UnprocessedPage page = null;
+			// The frontier has run dry or been closed. Wait for the fetches still in flight to finish.
+			slots.acquire(this.concurrency);
+		}
+		catch(InterruptedException e)
+		{
+			// Stop handing out pages, and let the caller know we were interrupted
+			frontier.close();
+			Thread.currentThread().interrupt();
+		}
+		if(this.checkpoint != null)
+		{
+			this.checkpoint.close();
+		}
+		int visited = (limit > 0) ? Math.min(counter.get(), limit) : counter.get();
+		System.out.println("Done! Visited " + visited + " pages.");
+		if(this.previous != null)
+		{
+			System.out.println(this.unchangedPages.get() + " pages were unchanged since the previous crawl.");
+		}
+		System.out.println("Seen-set: " + frontier.seenSetStatistics());
+		return this;
+	}
+	
+	/**
+	 * Puts the state replayed from a checkpoint log back into the crawler and its frontier
+	 * @return The number of pages that had been fetched successfully
+	 */
+	private int restore()
+	{
+		CrawlCheckpoint.State state = this.restored;
+		this.restored = null;
+		for(UnprocessedPage page : state.pages.values())
+		{
+			unprocessed.add(page);
+			frontier.markSeen(page.getURLString());
+		}
+		for(String url : state.seen)
+		{
+			if(!state.pages.containsKey(url))
+			{
+				// Queued, but not (or not yet successfully) fetched. These are already in the log.
+				frontier.offer(url);
+			}
+		}
+		for(UnprocessedPage page : state.pages.values())
+		{
+			// In case the crash came after the page was logged, but before all its links were
+			for(String link : page.getLinks())
+			{
+				this.queue(link);
+			}
+		}
+		failures.putAll(state.failures);
+		System.out.println("Resumed crawl from checkpoint: " + state.fetched + " pages fetched, " + frontier.size() + " queued.");
+		return state.fetched;
+	}
+	
+	/**
+	 * Offers a URL to the frontier, and logs it if it is new and the crawl is being checkpointed
+	 * @param url The URL to queue
+	 */
+	private void queue(String url)
+	{
+		if(frontier.offer(url) && this.checkpoint != null)
+		{
+			this.checkpoint.queued(url);
+		}
+	}
+	
+	/**
+	 * Starts fetching a URL claimed from the frontier. When the fetch completes, the page is visited, and then the
+	 * URL is released back to the frontier and its slot freed.
+	 * @param next The URL to fetch
+	 * @param slots The semaphore of fetch slots, one of which has been acquired for this fetch
+	 * @param limit Maximum number of pages to visit in the whole crawl (0 or less for unlimited)
+	 * @param counter Shared count of pages successfully visited so far
+	 * @param listener A CrawlProgressResponder to which to report crawl progress
+	 */
+	private void dispatch(String next, Semaphore slots, int limit, AtomicInteger counter, CrawlProgressResponder listener)
+	{
+		UnprocessedPage page;
+		try
+		{
+			page = new UnprocessedPage(next);
+		}
+		catch(MalformedURLException e)	// The URL can't be parsed
+		{
+			System.err.println(next + " is a malformed URL. Ignoring.");
+			frontier.release(next);
+			slots.release();
+			return;
+		}
+		
+		IndexedPage before = (this.previous == null) ? null : this.previous.apply(next);
+		page.fetchAsync(this.fetcher, before).whenComplete((fetched, error) ->
+		{
 			try
 			{
-				page = new UnprocessedPage(next);
-				page.fetch();						// Load the page
-				counter++;
-				unprocessed.add(page);				// Add it to the unprocessed set
-				
-				// Find all the outlinks from the page
-				Set<String> outLinks = page.getLinks();
-				for(String s : outLinks)
-				{
-					if(!previouslyQueued.contains(s))
-					{
-						// Outlinks URLs that have not been previously queued shoulde added to the queue
-						unvisited.add(s);
-						previouslyQueued.add(s);
-					}
-				}
-				
-				// Report progress to console
-				if(counter % CONSOLE_REPORTING_INTERVAL == 0)
-				{
-					System.out.println("Crawl Progress  -  Visited: " + counter + "     Queued: " + unvisited.size());
-				}
-				
-				/*
-				// Report progress to GUI -- which doesn't work.
-				if(listener != null)
-				{
-					if(counter % GUI_REPORTING_INTERVAL == 0)
-					{
-						listener.updateProgress(CrawlProgressResponder.ProgressStage.RETRIEVING, counter, unvisited.size());
-						System.out.println("Updated progress!");
-					}
-				}
-				else
-				{
-					if(counter % CONSOLE_REPORTING_INTERVAL == 0)
-					{
-						System.out.println("Crawl Progress  -  Visited: " + counter + "     Queued: " + unvisited.size());
-					}
-				}*/
-				
+				IOException failure = (error == null) ? null : PageFetcher.translate(next, error);
+				this.visit(page, failure, limit, counter, this.failures, listener);
+			}
+			catch(RuntimeException e)		// Don't let one bad page take down the whole crawl
+			{
+				System.err.println("Unexpected error while crawling " + next + ": " + e);
+			}
+			finally
+			{
+				frontier.release(next);
+				slots.release();
+			}
+		});
+	}
+	
+	/**
+	 * Visits a single page once its fetch has completed: records it as unprocessed, and queues up any new out-links.
+	 * Failed fetches are put back on the queue until they have failed <code>maxTries</code> times.
+	 * @param page The page that was fetched
+	 * @param error Why the fetch failed, or <b>null</b> if it succeeded
+	 * @param limit Maximum number of pages to visit in the whole crawl (0 or less for unlimited)
+	 * @param counter Shared count of pages successfully visited so far
+	 * @param failures Shared map of how many times each URL has failed
+	 * @param listener A CrawlProgressResponder to which to report crawl progress
+	 */
+	private void visit(UnprocessedPage page, IOException error, int limit, AtomicInteger counter, Map<String, Integer> failures, CrawlProgressResponder listener)
+	{
+		String next = page.getURLString();
+		try
+		{
+			if(error != null)
+			{
+				throw error;
+			}
+			
+			int visited = counter.incrementAndGet();
+			if(limit > 0 && visited > limit)
+			{
+				// Other workers filled up the limit while this page was being fetched, so it is surplus
+				return;
+			}
+			unprocessed.add(page);				// Add it to the unprocessed set
+			if(page.getUnchangedPage() != null)
+			{
+				// Nothing was downloaded, so there is no text to log. After a resume it will just be checked again.
+				this.unchangedPages.incrementAndGet();
+			}
+			else if(this.checkpoint != null)
+			{
+				this.checkpoint.fetched(page);
+			}
+			
+			// Find all the outlinks from the page. Outlink URLs that have not been previously queued
+			// are added to the queue (the frontier takes care of the check).
+			Set<String> outLinks = page.getLinks();
+			for(String s : outLinks)
+			{
+				this.queue(s);
+			}
+			
+			if(limit > 0 && visited >= limit)
+			{
+				// That's enough pages. Stop handing out work.
+				frontier.close();
+			}
+			
+			if(this.checkpoint != null && visited % CHECKPOINT_INTERVAL == 0)
+			{
+				this.checkpoint.mark();
 			}
-			catch(MalformedURLException e)	// The URL can't be parsed
+			
+			// Report progress to console
+			if(visited % CONSOLE_REPORTING_INTERVAL == 0)
 			{
-				System.err.println(next + " is a malformed URL. Ignoring.");
+				System.out.println("Crawl Progress  -  Visited: " + visited + "     Queued: " + frontier.size());
 			}
-			catch(IOException e)			// Can't access the page for some reason (e.g. timeout)
+			
+			// Report progress to GUI. This happens on whichever thread fetched the page; the listener is responsible for
+			// passing it on to the GUI thread.
+			if(listener != null)
 			{
-				//System.err.println("IOException on: " + next);
-				//e.printStackTrace(System.err);
-				
-				if(failures.containsKey(next))
+				if(visited % GUI_REPORTING_INTERVAL == 0)
 				{
-					// Page has failed before...
-					if(failures.get(next) < maxTries)
-					{
-						// But hasn't exhausted its allotment of failures. Put it back in the queue.
-						failures.put(next, failures.get(next) + 1);
-						unvisited.add(next);
-					}
-					else
-					{
-						// We've run out of patience for this page. We add it to the unprocessed set in its "blank" state
-						// so that other pages with links to it will still be valid, but the failed page's content and outlinks
-						// won't be accounted for in the index.
-						System.err.println("Failed " + maxTries + " times on URL " + next + " ... giving up.");
-						if(page != null)
-						{
-							unprocessed.add(page);
-						}
-					}
+					listener.updateProgress(CrawlProgressResponder.ProgressStage.RETRIEVING, visited, frontier.size());
 				}
-				else
+			}
+		}
+		catch(MalformedURLException e)	// The URL can't be parsed
+		{
+			System.err.println(next + " is a malformed URL. Ignoring.");
+		}
+		catch(IOException e)			// Can't access the page for some reason (e.g. timeout)
+		{
+			//System.err.println("IOException on: " + next);
+			//e.printStackTrace(System.err);
+			
+			int tries = failures.merge(next, 1, Integer::sum);
+			if(tries <= maxTries)
+			{
+				// Page hasn't exhausted its allotment of failures. Put it back in the queue.
+				frontier.retry(next);
+				if(this.checkpoint != null)
 				{
-					// Page has not yet failed, so we open a new entry for it in the failures map.
-					failures.put(next, 1);
-					unvisited.add(next);
+					this.checkpoint.failed(next);
 				}
 			}
-
-		} 
-		System.out.println("Done! Visited " + counter + " pages.");
-		return this;
+			else
+			{
+				// We've run out of patience for this page. We add it to the unprocessed set in its "blank" state
+				// so that other pages with links to it will still be valid, but the failed page's content and outlinks
+				// won't be accounted for in the index.
+				System.err.println("Failed " + maxTries + " times on URL " + next + " ... giving up.");
+				unprocessed.add(page);
+				if(this.checkpoint != null)
+				{
+					this.checkpoint.gaveUp(next);
+				}
+			}
+		}
 	}	
 	
 	/**
-	 * Reads HTML content from the given URL
+	 * Reads HTML content from the given URL, with the default PageFetcher
 	 * @param page The target URL
 	 * @return String representing the entire document content
 	 * @throws IOException
 	 */
 	public static String readURL(URL page) throws IOException
 	{
-        StringBuilder response = new StringBuilder();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(page.openStream()));
-        String currentLine = reader.readLine();
-        while(currentLine != null)
-        {
-            response.append(currentLine + "\n");
-            currentLine = reader.readLine();
-        }    
-        return response.toString();
-        
-    }
+		return DEFAULT_FETCHER.fetch(page.toString());
+	}
 }
@@ -0,0 +1,93 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An ExactSeenSet stores every URL it is given in full, in a HashSet. It never makes a mistake, but takes the most
+ * memory of any SeenSet; it is the default, and the best choice for small crawls.
+ */
+public class ExactSeenSet implements SeenSet
+{
+	/**
+	 * The URLs seen so far
+	 */
+	private final Set<String> urls;
+
+	/**
+	 * Total number of characters in all the URLs seen
+	 */
+	private long characters;
+
+	/**
+	 * Creates a new, empty ExactSeenSet
+	 */
+	public ExactSeenSet()
+	{
+		this.urls = new HashSet<String>();
+		this.characters = 0;
+	}
+
+	@Override
+	public boolean add(String url)
+	{
+		if(this.urls.add(url))
+		{
+			this.characters += url.length();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public boolean contains(String url)
+	{
+		return this.urls.contains(url);
+	}
+
+	@Override
+	public int size()
+	{
+		return this.urls.size();
+	}
+
+	/**
+	 * Estimates the heap used by the set: for each URL, a hash table entry and slot, the String and its (Latin-1)
+	 * character array, at around 80 bytes plus one byte per character
+	 * @return The approximate size of the set, in bytes
+	 */
+	@Override
+	public long memoryUsage()
+	{
+		return this.urls.size() * 80L + this.characters;
+	}
+
+	@Override
+	public double falsePositiveRate()
+	{
+		return 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		return SeenSet.describe(this);
+	}
+}
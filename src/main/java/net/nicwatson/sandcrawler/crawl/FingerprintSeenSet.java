@@ -0,0 +1,161 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+/**
+ * A FingerprintSeenSet remembers each URL as a 64-bit hash ("fingerprint") rather than as a string, in an
+ * open-addressed table of longs that is kept at most half full. That costs about 16 bytes per URL, where a HashSet
+ * of strings typically needs well over 100, so very large crawls can keep their seen-set on the heap.
+ * <p/>
+ * Two different URLs are only confused if their fingerprints are identical. With a 64-bit hash the chance of that
+ * happening anywhere in a crawl of a million URLs is around one in 36 million, so for practical purposes the set is
+ * exact.
+ */
+public class FingerprintSeenSet implements SeenSet
+{
+	/**
+	 * Number of slots the table starts out with (always a power of two)
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The hash table of fingerprints. A slot holding 0 is empty; a fingerprint that happens to be 0 is stored as 1.
+	 */
+	private long[] table;
+
+	/**
+	 * Number of fingerprints in the table
+	 */
+	private int size;
+
+	/**
+	 * Creates a new, empty FingerprintSeenSet
+	 */
+	public FingerprintSeenSet()
+	{
+		this.table = new long[INITIAL_CAPACITY];
+		this.size = 0;
+	}
+
+	@Override
+	public boolean add(String url)
+	{
+		long fingerprint = fingerprint(url);
+		int slot = this.find(this.table, fingerprint);
+		if(this.table[slot] != 0)
+		{
+			return false;
+		}
+		this.table[slot] = fingerprint;
+		this.size++;
+		if(this.size * 2 > this.table.length)
+		{
+			this.grow();
+		}
+		return true;
+	}
+
+	@Override
+	public boolean contains(String url)
+	{
+		return this.table[this.find(this.table, fingerprint(url))] != 0;
+	}
+
+	@Override
+	public int size()
+	{
+		return this.size;
+	}
+
+	@Override
+	public long memoryUsage()
+	{
+		return this.table.length * 8L;
+	}
+
+	/**
+	 * Reports the probability that a new URL's fingerprint is the same as one already in the set
+	 * @return The false-positive rate, which is the number of URLs divided by 2<sup>64</sup>
+	 */
+	@Override
+	public double falsePositiveRate()
+	{
+		return this.size / 0x1p64;
+	}
+
+	@Override
+	public String toString()
+	{
+		return SeenSet.describe(this);
+	}
+
+	/**
+	 * Finds the slot in which a fingerprint is stored, or the empty slot where it would go, by linear probing
+	 * @param table The table to search
+	 * @param fingerprint The fingerprint (never 0)
+	 * @return The index of the slot
+	 */
+	private int find(long[] table, long fingerprint)
+	{
+		int mask = table.length - 1;
+		int slot = (int)fingerprint & mask;
+		while(table[slot] != 0 && table[slot] != fingerprint)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Doubles the size of the table, re-inserting every fingerprint
+	 */
+	private void grow()
+	{
+		long[] bigger = new long[this.table.length * 2];
+		for(long fingerprint : this.table)
+		{
+			if(fingerprint != 0)
+			{
+				bigger[this.find(bigger, fingerprint)] = fingerprint;
+			}
+		}
+		this.table = bigger;
+	}
+
+	/**
+	 * Computes the 64-bit fingerprint of a URL: the FNV-1a hash of its characters, scrambled with the MurmurHash3
+	 * finalizer so that the low bits used to pick a slot are well mixed
+	 * @param url The URL
+	 * @return The fingerprint, which is never 0
+	 */
+	static long fingerprint(String url)
+	{
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < url.length(); i++)
+		{
+			hash ^= url.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash == 0 ? 1 : hash;
+	}
+}
@@ -0,0 +1,353 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An HtmlExtractor pulls everything the crawler needs out of a page's HTML in a single forward pass: the text of the
+ * title tag, the text of all the P (paragraph) tags, and the href of every A (anchor) tag. Every character of the page
+ * is looked at a bounded number of times, so extraction takes time linear in the size of the page, and nothing is
+ * allocated apart from the extracted text and links themselves.
+ * <p/>
+ * The scanner is deliberately forgiving rather than a full HTML parser: tag and attribute names are matched without
+ * regard to case, attribute values may be double-quoted, single-quoted or bare, comments and the contents of script
+ * and style tags are skipped, and markup nested inside a paragraph is dropped while its text is kept. Character
+ * entities are left as they are.
+ */
+public class HtmlExtractor
+{
+	/**
+	 * The HTML being scanned
+	 */
+	private final String html;
+
+	/**
+	 * Position of the next character to scan
+	 */
+	private int position;
+
+	/**
+	 * Collects the text of the title tag
+	 */
+	private StringBuilder title;
+
+	/**
+	 * Whether the scanner is currently inside the (first) title tag
+	 */
+	private boolean inTitle;
+
+	/**
+	 * Collects the text of the paragraph tags, each paragraph preceded by a space
+	 */
+	private final StringBuilder text;
+
+	/**
+	 * Whether the scanner is currently inside a paragraph tag
+	 */
+	private boolean inParagraph;
+
+	/**
+	 * The href values of the anchor tags, in the order they appear
+	 */
+	private final List<String> links;
+
+	/**
+	 * Scans the given HTML, extracting its title, paragraph text and links
+	 * @param html The HTML to scan
+	 */
+	public HtmlExtractor(String html)
+	{
+		this.html = html;
+		this.position = 0;
+		this.title = null;
+		this.inTitle = false;
+		this.text = new StringBuilder();
+		this.inParagraph = false;
+		this.links = new ArrayList<String>();
+		this.scan();
+	}
+
+	/**
+	 * Retrieves the text of the page's title tag
+	 * @return The text of the first title tag, or <b>null</b> if the page has no (non-empty) title
+	 */
+	public String getTitle()
+	{
+		if(this.title == null || this.title.length() == 0)
+		{
+			return null;
+		}
+		return this.title.toString();
+	}
+
+	/**
+	 * Retrieves the text of all the page's paragraph tags
+	 * @return The concatenated text of the paragraphs, each one preceded by a space
+	 */
+	public String getText()
+	{
+		return this.text.toString();
+	}
+
+	/**
+	 * Retrieves the links found in the page's anchor tags, exactly as written (i.e. not resolved against the page URL)
+	 * @return An unmodifiable list of the href values of the anchor tags, in the order they appear
+	 */
+	public List<String> getLinks()
+	{
+		return Collections.unmodifiableList(this.links);
+	}
+
+	/**
+	 * Scans the whole page, alternating between runs of text and tags
+	 */
+	private void scan()
+	{
+		int length = this.html.length();
+		while(this.position < length)
+		{
+			int tagStart = this.html.indexOf('<', this.position);
+			if(tagStart < 0)
+			{
+				tagStart = length;
+			}
+			this.appendText(this.position, tagStart);
+			this.position = tagStart;
+			if(tagStart < length)
+			{
+				this.scanMarkup();
+			}
+		}
+	}
+
+	/**
+	 * Adds a run of text to whichever parts of the page it belongs to
+	 * @param start Position of the first character of the text
+	 * @param end Position just after the last character of the text
+	 */
+	private void appendText(int start, int end)
+	{
+		if(start >= end)
+		{
+			return;
+		}
+		if(this.inTitle)
+		{
+			this.title.append(this.html, start, end);
+		}
+		if(this.inParagraph)
+		{
+			this.text.append(this.html, start, end);
+		}
+	}
+
+	/**
+	 * Scans the markup starting at the current position, which must be a '<'
+	 */
+	private void scanMarkup()
+	{
+		if(this.html.startsWith("<!--", this.position))
+		{
+			this.skipPast("-->", this.position + 4);
+			return;
+		}
+
+		int i = this.position + 1;
+		boolean closing = i < this.html.length() && this.html.charAt(i) == '/';
+		if(closing)
+		{
+			i++;
+		}
+		int nameStart = i;
+		if(i < this.html.length() && Character.isLetter(this.html.charAt(i)))
+		{
+			while(i < this.html.length() && Character.isLetterOrDigit(this.html.charAt(i)))
+			{
+				i++;
+			}
+		}
+		if(i == nameStart)
+		{
+			// Not a tag (e.g. a stray '<' in the text, a doctype or a processing instruction)
+			if(i < this.html.length() && (this.html.charAt(i) == '!' || this.html.charAt(i) == '?'))
+			{
+				this.skipPast(">", i);
+			}
+			else
+			{
+				this.appendText(this.position, this.position + 1);
+				this.position++;
+			}
+			return;
+		}
+		int nameEnd = i;
+
+		String href = this.scanAttributes(nameEnd, !closing && this.nameMatches(nameStart, nameEnd, "a"));
+
+		if(this.nameMatches(nameStart, nameEnd, "p"))
+		{
+			if(!closing)
+			{
+				this.text.append(' ');
+			}
+			this.inParagraph = !closing;
+		}
+		else if(this.nameMatches(nameStart, nameEnd, "title"))
+		{
+			if(!closing && this.title == null)
+			{
+				this.title = new StringBuilder();
+				this.inTitle = true;
+			}
+			else if(closing)
+			{
+				this.inTitle = false;
+			}
+		}
+		else if(href != null)
+		{
+			this.links.add(href);
+		}
+		else if(!closing && (this.nameMatches(nameStart, nameEnd, "script") || this.nameMatches(nameStart, nameEnd, "style")))
+		{
+			// The contents are code, not text, so skip ahead to the closing tag
+			String closeTag = "</" + this.html.substring(nameStart, nameEnd);
+			int end = this.indexOfIgnoreCase(closeTag, this.position);
+			this.position = (end < 0) ? this.html.length() : end;
+		}
+	}
+
+	/**
+	 * Scans the attributes of a tag, moving the current position past the end of the tag
+	 * @param start Position just after the tag name
+	 * @param wantHref Whether the value of the href attribute is wanted
+	 * @return The value of the href attribute, if it is wanted and present, otherwise <b>null</b>
+	 */
+	private String scanAttributes(int start, boolean wantHref)
+	{
+		String href = null;
+		int length = this.html.length();
+		int i = start;
+		while(i < length && this.html.charAt(i) != '>')
+		{
+			char c = this.html.charAt(i);
+			if(Character.isWhitespace(c) || c == '/')
+			{
+				i++;
+				continue;
+			}
+
+			// Attribute name
+			int nameStart = i;
+			while(i < length && !Character.isWhitespace(this.html.charAt(i)) && "=>/".indexOf(this.html.charAt(i)) < 0)
+			{
+				i++;
+			}
+			int nameEnd = i;
+			while(i < length && Character.isWhitespace(this.html.charAt(i)))
+			{
+				i++;
+			}
+			if(i >= length || this.html.charAt(i) != '=')
+			{
+				// An attribute with no value
+				continue;
+			}
+			i++;
+			while(i < length && Character.isWhitespace(this.html.charAt(i)))
+			{
+				i++;
+			}
+
+			// Attribute value
+			int valueStart;
+			int valueEnd;
+			if(i < length && (this.html.charAt(i) == '"' || this.html.charAt(i) == '\''))
+			{
+				valueStart = i + 1;
+				valueEnd = this.html.indexOf(this.html.charAt(i), valueStart);
+				if(valueEnd < 0)
+				{
+					valueEnd = length;
+				}
+				i = Math.min(valueEnd + 1, length);
+			}
+			else
+			{
+				valueStart = i;
+				while(i < length && !Character.isWhitespace(this.html.charAt(i)) && this.html.charAt(i) != '>')
+				{
+					i++;
+				}
+				valueEnd = i;
+			}
+
+			if(wantHref && href == null && this.nameMatches(nameStart, nameEnd, "href"))
+			{
+				href = this.html.substring(valueStart, valueEnd);
+			}
+		}
+		this.position = Math.min(i + 1, length);
+		return href;
+	}
+
+	/**
+	 * Checks (ignoring case) whether the name running between the given positions is the given name
+	 * @param start Position of the first character of the name
+	 * @param end Position just after the last character of the name
+	 * @param name The name to compare with, in lower case
+	 * @return <code>true</code> if the names match
+	 */
+	private boolean nameMatches(int start, int end, String name)
+	{
+		return (end - start) == name.length() && this.html.regionMatches(true, start, name, 0, name.length());
+	}
+
+	/**
+	 * Moves the current position past the next occurrence of the given string, or to the end of the page if there is none
+	 * @param end The string to look for
+	 * @param from Position from which to start looking
+	 */
+	private void skipPast(String end, int from)
+	{
+		int found = this.html.indexOf(end, from);
+		this.position = (found < 0) ? this.html.length() : found + end.length();
+	}
+
+	/**
+	 * Finds the next occurrence of the given string, ignoring case
+	 * @param s The string to look for
+	 * @param from Position from which to start looking
+	 * @return The position of the string, or -1 if it does not occur
+	 */
+	private int indexOfIgnoreCase(String s, int from)
+	{
+		int last = this.html.length() - s.length();
+		for(int i = from; i <= last; i++)
+		{
+			if(this.html.charAt(i) == '<' && this.html.regionMatches(true, i, s, 0, s.length()))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,558 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * A PageFetcher downloads web pages asynchronously, with a single shared HttpClient. The client keeps connections
+ * open between requests and reuses them for later requests to the same host, and speaks HTTP/2 to servers that
+ * support it (falling back to HTTP/1.1 for those that do not).
+ * <p/>
+ * Every fetch is bounded: connecting must finish within <code>connectTimeout</code>, the whole response (headers and
+ * body) must arrive within <code>requestTimeout</code>, and a body longer than <code>maxBodySize</code> bytes, before
+ * or after decompression, is abandoned. So a slow or huge page costs at most a bounded amount of time and memory,
+ * and never holds up anything but its own fetch.
+ * <p/>
+ * Responses may be compressed with gzip or deflate (with or without the zlib wrapper), and are decoded using the
+ * charset named in their Content-Type header, or UTF-8 if there is none. A response with a status other than 2xx
+ * counts as a failed fetch, except for a 304 (Not Modified) in answer to a conditional request.
+ * <p/>
+ * A fetch can be made conditional on the page having changed since it was last fetched, by passing the ETag and/or
+ * Last-Modified value that the server sent with it then. If the server replies that the page has not changed, no
+ * body is transferred, and the Response says so.
+ */
+public class PageFetcher
+{
+	/**
+	 * Default time (milliseconds) allowed for connecting to a server
+	 */
+	public static final long DEFAULT_CONNECT_TIMEOUT = 10000;
+
+	/**
+	 * Default time (milliseconds) allowed for a whole response to arrive
+	 */
+	public static final long DEFAULT_REQUEST_TIMEOUT = 30000;
+
+	/**
+	 * Default maximum size (bytes) of a page
+	 */
+	public static final int DEFAULT_MAX_BODY_SIZE = 8 * 1024 * 1024;
+
+	/**
+	 * The User-Agent header sent with every request
+	 */
+	public static final String USER_AGENT = "JavaSandcrawler/1.0";
+
+	/**
+	 * The client through which all requests are sent, and which owns the pool of open connections
+	 */
+	private final HttpClient client;
+
+	/**
+	 * Time (milliseconds) allowed for a whole response to arrive
+	 */
+	private final long requestTimeout;
+
+	/**
+	 * Maximum size (bytes) of a page, before or after decompression
+	 */
+	private final int maxBodySize;
+
+	/**
+	 * The outcome of a successful fetch: either the text of the page, or word that it has not changed, together with
+	 * the validators the server sent for it
+	 */
+	public static class Response
+	{
+		/**
+		 * The text of the page, or <b>null</b> if it has not been modified
+		 */
+		private final String text;
+
+		/**
+		 * The page's ETag, or <b>null</b> if the server did not send one
+		 */
+		private final String etag;
+
+		/**
+		 * The page's Last-Modified date, exactly as the server sent it, or <b>null</b> if it did not send one
+		 */
+		private final String lastModified;
+
+		/**
+		 * Creates a new Response
+		 * @param text The text of the page, or <b>null</b> if it has not been modified
+		 * @param etag The page's ETag, or <b>null</b>
+		 * @param lastModified The page's Last-Modified date, or <b>null</b>
+		 */
+		Response(String text, String etag, String lastModified)
+		{
+			this.text = text;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Indicates whether the page was sent, rather than reported unchanged
+		 * @return <code>false</code> if the server replied 304 (Not Modified) to a conditional request
+		 */
+		public boolean isModified()
+		{
+			return this.text != null;
+		}
+
+		/**
+		 * Getter for <code>text</code>
+		 * @return The text of the page, or <b>null</b> if it has not been modified
+		 */
+		public String getText()
+		{
+			return this.text;
+		}
+
+		/**
+		 * Getter for <code>etag</code>
+		 * @return The page's ETag, or <b>null</b> if there is none
+		 */
+		public String getETag()
+		{
+			return this.etag;
+		}
+
+		/**
+		 * Getter for <code>lastModified</code>
+		 * @return The page's Last-Modified date, or <b>null</b> if there is none
+		 */
+		public String getLastModified()
+		{
+			return this.lastModified;
+		}
+	}
+
+	/**
+	 * Creates a new PageFetcher with the default timeouts and maximum page size
+	 */
+	public PageFetcher()
+	{
+		this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT, DEFAULT_MAX_BODY_SIZE);
+	}
+
+	/**
+	 * Creates a new PageFetcher
+	 * @param connectTimeout Time in milliseconds allowed for connecting to a server
+	 * @param requestTimeout Time in milliseconds allowed for a whole response to arrive
+	 * @param maxBodySize Maximum size of a page in bytes, before or after decompression
+	 */
+	public PageFetcher(long connectTimeout, long requestTimeout, int maxBodySize)
+	{
+		this.client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_2)
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.connectTimeout(Duration.ofMillis(Math.max(1, connectTimeout)))
+				.build();
+		this.requestTimeout = Math.max(1, requestTimeout);
+		this.maxBodySize = Math.max(0, maxBodySize);
+	}
+
+	/**
+	 * Starts downloading a page
+	 * @param url The URL of the page
+	 * @return A future that completes with the text of the page, or exceptionally with an IOException if the page
+	 * could not be fetched (or a MalformedURLException if the URL cannot be used)
+	 */
+	public CompletableFuture<String> fetchAsync(String url)
+	{
+		return this.fetchAsync(url, null, null).thenApply(Response::getText);
+	}
+
+	/**
+	 * Starts downloading a page, unless it has not changed since the server last sent the given validators
+	 * @param url The URL of the page
+	 * @param etag The ETag the server last sent for the page, or <b>null</b>
+	 * @param lastModified The Last-Modified date the server last sent for the page, or <b>null</b>
+	 * @return A future that completes with the Response, or exceptionally with an IOException if the page could not
+	 * be fetched (or a MalformedURLException if the URL cannot be used)
+	 */
+	public CompletableFuture<Response> fetchAsync(String url, String etag, String lastModified)
+	{
+		HttpRequest request;
+		try
+		{
+			HttpRequest.Builder builder = HttpRequest.newBuilder(toURI(url))
+					.timeout(Duration.ofMillis(this.requestTimeout))
+					.header("Accept-Encoding", "gzip, deflate")
+					.header("User-Agent", USER_AGENT)
+					.GET();
+			if(etag != null)
+			{
+				builder.header("If-None-Match", etag);
+			}
+			if(lastModified != null)
+			{
+				builder.header("If-Modified-Since", lastModified);
+			}
+			request = builder.build();
+		}
+		catch(MalformedURLException e)
+		{
+			return CompletableFuture.failedFuture(e);
+		}
+		catch(URISyntaxException | IllegalArgumentException e)
+		{
+			return CompletableFuture.failedFuture(new MalformedURLException(url + ": " + e.getMessage()));
+		}
+
+		// The request timeout only covers the wait for the headers, so the body gets its own deadline as well
+		CompletableFuture<HttpResponse<byte[]>> response = this.client.sendAsync(request, this::bodySubscriber);
+		return response
+				.orTimeout(this.requestTimeout, TimeUnit.MILLISECONDS)
+				.handle((result, error) ->
+				{
+					if(error != null)
+					{
+						response.cancel(true);
+						throw new CompletionException(translate(url, error));
+					}
+					try
+					{
+						return this.decode(url, result, etag, lastModified);
+					}
+					catch(IOException e)
+					{
+						throw new CompletionException(e);
+					}
+				});
+	}
+
+	/**
+	 * Downloads a page, waiting for it to arrive
+	 * @param url The URL of the page
+	 * @return The text of the page
+	 * @throws IOException If the page could not be fetched
+	 */
+	public String fetch(String url) throws IOException
+	{
+		try
+		{
+			return this.fetchAsync(url).get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while fetching " + url);
+		}
+		catch(ExecutionException e)
+		{
+			throw translate(url, e.getCause());
+		}
+	}
+
+	/**
+	 * Converts a URL string into a URI. URLs found in pages sometimes contain characters that are not allowed in a
+	 * URI (such as spaces); these are quoted, as a browser would.
+	 * @param url The URL
+	 * @return The equivalent URI
+	 * @throws MalformedURLException If the string is not a URL at all
+	 * @throws URISyntaxException If the URL cannot be made into a valid URI
+	 */
+	private static URI toURI(String url) throws MalformedURLException, URISyntaxException
+	{
+		try
+		{
+			return new URI(url);
+		}
+		catch(URISyntaxException e)
+		{
+			// Split the URL into its parts by hand, and let the multi-argument constructor quote each one
+			int colon = url.indexOf("://");
+			if(colon <= 0)
+			{
+				throw new MalformedURLException("no protocol: " + url);
+			}
+			String scheme = url.substring(0, colon);
+			int start = colon + 3;
+			int fragmentStart = url.indexOf('#', start);
+			String fragment = (fragmentStart < 0) ? null : url.substring(fragmentStart + 1);
+			String rest = (fragmentStart < 0) ? url : url.substring(0, fragmentStart);
+			int queryStart = rest.indexOf('?', start);
+			String query = (queryStart < 0) ? null : rest.substring(queryStart + 1);
+			rest = (queryStart < 0) ? rest : rest.substring(0, queryStart);
+			int pathStart = rest.indexOf('/', start);
+			String authority = (pathStart < 0) ? rest.substring(start) : rest.substring(start, pathStart);
+			String path = (pathStart < 0) ? "" : rest.substring(pathStart);
+			return new URI(scheme, authority, path, query, fragment);
+		}
+	}
+
+	/**
+	 * Chooses how to receive a response body. The bodies of unsuccessful responses are thrown away unread; others
+	 * are collected, up to the maximum page size.
+	 * @param info The status and headers of the response
+	 * @return The subscriber that will receive the body
+	 */
+	private HttpResponse.BodySubscriber<byte[]> bodySubscriber(HttpResponse.ResponseInfo info)
+	{
+		if(info.statusCode() / 100 != 2)
+		{
+			return HttpResponse.BodySubscribers.replacing(null);
+		}
+		return new LimitedBodySubscriber(this.maxBodySize);
+	}
+
+	/**
+	 * Turns a complete response into a Response, decompressing and decoding the text of the page
+	 * @param url The URL of the page
+	 * @param response The response
+	 * @param etag The ETag sent with the request, if it was conditional
+	 * @param lastModified The Last-Modified date sent with the request, if it was conditional
+	 * @return The Response
+	 * @throws IOException If the response was unsuccessful, or could not be decompressed
+	 */
+	private Response decode(String url, HttpResponse<byte[]> response, String etag, String lastModified)
+			throws IOException
+	{
+		// A 304 may repeat or update the validators; any it leaves out still stand
+		String newETag = response.headers().firstValue("ETag").orElse(null);
+		String newLastModified = response.headers().firstValue("Last-Modified").orElse(null);
+		if(response.statusCode() == 304 && (etag != null || lastModified != null))
+		{
+			return new Response(null, (newETag != null) ? newETag : etag,
+					(newLastModified != null) ? newLastModified : lastModified);
+		}
+		if(response.statusCode() / 100 != 2)
+		{
+			throw new IOException("HTTP " + response.statusCode() + " from " + url);
+		}
+		byte[] body = response.body();
+		String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim().toLowerCase();
+		if(encoding.equals("gzip") || encoding.equals("x-gzip"))
+		{
+			body = this.inflate(url, new GZIPInputStream(new ByteArrayInputStream(body)));
+		}
+		else if(encoding.equals("deflate"))
+		{
+			try
+			{
+				body = this.inflate(url, new InflaterInputStream(new ByteArrayInputStream(body)));
+			}
+			catch(ZipException e)
+			{
+				// "deflate" should mean zlib-wrapped data, but some servers send raw deflate data without the wrapper
+				Inflater raw = new Inflater(true);
+				try
+				{
+					body = this.inflate(url, new InflaterInputStream(new ByteArrayInputStream(body), raw));
+				}
+				finally
+				{
+					// A stream given its own Inflater leaves it to the caller to free
+					raw.end();
+				}
+			}
+		}
+		String text = new String(body, charsetOf(response.headers().firstValue("Content-Type").orElse("")));
+		return new Response(text, newETag, newLastModified);
+	}
+
+	/**
+	 * Decompresses a response body, giving up if it turns out to be larger than the maximum page size
+	 * @param url The URL of the page
+	 * @param in The decompressing stream
+	 * @return The decompressed body
+	 * @throws IOException If the body is corrupt or too large
+	 */
+	private byte[] inflate(String url, InputStream in) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try(in)
+		{
+			int read;
+			while((read = in.read(buffer)) != -1)
+			{
+				if(out.size() + read > this.maxBodySize)
+				{
+					throw new IOException(url + " is larger than " + this.maxBodySize + " bytes uncompressed");
+				}
+				out.write(buffer, 0, read);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Finds the charset named in a Content-Type header
+	 * @param contentType The value of the header
+	 * @return The charset named, or UTF-8 if none is named or it is not supported
+	 */
+	static Charset charsetOf(String contentType)
+	{
+		for(String parameter : contentType.split(";"))
+		{
+			String[] pair = parameter.trim().split("=", 2);
+			if(pair.length == 2 && pair[0].trim().equalsIgnoreCase("charset"))
+			{
+				try
+				{
+					return Charset.forName(pair[1].trim().replace("\"", ""));
+				}
+				catch(IllegalCharsetNameException | UnsupportedCharsetException e)
+				{
+					break;
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Turns whatever went wrong with a fetch into an IOException (or MalformedURLException) describing it
+	 * @param url The URL of the page
+	 * @param error The error, possibly wrapped in a CompletionException
+	 * @return The exception to report
+	 */
+	static IOException translate(String url, Throwable error)
+	{
+		while(error instanceof CompletionException && error.getCause() != null)
+		{
+			error = error.getCause();
+		}
+		if(error instanceof IOException)
+		{
+			return (IOException)error;
+		}
+		if(error instanceof TimeoutException)
+		{
+			return new HttpTimeoutException("Timed out fetching " + url);
+		}
+		return new IOException("Could not fetch " + url + ": " + error, error);
+	}
+
+	/**
+	 * Collects a response body into a byte array, cancelling the download if it grows past a maximum size
+	 */
+	private static class LimitedBodySubscriber implements HttpResponse.BodySubscriber<byte[]>
+	{
+		/**
+		 * Completes with the body once it has all arrived
+		 */
+		private final CompletableFuture<byte[]> result;
+
+		/**
+		 * The body received so far
+		 */
+		private final ByteArrayOutputStream buffer;
+
+		/**
+		 * Maximum size of the body, in bytes
+		 */
+		private final int limit;
+
+		/**
+		 * The subscription through which the body arrives
+		 */
+		private Flow.Subscription subscription;
+
+		/**
+		 * Creates a subscriber that will accept a body of up to the given size
+		 * @param limit Maximum size of the body, in bytes
+		 */
+		LimitedBodySubscriber(int limit)
+		{
+			this.result = new CompletableFuture<byte[]>();
+			this.buffer = new ByteArrayOutputStream();
+			this.limit = limit;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription)
+		{
+			this.subscription = subscription;
+			subscription.request(Long.MAX_VALUE);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> items)
+		{
+			if(this.result.isDone())
+			{
+				return;
+			}
+			for(ByteBuffer item : items)
+			{
+				if(this.buffer.size() + item.remaining() > this.limit)
+				{
+					this.subscription.cancel();
+					this.result.completeExceptionally(new IOException("Page is larger than " + this.limit + " bytes"));
+					return;
+				}
+				byte[] bytes = new byte[item.remaining()];
+				item.get(bytes);
+				this.buffer.writeBytes(bytes);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable)
+		{
+			this.result.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete()
+		{
+			this.result.complete(this.buffer.toByteArray());
+		}
+
+		@Override
+		public CompletionStage<byte[]> getBody()
+		{
+			return this.result;
+		}
+	}
+}
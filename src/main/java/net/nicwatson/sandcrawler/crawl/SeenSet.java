@@ -0,0 +1,74 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+/**
+ * A SeenSet keeps track of every URL that a CrawlFrontier has ever queued, so that no URL is queued twice. It only
+ * needs to answer membership questions, so implementations are free to store the URLs in whatever form is most
+ * compact, at the cost of (rarely) mistaking a new URL for one already seen.
+ * <p/>
+ * Implementations need not be thread-safe; the frontier only uses its SeenSet while holding its own lock.
+ * @see ExactSeenSet
+ * @see FingerprintSeenSet
+ * @see BloomSeenSet
+ */
+public interface SeenSet
+{
+	/**
+	 * Records a URL as seen
+	 * @param url The URL
+	 * @return <code>true</code> if the URL had not been seen before
+	 */
+	public boolean add(String url);
+
+	/**
+	 * Indicates whether a URL has been seen
+	 * @param url The URL
+	 * @return <code>true</code> if the URL has (or, for an inexact set, appears to have) been seen
+	 */
+	public boolean contains(String url);
+
+	/**
+	 * Reports how many distinct URLs have been seen
+	 * @return The number of URLs added
+	 */
+	public int size();
+
+	/**
+	 * Estimates how much heap the set is using
+	 * @return The approximate size of the set's storage, in bytes
+	 */
+	public long memoryUsage();
+
+	/**
+	 * Estimates the probability that the set would currently mistake a new URL for one already seen
+	 * @return The estimated false-positive rate, or 0 if the set is exact
+	 */
+	public double falsePositiveRate();
+
+	/**
+	 * Summarizes the size and accuracy of a SeenSet, for reporting at the end of a crawl
+	 * @param set The set to describe
+	 * @return A one-line description of the set
+	 */
+	public static String describe(SeenSet set)
+	{
+		return String.format("%s: %d URLs in %d KB, estimated false-positive rate %.2g", set.getClass().getSimpleName(),
+				set.size(), (set.memoryUsage() + 1023) / 1024, set.falsePositiveRate());
+	}
+}
@@ -0,0 +1,390 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+
+import net.nicwatson.sandcrawler.common.VarInt;
+
+/**
+ * A SpillingQueue is a FIFO queue of URLs that is kept mostly on disk. New URLs collect in an in-memory tail, and
+ * each time the tail fills up it is sealed into a Segment, which the owner of the queue writes out to a file when it
+ * is convenient. URLs come back out a whole batch at a time, oldest first: a segment that has not been written yet is
+ * handed back straight from memory, and one that has been written must first be read back in by the owner. Segment
+ * files are only ever written and read sequentially, from start to end, and are deleted once read.
+ * <p/>
+ * The queue itself never touches the disk, so that its owner can keep the queue's bookkeeping under a lock and do
+ * the slow part, <code>Segment.write()</code> and <code>Segment.read()</code>, outside it. The CrawlFrontier uses one
+ * SpillingQueue as the overflow for all of its host queues, and hands segment I/O to a background thread.
+ * <p/>
+ * A SpillingQueue is not thread-safe; the CrawlFrontier only uses it while holding its own lock. Segments are
+ * thread-safe.
+ */
+class SpillingQueue
+{
+	/**
+	 * URLs at the back of the queue, not yet sealed into a segment
+	 */
+	private ArrayDeque<String> tail;
+
+	/**
+	 * Sealed segments holding the URLs in front of the tail, oldest first
+	 */
+	private final ArrayDeque<Segment> segments;
+
+	/**
+	 * The directory segment files are written to
+	 */
+	private final Path directory;
+
+	/**
+	 * Number of URLs in each segment
+	 */
+	private final int segmentSize;
+
+	/**
+	 * Total number of URLs in the queue
+	 */
+	private int size;
+
+	/**
+	 * Creates a new, empty queue
+	 * @param directory The directory to write segment files to, which is created if it does not exist
+	 * @param segmentSize Number of URLs to seal into each segment (at least 1)
+	 */
+	SpillingQueue(Path directory, int segmentSize)
+	{
+		this.tail = new ArrayDeque<String>();
+		this.segments = new ArrayDeque<Segment>();
+		this.directory = directory;
+		this.segmentSize = Math.max(1, segmentSize);
+		this.size = 0;
+	}
+
+	/**
+	 * Adds a URL to the back of the queue, sealing the tail into a new segment if it is full
+	 * @param url The URL
+	 * @return The segment that was just sealed, which the caller should now write out; or <b>null</b> if the tail
+	 * is not full yet
+	 */
+	Segment add(String url)
+	{
+		this.tail.add(url);
+		this.size++;
+		if(this.tail.size() < this.segmentSize)
+		{
+			return null;
+		}
+		Segment sealed = new Segment(this.directory, this.tail);
+		this.segments.add(sealed);
+		this.tail = new ArrayDeque<String>();
+		return sealed;
+	}
+
+	/**
+	 * Removes the batch of URLs at the front of the queue (the oldest segment, or the tail if there are no segments),
+	 * provided it is in memory. If the oldest segment was read back with URLs missing, the size of the queue is
+	 * still reduced by the full segment.
+	 * @return The URLs in the batch, in order; or <b>null</b> if the queue is empty or the oldest segment is on disk
+	 * and must be read back in first
+	 * @see #peekSegment()
+	 */
+	ArrayDeque<String> pollBatch()
+	{
+		ArrayDeque<String> urls;
+		Segment oldest = this.segments.peek();
+		if(oldest != null)
+		{
+			urls = oldest.take();
+			if(urls == null)
+			{
+				return null;
+			}
+			this.segments.poll();
+			this.size -= oldest.count;
+		}
+		else
+		{
+			if(this.tail.isEmpty())
+			{
+				return null;
+			}
+			urls = this.tail;
+			this.tail = new ArrayDeque<String>();
+			this.size -= urls.size();
+		}
+		return urls;
+	}
+
+	/**
+	 * Finds the oldest segment, which must be read back in once <code>pollBatch()</code> reports it is on disk
+	 * @return The oldest segment, or <b>null</b> if there are none
+	 */
+	Segment peekSegment()
+	{
+		return this.segments.peek();
+	}
+
+	/**
+	 * Indicates whether the queue is empty
+	 * @return <code>true</code> if there are no URLs in the queue
+	 */
+	boolean isEmpty()
+	{
+		return this.size == 0;
+	}
+
+	/**
+	 * Reports the number of URLs in the queue, in memory and on disk
+	 * @return The number of URLs
+	 */
+	int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Reports the number of sealed segments, whether or not they have been written out yet
+	 * @return The number of segments
+	 */
+	int segmentCount()
+	{
+		return this.segments.size();
+	}
+
+	/**
+	 * Empties the queue, discarding all segments and deleting their files
+	 */
+	void clear()
+	{
+		for(Segment segment : this.segments)
+		{
+			segment.discard();
+		}
+		this.segments.clear();
+		this.tail.clear();
+		this.size = 0;
+	}
+
+	/**
+	 * A sealed run of URLs from a SpillingQueue, which lives either in memory or in a segment file. The file is
+	 * read and written without holding the segment's lock, so a thread taking the URLs from memory never has to wait
+	 * for disk I/O.
+	 */
+	static class Segment
+	{
+		/**
+		 * The directory the segment file is written to
+		 */
+		private final Path directory;
+
+		/**
+		 * The number of URLs sealed into the segment
+		 */
+		final int count;
+
+		/**
+		 * The URLs, or <b>null</b> while they are only on disk (or once they have been taken)
+		 */
+		private ArrayDeque<String> urls;
+
+		/**
+		 * The segment file, or <b>null</b> if the segment has not been written out
+		 */
+		private Path file;
+
+		/**
+		 * Set once the URLs have been taken or discarded, after which the segment has no further use
+		 */
+		private boolean finished;
+
+		/**
+		 * Seals the given URLs into a new segment, held in memory
+		 * @param directory The directory to write the segment file to
+		 * @param urls The URLs, which must not be modified afterwards
+		 */
+		Segment(Path directory, ArrayDeque<String> urls)
+		{
+			this.directory = directory;
+			this.count = urls.size();
+			this.urls = urls;
+			this.file = null;
+			this.finished = false;
+		}
+
+		/**
+		 * Writes the URLs out to a segment file and lets go of them in memory. If the URLs are taken while the file
+		 * is being written, the file is deleted again. If writing fails, the URLs simply stay in memory.
+		 * @return <code>true</code> if the segment no longer needs writing; <code>false</code> if writing failed
+		 */
+		boolean write()
+		{
+			ArrayDeque<String> pending;
+			synchronized(this)
+			{
+				if(this.finished || this.file != null)
+				{
+					return true;
+				}
+				pending = this.urls;
+			}
+			Path segment = null;
+			try
+			{
+				Files.createDirectories(this.directory);
+				segment = Files.createTempFile(this.directory, "frontier-", ".seg");
+				try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment), 65536)))
+				{
+					VarInt.write(out, pending.size());
+					for(String url : pending)
+					{
+						VarInt.writeString(out, url);
+					}
+				}
+				synchronized(this)
+				{
+					if(!this.finished)
+					{
+						this.file = segment;
+						this.urls = null;
+						return true;
+					}
+				}
+			}
+			catch(IOException e)
+			{
+				System.err.println("Could not spill crawl frontier to " + this.directory + "; keeping it in memory: "
+						+ e.getMessage());
+			}
+			delete(segment);
+			return this.isFinished();
+		}
+
+		/**
+		 * Reads the URLs back in from the segment file, if they are not in memory already, and deletes the file. If
+		 * the file cannot be read, the URLs that could not be read from it are lost.
+		 */
+		void read()
+		{
+			Path segment;
+			synchronized(this)
+			{
+				if(this.finished || this.urls != null)
+				{
+					return;
+				}
+				segment = this.file;
+			}
+			ArrayDeque<String> loaded = new ArrayDeque<String>(this.count);
+			try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 65536)))
+			{
+				VarInt.read(in);
+				for(int i = 0; i < this.count; i++)
+				{
+					loaded.add(VarInt.readString(in));
+				}
+			}
+			catch(IOException e)
+			{
+				if(!this.isFinished())
+				{
+					System.err.println("Could not read frontier segment " + segment + "; "
+							+ (this.count - loaded.size()) + " URLs lost: " + e.getMessage());
+				}
+			}
+			delete(segment);
+			synchronized(this)
+			{
+				if(!this.finished)
+				{
+					this.urls = loaded;
+					this.file = null;
+				}
+			}
+		}
+
+		/**
+		 * Takes the URLs from memory, after which the segment is finished with
+		 * @return The URLs (possibly fewer than <code>count</code>, if reading them back failed), or <b>null</b> if
+		 * they are on disk and must be read back in first
+		 */
+		synchronized ArrayDeque<String> take()
+		{
+			if(this.urls == null)
+			{
+				return null;
+			}
+			ArrayDeque<String> taken = this.urls;
+			this.urls = null;
+			this.finished = true;
+			return taken;
+		}
+
+		/**
+		 * Throws the segment away, deleting its file if it has one
+		 */
+		void discard()
+		{
+			Path segment;
+			synchronized(this)
+			{
+				this.finished = true;
+				this.urls = null;
+				segment = this.file;
+				this.file = null;
+			}
+			delete(segment);
+		}
+
+		/**
+		 * Indicates whether the segment has been taken or discarded
+		 * @return <code>true</code> if the segment is finished with
+		 */
+		synchronized boolean isFinished()
+		{
+			return this.finished;
+		}
+
+		/**
+		 * Deletes a segment file, if there is one
+		 * @param segment The file, or <b>null</b>
+		 */
+		private static void delete(Path segment)
+		{
+			if(segment == null)
+			{
+				return;
+			}
+			try
+			{
+				Files.deleteIfExists(segment);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Could not delete frontier segment " + segment + ": " + e.getMessage());
+			}
+		}
+	}
+}
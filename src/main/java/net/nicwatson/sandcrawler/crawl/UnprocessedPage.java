@@ -22,9 +22,10 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.LinkedHashSet;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 
+import net.nicwatson.sandcrawler.common.IndexedPage;
 import net.nicwatson.sandcrawler.common.URLFormat;
 
 /**
@@ -39,21 +40,6 @@ public class UnprocessedPage
 	 */
 	public static final Pattern PATTERN_PROTOCOL = Pattern.compile("https?:\\/\\/");
 	
-	/**
-	 * regex pattern used to extract the contents of the HTML title tag
-	 */
-	public static final Pattern TITLE_PATTERN = Pattern.compile("(?s)<.*?title.*?>(.+)<.*?\\/title.*?>");
-	
-	/**
-	 * regex pattern used to extract the contents of HTML anchor tags (hyperlinks)
-	 */
-	public static final Pattern LINK_PATTERN = Pattern.compile("(?s)<\\s*?a.+?href\\s*?=\\s*?\\\"(.+?)\\\".*?>");
-	
-	/**
-	 * regex pattern used to extract the contents of the HTML p (paragraph) tag
-	 */
-	public static final Pattern TEXT_PATTERN = Pattern.compile("(?s)<.*?p(?!re|ic).*?>(.+)<\\s*?\\/p.*?\\s*?>");
-	
 	/**
 	 * The URL of the page
 	 */
@@ -63,6 +49,12 @@ public class UnprocessedPage
 	 * The raw text content of the page
 	 */
 	protected String rawText;
+	
+	/**
+	 * The title, paragraph text and links extracted from the raw text. This is extracted the first time any of them is
+	 * needed, and then stored for reuse. It is <b>null</b> until then, or if the raw text has changed since.
+	 */
+	protected HtmlExtractor extraction;
 
 	/**
 	 * The set of outgoing hyperlinks
@@ -73,6 +65,22 @@ public class UnprocessedPage
 	 * A URLFormat object for this page, used to split the URL up into components for link resolution
 	 */
 	protected URLFormat urlFormat;
+
+	/**
+	 * The ETag the server sent with the page, or <b>null</b> if there was none
+	 */
+	protected String etag;
+
+	/**
+	 * The Last-Modified date the server sent with the page, or <b>null</b> if there was none
+	 */
+	protected String lastModified;
+
+	/**
+	 * If the page was recrawled and the server reported it unchanged, the page as it was indexed before; otherwise
+	 * <b>null</b>
+	 */
+	protected IndexedPage unchanged;
 	
 	/**
 	 * Creates a new UnprocessedPage for the given URL. The URL is parsed into a URLFormat. Other fields are
@@ -87,7 +95,11 @@ public class UnprocessedPage
 		this.url = new URL(strURL);
 		this.urlFormat = new URLFormat(strURL);
 		this.outLinks = null;
-		this.rawText = "";			
+		this.rawText = "";
+		this.extraction = null;
+		this.etag = null;
+		this.lastModified = null;
+		this.unchanged = null;
 	}
 	
 	/**
@@ -103,6 +115,20 @@ public class UnprocessedPage
 		this(strURL);
 		this.rawText = text;
 	}
+	
+	/**
+	 * Retrieves the title, paragraph text and links extracted from the page's raw text. The raw text is only scanned
+	 * the first time this is called (or the first time after it changes); all three are extracted in the same pass.
+	 * @return The extracted contents of the page
+	 */
+	protected HtmlExtractor getExtraction()
+	{
+		if(this.extraction == null)
+		{
+			this.extraction = new HtmlExtractor(this.rawText);
+		}
+		return this.extraction;
+	}
 
 	/**
 	 * Getter for the java.net.URL object representing this page's URL - useful for passing directly to
@@ -159,6 +185,10 @@ public class UnprocessedPage
 	{
 		if(forceRecalculate || this.outLinks == null)
 		{
+			if(forceRecalculate)
+			{
+				this.extraction = null;
+			}
 			return this.findLinks();
 		}
 		return this.outLinks;
@@ -170,27 +200,22 @@ public class UnprocessedPage
 	 */
 	public String extractTitle()
 	{
-		Matcher matcher = TITLE_PATTERN.matcher(this.rawText);
-		if(!matcher.find())
+		String title = this.getExtraction().getTitle();
+		if(title == null)
 		{
 			return "<Untitled Page>";
 		}
-		return matcher.group(1);
+		return title;
 	}
 	
 	/**
-	 * Extract and concatenate the text contents of all the HTML P tags
+	 * Extract and concatenate the text contents of all the HTML P tags. Any markup inside the paragraphs is dropped,
+	 * but its text is kept.
 	 * @return String concatenation of all the paragraph text contents
 	 */
 	public String extractContentTexts()
 	{
-		String content = "";
-		Matcher matcher = TEXT_PATTERN.matcher(this.rawText);
-		while(matcher.find())
-		{
-			content += " " + matcher.group(1);
-		}
-		return content;
+		return this.getExtraction().getText();
 	}
 	
 	/**
@@ -201,10 +226,8 @@ public class UnprocessedPage
 	public Set<String> findLinks()
 	{
 		Set<String> links = new LinkedHashSet<String>();
-		Matcher matcher = LINK_PATTERN.matcher(this.rawText);
-		while(matcher.find())
+		for(String candidate : this.getExtraction().getLinks())
 		{
-			String candidate = matcher.group(1);
 			// System.out.println("Candidate: " + candidate);
 			String builder = "";
 			if(candidate.startsWith("http://") || candidate.startsWith("https://"))
@@ -236,7 +259,81 @@ public class UnprocessedPage
 	 */
 	public void fetch() throws IOException
 	{
-		this.rawText = Crawler.readURL(this.getURL());	
+		this.rawText = Crawler.readURL(this.getURL());
+		this.extraction = null;
+	}
+
+	/**
+	 * Starts fetching the page's content with the given PageFetcher. Once it arrives it is stored in the local
+	 * rawText field.
+	 * @param fetcher The PageFetcher to download the page with
+	 * @return A future that completes with this page once its content has been stored, or exceptionally if it could
+	 * not be fetched
+	 */
+	public CompletableFuture<UnprocessedPage> fetchAsync(PageFetcher fetcher)
+	{
+		return this.fetchAsync(fetcher, null);
+	}
+
+	/**
+	 * Starts fetching the page's content with the given PageFetcher, unless it has not changed since it was indexed.
+	 * If it has changed (or the server cannot tell), the new content is stored in the local rawText field. If it has
+	 * not, the page is marked unchanged and takes its links from the previously indexed page, and its content is left
+	 * empty.
+	 * @param fetcher The PageFetcher to download the page with
+	 * @param previous The page as it was last indexed, whose validators make the request conditional; or
+	 * <b>null</b> to fetch the page unconditionally
+	 * @return A future that completes with this page once it has been fetched (or found unchanged), or exceptionally
+	 * if it could not be fetched
+	 */
+	public CompletableFuture<UnprocessedPage> fetchAsync(PageFetcher fetcher, IndexedPage previous)
+	{
+		String etag = (previous == null) ? null : previous.getETag();
+		String lastModified = (previous == null) ? null : previous.getLastModified();
+		return fetcher.fetchAsync(this.getURLString(), etag, lastModified).thenApply(response ->
+		{
+			this.etag = response.getETag();
+			this.lastModified = response.getLastModified();
+			if(response.isModified())
+			{
+				this.rawText = response.getText();
+				this.extraction = null;
+				this.unchanged = null;
+			}
+			else
+			{
+				this.unchanged = previous;
+				this.outLinks = new LinkedHashSet<String>(previous.getOutLinks());
+			}
+			return this;
+		});
+	}
+
+	/**
+	 * Getter for <code>etag</code>
+	 * @return The ETag the server sent with the page, or <b>null</b> if there was none
+	 */
+	public String getETag()
+	{
+		return this.etag;
+	}
+
+	/**
+	 * Getter for <code>lastModified</code>
+	 * @return The Last-Modified date the server sent with the page, or <b>null</b> if there was none
+	 */
+	public String getLastModified()
+	{
+		return this.lastModified;
+	}
+
+	/**
+	 * Retrieves the previously indexed version of the page, if the server reported that it has not changed since
+	 * @return The previously indexed page, or <b>null</b> if the page was (re)fetched in full
+	 */
+	public IndexedPage getUnchangedPage()
+	{
+		return this.unchanged;
 	}
 	
 	@Override
@@ -18,7 +18,8 @@
 package net.nicwatson.sandcrawler.frontend;
 
 /**
- * An incomplete feature that would allow a GUI to monitor progress of the web crawl and indexing.
+ * Allows a GUI to monitor progress of the web crawl and indexing. Progress may be reported from any of the threads
+ * doing the work, so implementations must be thread-safe (or pass reports on through a ProgressThrottle).
  * @author Nic
  *
  */
@@ -19,21 +19,26 @@ package net.nicwatson.sandcrawler.frontend;
 
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javafx.application.Application;
-import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
+import javafx.scene.control.ButtonType;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.ScrollPane.ScrollBarPolicy;
 import javafx.scene.layout.StackPane;
 import javafx.scene.media.AudioClip;
 import javafx.stage.Stage;
-import net.nicwatson.sandcrawler.search.SearchResultPlus;
+import net.nicwatson.sandcrawler.frontend.panes.ResultsPane;
+import net.nicwatson.sandcrawler.search.ResultCursor;
+import net.nicwatson.sandcrawler.search.SearchResultImpl;
 
 /**
  * Main GUI controller for the search engine app
@@ -87,6 +92,27 @@ public class GuiController extends Application implements CrawlProgressResponder
 	 * crash when attempting to instantiate any AudioClip object, so we use this flag to prevent that from happening.
 	 */
 	private boolean playSound;
+	
+	/**
+	 * Runs the crawl and search tasks, so that the JavaFX application thread is never kept waiting for them
+	 */
+	private ExecutorService workers;
+	
+	/**
+	 * Carries progress reports from the crawl task to this controller, once per frame
+	 */
+	private ProgressThrottle progress;
+	
+	/**
+	 * The crawl that is running, or <b>null</b> if there is none. Only one crawl runs at a time.
+	 */
+	private Task<Boolean> crawlTask;
+	
+	/**
+	 * The most recent search, or <b>null</b> if there has been none. Its results are shown when it finishes, unless
+	 * another search has been started in the meantime.
+	 */
+	private Task<ResultCursor<SearchResultImpl>> searchTask;
 
 	/**
 	 * Creates a new controller for the search app. The controller makes its own data model and program engine.
@@ -95,16 +121,24 @@ public class GuiController extends Application implements CrawlProgressResponder
 	{
 		model = new GuiModel();
 		program = new Sandcrawler();
+		workers = Executors.newCachedThreadPool(task ->
+		{
+			Thread thread = new Thread(task, "Sandcrawler worker");
+			thread.setDaemon(true);		// Don't keep the program alive once the window is closed
+			return thread;
+		});
+		progress = new ProgressThrottle(this);
+		crawlTask = null;
+		searchTask = null;
 	}
 	
 	@Override
     public void start(Stage primaryStage) throws Exception
     {
 		// First try to load existing crawl data
-    	String dataFilePath = Sandcrawler.DATA_PATH + Sandcrawler.DATA_PREFIX + Sandcrawler.DATA_EXT;
-    	if(program.loadIndex(dataFilePath))		// The loading itself is done through the program engine
+    	if(program.openIndex())		// The loading itself is done through the program engine
     	{
-    		System.out.println("Successfully loaded crawl data from file " + dataFilePath);
+    		System.out.println("Successfully loaded crawl data from " + Sandcrawler.DATA_PATH);
     		// Once we have crawl data, we can populate the data model with key information about the crawl
     		model.setCrawlExists(true);
     		model.populateCrawlStats(program);
@@ -170,6 +204,27 @@ public class GuiController extends Application implements CrawlProgressResponder
 				doNewCrawl(event);
 			}
 		});
+		
+		// Set event handler for the refresh crawl button
+		view.getInteractionPane().getButtonRefresh().setOnAction(new EventHandler<ActionEvent>()
+		{
+			public void handle(ActionEvent event)
+			{
+				doRefreshCrawl(event);
+			}
+		});
+		
+		// If the last crawl was interrupted before it finished, offer to pick it up where it left off
+		String interrupted = program.getInterruptedCrawl();
+		if(interrupted != null)
+		{
+			Alert alert = new Alert(AlertType.CONFIRMATION);
+			alert.setContentText("A crawl of " + interrupted + " was interrupted before it finished. Resume it now?");
+			if(alert.showAndWait().filter(ButtonType.OK::equals).isPresent())
+			{
+				startCrawl(interrupted);
+			}
+		}
         
     }
     
@@ -193,15 +248,41 @@ public class GuiController extends Application implements CrawlProgressResponder
 			
 			// Grab the query from the input box
 			String query = view.getInteractionPane().getQueryBox().getText();
+			boolean boost = view.getInteractionPane().getBoostCheck().isSelected();
 			if(!query.isBlank())
 			{
-				// Use the program engine to build a results list
-				List<SearchResultPlus> results = program.searchPlus(query, view.getInteractionPane().getBoostCheck().isSelected(), 10);
-				// Pass the search results to the model
-				model.setSearchResults(results);
+				// Use the program engine to find the results, in the background. A search that is still running
+				// is cancelled, since its results would be replaced anyway.
+				Task<ResultCursor<SearchResultImpl>> search = new Task<ResultCursor<SearchResultImpl>>()
+				{
+					@Override
+					protected ResultCursor<SearchResultImpl> call()
+					{
+						ResultCursor<SearchResultImpl> results = program.searchCursor(query, boost);
+						// Rank the first screenful here, so the results pane doesn't have to when it shows them
+						results.page(0, ResultsPane.NUM_RESULTS);
+						return results;
+					}
+				};
+				search.setOnSucceeded(done ->
+				{
+					if(searchTask == search)		// Ignore a search that has been overtaken by another
+					{
+						// Pass the search results to the model, and update the view from the model
+						model.setSearchResults(search.getValue());
+						view.update(model);
+					}
+				});
+				search.setOnFailed(failed -> search.getException().printStackTrace(System.err));
+				if(searchTask != null)
+				{
+					searchTask.cancel();
+				}
+				searchTask = search;
+				workers.execute(search);
 			}
 			
-			// Update the view from the model
+			// Update the view from the model (the results follow once the search is done)
 			view.update(model);
 		}
 		else		// Couldn't search because no crawl data available
@@ -236,20 +317,118 @@ public class GuiController extends Application implements CrawlProgressResponder
     		}
     		if(success)						// Valid URL
     		{
-    			view.getResultsPane().clearResults();		// Clear prior search results
-    			CrawlProgressResponder callback = this;
-    			this.updateProgress(ProgressStage.RETRIEVING, 1, 1);
-    			// Run the new crawl. This is supposed to happen in another thread so as not to freeze the GUI but it doesn't work.
-    			Platform.runLater(() -> program.crawlWithProgressReporting(seedURL, callback));
-    			
+    			startCrawl(seedURL);
     		}
     	}
     }
+    
+    /**
+     * Upon pressing the refresh crawl button, the current crawl is crawled again from its seed URL in the background,
+     * reusing the pages that have not changed since (see <code>Sandcrawler.recrawlWithProgressReporting()</code>).
+     * @param event (Ignored)
+     */
+    public void doRefreshCrawl(ActionEvent event)
+    {
+    	if(!model.getCrawlExists())
+    	{
+    		Alert alert = new Alert(AlertType.WARNING);
+    		alert.setContentText("No crawl data is available to refresh. You will need to run a new web crawl first.");
+    		alert.show();
+    		return;
+    	}
+    	runCrawl(() -> program.recrawlWithProgressReporting(progress));
+    }
+    
+    /**
+     * Starts a crawl of the given seed URL in the background (or picks up an interrupted crawl of it), unless a crawl
+     * is already running
+     * @param seedURL The URL of the page where the crawl should be started
+     */
+    private void startCrawl(String seedURL)
+    {
+    	runCrawl(() ->
+    	{
+    		program.crawlWithProgressReporting(seedURL, progress);
+    		return true;
+    	});
+    }
+    
+    /**
+     * Runs a crawl in the background, reporting its progress through the ProgressThrottle, unless a crawl is already
+     * running
+     * @param work The crawl to run, which reports whether it produced a new index
+     */
+    private void runCrawl(Callable<Boolean> work)
+    {
+    	if(crawlTask != null)
+    	{
+    		Alert alert = new Alert(AlertType.WARNING);
+    		alert.setContentText("A crawl is already running. Please wait for it to finish.");
+    		alert.show();
+    		return;
+    	}
+    	// Run the new crawl, index build and PageRank calculation in the background, so the GUI stays
+    	// responsive. Until the new index is ready, searches go on running against the old one.
+    	Task<Boolean> crawl = new Task<Boolean>()
+    	{
+    		@Override
+    		protected Boolean call() throws Exception
+    		{
+    			return work.call();
+    		}
+    	};
+    	crawl.setOnSucceeded(done -> this.finishCrawl(crawl.getValue(), null));
+    	crawl.setOnFailed(failed -> this.finishCrawl(false, crawl.getException()));
+    	crawlTask = crawl;
+    	this.updateProgress(ProgressStage.RETRIEVING, 0, 1);
+    	progress.start();
+    	workers.execute(crawl);
+    }
+
 
 
+    /**
+     * Updates the model and the view once a background crawl has finished, and any index it produced has replaced the old one.
+     * This must run on the JavaFX application thread.
+     * @param crawled <code>true</code> if the crawl produced a new index
+     * @param failure The exception that stopped the crawl, or <b>null</b> if it did not throw one
+     */
+    private void finishCrawl(boolean crawled, Throwable failure)
+    {
+    	progress.stop();
+    	crawlTask = null;
+    	if(crawled)
+    	{
+    		model.clearSearchResults();		// Clear search results from the old index
+    		model.setCrawlExists(true);
+    		model.populateCrawlStats(program);
+    	}
+    	else
+    	{
+    		if(failure != null)
+    		{
+    			failure.printStackTrace(System.err);
+    		}
+    		if(program.getIndex() != null)
+    		{
+    			model.populateCrawlStats(program);		// Go back to showing the stats of the index still in use
+    		}
+    		else
+    		{
+    			model.setCrawlProgress(ProgressStage.MISSING, 0, 0);
+    		}
+    		Alert alert = new Alert(AlertType.ERROR);
+    		alert.setContentText((failure != null) ? "The crawl failed: " + failure.getMessage()
+    				: "The crawl could not be refreshed. Its data file may be missing or unreadable, or it may have no seed URL.");
+    		alert.show();
+    	}
+    	view.update(model);
+    }
 
     /**
      * As defined by the CrawlProgressResponder interface, this updates the model and then the view based on the reported crawl progress.
+     * This must be called on the JavaFX application thread; the crawl task reports its progress through a ProgressThrottle,
+     * which hands it on here once per frame.
      */
 	@Override
 	public void updateProgress(ProgressStage progressStage, int done, int left)
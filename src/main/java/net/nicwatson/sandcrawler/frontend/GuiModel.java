@@ -18,11 +18,12 @@
 package net.nicwatson.sandcrawler.frontend;
 
 import java.util.Date;
-import java.util.List;
 import java.util.Random;
 
+import net.nicwatson.sandcrawler.common.SearchIndex;
 import net.nicwatson.sandcrawler.frontend.CrawlProgressResponder.ProgressStage;
-import net.nicwatson.sandcrawler.search.SearchResultPlus;
+import net.nicwatson.sandcrawler.search.ResultCursor;
+import net.nicwatson.sandcrawler.search.SearchResultImpl;
 
 /**
  * This is the data model that provides content to the program GUI.
@@ -75,10 +76,9 @@ public class GuiModel
 				return "\n\nNo web index data is available.\nTry running a new crawl.";
 			case RETRIEVING:
 				return "Crawling the dunes (exploring web pages)...\n" +
-						"This may take a while and the program may appear to freeze.\n" +
-						"Check the console for progress.";
-						//"Pages read so far: " + crawlStats.progressDone + "\n" + 
-						//"Pages left in queue: " + crawlStats.progressLeft;
+						"Searches use the previous crawl until this one is done.\n" +
+						"Pages read so far: " + crawlStats.progressDone + "\n" + 
+						"Pages left in queue: " + crawlStats.progressLeft;
 			case PARSING:
 				return "\n\n\nParsing pages...";
 			case LINKING:
@@ -134,8 +134,8 @@ public class GuiModel
 	/**
 	 * Sets the progress stage that the model should report for ongiong crawl tasks
 	 * @param stage A CrawlProgressResponder.CrawlStage enum value
-	 * @param done How much has been done - generally, how many pages crawled. Not currently used.
-	 * @param left How much is left - generally, how many pages still in queue. Not currently used.
+	 * @param done How much has been done - generally, how many pages crawled
+	 * @param left How much is left - generally, how many pages still in queue
 	 */
 	public void setCrawlProgress(ProgressStage stage, int done, int left)
 	{
@@ -152,24 +152,32 @@ public class GuiModel
 	}
 
 	/**
-	 * Gets the list of SearchResultPlus's that the GUI can then display
+	 * Gets the cursor over the search results that the GUI can then display
 	 * @return
 	 */
-	public List<SearchResultPlus> getResults()
+	public ResultCursor<SearchResultImpl> getResults()
 	{
-		return this.results.list;
+		return this.results.cursor;
 	}
 
 	/**
-	 * Sets the list of SearchResultPlus's that this data model should store, and sets the resultsExist flag
+	 * Sets the cursor over the search results that this data model should store, and sets the resultsExist flag
 	 * @param searchResult
 	 */
-	public void setSearchResults(List<SearchResultPlus> searchResult)
+	public void setSearchResults(ResultCursor<SearchResultImpl> searchResult)
 	{
-		this.results.list = searchResult;
+		this.results.cursor = searchResult;
 		this.results.resultsExist = true;
 	}
 	
+	/**
+	 * Forgets the search results, as we'd want to do once a new crawl replaces the index they came from
+	 */
+	public void clearSearchResults()
+	{
+		this.results = new SearchResults();
+	}
+	
 	/**
 	 * Fetches the currently-set witty one-liner from the quip system
 	 * @return
@@ -226,12 +234,12 @@ public class GuiModel
 		int numWords;
 		
 		/**
-		 * UNUSED. For ongoing crawl tasks, how much work is done
+		 * For ongoing crawl tasks, how much work is done
 		 */
 		int progressDone;
 		
 		/**
-		 * UNUSED. For ongoing crawl tasks, how much work is left.
+		 * For ongoing crawl tasks, how much work is left.
 		 */
 		int progressLeft;
 		
@@ -256,18 +264,28 @@ public class GuiModel
 		 */
 		void populateCrawlStats(Sandcrawler program)
 		{
-			this.stage = ProgressStage.DONE;
-			this.crawlTime = program.getIndex().getCrawlTime();
-			this.numDocs = program.getIndex().getTotalDocs();
-			this.numWords = program.getIndex().getTotalWords();
-			this.seedURL = program.getIndex().getSeedURL();
-			this.progressDone = numDocs;
-			this.progressLeft = 0;
+			// Every stat is read from the same snapshot, in case a new crawl replaces the index meanwhile
+			IndexSnapshot snapshot = program.acquireIndex();
+			try
+			{
+				SearchIndex index = snapshot.getIndex();
+				this.stage = ProgressStage.DONE;
+				this.crawlTime = index.getCrawlTime();
+				this.numDocs = index.getTotalDocs();
+				this.numWords = index.getTotalWords();
+				this.seedURL = index.getSeedURL();
+				this.progressDone = numDocs;
+				this.progressLeft = 0;
+			}
+			finally
+			{
+				snapshot.release();
+			}
 		}
 		
 		/**
-		 * Sets the progress stage for an ongoing crawl process that the GUI is tryign to monitor
-		 * (doesn't completely work)
+		 * Sets the progress stage for an ongoing crawl process that the GUI is tryign to monitor. Whether crawl data exists is left alone: the previous crawl, if there is one,
+		 * can still be searched while a new one runs, and the new one only becomes searchable once it has replaced it.
 		 * @param stage
 		 * @param done
 		 * @param left
@@ -277,14 +295,6 @@ public class GuiModel
 			this.stage = stage;
 			this.progressDone = done;
 			this.progressLeft = left;
-			if(stage != ProgressStage.DONE)
-			{
-				this.crawlExists = false;
-			}
-			else
-			{
-				this.crawlExists = true;
-			}
 		}
 		
 	}
@@ -302,9 +312,9 @@ public class GuiModel
 		boolean resultsExist;
 		
 		/**
-		 * List of search results
+		 * Cursor over the search results, which ranks them as they are displayed
 		 */
-		List<SearchResultPlus> list;
+		ResultCursor<SearchResultImpl> cursor;
 		
 		/**
 		 * Initialize a new blank-slate SearchResults
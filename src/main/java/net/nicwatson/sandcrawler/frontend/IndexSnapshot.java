@@ -0,0 +1,126 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.frontend;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.nicwatson.sandcrawler.common.SearchIndex;
+
+/**
+ * An IndexSnapshot is a reference-counted handle on one of the indexes that a Sandcrawler searches. The Sandcrawler
+ * holds one reference for as long as the index is its current one, and each search (or other lookup) holds another
+ * while it runs. When a new crawl replaces the index, the Sandcrawler gives up its reference, and the snapshot is
+ * released once the searches that were already running on it have finished: it lets go of the index, so that the
+ * memory it uses can be reclaimed even if something still holds on to the snapshot.
+ * <p/>
+ * Acquiring and releasing never block. A snapshot that has been released cannot be acquired again; the caller should
+ * then look up the current one.
+ * @see Sandcrawler#acquireIndex()
+ */
+public class IndexSnapshot
+{
+	/**
+	 * The index, or <b>null</b> once the snapshot has been released
+	 */
+	private volatile SearchIndex index;
+
+	/**
+	 * The number of references held. The snapshot is released when this drops to zero.
+	 */
+	private final AtomicInteger references;
+
+	/**
+	 * Creates a new IndexSnapshot, holding one reference for its creator
+	 * @param index The index
+	 */
+	IndexSnapshot(SearchIndex index)
+	{
+		this.index = index;
+		this.references = new AtomicInteger(1);
+	}
+
+	/**
+	 * Takes another reference on the snapshot, unless it has already been released
+	 * @return <code>true</code> if a reference was taken, and must later be given back with <code>release()</code>
+	 */
+	boolean acquire()
+	{
+		while(true)
+		{
+			int held = this.references.get();
+			if(held == 0)
+			{
+				return false;
+			}
+			if(this.references.compareAndSet(held, held + 1))
+			{
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Gives back a reference on the snapshot. When the last one is given back, the snapshot is released.
+	 */
+	public void release()
+	{
+		while(true)
+		{
+			int held = this.references.get();
+			if(held == 0)
+			{
+				throw new IllegalStateException("IndexSnapshot released more times than it was acquired");
+			}
+			if(this.references.compareAndSet(held, held - 1))
+			{
+				if(held == 1)
+				{
+					this.index = null;
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Getter for <code>index</code>. This is only meaningful while a reference is held.
+	 * @return The index, or <b>null</b> if the snapshot has been released
+	 */
+	public SearchIndex getIndex()
+	{
+		return this.index;
+	}
+
+	/**
+	 * Reports the number of references currently held on the snapshot
+	 * @return The number of references
+	 */
+	public int getReferences()
+	{
+		return this.references.get();
+	}
+
+	/**
+	 * Reports whether the snapshot has been released
+	 * @return <code>true</code> if every reference has been given back
+	 */
+	public boolean isReleased()
+	{
+		return this.references.get() == 0;
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.frontend;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * A ProgressThrottle carries progress reports from a crawl running in the background to a CrawlProgressResponder on
+ * the JavaFX application thread. Reports may come from any thread, as often as they like: each one just replaces the
+ * one before, so nothing piles up. Once per pulse (which JavaFX runs at 60 frames a second) the latest report, if
+ * there is a new one, is handed on. However fast the crawl reports, the GUI redraws its progress at most once a
+ * frame, and always shows the most recent figures.
+ */
+public class ProgressThrottle implements CrawlProgressResponder
+{
+	/**
+	 * A single progress report
+	 */
+	private static class Report
+	{
+		/**
+		 * The stage the work has reached
+		 */
+		final ProgressStage stage;
+
+		/**
+		 * How much has been done
+		 */
+		final int done;
+
+		/**
+		 * How much is left
+		 */
+		final int left;
+
+		/**
+		 * Creates a new report
+		 * @param stage The stage the work has reached
+		 * @param done How much has been done
+		 * @param left How much is left
+		 */
+		Report(ProgressStage stage, int done, int left)
+		{
+			this.stage = stage;
+			this.done = done;
+			this.left = left;
+		}
+	}
+
+	/**
+	 * The responder that the reports are handed on to, on the JavaFX application thread
+	 */
+	private final CrawlProgressResponder target;
+
+	/**
+	 * The latest report that has not yet been handed on, or <b>null</b> if there is none
+	 */
+	private final AtomicReference<Report> pending;
+
+	/**
+	 * The last report that was handed on, or <b>null</b> if none has been since the throttle was started. This is
+	 * only used on the JavaFX application thread.
+	 */
+	private Report delivered;
+
+	/**
+	 * Hands on the latest report at every pulse, while the throttle is running
+	 */
+	private final AnimationTimer timer;
+
+	/**
+	 * Creates a new ProgressThrottle. It does not hand on any reports until it is started.
+	 * @param target The responder that reports are handed on to, on the JavaFX application thread
+	 */
+	public ProgressThrottle(CrawlProgressResponder target)
+	{
+		this.target = target;
+		this.pending = new AtomicReference<Report>();
+		this.timer = new AnimationTimer()
+		{
+			@Override
+			public void handle(long now)
+			{
+				ProgressThrottle.this.flush();
+			}
+		};
+	}
+
+	/**
+	 * Records the latest progress, replacing any report that has not been handed on yet. This may be called from any
+	 * thread, and never blocks. Several threads of a crawl may report at once, so a report is ignored if one with
+	 * more work done, at the same stage, is already waiting.
+	 */
+	@Override
+	public void updateProgress(ProgressStage stage, int done, int left)
+	{
+		this.pending.accumulateAndGet(new Report(stage, done, left),
+				(waiting, report) -> (waiting != null && waiting.stage == report.stage && waiting.done > report.done)
+						? waiting : report);
+	}
+
+	/**
+	 * Starts handing on reports, once per pulse. This must be called on the JavaFX application thread.
+	 */
+	public void start()
+	{
+		this.delivered = null;
+		this.timer.start();
+	}
+
+	/**
+	 * Stops handing on reports, after handing on the last one (if it has not been already). This must be called on
+	 * the JavaFX application thread.
+	 */
+	public void stop()
+	{
+		this.timer.stop();
+		this.flush();
+	}
+
+	/**
+	 * Hands on the latest report, if there is one that has not been handed on yet. A report from a thread that fell
+	 * behind can arrive after a later one has already been handed on, so a report is dropped if it is at the same
+	 * stage as the last one handed on, with less work done; the progress shown never goes backwards.
+	 */
+	private void flush()
+	{
+		Report report = this.pending.getAndSet(null);
+		if(report == null)
+		{
+			return;
+		}
+		if(this.delivered != null && this.delivered.stage == report.stage && report.done < this.delivered.done)
+		{
+			return;
+		}
+		this.delivered = report;
+		this.target.updateProgress(report.stage, report.done, report.left);
+	}
+}
@@ -18,30 +18,74 @@
 package net.nicwatson.sandcrawler.frontend;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import cs1406z.test.SearchResult;
+import net.nicwatson.sandcrawler.common.MappedIndex;
+import net.nicwatson.sandcrawler.common.SearchIndex;
+import net.nicwatson.sandcrawler.common.SegmentedIndex;
 import net.nicwatson.sandcrawler.common.WebIndex;
+import net.nicwatson.sandcrawler.crawl.BloomSeenSet;
+import net.nicwatson.sandcrawler.crawl.CrawlCheckpoint;
+import net.nicwatson.sandcrawler.crawl.CrawlFrontier;
 import net.nicwatson.sandcrawler.crawl.Crawler;
+import net.nicwatson.sandcrawler.crawl.UnprocessedPage;
+import net.nicwatson.sandcrawler.frontend.CrawlProgressResponder.ProgressStage;
+import net.nicwatson.sandcrawler.search.QueryCache;
+import net.nicwatson.sandcrawler.search.ResultCursor;
+import net.nicwatson.sandcrawler.search.SearchResultImpl;
 import net.nicwatson.sandcrawler.search.SearchResultPlus;
 
 /**
  * The main "engine" program that delegates all the logic of crawling and searching.
- * The Sandcrawler program maintains a reference to the WebIndex object that actually
- * stores most of the data. The Sandcrawler is responsible for loading that data from
- * disk (should it exist), and for saving data from any new crawls.
+ * The Sandcrawler program maintains a reference to the index that actually stores most of the data. The Sandcrawler
+ * is responsible for loading that data from disk (should it exist), and for saving data from any new crawls.
+ * <p/>
+ * Each crawl is indexed into a SegmentedIndex, whose segments are saved in a directory of their own as they fill up,
+ * and searches fan out across the segments. Every crawl gets a new directory (a new "generation"), so the files of
+ * the index being searched are never overwritten: the new crawl's generation is recorded as the current one once all
+ * its segments are saved, and the old generation is then deleted. The segments of the current crawl go on being merged
+ * in the background for as long as it is current. When a saved crawl is opened again, and it is all in one segment, it
+ * is searched in place through a MappedIndex until pages are added to it; since no saved file is ever replaced, the
+ * mapped file stays valid for as long as it is being searched.
+ * <p/>
+ * The current index is held in an IndexSnapshot behind an atomic reference. Every search and lookup runs against the
+ * snapshot that was current when it started, holding a reference on it while it runs, so a new crawl can be built
+ * in the background and swapped in at any moment without waiting for searches, or making them wait. The old
+ * snapshot is released once the searches already running on it have finished.
+ * <p/>
+ * Search results are remembered in a QueryCache, so that repeated searches are answered without going back to the
+ * index. The cache is emptied whenever the index is replaced.
+ * <p/>
+ * A new crawl writes its progress to a checkpoint log in the data directory as it goes, and deletes the log once its
+ * index has been saved. If the program stops part way through a crawl, the log is left behind, and the next crawl of
+ * the same seed URL picks up from it rather than starting again (see <code>getInterruptedCrawl()</code>).
+ * <p/>
+ * Individual pages can also be added, replaced or removed (<code>updatePages()</code>) without crawling again. The
+ * changes go into a new segment of the current crawl, which searches only see once it has been saved.
  * <p/>
  * For convenience, although Sandcrawler itself does not implement ProjectTester, it has
  * pass-through methods for all of the same tasks that are defined by ProjectTester.
  * @author Nic
  * @see ProjectTester
- * @see WebIndex
+ * @see SegmentedIndex
  */
 public class Sandcrawler
 {
@@ -61,31 +105,209 @@ public class Sandcrawler
 	public static final String DATA_EXT = ".dat";
 
 	/**
-	 * The WebIndex containing all the page data to be searched
+	 * The full path of the checkpoint log of a crawl in progress. Its name matches the data files, so
+	 * <code>initialize()</code> cleans it up along with them.
+	 * @see CrawlCheckpoint
+	 */
+	public static final String CHECKPOINT_PATH = DATA_PATH + DATA_PREFIX + "-checkpoint" + DATA_EXT;
+
+	/**
+	 * The segments of each crawl's index are saved in a directory whose path is this, followed by the crawl's
+	 * generation number. Its name matches the data files, so <code>initialize()</code> cleans it up along with them.
+	 * @see SegmentedIndex
+	 */
+	public static final String INDEX_PATH = DATA_PATH + DATA_PREFIX + "-index-";
+
+	/**
+	 * The full path of the file recording the generation number of the current crawl's index
 	 */
-	private WebIndex webIndex;
+	public static final String CURRENT_PATH = DATA_PATH + DATA_PREFIX + "-current" + DATA_EXT;
+
+	/**
+	 * The most pages a crawl will visit, unless changed with <code>setPageLimit()</code>
+	 */
+	public static final int DEFAULT_PAGE_LIMIT = 10000;
+
+	/**
+	 * Crawls that may visit more pages than this (including unlimited crawls) use a frontier that spills to disk
+	 * @see Crawler#setLargeCrawlFrontier(int, long, String)
+	 */
+	public static final int LARGE_CRAWL_PAGES = 100000;
+
+	/**
+	 * The directory to which the frontier of a large crawl spills the URLs it is not keeping in memory
+	 */
+	public static final String FRONTIER_PATH = DATA_PATH + DATA_PREFIX + "-frontier";
+
+	/**
+	 * The snapshot of the index containing all the page data to be searched, or <b>null</b> if there is no index yet
+	 */
+	private final AtomicReference<IndexSnapshot> current;
+	
+	/**
+	 * Remembers the results of recent searches of the index
+	 */
+	private final QueryCache queryCache;
 	
 	/**
 	 * Flags whether the index has actually been populated with crawl data
 	 */
 	boolean hasIndex;
 
+	/**
+	 * The most pages a crawl will visit (0 or less for unlimited)
+	 */
+	private int pageLimit;
+
+	/**
+	 * The segmented index of the current crawl, to which pages are added and from which they are removed, or
+	 * <b>null</b> if the current index was not saved by a crawl (or there is none)
+	 */
+	private SegmentedIndex segments;
+
+	/**
+	 * The generation number of the current crawl's index directory, or -1 if there is none
+	 */
+	private int generation;
+
 	/**
 	 * Initializes a new Sandcrawler
 	 */
 	public Sandcrawler()
 	{
-		webIndex = null;
+		current = new AtomicReference<IndexSnapshot>();
 		hasIndex = false;
+		queryCache = new QueryCache();
+		pageLimit = DEFAULT_PAGE_LIMIT;
+		segments = null;
+		generation = -1;
+	}
+
+	/**
+	 * Sets the most pages that crawls and recrawls will visit. Crawls allowed more than
+	 * <code>LARGE_CRAWL_PAGES</code> are given a frontier that keeps only part of its queue in memory, and unlimited
+	 * crawls deduplicate URLs with a Bloom filter.
+	 * @param limit The maximum number of pages to visit (0 or less for unlimited)
+	 */
+	public void setPageLimit(int limit)
+	{
+		this.pageLimit = limit;
+	}
+
+	/**
+	 * Retrieves the most pages that crawls and recrawls will visit
+	 * @return The maximum number of pages (0 or less for unlimited)
+	 */
+	public int getPageLimit()
+	{
+		return this.pageLimit;
+	}
+	
+	/**
+	 * Retrieves the current index, without holding a reference on it. This is fine for a quick look, but anything
+	 * that might take a while, or must see the same index throughout, should use <code>acquireIndex()</code>.
+	 * @return A reference to the index, or <b>null</b> if there is none
+	 */
+	public SearchIndex getIndex()
+	{
+		IndexSnapshot snapshot = this.current.get();
+		return (snapshot == null) ? null : snapshot.getIndex();
+	}
+	
+	/**
+	 * Takes a reference on the current snapshot of the index, which stays usable (even if a new crawl replaces it)
+	 * until the reference is given back. This never blocks.
+	 * @return The current snapshot, whose <code>release()</code> method must be called when done with it, or
+	 * <b>null</b> if there is no index
+	 */
+	public IndexSnapshot acquireIndex()
+	{
+		while (true)
+		{
+			IndexSnapshot snapshot = this.current.get();
+			if (snapshot == null || snapshot.acquire())
+			{
+				return snapshot;
+			}
+			// The snapshot was replaced and released in the meantime, so there is a newer one to look at
+		}
+	}
+	
+	/**
+	 * Runs the given task against the current snapshot of the index, holding a reference on it throughout
+	 * @param <T> The type of result
+	 * @param task The task to run
+	 * @return The result of the task
+	 * @throws IllegalStateException If there is no index
+	 */
+	private <T> T withIndex(Function<SearchIndex, T> task)
+	{
+		IndexSnapshot snapshot = this.acquireIndex();
+		if (snapshot == null)
+		{
+			throw new IllegalStateException("No crawl data has been loaded");
+		}
+		try
+		{
+			return task.apply(snapshot.getIndex());
+		}
+		finally
+		{
+			snapshot.release();
+		}
+	}
+
+	/**
+	 * Getter for <code>queryCache</code>, e.g. for reporting its hit and miss counts
+	 * @return A reference to the search result cache
+	 */
+	public QueryCache getQueryCache()
+	{
+		return this.queryCache;
 	}
 	
 	/**
-	 * Getter for <code>webIndex</code>
-	 * @return A reference to the WebIndex
+	 * Replaces the index to be searched, and forgets any search results from the old one. Searches that are already
+	 * running finish on the old index, which is released once they have.
+	 * @param index The new index
+	 */
+	private void setIndex(SearchIndex index)
+	{
+		IndexSnapshot old = this.current.getAndSet(new IndexSnapshot(index));
+		this.queryCache.invalidate();
+		this.hasIndex = true;
+		if (old != null)
+		{
+			old.release();
+		}
+	}
+
+	/**
+	 * Replaces the index to be searched, as <code>setIndex()</code> does, and makes the given segmented index the one
+	 * that pages are added to. If that belongs to a newer generation than the current one, the old generation is
+	 * finished with: its background merges are stopped, and its directory is deleted. (If a file in it is still mapped,
+	 * and the platform will not delete it, the directory is left for <code>openIndex()</code> to delete next time.)
+	 * @param index The new index
+	 * @param segments The segmented index of the new crawl, or <b>null</b> if the new index was not saved by a crawl, or
+	 * is being searched in place until pages are added to it
+	 * @param generation The generation number of the new crawl's index directory, or -1 if there is none
 	 */
-	public WebIndex getIndex()
+	private synchronized void switchTo(SearchIndex index, SegmentedIndex segments, int generation)
 	{
-		return this.webIndex;
+		SegmentedIndex oldSegments = this.segments;
+		int oldGeneration = this.generation;
+		this.segments = segments;
+		this.generation = generation;
+		this.setIndex(index);
+		if (oldSegments != null && oldSegments != segments)
+		{
+			oldSegments.close();
+		}
+		if (oldGeneration >= 0 && generation > oldGeneration)
+		{
+			// Searches still running on the old index only need what it has already read into memory
+			this.deleteDirectory(new File(INDEX_PATH + oldGeneration));
+		}
 	}
 
 	/**
@@ -97,11 +319,7 @@ public class Sandcrawler
 	{
 		try
 		{
-			FileInputStream fis = new FileInputStream(path);
-			ObjectInputStream ois = new ObjectInputStream(fis);
-			this.webIndex = (WebIndex) ois.readObject();
-			this.hasIndex = true;
-			ois.close();
+			this.switchTo(WebIndex.loadIndexFrom(path), null, -1);
 		}
 		catch (FileNotFoundException e)
 		{
@@ -115,14 +333,243 @@ public class Sandcrawler
 			e.printStackTrace(System.err);
 			return false;
 		}
-		catch (ClassNotFoundException e)
+		return true;
+	}
+
+	/**
+	 * Opens crawl/index information in a data file for searching in place. Unlike <code>loadIndex()</code>, this
+	 * does not read the whole index into memory, so it takes about the same (short) time whatever the size of the crawl.
+	 * The file must not be replaced or deleted while it is being searched (see <code>MappedIndex.open()</code>).
+	 * @param path The binary file containing the data
+	 * @return <code>True</code> if the operation was successful
+	 * @see MappedIndex
+	 */
+	public boolean openIndex(String path)
+	{
+		try
+		{
+			this.switchTo(MappedIndex.open(path), null, -1);
+		}
+		catch (FileNotFoundException | NoSuchFileException e)
+		{
+			System.err.println("Could not access file: " + path);
+			e.printStackTrace(System.err);
+			return false;
+		}
+		catch (IOException e)
 		{
-			System.err.println("Error while processing previous crawl data from file " + path);
+			System.err.println("Error while opening previous crawl from data file " + path);
 			e.printStackTrace(System.err);
+			return false;
 		}
 		return true;
 	}
 
+	/**
+	 * Opens the index of the most recent crawl that was saved in the data directory, if there is one. If it is all in
+	 * one segment, with nothing deleted from it, it is searched in place through a MappedIndex, so opening it takes
+	 * about the same (short) time whatever the size of the crawl; its segments are only read into memory once pages are
+	 * added to it or removed from it (see <code>getSegments()</code>). Otherwise, its segments are read into memory
+	 * straight away. Any older generations that could not be deleted when they were replaced are deleted now.
+	 * @return <code>True</code> if the operation was successful; <code>false</code> if there is no saved crawl, or
+	 * it cannot be read
+	 * @see SegmentedIndex#open(String, String)
+	 * @see SegmentedIndex#findSingleSegment(String)
+	 */
+	public synchronized boolean openIndex()
+	{
+		int current = this.readCurrentGeneration();
+		if (current < 0)
+		{
+			return false;
+		}
+		this.deleteOldGenerations(current);
+		try
+		{
+			String single = SegmentedIndex.findSingleSegment(INDEX_PATH + current);
+			if (single != null)
+			{
+				this.switchTo(MappedIndex.open(single), null, current);
+			}
+			else
+			{
+				SegmentedIndex index = SegmentedIndex.open(INDEX_PATH + current, null);
+				this.switchTo(index, index, current);
+			}
+		}
+		catch (IOException e)
+		{
+			System.err.println("Error while opening previous crawl from directory " + INDEX_PATH + current);
+			e.printStackTrace(System.err);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the segmented index of the current crawl, so that pages can be added to it or removed from it. If the crawl
+	 * is being searched in place through a MappedIndex, its segments are read into memory first, and searches are
+	 * switched over to them.
+	 * @return The segmented index, or <b>null</b> if there is no saved crawl (or it cannot be read)
+	 */
+	private synchronized SegmentedIndex getSegments()
+	{
+		if (this.segments == null && this.generation >= 0)
+		{
+			try
+			{
+				SegmentedIndex index = SegmentedIndex.open(INDEX_PATH + this.generation, null);
+				this.switchTo(index, index, this.generation);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Error while opening previous crawl from directory " + INDEX_PATH + this.generation);
+				e.printStackTrace(System.err);
+			}
+		}
+		return this.segments;
+	}
+
+	/**
+	 * Reads the generation number of the current crawl's index directory
+	 * @return The generation number, or -1 if no crawl has been saved (or the record of it cannot be read)
+	 */
+	private int readCurrentGeneration()
+	{
+		Path path = Paths.get(CURRENT_PATH);
+		if (!Files.exists(path))
+		{
+			return -1;
+		}
+		try
+		{
+			return Integer.parseInt(Files.readString(path).trim());
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			System.err.println("Could not read the current crawl's generation from " + CURRENT_PATH);
+			e.printStackTrace(System.err);
+			return -1;
+		}
+	}
+
+	/**
+	 * Records the given generation as the current crawl's. The record is written to a temporary file that is then
+	 * moved into place, so it always names a generation whose segments have all been saved.
+	 * @param current The generation number of the current crawl's index directory
+	 * @return <code>true</code> if the record was written
+	 */
+	private boolean writeCurrentGeneration(int current)
+	{
+		Path target = Paths.get(CURRENT_PATH);
+		Path temp = Paths.get(CURRENT_PATH + ".tmp");
+		try
+		{
+			Files.writeString(temp, Integer.toString(current));
+			try
+			{
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not record the current crawl's generation in " + CURRENT_PATH);
+			e.printStackTrace(System.err);
+			return false;
+		}
+	}
+
+	/**
+	 * Chooses the generation number for a new crawl's index directory: one higher than any generation in the data
+	 * directory, including any left behind by a crawl that was never finished
+	 * @return The new generation number
+	 */
+	private synchronized int newGeneration()
+	{
+		int newest = this.generation;
+		String[] names = new File(DATA_PATH).list();
+		if (names != null)
+		{
+			for (String name : names)
+			{
+				newest = Math.max(newest, generationOf(name));
+			}
+		}
+		return newest + 1;
+	}
+
+	/**
+	 * Works out the generation number of an index directory from its name
+	 * @param name The name of a file or directory in the data directory
+	 * @return The generation number, or -1 if the name is not that of an index directory
+	 */
+	private static int generationOf(String name)
+	{
+		String prefix = new File(INDEX_PATH).getName();
+		if (name.startsWith(prefix) && name.length() > prefix.length()
+				&& name.substring(prefix.length()).chars().allMatch(Character::isDigit))
+		{
+			return Integer.parseInt(name.substring(prefix.length()));
+		}
+		return -1;
+	}
+
+	/**
+	 * Deletes the index directories of generations older than the current one. They are normally deleted as soon as
+	 * they are replaced, but a file that is still mapped by a MappedIndex cannot be deleted on some platforms (such as
+	 * Windows), so a directory may be left behind until the next time the program starts.
+	 * @param current The generation number of the current crawl's index directory
+	 */
+	private void deleteOldGenerations(int current)
+	{
+		String[] names = new File(DATA_PATH).list();
+		if (names == null)
+		{
+			return;
+		}
+		for (String name : names)
+		{
+			int generation = generationOf(name);
+			if (generation >= 0 && generation < current)
+			{
+				this.deleteDirectory(new File(DATA_PATH + name));
+			}
+		}
+	}
+
+	/**
+	 * Deletes a directory of index segments, along with everything in it
+	 * @param directory The directory to delete
+	 * @return <code>false</code> if anything could not be deleted; otherwise, <code>true</code>
+	 */
+	private boolean deleteDirectory(File directory)
+	{
+		boolean success = true;
+		File[] contents = directory.listFiles();
+		if (contents != null)
+		{
+			for (File f : contents)
+			{
+				if (!f.delete())
+				{
+					System.err.println("Error: Could not delete file: " + f.getAbsolutePath());
+					success = false;
+				}
+			}
+		}
+		if (directory.exists() && !directory.delete())
+		{
+			System.err.println("Error: Could not delete directory: " + directory.getAbsolutePath());
+			success = false;
+		}
+		return success;
+	}
+
 	/**
 	 * Deletes all data files in the specified directory, if it exists. If it does not exist, it will be created as an
 	 * empty directory.
@@ -136,17 +583,22 @@ public class Sandcrawler
 		boolean success = true; // Flag for return value
 		if (dataDir.exists())
 		{
-			// Dir exists. Try to delete everything that starts with "crawl" and ends with ".dat"
+			// Dir exists. Try to delete everything that starts with "crawl" and ends with ".dat", and the index directories
+			String indexPrefix = new File(INDEX_PATH).getName();
 			File[] contents = dataDir.listFiles(new FilenameFilter() {
 				public boolean accept(File dir, String name)
 				{
-					return name.startsWith(DATA_PREFIX) && name.endsWith(DATA_EXT);
+					return name.startsWith(DATA_PREFIX) && (name.endsWith(DATA_EXT) || name.startsWith(indexPrefix));
 				}
 
 			});
 			for (File f : contents)
 			{
-				if (!f.delete())
+				if (f.isDirectory())
+				{
+					success &= this.deleteDirectory(f);
+				}
+				else if (!f.delete())
 				{
 					System.err.println("Error: Could not delete file: " + f.getAbsolutePath());
 					// Failure to delete a file is considered non-fatal, but makes the return flag false
@@ -196,18 +648,271 @@ public class Sandcrawler
 	
 	/**
 	 * Initializes a Crawler to start a crawl on the given seed URL, reporting progress back
-	 * to the given CrawlProgressResponder (if it is not null). Once the crawl is finished, it
-	 * is saved to a data file.
+	 * to the given CrawlProgressResponder (if it is not null). The crawl visits at most <code>getPageLimit()</code>
+	 * pages. Once the crawl is finished, its pages are indexed into a new generation of segments, which replaces the
+	 * current index once it has been saved.
+	 * <p/>
+	 * The crawl is checkpointed as it goes. If an earlier crawl of the same seed URL was interrupted, it is picked up
+	 * from its last checkpoint instead of starting again. The checkpoint log is deleted once the index has been saved;
+	 * if the crawl is interrupted, or the index cannot be saved, the log is kept so that the crawl can be resumed.
 	 * @param seedURL The URL of the page where the crawl should be started
 	 * @listener The CrawlProgressResponder to report progress to. If it is <b>null</b>, it will be ignored.
 	 */
 	public void crawlWithProgressReporting(String seedURL, CrawlProgressResponder listener)
 	{
+		Crawler crawler = this.checkpointedCrawler(seedURL);
+		this.sizeFrontier(crawler);
+		crawler.go(this.pageLimit, listener);
+		if (Thread.currentThread().isInterrupted())
+		{
+			// The crawl was stopped part way; the checkpoint log lets it be finished later
+			return;
+		}
+		if (this.indexCrawl(crawler, listener))
+		{
+			File checkpoint = new File(CHECKPOINT_PATH);
+			if (checkpoint.exists() && !checkpoint.delete())
+			{
+				System.err.println("Error: Could not delete file: " + checkpoint.getAbsolutePath());
+			}
+		}
+	}
+
+	/**
+	 * Indexes the pages of a finished crawl into a new generation of segments, saving each segment as it fills up, and
+	 * swaps it in for the current index once every segment has been saved. If the new generation cannot be saved, the
+	 * current index is kept.
+	 * @param crawler The Crawler, which has finished its crawl
+	 * @param listener The CrawlProgressResponder to report progress to. If it is <b>null</b>, it will be ignored.
+	 * @return <code>true</code> if the new index was saved and swapped in
+	 */
+	private boolean indexCrawl(Crawler crawler, CrawlProgressResponder listener)
+	{
+		int next = this.newGeneration();
+		String directory = INDEX_PATH + next;
+		SegmentedIndex newIndex;
+		try
+		{
+			newIndex = SegmentedIndex.open(directory, crawler.seedUrl);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not create index directory " + directory);
+			e.printStackTrace(System.err);
+			return false;
+		}
+		if (listener != null)
+		{
+			listener.updateProgress(ProgressStage.PARSING, 0, 0);
+		}
+		for (UnprocessedPage page : crawler.getUnprocessedPages())
+		{
+			// A segment that cannot be written keeps its pages, so they are tried again with the next flush
+			newIndex.add(page);
+		}
+		if (!newIndex.flush() || !this.writeCurrentGeneration(next))
+		{
+			System.err.println("Could not save the new crawl to " + directory + ". The previous crawl is still in use.");
+			newIndex.close();
+			this.deleteDirectory(new File(directory));
+			return false;
+		}
+		this.switchTo(newIndex, newIndex, next);
+		if (listener != null)
+		{
+			listener.updateProgress(ProgressStage.DONE, 0, 0);
+		}
+		return true;
+	}
+
+	/**
+	 * Reports whether a crawl was interrupted before its index was saved, leaving its checkpoint log behind
+	 * @return The seed URL of the interrupted crawl, which <code>crawlWithProgressReporting()</code> will pick up
+	 * from where it left off, or <b>null</b> if there is none
+	 */
+	public String getInterruptedCrawl()
+	{
+		if (!new File(CHECKPOINT_PATH).exists())
+		{
+			return null;
+		}
+		try
+		{
+			return CrawlCheckpoint.readSeedUrl(CHECKPOINT_PATH);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not read crawl checkpoint " + CHECKPOINT_PATH);
+			e.printStackTrace(System.err);
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a Crawler for a crawl of the given seed URL that writes a checkpoint log. If an interrupted crawl of the
+	 * same seed URL left its log behind, the crawl is resumed from it; otherwise the log is started afresh. A crawl
+	 * whose log cannot be written still runs, but cannot be resumed.
+	 * @param seedURL The URL of the page where the crawl should be started
+	 * @return The Crawler, ready to <code>go()</code>
+	 */
+	private Crawler checkpointedCrawler(String seedURL)
+	{
+		if (seedURL.equals(this.getInterruptedCrawl()))
+		{
+			try
+			{
+				return Crawler.resume(CHECKPOINT_PATH);
+			}
+			catch (IOException e)
+			{
+				System.err.println("Could not resume the interrupted crawl from " + CHECKPOINT_PATH + ". Starting again.");
+				e.printStackTrace(System.err);
+			}
+		}
 		Crawler crawler = new Crawler(seedURL);
-		crawler.go(listener);
-		this.webIndex = WebIndex.build(crawler, listener);
-		this.hasIndex = true;
-		this.webIndex.saveTo(DATA_PATH + DATA_PREFIX + DATA_EXT);
+		try
+		{
+			new File(DATA_PATH).mkdirs();
+			crawler.enableCheckpoints(CHECKPOINT_PATH);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Could not create crawl checkpoint " + CHECKPOINT_PATH + ". The crawl cannot be resumed if it is interrupted.");
+			e.printStackTrace(System.err);
+		}
+		return crawler;
+	}
+
+	/**
+	 * Gives a crawl whose page limit is above <code>LARGE_CRAWL_PAGES</code> (or unlimited) a frontier that spills to
+	 * <code>FRONTIER_PATH</code>, so that the crawl is bounded by disk space rather than heap. An unlimited crawl also
+	 * remembers the URLs it has queued in a Bloom filter, since that set would otherwise grow without bound; it may
+	 * then skip the odd new URL, with probability <code>BloomSeenSet.DEFAULT_FALSE_POSITIVE_RATE</code>. Smaller
+	 * crawls keep the Crawler's default, entirely in-memory frontier and exact deduplication.
+	 * @param crawler The Crawler, which must not have started yet
+	 */
+	private void sizeFrontier(Crawler crawler)
+	{
+		if (this.pageLimit > 0 && this.pageLimit <= LARGE_CRAWL_PAGES)
+		{
+			return;
+		}
+		crawler.setLargeCrawlFrontier(CrawlFrontier.DEFAULT_HOST_CONCURRENCY, CrawlFrontier.DEFAULT_HOST_DELAY,
+				FRONTIER_PATH);
+		if (this.pageLimit <= 0)
+		{
+			crawler.setDeduplication(BloomSeenSet.DEFAULT_FALSE_POSITIVE_RATE);
+		}
+	}
+
+	/**
+	 * Refreshes the current crawl incrementally, reporting progress back to the given CrawlProgressResponder (if it
+	 * is not null). The site is crawled again from the same seed URL, but pages are fetched conditionally: those the
+	 * server reports unchanged are left in the current index rather than downloaded and parsed again. Once the
+	 * recrawl is finished, only the pages that were downloaded again, and those that could no longer be reached, are
+	 * passed to <code>updatePages()</code>, so indexing costs time in proportion to what changed on the site.
+	 * @param listener The CrawlProgressResponder to report progress to. If it is <b>null</b>, it will be ignored.
+	 * @return <code>false</code> if there is no previous crawl to refresh, or the recrawl could not be saved;
+	 * otherwise, <code>true</code>
+	 */
+	public boolean recrawlWithProgressReporting(CrawlProgressResponder listener)
+	{
+		SegmentedIndex previous = this.getSegments();
+		if (previous == null)
+		{
+			System.err.println("There is no saved crawl to refresh");
+			return false;
+		}
+		if (previous.getSeedURL() == null || previous.getSeedURL().isEmpty())
+		{
+			System.err.println("The previous crawl has no seed URL to recrawl from");
+			return false;
+		}
+		
+		Crawler crawler = new Crawler(previous.getSeedURL());
+		crawler.setPreviousIndex(previous);
+		this.sizeFrontier(crawler);
+		crawler.go(this.pageLimit, listener);
+		if (Thread.currentThread().isInterrupted())
+		{
+			return false;
+		}
+		
+		// Only the pages that were downloaded again, and those that could not be reached any more, change the index
+		List<UnprocessedPage> changed = new ArrayList<UnprocessedPage>();
+		Set<String> reached = new HashSet<String>();
+		for (UnprocessedPage page : crawler.getUnprocessedPages())
+		{
+			reached.add(page.getURLString());
+			if (page.getUnchangedPage() == null)
+			{
+				changed.add(page);
+			}
+		}
+		List<String> vanished = new ArrayList<String>();
+		for (String url : previous.getURLs())
+		{
+			if (!reached.contains(url))
+			{
+				vanished.add(url);
+			}
+		}
+		if (listener != null)
+		{
+			listener.updateProgress(ProgressStage.PARSING, 0, 0);
+		}
+		boolean saved;
+		synchronized (this)
+		{
+			if (this.segments != previous)
+			{
+				System.err.println("The crawl was replaced while it was being refreshed. The refresh has been dropped.");
+				return false;
+			}
+			saved = this.updatePages(changed, vanished);
+		}
+		if (saved && listener != null)
+		{
+			listener.updateProgress(ProgressStage.DONE, 0, 0);
+		}
+		return saved;
+	}
+
+	/**
+	 * Adds, replaces or removes individual pages of the current crawl, without crawling it again. The changes are
+	 * indexed into a new segment of the current crawl, so they cost time in proportion to the pages changed rather than
+	 * to the whole crawl; searches go on using the segments already saved until the new one has been saved too.
+	 * Updates take turns, so none of them is lost.
+	 * @param updated The downloaded pages to add, or to replace the indexed pages with the same URLs
+	 * @param removed The URLs of pages to remove
+	 * @return <code>false</code> if there is no current crawl to update, or the changes could not be saved;
+	 * otherwise, <code>true</code>
+	 * @see SegmentedIndex#add(UnprocessedPage)
+	 * @see SegmentedIndex#remove(String)
+	 */
+	public synchronized boolean updatePages(Collection<UnprocessedPage> updated, Collection<String> removed)
+	{
+		if (this.getSegments() == null)
+		{
+			System.err.println("There is no saved crawl to update");
+			return false;
+		}
+		for (String url : removed)
+		{
+			this.segments.remove(url);
+		}
+		for (UnprocessedPage page : updated)
+		{
+			this.segments.add(page);
+		}
+		boolean saved = this.segments.flush();
+		if (!saved)
+		{
+			System.err.println("Could not save the changes to " + INDEX_PATH + this.generation + ". They will be saved with the next update.");
+		}
+		// Whatever the segments now show, the search results of the old ones are forgotten
+		this.setIndex(this.segments);
+		return saved;
 	}
 
 	/**
@@ -217,7 +922,7 @@ public class Sandcrawler
 	 */
 	public List<String> getOutgoingLinks(String url)
 	{
-		return this.webIndex.getOutgoingLinks(url);
+		return this.withIndex(index -> index.getOutgoingLinks(url));
 	}
 
 	/**
@@ -227,7 +932,7 @@ public class Sandcrawler
 	 */
 	public List<String> getIncomingLinks(String url)
 	{
-		return this.webIndex.getIncomingLinks(url);
+		return this.withIndex(index -> index.getIncomingLinks(url));
 	}
 
 	/**
@@ -237,7 +942,7 @@ public class Sandcrawler
 	 */
 	public double getPageRank(String url)
 	{
-		return this.webIndex.getPageRank(url);
+		return this.withIndex(index -> index.getPageRank(url));
 	}
 
 	/**
@@ -247,7 +952,7 @@ public class Sandcrawler
 	 */
 	public double getIDF(String word)
 	{
-		return this.webIndex.getIDF(word);
+		return this.withIndex(index -> index.getIDF(word));
 	}
 
 	/**
@@ -258,7 +963,7 @@ public class Sandcrawler
 	 */
 	public double getTF(String url, String word)
 	{
-		return this.webIndex.getTF(url, word);
+		return this.withIndex(index -> index.getTF(url, word));
 	}
 
 	/**
@@ -269,13 +974,13 @@ public class Sandcrawler
 	 */
 	public double getTFIDF(String url, String word)
 	{
-		return this.webIndex.getTFIDF(url, word);
+		return this.withIndex(index -> index.getTFIDF(url, word));
 	}
 
 	/**
 	 * Performs a search of the index with the given query, returning a List of SearchResult views of the results,
 	 * which is used primarily by the test suite. The size of the returned list is capped at the specified amount.\
-	 * <br/>The task is delegated to the underlying WebIndex.
+	 * <br/>The task is delegated to the underlying WebIndex, unless the results are already in the cache.
 	 * @param query The search query string
 	 * @param boost Whether PageRanks should be factored in when sorting the results
 	 * @param amount The max number of search results to put in the list
@@ -284,13 +989,13 @@ public class Sandcrawler
 	 */	
 	public List<SearchResult> search(String query, boolean boost, int X)
 	{
-		return this.webIndex.search(query, boost, X);
+		return Collections.unmodifiableList(this.searchPlus(query, boost, X));
 	}
 	
 	/**
 	 * Performs a search of the index with the given query, returning a List of SearchResultPlus views of the results,
 	 * which includes more information than a SearchResult does. The size of the returned list is capped at the specified amount.
-	 * <br/>The task is delgated to the underlying WebIndex.
+	 * <br/>The task is delgated to the underlying WebIndex, unless the results are already in the cache.
 	 * @param query The search query string
 	 * @param boost Whether PageRanks should be factored in when sorting the results
 	 * @param amount The max number of search results to put in the list
@@ -299,7 +1004,25 @@ public class Sandcrawler
 	 */	
 	public List<SearchResultPlus> searchPlus(String query, boolean boost, int X)
 	{
-		return this.webIndex.searchPlus(query, boost, X);
+		// The index is only looked up once the cache has decided to run the search, so that if the index is replaced
+		// in the meantime, the cache can tell that the results might be stale
+		return this.queryCache.get(query, boost, X, () -> this.withIndex(index -> index.searchPlus(query, boost, X)));
+	}
+
+	/**
+	 * Performs a search of the index with the given query, returning a cursor over every page that contains at least
+	 * one of the query words, ranked as they are asked for. The task is delegated to the underlying index; the cursor
+	 * holds its own copies of the results, so it can still be used after the index is replaced. Cursors are remembered
+	 * in the same cache as the results of <code>search()</code> and <code>searchPlus()</code>, so a repeated search
+	 * gets back the same cursor, with the results it has already ranked.
+	 * @param query The search query string
+	 * @param boost Whether PageRanks should be factored in when sorting the results
+	 * @return A cursor over the matching pages, best first
+	 * @see ResultCursor
+	 */
+	public ResultCursor<SearchResultImpl> searchCursor(String query, boolean boost)
+	{
+		return this.queryCache.getCursor(query, boost, () -> this.withIndex(index -> index.searchCursor(query, boost)));
 	}
 
 }
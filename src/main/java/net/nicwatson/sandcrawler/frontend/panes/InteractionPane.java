@@ -27,7 +27,7 @@ import javafx.scene.layout.VBox;
 
 /**
  * The InteractionPane contains the main controls: the input box for entering the search query,
- * the checkbox for specifying PageRank boost, the search button, and the "new crawl" button.
+ * the checkbox for specifying PageRank boost, the search button, the "new crawl" button, and the "refresh crawl" button.
  * @author Nic
  *
  */
@@ -43,6 +43,11 @@ public class InteractionPane extends VBox
 	 * The new crawl button
 	 */
 	private Button buttonCrawl;
+
+	/**
+	 * The refresh crawl button
+	 */
+	private Button buttonRefresh;
 	
 	/**
 	 * The search box
@@ -72,6 +77,15 @@ public class InteractionPane extends VBox
 	{
 		return this.buttonCrawl;
 	}
+
+	/**
+	 * Getter for the refresh crawl button control
+	 * @return
+	 */
+	public Button getButtonRefresh()
+	{
+		return this.buttonRefresh;
+	}
 	
 	/**
 	 * Getter for the search query input box control
@@ -100,7 +114,7 @@ public class InteractionPane extends VBox
 		
 		// We have two inner panes
 		VBox searchBox = new VBox();	// On top, searchBox will vertically arrange the query box and the boost checkbox
-		HBox buttons = new HBox();		// Below, the two buttons are placed side-by-side
+		HBox buttons = new HBox();		// Below, the three buttons are placed side-by-side
 
 		// Set up the searchBox contents, including the query box and the boost checkbox
 		queryBox = new TextField();
@@ -116,6 +130,9 @@ public class InteractionPane extends VBox
 		
 		buttonCrawl = new Button("Crawl the desert!");
 		buttonCrawl.setStyle("-fx-font: 12 verdana; -fx-base: rgb(255,238,153); -fx-text-fill: rgb(0, 0, 0);");
+
+		buttonRefresh = new Button("Refresh the crawl!");
+		buttonRefresh.setStyle("-fx-font: 12 verdana; -fx-base: rgb(204,229,255); -fx-text-fill: rgb(0, 0, 0);");
 	
 		// Padd the inner frames and adjust alignments
 		this.setAlignment(Pos.TOP_CENTER);
@@ -125,7 +142,7 @@ public class InteractionPane extends VBox
 		
 		// Add the controls to their respective inner panes, and add those panes to the Interaction Pane
 		searchBox.getChildren().addAll(queryBox, boostCheck);
-		buttons.getChildren().addAll(buttonSearch, buttonCrawl);
+		buttons.getChildren().addAll(buttonSearch, buttonCrawl, buttonRefresh);
 		this.getChildren().addAll(searchBox, buttons);		
 	}
 }
@@ -17,33 +17,48 @@
  
 package net.nicwatson.sandcrawler.frontend.panes;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableListBase;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
-import javafx.scene.text.TextAlignment;
 import net.nicwatson.sandcrawler.frontend.GuiModel;
+import net.nicwatson.sandcrawler.search.ResultCursor;
+import net.nicwatson.sandcrawler.search.SearchResultImpl;
 import net.nicwatson.sandcrawler.search.SearchResultPlus;
 
 /**
- * The Results Pane is where the search results are displayed.
+ * The Results Pane is where the search results are displayed. They are shown in a ListView, which only makes cells
+ * for the rows that are on screen and reuses them as the list is scrolled, so thousands of results take no more
+ * nodes (or layout work) than ten. The list reads its rows from the search's ResultCursor, which ranks the results
+ * a page at a time as they are scrolled into view.
  * @author Nic
  *
  */
 public class ResultsPane extends VBox
 {
 	/**
-	 * Number of search results to show
+	 * Number of search results to show at once. The rest can be scrolled to.
 	 */
 	public static int NUM_RESULTS = 10;
 	
 	/**
-	 * List of Search Results as Text nodes. I think it looks nicer than using a ListView.
+	 * Height of each search result's row (px). Every row is the same height, so the list never needs to measure them.
+	 */
+	public static double ROW_HEIGHT = 40;
+	
+	/**
+	 * The list of search results
+	 */
+	private ListView<SearchResultPlus> results;
+	
+	/**
+	 * The cursor over the search results being shown, or <b>null</b> if none are
 	 */
-	private List<Text> results;
+	private ResultCursor<SearchResultImpl> shown;
 	
 	/**
 	 * Set up the Results Pane	
@@ -53,54 +68,110 @@ public class ResultsPane extends VBox
 		this.setAlignment(Pos.TOP_CENTER);
 		this.setPadding(new Insets(5, 0, 5, 0));
 		
-		// Initialize 10 results string sto blank, and add them to the pane
-		this.initResultStrings();
-		this.getChildren().addAll(results);	
+		// Initialize the (empty) results list, and add it to the pane
+		this.initResultList();
+		this.getChildren().add(results);	
 	}
 	
 	/**
-	 * Initializes 10 text nodes, each representing a search result. They are initially blank.
+	 * Initializes the list that shows the search results, tall enough to show NUM_RESULTS of them. It is initially
+	 * empty.
 	 */
-	public void initResultStrings()
+	public void initResultList()
 	{
-		this.results = new ArrayList<Text>(10);
-		for(int i = 0; i < NUM_RESULTS; i++)
-		{
-			Text t = new Text("");
-			t.setStyle("-fx-font: 12 verdana; -fx-text-fill: rgb(0, 0, 0);");
-			t.setTextAlignment(TextAlignment.LEFT);
-			this.results.add(t);
-			VBox.setMargin(t, new Insets(0, 0, 3, 0));
-			
-		}
+		this.results = new ListView<SearchResultPlus>();
+		this.results.setStyle("-fx-font: 12 verdana;");
+		this.results.setFixedCellSize(ROW_HEIGHT);
+		this.results.setPrefHeight(NUM_RESULTS * ROW_HEIGHT + 2);
+		this.results.setCellFactory(list -> new ResultCell());
+		this.results.setPlaceholder(new Text(""));
+		this.shown = null;
 	}
 	
 	/**
-	 * Resets all the results strings to blank, as we'd want to do before a new crawl.
+	 * Resets the results list to empty, as we'd want to do before a new crawl.
 	 */
 	public void clearResults()
 	{
-		for(Text t : this.results)
-		{
-			t.setText("");
-		}
+		this.results.setItems(FXCollections.observableArrayList());
+		this.results.setPlaceholder(new Text(""));
+		this.shown = null;
 	}
 	
 	/**
-	 * Updates the Results Pane based on the data model. If search results are available, this will cause them to be displayed.
+	 * Updates the Results Pane based on the data model. If search results are available, this will cause them to be
+	 * displayed, starting from the top. If they are the results already being displayed, the list is left as it is
+	 * (scrolled to wherever it was).
 	 * @param model The data model, which provides the contents of the search results
 	 */
 	public void update(GuiModel model)
 	{
 		if(model.getResultsExist())
 		{
-			List<SearchResultPlus> searchData = model.getResults();
-			for(int i = 0; i < this.results.size(); i++)
+			if(model.getResults() != this.shown)
+			{
+				this.shown = model.getResults();
+				this.results.setItems(new CursorList(this.shown));
+				this.results.setPlaceholder(new Text("No pages matched the search."));
+				this.results.scrollTo(0);
+			}
+		}
+		else if(this.shown != null)
+		{
+			this.clearResults();
+		}
+	}
+	
+	/**
+	 * A read-only list view of the results of a ResultCursor, for a ListView to display. Only the rows the ListView
+	 * asks for are ever ranked.
+	 */
+	private static class CursorList extends ObservableListBase<SearchResultPlus>
+	{
+		/**
+		 * The cursor over the search results
+		 */
+		private final ResultCursor<SearchResultImpl> cursor;
+		
+		/**
+		 * Creates a new list view of a cursor's results
+		 * @param cursor The cursor over the search results
+		 */
+		CursorList(ResultCursor<SearchResultImpl> cursor)
+		{
+			this.cursor = cursor;
+		}
+		
+		@Override
+		public SearchResultPlus get(int index)
+		{
+			return this.cursor.get(index);
+		}
+		
+		@Override
+		public int size()
+		{
+			return this.cursor.size();
+		}
+	}
+	
+	/**
+	 * A row of the results list, showing one search result. The ListView reuses each cell for whichever result has
+	 * scrolled into its place.
+	 */
+	private static class ResultCell extends ListCell<SearchResultPlus>
+	{
+		@Override
+		protected void updateItem(SearchResultPlus hit, boolean empty)
+		{
+			super.updateItem(hit, empty);
+			if(empty || hit == null)
+			{
+				this.setText(null);
+			}
+			else
 			{
-				SearchResultPlus hit = searchData.get(i);
-				String resultText = String.format("#%d) %s - %-80s\n\t\tScore: %1.4f    Pagerank: %1.5f", i+1, hit.getTitle(), hit.getURL(), hit.getScore(), hit.getPageRank());
-				this.results.get(i).setText(resultText);
-				// System.out.println(this.results.get(i).getText());
+				this.setText(String.format("#%d) %s - %-80s\n\t\tScore: %1.4f    Pagerank: %1.5f", this.getIndex() + 1, hit.getTitle(), hit.getURL(), hit.getScore(), hit.getPageRank()));
 			}
 		}
 	}
@@ -0,0 +1,320 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import net.nicwatson.sandcrawler.common.Tokenizer;
+
+/**
+ * A QueryCache remembers the results of recent searches, so that repeating a search does not mean scoring the index
+ * all over again. It is bounded in two ways: it holds at most <code>capacity</code> searches, dropping the least
+ * recently used when it is full, and a search is forgotten once it is older than <code>maxAge</code>.
+ * <p/>
+ * Searches are keyed by their normalized words (as split and lowercased by the Tokenizer, then sorted), the boost
+ * flag and the number of results. Results only depend on how many times each word appears in the query, so queries
+ * that differ only in case, punctuation or word order share an entry.
+ * <p/>
+ * As well as top-k result lists, the cache remembers the ResultCursors of searches that step through every result
+ * (<code>getCursor()</code>), keyed the same way but without a number of results. A cursor is safe to share, and
+ * keeps whatever it has already ranked, so repeating such a search costs nothing at all. A cursor holds every match,
+ * so it takes more memory than a top-k list, but it counts as one search against the capacity all the same.
+ * <p/>
+ * The cache must be invalidated whenever the index it stands in front of is replaced. Searches that were already
+ * running when it was invalidated do not put their (stale) results into it. The cache is safe for concurrent use;
+ * searches themselves run outside its lock.
+ */
+public class QueryCache
+{
+	/**
+	 * The default maximum number of searches to remember
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * The default age, in milliseconds, after which a search is forgotten
+	 */
+	public static final long DEFAULT_MAX_AGE = 10 * 60 * 1000;
+
+	/**
+	 * A remembered search: its results, and when they were found
+	 */
+	private static class CachedSearch
+	{
+		/**
+		 * The results of the search: a list of SearchResultPlus, or a ResultCursor, depending on the key
+		 */
+		final Object results;
+
+		/**
+		 * The value of <code>System.nanoTime()</code> when the search was done
+		 */
+		final long time;
+
+		/**
+		 * Creates a new remembered search
+		 * @param results The results of the search
+		 * @param time The value of <code>System.nanoTime()</code> when the search was done
+		 */
+		CachedSearch(Object results, long time)
+		{
+			this.results = results;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Maximum number of searches to remember
+	 */
+	private final int capacity;
+
+	/**
+	 * Age, in nanoseconds, after which a search is forgotten
+	 */
+	private final long maxAgeNanos;
+
+	/**
+	 * The remembered searches, by key, in order of use (least recently used first)
+	 */
+	private final LinkedHashMap<String, CachedSearch> entries;
+
+	/**
+	 * Incremented every time the cache is invalidated, so that searches begun before then can be recognized
+	 */
+	private long generation;
+
+	/**
+	 * Number of searches answered from the cache
+	 */
+	private long hits;
+
+	/**
+	 * Number of searches that had to be run
+	 */
+	private long misses;
+
+	/**
+	 * Number of searches forgotten because the cache was full or they were too old
+	 */
+	private long evictions;
+
+	/**
+	 * Creates a new, empty QueryCache with the default capacity and maximum age
+	 */
+	public QueryCache()
+	{
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_AGE);
+	}
+
+	/**
+	 * Creates a new, empty QueryCache
+	 * @param capacity Maximum number of searches to remember. If this is 0 or less, nothing is remembered.
+	 * @param maxAge Age, in milliseconds, after which a search is forgotten
+	 */
+	public QueryCache(int capacity, long maxAge)
+	{
+		this.capacity = Math.max(0, capacity);
+		this.maxAgeNanos = maxAge * 1000000L;
+		this.entries = new LinkedHashMap<String, CachedSearch>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedSearch> eldest)
+			{
+				if(this.size() > QueryCache.this.capacity)
+				{
+					QueryCache.this.evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+		this.generation = 0;
+		this.hits = 0;
+		this.misses = 0;
+		this.evictions = 0;
+	}
+
+	/**
+	 * Builds the cache key for a search
+	 * @param query The search query string
+	 * @param boost Whether PageRanks are factored in
+	 * @param amount The max number of search results
+	 * @return The key
+	 */
+	public static String keyFor(String query, boolean boost, int amount)
+	{
+		return keyFor((boost ? "B" : "U") + amount, query);
+	}
+
+	/**
+	 * Builds the cache key for a search that steps through every result with a ResultCursor
+	 * @param query The search query string
+	 * @param boost Whether PageRanks are factored in
+	 * @return The key, which never matches the key of a top-k search
+	 */
+	public static String cursorKeyFor(String query, boolean boost)
+	{
+		return keyFor(boost ? "CB" : "CU", query);
+	}
+
+	/**
+	 * Builds a cache key from a prefix describing the kind of search, and the normalized words of the query
+	 * @param prefix The prefix, which must not contain a space
+	 * @param query The search query string
+	 * @return The key
+	 */
+	private static String keyFor(String prefix, String query)
+	{
+		List<String> words = new ArrayList<String>();
+		Tokenizer.tokenize(query, (buffer, length) -> words.add(new String(buffer, 0, length)));
+		Collections.sort(words);
+		StringBuilder key = new StringBuilder(prefix);
+		for(String word : words)
+		{
+			key.append(' ').append(word);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Retrieves the results of a search from the cache, or runs the search and remembers its results if they are not
+	 * there (or are too old)
+	 * @param query The search query string
+	 * @param boost Whether PageRanks are factored in
+	 * @param amount The max number of search results
+	 * @param search Runs the search, if it is not in the cache
+	 * @return The results of the search
+	 */
+	public List<SearchResultPlus> get(String query, boolean boost, int amount, Supplier<List<SearchResultPlus>> search)
+	{
+		return this.lookup(keyFor(query, boost, amount), search);
+	}
+
+	/**
+	 * Retrieves the cursor of a search from the cache, or runs the search and remembers its cursor if it is not there
+	 * (or is too old)
+	 * @param query The search query string
+	 * @param boost Whether PageRanks are factored in
+	 * @param search Runs the search, if it is not in the cache
+	 * @return The cursor over the results of the search, which may already have been used
+	 */
+	public ResultCursor<SearchResultImpl> getCursor(String query, boolean boost,
+			Supplier<ResultCursor<SearchResultImpl>> search)
+	{
+		return this.lookup(cursorKeyFor(query, boost), search);
+	}
+
+	/**
+	 * Retrieves the results of a search from the cache, or runs the search and remembers its results
+	 * @param <T> The type of results, which must be the same for every search with this key
+	 * @param key The cache key of the search
+	 * @param search Runs the search, if it is not in the cache
+	 * @return The results of the search
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T lookup(String key, Supplier<T> search)
+	{
+		long startGeneration;
+		synchronized(this)
+		{
+			CachedSearch entry = this.entries.get(key);
+			if(entry != null)
+			{
+				if(System.nanoTime() - entry.time <= this.maxAgeNanos)
+				{
+					this.hits++;
+					return (T)entry.results;
+				}
+				this.entries.remove(key);
+				this.evictions++;
+			}
+			this.misses++;
+			startGeneration = this.generation;
+		}
+
+		T results = search.get();
+		synchronized(this)
+		{
+			if(this.generation == startGeneration && this.capacity > 0)
+			{
+				this.entries.put(key, new CachedSearch(results, System.nanoTime()));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Forgets every search, as when the index is replaced. Searches that are running at the time will not be
+	 * remembered when they finish. The hit and miss counters are not reset.
+	 */
+	public synchronized void invalidate()
+	{
+		this.entries.clear();
+		this.generation++;
+	}
+
+	/**
+	 * Reports the number of searches currently remembered
+	 * @return The number of searches in the cache
+	 */
+	public synchronized int size()
+	{
+		return this.entries.size();
+	}
+
+	/**
+	 * Reports the number of searches answered from the cache
+	 * @return The number of cache hits
+	 */
+	public synchronized long getHits()
+	{
+		return this.hits;
+	}
+
+	/**
+	 * Reports the number of searches that were not in the cache, and had to be run
+	 * @return The number of cache misses
+	 */
+	public synchronized long getMisses()
+	{
+		return this.misses;
+	}
+
+	/**
+	 * Reports the number of searches forgotten because the cache was full or they were too old
+	 * @return The number of evictions
+	 */
+	public synchronized long getEvictions()
+	{
+		return this.evictions;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "QueryCache: " + this.entries.size() + "/" + this.capacity + " searches, " + this.hits + " hits, "
+				+ this.misses + " misses, " + this.evictions + " evictions";
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A ResultCursor steps through every result of a search, best first, without sorting them all up front. The
+ * candidates are put into a heap when the cursor is created, which takes linear time; after that they are ranked one
+ * page at a time, as they are asked for, so fetching a page of k results out of n costs O(k log n). A consumer that
+ * only ever looks at the first few pages (as a scrolling list does, until the user scrolls) never pays to sort the
+ * rest. As with TopResults, candidates are ranked by their natural ordering, where "smaller" means "better".
+ * <p/>
+ * Results can be fetched in any order, and as often as needed; the ones already ranked are kept. The cursor is safe
+ * for concurrent use.
+ * @param <T> The type of candidate being ranked
+ * @see TopResults
+ */
+public class ResultCursor<T extends Comparable<? super T>>
+{
+	/**
+	 * The default number of results ranked at a time
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 50;
+
+	/**
+	 * The number of results ranked at a time
+	 */
+	private final int pageSize;
+
+	/**
+	 * The total number of results
+	 */
+	private final int size;
+
+	/**
+	 * The results ranked so far, best first
+	 */
+	private final List<T> ranked;
+
+	/**
+	 * The results not yet ranked, with the best of them at the head of the queue
+	 */
+	private final PriorityQueue<T> remaining;
+
+	/**
+	 * Creates a new cursor over the given candidates, which ranks them <code>DEFAULT_PAGE_SIZE</code> at a time
+	 * @param candidates The results of the search, in any order
+	 */
+	public ResultCursor(Collection<? extends T> candidates)
+	{
+		this(candidates, DEFAULT_PAGE_SIZE);
+	}
+
+	/**
+	 * Creates a new cursor over the given candidates
+	 * @param candidates The results of the search, in any order. (A SortedSet or PriorityQueue is ranked by its own
+	 * comparator, which should agree with the natural ordering.)
+	 * @param pageSize The number of results to rank at a time. If this is less than 1, they are ranked one at a time.
+	 */
+	public ResultCursor(Collection<? extends T> candidates, int pageSize)
+	{
+		this.pageSize = Math.max(1, pageSize);
+		this.size = candidates.size();
+		this.ranked = new ArrayList<T>(Math.min(this.size, this.pageSize));
+		// Building the queue from a whole collection copies it once and heapifies it in linear time, rather than
+		// adding one by one
+		this.remaining = new PriorityQueue<T>(candidates);
+	}
+
+	/**
+	 * Reports the total number of results
+	 * @return The number of results
+	 */
+	public int size()
+	{
+		return this.size;
+	}
+
+	/**
+	 * Reports how many of the results have been ranked so far
+	 * @return The number of results ranked
+	 */
+	public synchronized int getRanked()
+	{
+		return this.ranked.size();
+	}
+
+	/**
+	 * Retrieves the result at the given rank, ranking as many more pages of results as it takes to reach it
+	 * @param rank The position of the result, counting from 0 for the best
+	 * @return The result
+	 * @throws IndexOutOfBoundsException If there are not that many results
+	 */
+	public synchronized T get(int rank)
+	{
+		if(rank < 0 || rank >= this.size)
+		{
+			throw new IndexOutOfBoundsException("Rank " + rank + " is out of range for " + this.size + " results");
+		}
+		this.rankThrough(rank);
+		return this.ranked.get(rank);
+	}
+
+	/**
+	 * Retrieves a run of results, ranking as many more pages of results as it takes to reach the end of it
+	 * @param first The rank of the first result to retrieve, counting from 0 for the best
+	 * @param count The number of results to retrieve. Fewer are returned if there are not that many after
+	 * <code>first</code>.
+	 * @return The results, best first
+	 */
+	public synchronized List<T> page(int first, int count)
+	{
+		int start = Math.max(0, first);
+		int end = (int)Math.min((long)start + Math.max(0, count), this.size);
+		if(start >= end)
+		{
+			return List.of();
+		}
+		this.rankThrough(end - 1);
+		return Collections.unmodifiableList(new ArrayList<T>(this.ranked.subList(start, end)));
+	}
+
+	/**
+	 * Ranks whole pages of results until the result at the given rank has been ranked
+	 * @param rank The rank that must be reached. This must be less than <code>size</code>.
+	 */
+	private void rankThrough(int rank)
+	{
+		while(this.ranked.size() <= rank)
+		{
+			for(int n = 0; n < this.pageSize && !this.remaining.isEmpty(); n++)
+			{
+				this.ranked.add(this.remaining.poll());
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return "ResultCursor: " + this.ranked.size() + "/" + this.size + " results ranked";
+	}
+}
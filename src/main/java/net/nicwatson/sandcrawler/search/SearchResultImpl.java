@@ -17,12 +17,17 @@
  
 package net.nicwatson.sandcrawler.search;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
 import net.nicwatson.sandcrawler.common.IndexedPage;
 
 
 /**
  * The SearchResultImpl class represents a single result returned by the search engine: a page
- * (IndexedPage) with a score (double) between 0 (poor match) and 1 (perfect match).
+ * with a score (double) between 0 (poor match) and 1 (perfect match). The result keeps its own copy
+ * of the page's title, URL and PageRank, so it does not depend on how (or whether) the page itself
+ * is held in memory.
  * <p/>
  * SearchResultImpl implements Comparable<SearchResultImpl> to facilitate ranking results by their
  * score using any data structure or method that calls compareTo(). Results are sorted
@@ -40,15 +45,25 @@ public class SearchResultImpl implements SearchResultPlus, Comparable<SearchResu
 	private static final int DEFAULT_PRECISION = 3;
 	
 	/**
-	 * Formatting string used to round scores and prepare them for lexicographic comparison
+	 * Scale factor that turns a score into a whole number of units in the last decimal place considered when sorting
+	 */
+	private static final double PRECISION_SCALE = Math.pow(10, DEFAULT_PRECISION);
+	
+	
+	/**
+	 * Title of the page found for this search result
 	 */
-	private static final String SCORE_FORMAT = "%1." + DEFAULT_PRECISION + "f";
+	protected String title;
 	
+	/**
+	 * URL of the page found for this search result
+	 */
+	protected String url;
 	
 	/**
-	 * The document found for this search result
+	 * PageRank of the page found for this search result
 	 */
-	protected IndexedPage document;
+	protected double pageRank;
 	
 	/**
 	 * The score of this search result
@@ -60,6 +75,12 @@ public class SearchResultImpl implements SearchResultPlus, Comparable<SearchResu
 	 */
 	private boolean boosted;
 	
+	/**
+	 * The score rounded to DEFAULT_PRECISION decimal places, expressed as a whole number of units in the last place
+	 * (e.g. a score of 0.1236 is stored as 124). This is calculated once, so that comparisons are cheap.
+	 */
+	private final long roundedScore;
+	
 	/**
 	 * Creates a new SearchResult for the given document, with the given score, and a
 	 * caller-specified sorting precision.
@@ -68,9 +89,48 @@ public class SearchResultImpl implements SearchResultPlus, Comparable<SearchResu
 	 */
 	public SearchResultImpl(IndexedPage doc, double score)
 	{
-		this.document = doc;
+		this(doc.getTitle(), doc.getURL(), doc.getPageRank(), score);
+	}
+	
+	/**
+	 * Creates a new SearchResult for a page with the given details, with the given score.
+	 * @param title The title of the page found for this search result
+	 * @param url The URL of the page found for this search result
+	 * @param pageRank The PageRank of the page found for this search result
+	 * @param score The score of this document for this search
+	 */
+	public SearchResultImpl(String title, String url, double pageRank, double score)
+	{
+		this.title = title;
+		this.url = url;
+		this.pageRank = pageRank;
 		this.score = score;
 		this.boosted = false;
+		this.roundedScore = roundScore(score);
+	}
+	
+	/**
+	 * Rounds a score to DEFAULT_PRECISION decimal places, half-up, as it would appear if formatted with
+	 * <code>String.format("%1.3f")</code>, and returns it as a whole number of units in the last place.
+	 * Scores that are clearly not on a rounding boundary are handled with plain arithmetic; the rare scores that
+	 * fall (within floating-point error) on a boundary are rounded from their decimal string representation, as
+	 * the formatter does.
+	 * @param score The score to round
+	 * @return The rounded score, scaled up to a whole number
+	 */
+	static long roundScore(double score)
+	{
+		if(Double.isNaN(score) || Double.isInfinite(score))
+		{
+			return (score > 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
+		}
+		double scaled = score * PRECISION_SCALE;
+		double fraction = Math.abs(scaled - Math.floor(scaled) - 0.5);
+		if(fraction > 1e-6)
+		{
+			return Math.round(scaled);
+		}
+		return BigDecimal.valueOf(score).setScale(DEFAULT_PRECISION, RoundingMode.HALF_UP).unscaledValue().longValue();
 	}
 	
 	/**
@@ -88,7 +148,7 @@ public class SearchResultImpl implements SearchResultPlus, Comparable<SearchResu
 	 */
 	public String getPageTitle()
 	{
-		return this.document.getTitle();
+		return this.title;
 	}
 	
 	/**
@@ -109,46 +169,56 @@ public class SearchResultImpl implements SearchResultPlus, Comparable<SearchResu
 		this.boosted = set;
 	}
 			
+	/**
+	 * Determines the sort order priority between two SearchResults based on their scores alone.
+	 * The candidates are sorted in <em>descending</em> order of score, rounded to three decimal places.
+	 * The rounding is done once when the result is created, so this comparison does no work beyond
+	 * comparing two numbers.
+	 * @param other The other search result
+	 * @return A negative number if this result's rounded score is higher than the other's, zero if they are the same,
+	 * or a positive number if it is lower
+	 */
+	public int compareScoreTo(SearchResultImpl other)
+	{
+		return Long.compare(other.roundedScore, this.roundedScore);
+	}
+			
 	/**
 	 * Determines the sort order priority between two SearchResults.
-	 * The candidates are first sorted in <em>descending</em> order of score, by embedding the 
-	 * rounded scores into strings that are then compared using <code>String</code>'s own
-	 * <code>compareTo()</code> method.
-	 * If the score strings are identical, the candidates are ordered in <em>ascending</em>
+	 * The candidates are first sorted in <em>descending</em> order of rounded score (see
+	 * <code>compareScoreTo()</code>).
+	 * If the rounded scores are identical, the candidates are ordered in <em>ascending</em>
 	 * lexicographic order by page title.
 	 * @see Comparable#compareTo(Object)
 	 */
 	@Override
 	public int compareTo(SearchResultImpl other)
 	{
-		String myScoreStr = String.format(SCORE_FORMAT, this.getScore());
-		String otherScore = String.format(SCORE_FORMAT, other.getScore());
-
-		int compResult = 0 - myScoreStr.compareTo(otherScore);
+		int compResult = this.compareScoreTo(other);
 		if(compResult != 0)
 		{
 			return compResult;
 			
 		}
 		
-		return this.document.getTitle().compareTo(other.document.getTitle());
+		return this.title.compareTo(other.title);
 	}
 
 	@Override
 	public String getTitle()
 	{
-		return this.document.getTitle();
+		return this.title;
 	}
 
 	@Override
 	public String getURL()
 	{
-		return this.document.getURL();
+		return this.url;
 	}
 
 	@Override
 	public double getPageRank()
 	{
-		return this.document.getPageRank();
+		return this.pageRank;
 	}
 }
@@ -0,0 +1,120 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A TopResults collector keeps only the best <code>capacity</code> of the candidates offered to it, according to their
+ * natural ordering (where "smaller" means "better", as with SearchResultImpl). Candidates are held in a bounded heap
+ * with the worst of the kept candidates on top, so that each offer costs at most O(log k) and selecting the top k
+ * out of n candidates never requires sorting or storing all n of them.
+ * @param <T> The type of candidate being ranked
+ */
+public class TopResults<T extends Comparable<? super T>>
+{
+	/**
+	 * Maximum number of candidates to keep
+	 */
+	private final int capacity;
+
+	/**
+	 * The kept candidates, ordered so that the worst of them is at the head of the queue
+	 */
+	private final PriorityQueue<T> heap;
+
+	/**
+	 * Creates a new, empty collector
+	 * @param capacity Maximum number of candidates to keep. If this is 0 or less, nothing is ever kept.
+	 */
+	public TopResults(int capacity)
+	{
+		this.capacity = Math.max(0, capacity);
+		this.heap = new PriorityQueue<T>(Math.max(1, this.capacity), Collections.reverseOrder());
+	}
+
+	/**
+	 * Offers a candidate to the collector. It is kept if there is still room, or if it is better than the worst
+	 * candidate kept so far (which is then dropped to make room).
+	 * @param candidate The candidate to offer
+	 * @return <code>true</code> if the candidate was kept
+	 */
+	public boolean offer(T candidate)
+	{
+		if(this.heap.size() < this.capacity)
+		{
+			this.heap.add(candidate);
+			return true;
+		}
+		if(this.capacity > 0 && candidate.compareTo(this.heap.peek()) < 0)
+		{
+			this.heap.poll();
+			this.heap.add(candidate);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Indicates whether the collector already holds as many candidates as it can keep. A collector that can keep
+	 * nothing is never full, so that a full collector always has a <code>worst()</code> candidate to compare against.
+	 * @return <code>true</code> if the collector is full
+	 */
+	public boolean isFull()
+	{
+		return this.capacity > 0 && this.heap.size() >= this.capacity;
+	}
+
+	/**
+	 * Retrieves the worst of the candidates kept so far, i.e. the one that the next candidate will have to beat
+	 * once the collector is full
+	 * @return The worst kept candidate, or <b>null</b> if nothing has been kept yet
+	 */
+	public T worst()
+	{
+		return this.heap.peek();
+	}
+
+	/**
+	 * Reports how many candidates have been kept
+	 * @return The number of candidates kept
+	 */
+	public int size()
+	{
+		return this.heap.size();
+	}
+
+	/**
+	 * Empties the collector, returning the kept candidates from best to worst
+	 * @return A list of the kept candidates, best first
+	 */
+	public List<T> drainSorted()
+	{
+		List<T> sorted = new ArrayList<T>(this.heap.size());
+		// The heap gives up its worst candidate first, so the list comes out backwards
+		while(!this.heap.isEmpty())
+		{
+			sorted.add(this.heap.poll());
+		}
+		Collections.reverse(sorted);
+		return sorted;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.nicwatson.sandcrawler.crawl.UnprocessedPage;
+
+/**
+ * Tests that IndexFile and MappedIndex report a corrupt index file with an IOException that names it, rather than
+ * failing some other way
+ */
+public class IndexFileTest
+{
+	/**
+	 * The site the test pages are on
+	 */
+	private static final String SITE = "http://test.local/";
+
+	/**
+	 * A scratch directory for index files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * The contents of a valid index file
+	 */
+	private byte[] valid;
+
+	/**
+	 * A page whose text is given, rather than downloaded
+	 */
+	private static class Page extends UnprocessedPage
+	{
+		/**
+		 * Creates a new Page
+		 * @param name The page's title, and the name of its file
+		 * @param body The text of the page
+		 * @param link The name of the page it links to
+		 * @throws MalformedURLException Never
+		 */
+		Page(String name, String body, String link) throws MalformedURLException
+		{
+			super(SITE + name + ".html", "<html><head><title>" + name + "</title></head><body><p>" + body
+					+ "</p><a href=\"" + SITE + link + ".html\">" + link + "</a></body></html>");
+		}
+	}
+
+	/**
+	 * Writes a small index to a file
+	 * @throws IOException If the file cannot be written
+	 */
+	@BeforeEach
+	public void writeIndex() throws IOException
+	{
+		WebIndex index = new WebIndex();
+		for(Page page : List.of(
+				new Page("A", "apple banana apple", "B"),
+				new Page("B", "banana cherry", "C"),
+				new Page("C", "cherry date", "elsewhere")))
+		{
+			index.updatePage(page);
+		}
+		Path path = this.directory.resolve("valid.dat");
+		IndexFile.write(index, path.toString());
+		this.valid = Files.readAllBytes(path);
+	}
+
+	/**
+	 * Writes the given contents to a file, and tries to read and open it. Either may succeed (not every corruption can
+	 * be told apart from real data), but any failure must be an IOException naming the file.
+	 * @param contents The contents of the file
+	 * @throws IOException If the file cannot be written
+	 */
+	private void assertReadFailsCleanly(byte[] contents) throws IOException
+	{
+		Path path = this.directory.resolve("corrupt.dat");
+		Files.write(path, contents);
+		try
+		{
+			IndexFile.read(path.toString());
+		}
+		catch(IOException e)
+		{
+			assertNamesFile(e, path);
+		}
+		catch(RuntimeException | OutOfMemoryError e)
+		{
+			fail("IndexFile.read threw " + e);
+		}
+		try
+		{
+			MappedIndex.open(path.toString());
+		}
+		catch(IOException e)
+		{
+			assertNamesFile(e, path);
+		}
+		catch(RuntimeException | OutOfMemoryError e)
+		{
+			fail("MappedIndex.open threw " + e);
+		}
+	}
+
+	/**
+	 * Checks that an exception's message names the file it is about
+	 * @param e The exception
+	 * @param path The file
+	 */
+	private static void assertNamesFile(IOException e, Path path)
+	{
+		if(e.getMessage() == null || !e.getMessage().contains(path.toString()))
+		{
+			fail("Exception does not name the file: " + e);
+		}
+	}
+
+	/**
+	 * The valid file reads back
+	 * @throws IOException If it does not
+	 */
+	@Test
+	public void validFileReads() throws IOException
+	{
+		Path path = this.directory.resolve("valid.dat");
+		assertEquals(3, IndexFile.read(path.toString()).getTotalDocs());
+		assertEquals(3, MappedIndex.open(path.toString()).getTotalDocs());
+	}
+
+	/**
+	 * A file cut short anywhere is reported as an IOException
+	 * @throws IOException If a scratch file cannot be written
+	 */
+	@Test
+	public void truncatedFiles() throws IOException
+	{
+		for(int length = 0; length < this.valid.length; length++)
+		{
+			byte[] truncated = new byte[length];
+			System.arraycopy(this.valid, 0, truncated, 0, length);
+			Path path = this.directory.resolve("corrupt.dat");
+			Files.write(path, truncated);
+			assertThrows(IOException.class, () -> IndexFile.read(path.toString()));
+			assertReadFailsCleanly(truncated);
+		}
+	}
+
+	/**
+	 * Page and word counts in the header that are negative or far too large are reported before anything is
+	 * allocated for them
+	 * @throws IOException If a scratch file cannot be written
+	 */
+	@Test
+	public void impossibleCounts() throws IOException
+	{
+		// The counts follow the magic number and version (8 bytes), the seed URL (a blank string, 1 byte) and the
+		// crawl time (8 bytes)
+		int counts = 8 + 1 + 8;
+		for(int value : new int[] {-1, Integer.MIN_VALUE, Integer.MAX_VALUE, 1 << 24})
+		{
+			for(int field = 0; field < 2; field++)
+			{
+				byte[] corrupt = this.valid.clone();
+				ByteBuffer.wrap(corrupt).putInt(counts + (field * Integer.BYTES), value);
+				assertReadFailsCleanly(corrupt);
+			}
+		}
+	}
+
+	/**
+	 * Random bytes written over the file anywhere are reported as an IOException, if they are noticed at all
+	 * @throws IOException If a scratch file cannot be written
+	 */
+	@Test
+	public void corruptBytes() throws IOException
+	{
+		Random random = new Random(8);
+		for(int position = 0; position < this.valid.length; position++)
+		{
+			for(byte value : new byte[] {(byte)0xFF, (byte)0x80, 0, (byte)random.nextInt()})
+			{
+				byte[] corrupt = this.valid.clone();
+				corrupt[position] = value;
+				assertReadFailsCleanly(corrupt);
+			}
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for ScoreAccumulator
+ */
+public class ScoreAccumulatorTest
+{
+	/**
+	 * Scores are summed per page, and pages come back in the order they were first visited
+	 */
+	@Test
+	public void sumsScoresInVisitOrder()
+	{
+		ScoreAccumulator scores = new ScoreAccumulator(3);
+		scores.add(40, 0.5);
+		scores.add(7, 0.25);
+		scores.add(40, 0.125);
+		scores.add(1000000, 1);
+		assertEquals(3, scores.size());
+		assertEquals(40, scores.ordinalAt(0));
+		assertEquals(0.625, scores.scoreAt(0));
+		assertEquals(7, scores.ordinalAt(1));
+		assertEquals(0.25, scores.scoreAt(1));
+		assertEquals(1000000, scores.ordinalAt(2));
+		assertTrue(scores.contains(7));
+		assertFalse(scores.contains(8));
+	}
+
+	/**
+	 * An accumulator that is given far more pages than it was sized for grows, and loses nothing
+	 */
+	@Test
+	public void growsPastItsExpectedSize()
+	{
+		ScoreAccumulator scores = new ScoreAccumulator(1);
+		Map<Integer, Double> expected = new LinkedHashMap<Integer, Double>();
+		Random random = new Random(42);
+		for (int n = 0; n < 20000; n++)
+		{
+			int ordinal = random.nextInt(5000);
+			double amount = random.nextDouble();
+			scores.add(ordinal, amount);
+			expected.merge(ordinal, amount, Double::sum);
+		}
+		assertEquals(expected.size(), scores.size());
+		int n = 0;
+		for (Map.Entry<Integer, Double> entry : expected.entrySet())
+		{
+			assertEquals(entry.getKey().intValue(), scores.ordinalAt(n));
+			assertEquals(entry.getValue(), scores.scoreAt(n), 1e-9);
+			n++;
+		}
+	}
+}
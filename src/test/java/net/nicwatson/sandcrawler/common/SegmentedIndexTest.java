@@ -0,0 +1,271 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import net.nicwatson.sandcrawler.crawl.UnprocessedPage;
+import net.nicwatson.sandcrawler.search.SearchResultPlus;
+
+/**
+ * Tests that a SegmentedIndex answers searches just as a single WebIndex of the same pages does, however its pages are
+ * spread across segments, replaced, removed or merged, and after it has been closed and opened again
+ */
+public class SegmentedIndexTest
+{
+	/**
+	 * The site the test pages are on
+	 */
+	private static final String SITE = "http://test.local/";
+
+	/**
+	 * Every word on the test pages
+	 */
+	private static final List<String> WORDS = List.of("apple", "banana", "cherry", "date", "elderberry");
+
+	/**
+	 * The queries to compare
+	 */
+	private static final List<String> QUERIES = List.of("apple", "banana cherry", "date apple apple", "fig");
+
+	/**
+	 * A scratch directory for the segments
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * A page whose text is given, rather than downloaded
+	 */
+	private static class Page extends UnprocessedPage
+	{
+		/**
+		 * Creates a new Page
+		 * @param name The page's title, and the name of its file
+		 * @param body The text of the page's paragraph
+		 * @param links The names of the pages it links to
+		 * @throws MalformedURLException Never
+		 */
+		Page(String name, String body, String... links) throws MalformedURLException
+		{
+			super(SITE + name + ".html", html(name, body, links));
+		}
+
+		/**
+		 * Writes out the HTML of a page
+		 * @param name The page's title
+		 * @param body The text of the page's paragraph
+		 * @param links The names of the pages it links to
+		 * @return The HTML
+		 */
+		private static String html(String name, String body, String... links)
+		{
+			StringBuilder html = new StringBuilder("<html><head><title>" + name + "</title></head><body><p>" + body + "</p>");
+			for(String link : links)
+			{
+				html.append("<a href=\"" + SITE + link + ".html\">" + link + "</a>");
+			}
+			return html.append("</body></html>").toString();
+		}
+	}
+
+	/**
+	 * Adds five pages to the index, one of them twice, and then removes another, flushing along the way. With a
+	 * segment size of 2, the second copy of B is in a different segment from the first, and C is removed after its
+	 * segment has been flushed.
+	 * @param index The index to change
+	 * @throws MalformedURLException Never
+	 */
+	private static void addPages(SegmentedIndex index) throws MalformedURLException
+	{
+		index.add(new Page("A", "apple banana apple", "B", "C"));
+		index.add(new Page("B", "banana cherry", "A"));
+		index.add(new Page("C", "cherry date", "A"));
+		index.add(new Page("B", "apple date date", "C", "D"));
+		index.add(new Page("D", "date elderberry banana", "A", "E"));
+		index.add(new Page("E", "elderberry apple", "D"));
+		assertTrue(index.flush());
+		assertTrue(index.remove(SITE + "C.html"));
+		assertTrue(index.flush());
+	}
+
+	/**
+	 * Builds, as a single WebIndex, the pages that <code>addPages()</code> leaves
+	 * @return The index
+	 * @throws MalformedURLException Never
+	 */
+	private static WebIndex expected() throws MalformedURLException
+	{
+		WebIndex index = new WebIndex();
+		index.updatePage(new Page("A", "apple banana apple", "B", "C"));
+		index.updatePage(new Page("B", "apple date date", "C", "D"));
+		index.updatePage(new Page("D", "date elderberry banana", "A", "E"));
+		index.updatePage(new Page("E", "elderberry apple", "D"));
+		return index;
+	}
+
+	/**
+	 * Checks that a SegmentedIndex has the same statistics, and gives the same search results, as a single WebIndex
+	 * @param expected The single index
+	 * @param actual The segmented index
+	 */
+	private static void assertMatches(WebIndex expected, SegmentedIndex actual)
+	{
+		assertEquals(expected.getTotalDocs(), actual.getTotalDocs());
+		assertEquals(expected.getTotalWords(), actual.getTotalWords());
+		for(String word : WORDS)
+		{
+			assertEquals(expected.getIDF(word), actual.getIDF(word), 1e-12, word);
+		}
+		for(String name : List.of("A", "B", "D", "E"))
+		{
+			String url = SITE + name + ".html";
+			assertNotNull(actual.getPage(url), url);
+			assertEquals(expected.getPageRank(url), actual.getPageRank(url), 1e-9, url);
+			assertEquals(expected.getTFIDF(url, "date"), actual.getTFIDF(url, "date"), 1e-12, url);
+			assertEquals(expected.getOutgoingLinks(url), actual.getOutgoingLinks(url), url);
+			assertEquals(expected.getIncomingLinks(url), actual.getIncomingLinks(url), url);
+		}
+		assertNull(actual.getPage(SITE + "C.html"));
+		assertNull(actual.getOutgoingLinks(SITE + "C.html"));
+		for(String query : QUERIES)
+		{
+			for(boolean boost : new boolean[] { false, true })
+			{
+				Map<String, Double> scores = scores(expected.searchPlus(query, boost, 10));
+				assertEquals(scores.keySet(), scores(actual.searchPlus(query, boost, 10)).keySet(), query);
+				for(Map.Entry<String, Double> score : scores(actual.searchPlus(query, boost, 10)).entrySet())
+				{
+					assertEquals(scores.get(score.getKey()), score.getValue(), 1e-9, query + " " + score.getKey());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the scores of some search results by URL
+	 * @param results The search results
+	 * @return The score of each result
+	 */
+	private static Map<String, Double> scores(List<SearchResultPlus> results)
+	{
+		Map<String, Double> scores = new HashMap<String, Double>();
+		for(SearchResultPlus result : results)
+		{
+			scores.put(result.getURL(), result.getScore());
+		}
+		return scores;
+	}
+
+	/**
+	 * Pages spread across several segments, with one replaced and one removed, are searched as if they were in one
+	 * index
+	 * @throws IOException If the segments cannot be written
+	 */
+	@Test
+	public void searchesMatchASingleIndex() throws IOException
+	{
+		SegmentedIndex index = SegmentedIndex.open(this.directory.toString(), SITE, 2, sizes -> null);
+		addPages(index);
+		assertEquals(3, index.getSegmentCount());
+		assertMatches(expected(), index);
+		index.close();
+	}
+
+	/**
+	 * Pages added and removed since the last flush are not seen until the next one
+	 * @throws IOException If the segments cannot be written
+	 */
+	@Test
+	public void changesAreSeenOnceFlushed() throws IOException
+	{
+		SegmentedIndex index = SegmentedIndex.open(this.directory.toString(), SITE, 10, sizes -> null);
+		addPages(index);
+		index.remove(SITE + "A.html");
+		index.add(new Page("C", "cherry cherry", "A"));
+		assertNotNull(index.getPage(SITE + "A.html"));
+		assertNull(index.getPage(SITE + "C.html"));
+		assertEquals(4, index.getTotalDocs());
+		assertTrue(index.flush());
+		assertNull(index.getPage(SITE + "A.html"));
+		assertNotNull(index.getPage(SITE + "C.html"));
+		assertEquals(4, index.getTotalDocs());
+		index.close();
+	}
+
+	/**
+	 * Reopening the directory brings back the same pages, without the replaced and removed ones
+	 * @throws IOException If the segments cannot be written or read
+	 */
+	@Test
+	public void reopenKeepsReplacementsAndRemovals() throws IOException
+	{
+		SegmentedIndex index = SegmentedIndex.open(this.directory.toString(), SITE, 2, sizes -> null);
+		addPages(index);
+		index.close();
+
+		SegmentedIndex reopened = SegmentedIndex.open(this.directory.toString(), null, 2, sizes -> null);
+		assertEquals(SITE, reopened.getSeedURL());
+		assertMatches(expected(), reopened);
+
+		// A page that was removed can be added again
+		reopened.add(new Page("C", "cherry date", "A"));
+		assertTrue(reopened.flush());
+		assertNotNull(reopened.getPage(SITE + "C.html"));
+		reopened.close();
+	}
+
+	/**
+	 * Merging segments leaves the replaced and removed pages out, and changes no results
+	 * @throws IOException If the segments cannot be written or read
+	 * @throws InterruptedException If the test is interrupted while waiting for the merges
+	 */
+	@Test
+	public void mergesKeepTheSameResults() throws IOException, InterruptedException
+	{
+		// Merge every segment into one, whenever there is more than one
+		MergePolicy mergeAll = sizes -> (sizes.length > 1) ? new int[] { 0, sizes.length } : null;
+		SegmentedIndex index = SegmentedIndex.open(this.directory.toString(), SITE, 1, mergeAll);
+		addPages(index);
+		for(int wait = 0; wait < 1000 && index.getSegmentCount() > 1; wait++)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(1, index.getSegmentCount(), index.toString());
+		assertMatches(expected(), index);
+		index.close();
+
+		SegmentedIndex reopened = SegmentedIndex.open(this.directory.toString(), null, 1, mergeAll);
+		assertEquals(1, reopened.getSegmentCount());
+		assertMatches(expected(), reopened);
+		reopened.close();
+	}
+}
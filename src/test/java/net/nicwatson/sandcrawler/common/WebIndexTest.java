@@ -0,0 +1,169 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.net.MalformedURLException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import net.nicwatson.sandcrawler.crawl.UnprocessedPage;
+
+/**
+ * Tests that the statistics of a WebIndex (IDFs, vector norms and PageRanks) are worked out again when pages are
+ * added, replaced or removed
+ */
+public class WebIndexTest
+{
+	/**
+	 * The site the test pages are on
+	 */
+	private static final String SITE = "http://test.local/";
+
+	/**
+	 * Every word on the test pages
+	 */
+	private static final List<String> WORDS = List.of("apple", "banana", "cherry", "date");
+
+	/**
+	 * A page whose text is given, rather than downloaded
+	 */
+	private static class Page extends UnprocessedPage
+	{
+		/**
+		 * Creates a new Page
+		 * @param name The page's title, and the name of its file
+		 * @param body The text of the page's paragraph
+		 * @param links The names of the pages it links to
+		 * @throws MalformedURLException Never
+		 */
+		Page(String name, String body, String... links) throws MalformedURLException
+		{
+			super(SITE + name + ".html", html(name, body, links));
+		}
+
+		/**
+		 * Writes out the HTML of a page
+		 * @param name The page's title
+		 * @param body The text of the page's paragraph
+		 * @param links The names of the pages it links to
+		 * @return The HTML
+		 */
+		private static String html(String name, String body, String... links)
+		{
+			StringBuilder html = new StringBuilder("<html><head><title>" + name + "</title></head><body><p>" + body + "</p>");
+			for (String link : links)
+			{
+				html.append("<a href=\"" + SITE + link + ".html\">" + link + "</a>");
+			}
+			return html.append("</body></html>").toString();
+		}
+	}
+
+	/**
+	 * Builds an index of the given pages, adding them one at a time
+	 * @param pages The pages
+	 * @return The index
+	 */
+	private static WebIndex indexOf(UnprocessedPage... pages)
+	{
+		WebIndex index = new WebIndex();
+		for (UnprocessedPage page : pages)
+		{
+			index.updatePage(page);
+		}
+		return index;
+	}
+
+	/**
+	 * Builds an index of three pages, A, B and C
+	 * @return The index
+	 * @throws MalformedURLException Never
+	 */
+	private static WebIndex original() throws MalformedURLException
+	{
+		return indexOf(
+				new Page("A", "apple banana apple", "B", "C"),
+				new Page("B", "banana cherry", "A"),
+				new Page("C", "cherry date", "A"));
+	}
+
+	/**
+	 * Creates a new version of page B, with different words and links
+	 * @return The page
+	 * @throws MalformedURLException Never
+	 */
+	private static UnprocessedPage replacementB() throws MalformedURLException
+	{
+		return new Page("B", "apple date date", "C");
+	}
+
+	/**
+	 * Builds, from scratch, the index that replacing B and removing C should leave
+	 * @return The index
+	 * @throws MalformedURLException Never
+	 */
+	private static WebIndex expected() throws MalformedURLException
+	{
+		return indexOf(new Page("A", "apple banana apple", "B", "C"), replacementB());
+	}
+
+	/**
+	 * Checks that an index that has had B replaced and C removed matches one built from scratch
+	 * @param expected The index built from scratch
+	 * @param actual The changed index
+	 */
+	private static void assertSameStatistics(WebIndex expected, WebIndex actual)
+	{
+		assertEquals(expected.getTotalDocs(), actual.getTotalDocs());
+		for (String word : WORDS)
+		{
+			assertEquals(expected.getIDF(word), actual.getIDF(word), 1e-12, word);
+		}
+		for (String url : List.of(SITE + "A.html", SITE + "B.html"))
+		{
+			assertEquals(expected.getPage(url).getVectorNorm(), actual.getPage(url).getVectorNorm(), 1e-12, url);
+			assertEquals(expected.getPageRank(url), actual.getPageRank(url), 1e-12, url);
+			assertEquals(expected.getIncomingLinks(url), actual.getIncomingLinks(url), url);
+		}
+		assertFalse(actual.hasPage(SITE + "C.html"));
+	}
+
+	/**
+	 * Updating and removing pages in place leaves the same statistics as building the index from scratch
+	 */
+	@Test
+	public void updateAndRemoveRecalculateStatistics() throws MalformedURLException
+	{
+		WebIndex index = original();
+		// Make sure everything has been cached before the pages change
+		for (String word : WORDS)
+		{
+			index.getIDF(word);
+		}
+		index.getPageRank(SITE + "A.html");
+		index.getPage(SITE + "A.html").getVectorNorm();
+
+		index.updatePage(replacementB());
+		index.removePage(SITE + "C.html");
+		assertSameStatistics(expected(), index);
+	}
+}
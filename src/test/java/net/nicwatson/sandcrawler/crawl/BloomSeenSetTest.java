@@ -0,0 +1,87 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for BloomSeenSet
+ */
+public class BloomSeenSetTest
+{
+	/**
+	 * The false-positive rate asked for in the tests
+	 */
+	private static final double TARGET = 0.01;
+
+	/**
+	 * After the set has grown well past the size it was created for, it still never forgets a URL, and new URLs are
+	 * mistaken for seen ones no more often than the target rate, both as measured and as the set itself estimates
+	 */
+	@Test
+	public void staysWithinTargetAfterGrowth()
+	{
+		// Sized for 1000, then filled until the filters for 1000, 2000, 4000 and 8000 URLs are all full
+		BloomSeenSet seen = new BloomSeenSet(1000, TARGET);
+		int added = 0;
+		for(int i = 0; added < 15000; i++)
+		{
+			if(seen.add("http://seen.test/page" + i + ".html"))
+			{
+				added++;
+			}
+		}
+		assertEquals(15000, seen.size());
+		assertTrue(seen.toString().endsWith("4 filters)"), seen.toString());
+		for(int i = 0; i < 15000; i++)
+		{
+			assertTrue(seen.contains("http://seen.test/page" + i + ".html"));
+		}
+
+		int probes = 400000;
+		int falsePositives = 0;
+		for(int i = 0; i < probes; i++)
+		{
+			if(seen.contains("http://new.test/page" + i + ".html"))
+			{
+				falsePositives++;
+			}
+		}
+		double measured = (double)falsePositives / probes;
+		assertTrue(measured <= TARGET, "measured false-positive rate " + measured);
+		assertTrue(seen.falsePositiveRate() <= TARGET, "estimated false-positive rate " + seen.falsePositiveRate());
+		assertTrue(Math.abs(seen.falsePositiveRate() - measured) < TARGET / 5,
+				"estimated " + seen.falsePositiveRate() + " but measured " + measured);
+	}
+
+	/**
+	 * A URL that is already in the set is not added again
+	 */
+	@Test
+	public void rejectsDuplicates()
+	{
+		BloomSeenSet seen = new BloomSeenSet(10, TARGET);
+		assertTrue(seen.add("http://seen.test/A.html"));
+		assertFalse(seen.add("http://seen.test/A.html"));
+		assertEquals(1, seen.size());
+	}
+}
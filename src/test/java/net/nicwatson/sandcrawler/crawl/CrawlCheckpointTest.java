@@ -0,0 +1,90 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for CrawlCheckpoint
+ */
+public class CrawlCheckpointTest
+{
+	/**
+	 * The seed URL of the test crawl
+	 */
+	private static final String SEED = "http://test.local/A.html";
+
+	/**
+	 * A scratch directory for checkpoint logs
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * Only the records up to the last checkpoint are replayed, and whatever follows it (here, half a record, as left
+	 * by a crash) is cut off so the log can be appended to again
+	 * @throws IOException If the log cannot be written or read
+	 */
+	@Test
+	public void resumesFromLastMark() throws IOException
+	{
+		String path = this.directory.resolve("checkpoint.dat").toString();
+		CrawlCheckpoint log = CrawlCheckpoint.create(path, SEED);
+		log.queued(SEED);
+		log.queued("http://test.local/B.html");
+		log.fetched(new UnprocessedPage(SEED, "<title>A</title><p>apple</p>"));
+		log.failed("http://test.local/B.html");
+		log.mark();
+		long marked = new File(path).length();
+		log.queued("http://test.local/C.html");
+		log.close();
+		try(RandomAccessFile file = new RandomAccessFile(path, "rw"))
+		{
+			// Cut the log off in the middle of the last record, after its own closing mark is gone
+			file.setLength(marked + 3);
+		}
+
+		assertEquals(SEED, CrawlCheckpoint.readSeedUrl(path));
+		CrawlCheckpoint.State state = CrawlCheckpoint.resume(path);
+		assertEquals(SEED, state.seedUrl);
+		assertEquals(List.of(SEED, "http://test.local/B.html"), List.copyOf(state.seen));
+		assertEquals(1, state.fetched);
+		assertEquals("<title>A</title><p>apple</p>", state.pages.get(SEED).getRawText());
+		assertEquals(Integer.valueOf(1), state.failures.get("http://test.local/B.html"));
+		assertFalse(state.seen.contains("http://test.local/C.html"));
+		assertEquals(marked, new File(path).length());
+
+		// The log carries on from the checkpoint
+		state.log.queued("http://test.local/D.html");
+		state.log.close();
+		CrawlCheckpoint.State again = CrawlCheckpoint.resume(path);
+		assertTrue(again.seen.contains("http://test.local/D.html"));
+		again.log.close();
+	}
+}
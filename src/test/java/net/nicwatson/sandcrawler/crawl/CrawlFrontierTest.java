@@ -0,0 +1,102 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for CrawlFrontier
+ */
+public class CrawlFrontierTest
+{
+	/**
+	 * A scratch directory for segment files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * The host queues never hold much more than the memory budget between them, however many hosts there are, and
+	 * every URL still comes out in order for its host
+	 * @throws InterruptedException If the test is interrupted while taking URLs
+	 */
+	@Test
+	public void spillsBeyondMemoryBudget() throws InterruptedException
+	{
+		CrawlFrontier frontier = new CrawlFrontier(100, 0, new ExactSeenSet(), this.directory, 8, 16);
+		Map<String, List<String>> offered = new HashMap<String, List<String>>();
+		for(int i = 0; i < 300; i++)
+		{
+			String host = "host" + (i % 7) + ".test";
+			String url = "http://" + host + "/" + i + ".html";
+			assertTrue(frontier.offer(url));
+			offered.computeIfAbsent(host, name -> new ArrayList<String>()).add(url);
+		}
+		assertEquals(300, frontier.size());
+		assertEquals(16, frontier.residentCount());
+		assertTrue(frontier.spilledSegmentCount() > 0);
+
+		Map<String, List<String>> taken = new HashMap<String, List<String>>();
+		String url;
+		while((url = frontier.take()) != null)
+		{
+			assertTrue(frontier.residentCount() <= 16 + 8);
+			taken.computeIfAbsent(CrawlFrontier.hostOf(url), name -> new ArrayList<String>()).add(url);
+			frontier.release(url);
+		}
+		assertEquals(offered, taken);
+		assertEquals(0, frontier.size());
+		assertEquals(0, frontier.spilledSegmentCount());
+	}
+
+	/**
+	 * A host is forgotten once it has nothing queued or in flight, and can be queued again afterwards
+	 * @throws InterruptedException If the test is interrupted while taking URLs
+	 */
+	@Test
+	public void forgetsIdleHosts() throws InterruptedException
+	{
+		CrawlFrontier frontier = new CrawlFrontier(4, 0);
+		frontier.offer("http://a.test/1.html");
+		frontier.offer("http://b.test/1.html");
+		assertEquals(2, frontier.hostCount());
+
+		String first = frontier.take();
+		frontier.release(first);
+		String second = frontier.take();
+		assertEquals(1, frontier.hostCount());
+
+		frontier.offer(first.replace("1.html", "2.html"));
+		assertEquals(2, frontier.hostCount());
+		frontier.release(second);
+		frontier.release(frontier.take());
+		assertNull(frontier.take());
+		assertEquals(0, frontier.hostCount());
+	}
+}
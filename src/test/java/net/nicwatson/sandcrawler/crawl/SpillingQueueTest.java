@@ -0,0 +1,190 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.crawl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests for SpillingQueue
+ */
+public class SpillingQueueTest
+{
+	/**
+	 * A scratch directory for segment files
+	 */
+	@TempDir
+	Path directory;
+
+	/**
+	 * URLs come back out in the order they went in, whether their segment was written to disk and read back, or
+	 * taken straight from memory before it could be written
+	 * @throws IOException If the directory cannot be listed
+	 */
+	@Test
+	public void keepsOrderAcrossSpills() throws IOException
+	{
+		SpillingQueue queue = new SpillingQueue(this.directory, 4);
+		List<String> added = new ArrayList<String>();
+		for(int i = 0; i < 30; i++)
+		{
+			String url = "http://test.local/" + i + ".html";
+			added.add(url);
+			SpillingQueue.Segment sealed = queue.add(url);
+			if(sealed != null && i != 7)
+			{
+				assertTrue(sealed.write());
+			}
+		}
+		assertEquals(30, queue.size());
+		assertEquals(7, queue.segmentCount());
+		assertEquals(6, this.segmentFiles());
+
+		assertEquals(added, this.drain(queue));
+		assertEquals(0, queue.size());
+		assertEquals(0, this.segmentFiles());
+	}
+
+	/**
+	 * URLs can be added while earlier ones are being taken out, without losing their place
+	 */
+	@Test
+	public void keepsOrderWhileInterleaved()
+	{
+		SpillingQueue queue = new SpillingQueue(this.directory, 3);
+		List<String> added = new ArrayList<String>();
+		List<String> taken = new ArrayList<String>();
+		for(int i = 0; i < 50; i++)
+		{
+			String url = "http://test.local/" + i + ".html";
+			added.add(url);
+			SpillingQueue.Segment sealed = queue.add(url);
+			if(sealed != null)
+			{
+				sealed.write();
+			}
+			if(i % 7 == 6)
+			{
+				taken.addAll(this.next(queue));
+			}
+		}
+		taken.addAll(this.drain(queue));
+		assertEquals(added, taken);
+	}
+
+	/**
+	 * A segment whose file has gone missing comes back empty, and the queue's size still drops by the whole segment
+	 * @throws IOException If the segment file cannot be deleted
+	 */
+	@Test
+	public void losesUnreadableSegment() throws IOException
+	{
+		SpillingQueue queue = new SpillingQueue(this.directory, 2);
+		assertTrue(queue.add("http://test.local/A.html") == null);
+		assertTrue(queue.add("http://test.local/B.html").write());
+		queue.add("http://test.local/C.html");
+		try(Stream<Path> files = Files.list(this.directory))
+		{
+			for(Path file : (Iterable<Path>)files::iterator)
+			{
+				Files.delete(file);
+			}
+		}
+
+		assertEquals(List.of(), this.next(queue));
+		assertEquals(1, queue.size());
+		assertEquals(List.of("http://test.local/C.html"), this.drain(queue));
+	}
+
+	/**
+	 * Clearing the queue deletes its segment files, including one that is written after the queue was cleared
+	 * @throws IOException If the directory cannot be listed
+	 */
+	@Test
+	public void clearDeletesSegments() throws IOException
+	{
+		SpillingQueue queue = new SpillingQueue(this.directory, 2);
+		queue.add("http://test.local/A.html");
+		assertTrue(queue.add("http://test.local/B.html").write());
+		queue.add("http://test.local/C.html");
+		SpillingQueue.Segment late = queue.add("http://test.local/D.html");
+		assertEquals(1, this.segmentFiles());
+
+		queue.clear();
+		assertTrue(late.write());
+		assertEquals(0, queue.size());
+		assertEquals(0, this.segmentFiles());
+		assertNull(queue.pollBatch());
+	}
+
+	/**
+	 * Takes the next batch out of a queue, reading its segment back in first if need be
+	 * @param queue The queue, which must not be empty
+	 * @return The URLs in the batch
+	 */
+	private List<String> next(SpillingQueue queue)
+	{
+		ArrayDeque<String> batch = queue.pollBatch();
+		if(batch == null)
+		{
+			queue.peekSegment().read();
+			batch = queue.pollBatch();
+		}
+		return new ArrayList<String>(batch);
+	}
+
+	/**
+	 * Takes everything out of a queue
+	 * @param queue The queue
+	 * @return The URLs, in the order they came out
+	 */
+	private List<String> drain(SpillingQueue queue)
+	{
+		List<String> urls = new ArrayList<String>();
+		while(!queue.isEmpty())
+		{
+			urls.addAll(this.next(queue));
+		}
+		return urls;
+	}
+
+	/**
+	 * Counts the segment files in the scratch directory
+	 * @return The number of files
+	 * @throws IOException If the directory cannot be listed
+	 */
+	private long segmentFiles() throws IOException
+	{
+		try(Stream<Path> files = Files.list(this.directory))
+		{
+			return files.count();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for QueryCache
+ */
+public class QueryCacheTest
+{
+	/**
+	 * A repeated cursor search, even with its words in another order or case, gets back the same cursor without
+	 * running the search again
+	 */
+	@Test
+	public void remembersCursors()
+	{
+		QueryCache cache = new QueryCache();
+		AtomicInteger runs = new AtomicInteger();
+		ResultCursor<SearchResultImpl> first = cache.getCursor("Apple banana", false, () -> this.cursor(runs));
+		ResultCursor<SearchResultImpl> second = cache.getCursor("banana, apple", false, () -> this.cursor(runs));
+		assertSame(first, second);
+		assertEquals(1, runs.get());
+		assertEquals(1L, cache.getHits());
+		assertEquals(1L, cache.getMisses());
+
+		// The boost flag is part of the key
+		assertNotSame(first, cache.getCursor("apple banana", true, () -> this.cursor(runs)));
+		assertEquals(2, runs.get());
+	}
+
+	/**
+	 * Cursors and top-k lists for the same query are kept apart
+	 */
+	@Test
+	public void keepsCursorsApartFromLists()
+	{
+		QueryCache cache = new QueryCache();
+		AtomicInteger runs = new AtomicInteger();
+		List<SearchResultPlus> top = List.of(new SearchResultImpl("A", "http://test.local/A.html", 1, 2));
+		assertSame(top, cache.get("apple", false, 1, () -> top));
+		cache.getCursor("apple", false, () -> this.cursor(runs));
+		assertSame(top, cache.get("apple", false, 1, () -> List.of()));
+		assertEquals(1, runs.get());
+		assertEquals(2, cache.size());
+	}
+
+	/**
+	 * Once the cache is invalidated, a cursor search runs again
+	 */
+	@Test
+	public void forgetsCursorsWhenInvalidated()
+	{
+		QueryCache cache = new QueryCache();
+		AtomicInteger runs = new AtomicInteger();
+		ResultCursor<SearchResultImpl> first = cache.getCursor("apple", false, () -> this.cursor(runs));
+		cache.invalidate();
+		assertNotSame(first, cache.getCursor("apple", false, () -> this.cursor(runs)));
+		assertEquals(2, runs.get());
+	}
+
+	/**
+	 * Stands in for a search, counting how many times it is run
+	 * @param runs The counter of searches run
+	 * @return A cursor over two results
+	 */
+	private ResultCursor<SearchResultImpl> cursor(AtomicInteger runs)
+	{
+		runs.incrementAndGet();
+		return new ResultCursor<SearchResultImpl>(List.of(new SearchResultImpl("A", "http://test.local/A.html", 1, 2),
+				new SearchResultImpl("B", "http://test.local/B.html", 1, 1)));
+	}
+}
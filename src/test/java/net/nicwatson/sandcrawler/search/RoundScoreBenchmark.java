@@ -0,0 +1,101 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.search;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * A rough benchmark of sorting search results on their scores: inserting results into a TreeSet, comparing them
+ * either the old way (formatting both scores to three decimal places for every comparison) or on the pre-rounded
+ * scores. This is not run as part of the tests; run its <code>main()</code> by hand.
+ */
+public class RoundScoreBenchmark
+{
+	/**
+	 * The number of results to sort in each round
+	 */
+	private static final int RESULTS = 10000;
+
+	/**
+	 * The number of rounds to time. The first few give the JIT compiler time to warm up.
+	 */
+	private static final int ROUNDS = 10;
+
+	/**
+	 * Compares two scores the old way
+	 * @param a One score
+	 * @param b The other score
+	 * @return The old result of <code>compareScoreTo()</code>
+	 */
+	private static int formattedCompare(double a, double b)
+	{
+		return 0 - String.format("%1.3f", a).compareTo(String.format("%1.3f", b));
+	}
+
+	/**
+	 * Runs the benchmark
+	 * @param args Ignored
+	 */
+	public static void main(String[] args)
+	{
+		Random random = new Random(1);
+		double[] scores = new double[RESULTS];
+		for (int i = 0; i < scores.length; i++)
+		{
+			scores[i] = random.nextDouble();
+		}
+
+		for (int round = 0; round < ROUNDS; round++)
+		{
+			long start = System.nanoTime();
+			TreeSet<Integer> formatted = new TreeSet<Integer>((a, b) ->
+			{
+				int comparison = formattedCompare(scores[a], scores[b]);
+				return (comparison != 0) ? comparison : Integer.compare(a, b);
+			});
+			for (int i = 0; i < scores.length; i++)
+			{
+				formatted.add(i);
+			}
+			long middle = System.nanoTime();
+
+			// Creating the results, which is when their scores are rounded, counts towards the time
+			SearchResultImpl[] results = new SearchResultImpl[scores.length];
+			for (int i = 0; i < scores.length; i++)
+			{
+				results[i] = new SearchResultImpl("", "", 0, scores[i]);
+			}
+			TreeSet<Integer> rounded = new TreeSet<Integer>((a, b) ->
+			{
+				int comparison = results[a].compareScoreTo(results[b]);
+				return (comparison != 0) ? comparison : Integer.compare(a, b);
+			});
+			for (int i = 0; i < scores.length; i++)
+			{
+				rounded.add(i);
+			}
+			long end = System.nanoTime();
+
+			boolean sameOrder = new ArrayList<Integer>(formatted).equals(new ArrayList<Integer>(rounded));
+			System.out.printf("%d results: formatted %.1f ms, pre-rounded %.2f ms, same order %b%n", RESULTS,
+					(middle - start) / 1e6, (end - middle) / 1e6, sameOrder);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that search results are ordered on their pre-rounded scores exactly as they were when scores were rounded
+ * half-up to three decimal places for every comparison
+ */
+public class RoundScoreTest
+{
+	/**
+	 * Rounds a score the old way, half-up from its decimal representation
+	 * @param score The score
+	 * @return The rounded score, as a whole number of thousandths
+	 */
+	private static long reference(double score)
+	{
+		return BigDecimal.valueOf(score).setScale(3, RoundingMode.HALF_UP).unscaledValue().longValue();
+	}
+
+	/**
+	 * Checks that a score rounds as it used to, and as the formatter that used to round it does
+	 * @param score The score
+	 */
+	private static void assertRoundsLikeBefore(double score)
+	{
+		long expected = reference(score);
+		assertEquals(expected, SearchResultImpl.roundScore(score), "roundScore(" + score + ")");
+		assertEquals(expected, new BigDecimal(String.format(Locale.ROOT, "%1.3f", score)).unscaledValue().longValue(),
+				"String.format(" + score + ")");
+	}
+
+	/**
+	 * Scores exactly halfway between two thousandths round away from zero
+	 */
+	@Test
+	public void halfwayScoresRoundUp()
+	{
+		for (int k = -3000; k < 3000; k++)
+		{
+			assertRoundsLikeBefore((k + 0.5) / 1000.0);
+			assertRoundsLikeBefore((k + 0.5) / 1000.0 + 1e-12);
+			assertRoundsLikeBefore((k + 0.5) / 1000.0 - 1e-12);
+		}
+		assertEquals(1, SearchResultImpl.roundScore(0.0005));
+		assertEquals(124, SearchResultImpl.roundScore(0.1235));
+		assertEquals(-1, SearchResultImpl.roundScore(-0.0005));
+		assertEquals(-124, SearchResultImpl.roundScore(-0.1235));
+	}
+
+	/**
+	 * Zero (of either sign), and negative scores that round to zero, all tie at zero
+	 */
+	@Test
+	public void zeroAndNegativeScores()
+	{
+		for (double score : new double[] {0.0, -0.0, 0.0004, -0.0004, -0.0005, -0.0015, -1.2345, -1.2344, -1e-300})
+		{
+			assertRoundsLikeBefore(score);
+		}
+		assertEquals(0, SearchResultImpl.roundScore(0.0));
+		assertEquals(0, SearchResultImpl.roundScore(-0.0));
+		assertEquals(0, SearchResultImpl.roundScore(-0.0004));
+		assertEquals(0, result(-0.0).compareScoreTo(result(0.0)));
+		assertEquals(0, result(-0.0004).compareScoreTo(result(0.0)));
+	}
+
+	/**
+	 * Random scores, many of them on or near a boundary, round and sort as they used to
+	 */
+	@Test
+	public void randomScoresSortAsBefore()
+	{
+		Random random = new Random(6);
+		for (int n = 0; n < 200000; n++)
+		{
+			double a = score(random);
+			double b = score(random);
+			assertRoundsLikeBefore(a);
+			int expected = -Long.signum(Long.compare(reference(a), reference(b)));
+			assertEquals(expected, Integer.signum(result(a).compareScoreTo(result(b))), a + " vs " + b);
+		}
+	}
+
+	/**
+	 * Picks a random score between -2 and 2, a third of the time exactly halfway between two thousandths
+	 * @param random The source of randomness
+	 * @return The score
+	 */
+	private static double score(Random random)
+	{
+		switch (random.nextInt(3))
+		{
+			case 0:
+				return (random.nextInt(8001) - 4000) / 2000.0;
+			case 1:
+				return random.nextDouble() * 4 - 2;
+			default:
+				return (random.nextInt(20001) - 10000) / 20000.0 * 0.01;
+		}
+	}
+
+	/**
+	 * Creates a search result with the given score
+	 * @param score The score
+	 * @return The search result
+	 */
+	private static SearchResultImpl result(double score)
+	{
+		return new SearchResultImpl("", "", 0, score);
+	}
+}
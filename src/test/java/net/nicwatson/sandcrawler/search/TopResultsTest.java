@@ -0,0 +1,62 @@
+/*
+ *   JavaSandcrawler - A keyword-based demo search engine and web crawler for JavaFX runtimes
+ *   Copyright (C) 2022  Nic Watson
+ *
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, version 3.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package net.nicwatson.sandcrawler.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for TopResults
+ */
+public class TopResultsTest
+{
+	/**
+	 * Only the best candidates are kept, and they come out best first
+	 */
+	@Test
+	public void keepsTheBestCandidates()
+	{
+		TopResults<Integer> top = new TopResults<Integer>(3);
+		for (int candidate : new int[] {7, 3, 9, 1, 5, 2})
+		{
+			top.offer(candidate);
+		}
+		assertTrue(top.isFull());
+		assertEquals(Integer.valueOf(3), top.worst());
+		assertEquals(List.of(1, 2, 3), top.drainSorted());
+	}
+
+	/**
+	 * A collector with no room keeps nothing, and is never full, so callers never see a full collector without a worst
+	 * candidate
+	 */
+	@Test
+	public void zeroCapacityIsNeverFull()
+	{
+		TopResults<Integer> top = new TopResults<Integer>(0);
+		assertFalse(top.offer(1));
+		assertFalse(top.isFull());
+		assertEquals(0, top.size());
+		assertEquals(List.of(), top.drainSorted());
+	}
+}